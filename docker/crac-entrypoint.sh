@@ -0,0 +1,46 @@
+#!/bin/sh
+# Entrypoint de la imagen CRaC (docker build --target crac).
+#
+#   checkpoint  levanta el stand-in de TF_Back, arranca la app en modo checkpoint (calienta todos
+#               los providers contra el stand-in) y deja la imagen del proceso en $CRAC_DIR.
+#               Necesita --privileged (o CAP_CHECKPOINT_RESTORE + CAP_SYS_PTRACE).
+#   (sin args)  si hay checkpoint, restaura; si no, arranque normal de la JVM.
+#
+# El puerto y TFBACK_URL quedan fijados al tomar el checkpoint; JWT_SECRET se vuelve a leer
+# del entorno en el restore (no queda en la imagen).
+set -e
+
+CRAC_DIR=${CRAC_DIR:-/app/checkpoint}
+STANDIN_PORT=${STANDIN_PORT:-18081}
+
+if [ "$1" = "checkpoint" ]; then
+    java -cp "standin:lib/*" -Dstandin.port="$STANDIN_PORT" -Dstandin.latency=fixed:1 \
+        com.serverfhir.loadtest.TfBackStandIn &
+    STANDIN_PID=$!
+    trap 'kill "$STANDIN_PID" 2>/dev/null || true' EXIT
+    mkdir -p "$CRAC_DIR"
+    # Sin restos de un checkpoint anterior: el directorio vacío al final indica que falló
+    find "$CRAC_DIR" -mindepth 1 -delete
+    # Al volcar la imagen CRaC mata la JVM (SIGKILL, 137); cualquier otro error es un fallo
+    status=0
+    java -XX:CRaCCheckpointTo="$CRAC_DIR" -Dspring.profiles.active=prod \
+        -jar app.jar \
+        --fhir.crac.checkpoint.enabled=true \
+        --fhir.crac.warmup.backend-url="http://127.0.0.1:$STANDIN_PORT" \
+        --fhir.tracing.exporter=memory || status=$?
+    if [ "$status" -ne 0 ] && [ "$status" -ne 137 ]; then
+        echo "checkpoint: la JVM terminó con código $status" >&2
+        exit "$status"
+    fi
+    if [ -z "$(ls -A "$CRAC_DIR" 2>/dev/null)" ]; then
+        echo "checkpoint: no se generó la imagen en $CRAC_DIR" >&2
+        exit 1
+    fi
+    exit 0
+fi
+
+if [ -n "$(ls -A "$CRAC_DIR" 2>/dev/null)" ]; then
+    exec java -XX:CRaCRestoreFrom="$CRAC_DIR"
+fi
+
+exec java -Dspring.profiles.active=prod -jar app.jar "$@"
@@ -0,0 +1,40 @@
+package com.serverfhir.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Carga los payloads de TF_Back grabados en {@code src/jmh/resources/fixtures}.
+ */
+public final class Fixtures {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private Fixtures() {
+    }
+
+    public static Map<String, Object> object(String name) {
+        return read(name, new TypeReference<>() {});
+    }
+
+    public static List<Map<String, Object>> list(String name) {
+        return read(name, new TypeReference<>() {});
+    }
+
+    private static <T> T read(String name, TypeReference<T> type) {
+        try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name)) {
+            if (in == null) {
+                throw new IllegalArgumentException("Fixture inexistente: " + name);
+            }
+            return MAPPER.readValue(in, type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.serverfhir.provider;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import com.serverfhir.benchmark.Fixtures;
+import org.hl7.fhir.r5.model.Bundle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialización JSON R5 de Bundles grandes de pacientes (mapeados con el mismo código
+ * que el read), con y sin pretty print (el servidor usa pretty print por defecto).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BundleEncodingBenchmark {
+
+    @Param({"100", "1000"})
+    public int entries;
+
+    @Param({"true", "false"})
+    public boolean prettyPrint;
+
+    private IParser parser;
+    private Bundle bundle;
+
+    @Setup
+    public void setup() {
+        parser = FhirContext.forR5().newJsonParser().setPrettyPrint(prettyPrint);
+
+        PatientResourceProvider provider = new PatientResourceProvider();
+        Map<String, Object> patient = Fixtures.object("patient.json");
+        bundle = new Bundle();
+        bundle.setType(Bundle.BundleType.SEARCHSET);
+        for (int i = 0; i < entries; i++) {
+            bundle.addEntry().setResource(provider.mapToPatient("p7Xk2mQ9rT4vL8nB-" + i, patient));
+        }
+        bundle.setTotal(entries);
+    }
+
+    @Benchmark
+    public String encodeBundle() {
+        return parser.encodeResourceToString(bundle);
+    }
+}
@@ -0,0 +1,57 @@
+package com.serverfhir.provider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Normalización de fechas que llegan de TF_Back en los distintos formatos que devuelve.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateNormalizationBenchmark {
+
+    @Param({"1987-06-15", "1987-06-15T00:00:00.000Z", "1987-06-15T03:00:00-03:00", "1987/06/15"})
+    public String practitionerDate;
+
+    @Param({"2025-09-02T14:31:07.412-03:00"})
+    public String fechaModificacion;
+
+    private PractitionerResourceProvider practitionerProvider;
+    private Long fechaModificacionEpoch;
+
+    @Setup
+    public void setup() {
+        practitionerProvider = new PractitionerResourceProvider();
+        fechaModificacionEpoch = 1756834267412L;
+    }
+
+    @Benchmark
+    public String practitionerNormalizeDate() {
+        return practitionerProvider.normalizeDateString(practitionerDate);
+    }
+
+    @Benchmark
+    public String patientFechaModificacionFromString() {
+        return PatientResourceProvider.formatFechaModificacionToIso(fechaModificacion);
+    }
+
+    @Benchmark
+    public String patientFechaModificacionFromEpoch() {
+        return PatientResourceProvider.formatFechaModificacionToIso(fechaModificacionEpoch);
+    }
+}
@@ -0,0 +1,54 @@
+package com.serverfhir.provider;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.serverfhir.benchmark.Fixtures;
+import com.serverfhir.util.PayloadLogger;
+import org.hl7.fhir.r5.model.DiagnosticReport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Historia fisiátrica: fila de TF_Back → DiagnosticReport y DiagnosticReport → payload del backend.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EhrMappingBenchmark {
+
+    private EhrResourceProvider provider;
+    private Map<String, Object> historia;
+    private DiagnosticReport report;
+
+    @Setup
+    public void setup() {
+        provider = new EhrResourceProvider();
+        ReflectionTestUtils.setField(provider, "payloadLogger", new PayloadLogger());
+        historia = Fixtures.object("historia-fisiatrica.json");
+        report = provider.convertToDiagnosticReport(historia, "p7Xk2mQ9rT4vL8nB");
+    }
+
+    @Benchmark
+    public DiagnosticReport convertToDiagnosticReport() {
+        return provider.convertToDiagnosticReport(historia, "p7Xk2mQ9rT4vL8nB");
+    }
+
+    @Benchmark
+    public Map<String, Object> transformToBackendFormat() throws JsonProcessingException {
+        return provider.transformToBackendFormat(report, "p7Xk2mQ9rT4vL8nB");
+    }
+}
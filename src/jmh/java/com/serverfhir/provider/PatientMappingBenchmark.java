@@ -0,0 +1,54 @@
+package com.serverfhir.provider;
+
+import com.serverfhir.benchmark.Fixtures;
+import org.hl7.fhir.r5.model.Patient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapeo Map de TF_Back → Patient FHIR (read completo y listado resumido).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PatientMappingBenchmark {
+
+    private PatientResourceProvider provider;
+    private Map<String, Object> patient;
+    private List<Map<String, Object>> patientList;
+
+    @Setup
+    public void setup() {
+        provider = new PatientResourceProvider();
+        patient = Fixtures.object("patient.json");
+        patientList = Fixtures.list("patient-list.json");
+    }
+
+    @Benchmark
+    public Patient mapPatient() {
+        return provider.mapToPatient("p7Xk2mQ9rT4vL8nB", patient);
+    }
+
+    @Benchmark
+    public void mapPatientList(Blackhole blackhole) {
+        for (Map<String, Object> row : patientList) {
+            blackhole.consume(provider.mapToPatientSummary(row));
+        }
+    }
+}
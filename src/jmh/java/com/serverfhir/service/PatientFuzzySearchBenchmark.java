@@ -0,0 +1,149 @@
+package com.serverfhir.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Búsqueda {@code name:fuzzy} sobre un padrón sintético (100k pacientes por defecto), con el índice
+ * de trigramas y recorriendo el listado completo como sin réplica. Las consultas son nombres del
+ * padrón con errores de tipeo típicos (sin acentos, ñ como n, letras cambiadas, faltantes o
+ * duplicadas, un solo apellido de dos).
+ *
+ * En el setup se mide el recall: proporción de consultas donde entre los primeros 10 resultados hay
+ * un paciente con el mismo primer nombre y primer apellido que el buscado (en un padrón de 100k hay
+ * muchos homónimos, cualquiera de ellos es la respuesta correcta). Se imprime junto al resto de la
+ * salida de JMH.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PatientFuzzySearchBenchmark {
+
+    private static final String[] NOMBRES = {
+            "José", "María", "Lucía", "Martín", "Sofía", "Joaquín", "Valentina", "Agustín", "Camila",
+            "Tomás", "Julián", "Florencia", "Matías", "Milagros", "Nicolás", "Ramón", "Belén", "Iñaki",
+            "Guadalupe", "Máximo", "Renata", "Benjamín", "Ángeles", "Simón", "Inés", "Germán", "Rocío",
+            "Facundo", "Abril", "Sebastián", "Catalina", "Ezequiel", "Martina", "Gastón", "Lourdes",
+            "Thiago", "Micaela", "Andrés", "Candela", "Rubén"};
+    private static final String[] APELLIDOS = {
+            "González", "Rodríguez", "Fernández", "López", "Martínez", "Pérez", "García", "Sánchez",
+            "Romero", "Díaz", "Álvarez", "Gómez", "Muñoz", "Ibáñez", "Benítez", "Acuña", "Giménez",
+            "Suárez", "Castaño", "Domínguez", "Peña", "Ortíz", "Ríos", "Agüero", "Núñez", "Vázquez",
+            "Méndez", "Ruíz", "Carreño", "Quiñones", "Herrera", "Medina", "Aguirre", "Cabrera", "Molina",
+            "Sosa", "Ledesma", "Villalba", "Figueroa", "Maldonado", "Ojeda", "Toledo", "Bustos",
+            "Córdoba", "Zalazar", "Montes de Oca", "Echeverría", "Iturriaga", "Olmedo", "Luján"};
+    private static final int RECALL_AT = 10;
+
+    @Param({"100000"})
+    public int rosterSize;
+
+    private PatientSearchIndex index;
+    private List<Map<String, Object>> roster;
+    private String[] queries;
+    private PatientSearchIndex.Criteria criteria;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        index = new PatientSearchIndex(new SimpleMeterRegistry(), 0.3, 50);
+        roster = new ArrayList<>(rosterSize);
+        for (int i = 0; i < rosterSize; i++) {
+            String apellido = pick(random, APELLIDOS);
+            if (random.nextInt(10) < 3) {
+                apellido += " " + pick(random, APELLIDOS);
+            }
+            String nombre = random.nextInt(10) < 2 ? pick(random, NOMBRES) + " " + pick(random, NOMBRES) : pick(random, NOMBRES);
+            Map<String, Object> row = new HashMap<>();
+            row.put("hash_id", "p" + i);
+            row.put("nombre", nombre);
+            row.put("apellido", apellido);
+            row.put("dni_paciente", String.valueOf(30_000_000 + i));
+            row.put("inactivo", false);
+            roster.add(row);
+            index.put("p" + i, i, row);
+        }
+        criteria = new PatientSearchIndex.Criteria(null, null, null, null, null, null, null, null, null, true);
+
+        queries = new String[1000];
+        List<Map<String, Object>> targets = new ArrayList<>(queries.length);
+        for (int i = 0; i < queries.length; i++) {
+            Map<String, Object> target = roster.get(random.nextInt(rosterSize));
+            targets.add(target);
+            String nombre = ((String) target.get("nombre")).split(" ")[0];
+            String apellido = ((String) target.get("apellido")).split(" ")[0];
+            queries[i] = typo(random, nombre) + " " + typo(random, apellido);
+        }
+        int found = 0;
+        for (int i = 0; i < queries.length; i++) {
+            String expected = firstWords(targets.get(i));
+            if (index.fuzzy(queries[i], criteria).stream().limit(RECALL_AT)
+                    .anyMatch(s -> firstWords(s.row()).equals(expected))) {
+                found++;
+            }
+        }
+        System.out.printf("%nrecall@%d sobre %d consultas con errores: %.3f%n", RECALL_AT, queries.length,
+                (double) found / queries.length);
+    }
+
+    @Benchmark
+    public int fuzzyIndexed() {
+        return index.fuzzy(nextQuery(), criteria).size();
+    }
+
+    @Benchmark
+    public int fuzzyLinearScan() {
+        return index.fuzzy(nextQuery(), criteria, roster).size();
+    }
+
+    private String nextQuery() {
+        next = (next + 1) % queries.length;
+        return queries[next];
+    }
+
+    /**
+     * Un error de los que se ven en la recepción: sin acentos (siempre, es lo más común) y además,
+     * a veces, dos letras cambiadas, una letra de menos o una de más.
+     */
+    private static String typo(Random random, String word) {
+        String plain = PatientSearchIndex.normalize(word);
+        if (plain.length() < 4) {
+            return plain;
+        }
+        int at = 1 + random.nextInt(plain.length() - 2);
+        return switch (random.nextInt(4)) {
+            case 0 -> plain.substring(0, at) + plain.charAt(at + 1) + plain.charAt(at) + plain.substring(at + 2);
+            case 1 -> plain.substring(0, at) + plain.substring(at + 1);
+            case 2 -> plain.substring(0, at) + plain.charAt(at) + plain.substring(at);
+            default -> plain;
+        };
+    }
+
+    private static String firstWords(Map<String, Object> row) {
+        return ((String) row.get("nombre")).split(" ")[0] + " " + ((String) row.get("apellido")).split(" ")[0];
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
@@ -0,0 +1,197 @@
+package com.serverfhir.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fan-out concurrente hacia TF_Back con HTTP/1.1 y con HTTP/2 (h2c), contra el stand-in en modo
+ * Tomcat. Cada "carga de historia" dispara en paralelo las llamadas que hace el frontend al abrir
+ * la historia de un paciente (paciente, informes, historia fisiátrica y sus versiones, archivos),
+ * con varias cargas simultáneas. Se reporta la latencia de la carga completa, cuántas conexiones
+ * recibió el stand-in y qué protocolo se negoció. El HttpClient se configura igual que
+ * {@code BackendConnections} (una instancia compartida, versión por request).
+ *
+ * Uso: {@code ./mvnw -Ploadtest verify -Dloadtest.main=com.serverfhir.loadtest.BackendFanOutBenchmark}
+ *
+ * <pre>
+ *   fanout.modes=http1,h2c
+ *   fanout.concurrency=8          (cargas simultáneas)
+ *   fanout.loads=400              (cargas medidas por modo)
+ *   fanout.warmup-loads=50
+ *   fanout.report=target/backend-fanout-report.json
+ * </pre>
+ * La latencia del stand-in se ajusta con {@code standin.latency} como en la prueba de carga.
+ */
+public final class BackendFanOutBenchmark {
+
+    private BackendFanOutBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> modes = Arrays.stream(Settings.string("fanout.modes", "http1,h2c").split(","))
+                .map(String::trim).toList();
+        int concurrency = Settings.integer("fanout.concurrency", 8);
+        int loads = Settings.integer("fanout.loads", 400);
+        int warmupLoads = Settings.integer("fanout.warmup-loads", 50);
+        Path reportPath = Path.of(Settings.string("fanout.report", "target/backend-fanout-report.json"));
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        try (TfBackStandIn standIn = new TfBackStandIn(true)) {
+            standIn.start();
+            String baseUrl = standIn.getBaseUrl();
+
+            for (String mode : modes) {
+                HttpClient.Version version = switch (mode) {
+                    case "http1" -> HttpClient.Version.HTTP_1_1;
+                    case "h2c" -> HttpClient.Version.HTTP_2;
+                    default -> throw new IllegalArgumentException("Modo desconocido: " + mode);
+                };
+                try (HttpClient client = HttpClient.newBuilder()
+                        .version(version)
+                        .connectTimeout(Duration.ofSeconds(5))
+                        .build()) {
+                    List<String> patients = patientHashes(client, version, baseUrl);
+                    // El primer request hace el upgrade a h2c; después todo va por esa conexión
+                    get(client, version, baseUrl + "/health").join();
+                    run(client, version, baseUrl, patients, concurrency, warmupLoads, null);
+
+                    standIn.resetConnections();
+                    Map<String, Object> result = run(client, version, baseUrl, patients, concurrency, loads,
+                            new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(5), 3));
+                    result.put("connections", standIn.getConnectionCount());
+                    report.put(mode, result);
+                }
+            }
+        }
+
+        print(report);
+        Files.createDirectories(reportPath.toAbsolutePath().getParent());
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(reportPath.toFile(), report);
+        System.out.println("Reporte escrito en " + reportPath.toAbsolutePath());
+    }
+
+    private static Map<String, Object> run(HttpClient client, HttpClient.Version version, String baseUrl,
+                                           List<String> patients, int concurrency, int loads,
+                                           Histogram latencyMicros) throws Exception {
+        Map<String, LongAdder> protocols = new ConcurrentHashMap<>();
+        LongAdder calls = new LongAdder();
+        LongAdder errors = new LongAdder();
+        long start = System.nanoTime();
+
+        try (ExecutorService workers = Executors.newFixedThreadPool(concurrency)) {
+            List<CompletableFuture<Void>> all = new ArrayList<>();
+            for (int i = 0; i < loads; i++) {
+                String hashId = patients.get(i % patients.size());
+                all.add(CompletableFuture.runAsync(() -> {
+                    long loadStart = System.nanoTime();
+                    List<CompletableFuture<HttpResponse<byte[]>>> fanOut = chartUrls(baseUrl, hashId).stream()
+                            .map(url -> get(client, version, url))
+                            .toList();
+                    for (CompletableFuture<HttpResponse<byte[]>> call : fanOut) {
+                        try {
+                            HttpResponse<byte[]> response = call.join();
+                            protocols.computeIfAbsent(response.version().name(), k -> new LongAdder()).increment();
+                            if (response.statusCode() >= 400) {
+                                errors.increment();
+                            }
+                        } catch (RuntimeException e) {
+                            errors.increment();
+                        }
+                        calls.increment();
+                    }
+                    if (latencyMicros != null) {
+                        latencyMicros.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - loadStart));
+                    }
+                }, workers));
+            }
+            CompletableFuture.allOf(all.toArray(CompletableFuture[]::new)).join();
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        result.put("loads", loads);
+        result.put("calls", calls.sum());
+        result.put("errors", errors.sum());
+        result.put("loadsPerSecond", loads / seconds);
+        Map<String, Long> protocolCounts = new LinkedHashMap<>();
+        protocols.forEach((name, count) -> protocolCounts.put(name, count.sum()));
+        result.put("protocols", protocolCounts);
+        if (latencyMicros != null) {
+            result.put("p50Ms", latencyMicros.getValueAtPercentile(50) / 1000.0);
+            result.put("p99Ms", latencyMicros.getValueAtPercentile(99) / 1000.0);
+            result.put("maxMs", latencyMicros.getMaxValue() / 1000.0);
+        }
+        return result;
+    }
+
+    /**
+     * Lo que pide el frontend al abrir la historia de un paciente.
+     */
+    private static List<String> chartUrls(String baseUrl, String hashId) {
+        String api = baseUrl + "/api";
+        return List.of(
+                api + "/patient/" + hashId,
+                api + "/report/all/" + hashId,
+                api + "/ehr/hc-fisiatric/" + hashId,
+                api + "/ehr/hc-fisiatric/" + hashId + "/history",
+                api + "/file?hash_id=" + hashId,
+                api + "/abm/provincias",
+                api + "/abm/mutuales",
+                api + "/abm/prestaciones");
+    }
+
+    private static CompletableFuture<HttpResponse<byte[]>> get(HttpClient client, HttpClient.Version version, String url) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .version(version)
+                .timeout(Duration.ofSeconds(30))
+                .GET()
+                .build();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private static List<String> patientHashes(HttpClient client, HttpClient.Version version, String baseUrl)
+            throws Exception {
+        JsonNode patients = new ObjectMapper().readTree(get(client, version, baseUrl + "/api/patient").join().body());
+        List<String> hashes = new ArrayList<>();
+        patients.forEach(p -> hashes.add(p.path("hash_id").asText()));
+        if (hashes.isEmpty()) {
+            throw new IllegalStateException("El stand-in no devolvió pacientes");
+        }
+        return hashes;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void print(Map<String, Object> report) {
+        System.out.println();
+        System.out.printf("%-6s %12s %10s %10s %12s %8s  %s%n",
+                "modo", "conexiones", "p50 ms", "p99 ms", "cargas/s", "errores", "protocolos");
+        report.forEach((mode, value) -> {
+            Map<String, Object> r = (Map<String, Object>) value;
+            System.out.printf("%-6s %12d %10.1f %10.1f %12.1f %8d  %s%n", mode, r.get("connections"),
+                    r.get("p50Ms"), r.get("p99Ms"), r.get("loadsPerSecond"), r.get("errors"), r.get("protocols"));
+        });
+        System.out.println();
+    }
+}
@@ -0,0 +1,61 @@
+package com.serverfhir.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Distribución de latencia simulada del stand-in, en milisegundos.
+ *
+ * Formatos admitidos:
+ * <ul>
+ *   <li>{@code fixed:20} siempre 20 ms</li>
+ *   <li>{@code uniform:10-50} uniforme entre 10 y 50 ms</li>
+ *   <li>{@code lognormal:25,0.5} log-normal con mediana 25 ms y sigma 0.5 (cola larga realista)</li>
+ *   <li>{@code bimodal:20,400,0.02} 20 ms normalmente y 400 ms en el 2% de las llamadas</li>
+ * </ul>
+ */
+abstract class LatencyDistribution {
+
+    abstract long sampleMillis();
+
+    static LatencyDistribution parse(String spec) {
+        String[] parts = spec.trim().split(":", 2);
+        String kind = parts[0].toLowerCase();
+        String args = parts.length > 1 ? parts[1] : "";
+        switch (kind) {
+            case "fixed": {
+                long ms = Long.parseLong(args);
+                return of(() -> ms);
+            }
+            case "uniform": {
+                String[] range = args.split("-");
+                long min = Long.parseLong(range[0]);
+                long max = Long.parseLong(range[1]);
+                return of(() -> ThreadLocalRandom.current().nextLong(min, max + 1));
+            }
+            case "lognormal": {
+                String[] p = args.split(",");
+                double mu = Math.log(Double.parseDouble(p[0]));
+                double sigma = Double.parseDouble(p[1]);
+                return of(() -> Math.round(Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian())));
+            }
+            case "bimodal": {
+                String[] p = args.split(",");
+                long fast = Long.parseLong(p[0]);
+                long slow = Long.parseLong(p[1]);
+                double slowRatio = Double.parseDouble(p[2]);
+                return of(() -> ThreadLocalRandom.current().nextDouble() < slowRatio ? slow : fast);
+            }
+            default:
+                throw new IllegalArgumentException("Distribución de latencia desconocida: " + spec);
+        }
+    }
+
+    private static LatencyDistribution of(java.util.function.LongSupplier supplier) {
+        return new LatencyDistribution() {
+            @Override
+            long sampleMillis() {
+                return Math.max(0, supplier.getAsLong());
+            }
+        };
+    }
+}
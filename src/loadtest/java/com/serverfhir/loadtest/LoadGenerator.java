@@ -0,0 +1,164 @@
+package com.serverfhir.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Generador de carga de lazo abierto: lanza requests a una tasa fija (RPS objetivo) sin
+ * esperar a que terminen las anteriores, y mide la latencia desde el instante en que el
+ * request <em>debía</em> salir. Así, si el servidor se satura, la cola que se forma se ve
+ * en los percentiles (sin coordinated omission).
+ */
+final class LoadGenerator {
+
+    /**
+     * Un tipo de request del mix, con su peso relativo.
+     */
+    record Scenario(String name, int weight, Function<List<String>, String> pathForPatients) {
+    }
+
+    static final class ScenarioStats {
+        final Histogram latencyMicros = new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(5), 3);
+        final AtomicLong errors = new AtomicLong();
+        final Map<Integer, AtomicLong> statuses = new java.util.concurrent.ConcurrentHashMap<>();
+    }
+
+    private final HttpClient httpClient;
+    private final String baseUrl;
+    private final String token;
+    private final List<Scenario> scenarios;
+    private final int totalWeight;
+    private final List<String> patientIds;
+    private final Duration requestTimeout;
+
+    LoadGenerator(String baseUrl, String token, List<Scenario> scenarios, List<String> patientIds, Duration requestTimeout) {
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        this.baseUrl = baseUrl;
+        this.token = token;
+        this.scenarios = scenarios;
+        this.totalWeight = scenarios.stream().mapToInt(Scenario::weight).sum();
+        this.patientIds = patientIds;
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * Corre la carga durante {@code duration} a {@code rps} requests por segundo.
+     *
+     * @param record false para la fase de warmup (no se registran resultados)
+     */
+    Map<String, ScenarioStats> run(int rps, Duration duration, boolean record) throws InterruptedException {
+        Map<String, ScenarioStats> stats = new LinkedHashMap<>();
+        for (Scenario scenario : scenarios) {
+            stats.put(scenario.name(), new ScenarioStats());
+        }
+
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, rps);
+        long total = Math.max(1, duration.toNanos() / intervalNanos);
+        long start = System.nanoTime();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long i = 0; i < total; i++) {
+                long intended = start + i * intervalNanos;
+                long wait = intended - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                Scenario scenario = pick();
+                ScenarioStats scenarioStats = stats.get(scenario.name());
+                executor.execute(() -> execute(scenario, scenarioStats, intended, record));
+            }
+        }
+        return stats;
+    }
+
+    private void execute(Scenario scenario, ScenarioStats stats, long intendedStart, boolean record) {
+        String path = scenario.pathForPatients().apply(patientIds);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(requestTimeout)
+                .header("Authorization", token)
+                .header("Accept", "application/fhir+json")
+                .GET()
+                .build();
+        int status;
+        try {
+            HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+            status = response.statusCode();
+        } catch (Exception e) {
+            status = -1;
+        }
+        if (!record) {
+            return;
+        }
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStart);
+        stats.latencyMicros.recordValue(Math.min(micros, stats.latencyMicros.getHighestTrackableValue()));
+        stats.statuses.computeIfAbsent(status, s -> new AtomicLong()).incrementAndGet();
+        if (status < 200 || status >= 400) {
+            stats.errors.incrementAndGet();
+        }
+    }
+
+    private Scenario pick() {
+        int r = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (Scenario scenario : scenarios) {
+            r -= scenario.weight();
+            if (r < 0) {
+                return scenario;
+            }
+        }
+        return scenarios.get(scenarios.size() - 1);
+    }
+
+    static String randomPatient(List<String> ids) {
+        return ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+    }
+
+    /**
+     * Mix por defecto, aproximando el uso del frontend (mucha lectura de pacientes e informes,
+     * catálogos ocasionales). Se puede cambiar con {@code loadtest.mix=patient-read:40,abm-provinces:5,...}.
+     */
+    static List<Scenario> scenarios(String mixSpec) {
+        Map<String, Function<List<String>, String>> catalog = new LinkedHashMap<>();
+        catalog.put("patient-read", ids -> "/fhir/Patient/" + randomPatient(ids));
+        catalog.put("patient-search", ids -> "/fhir/Patient");
+        catalog.put("report-list", ids -> "/fhir/DiagnosticReport/$list-reports?patient=" + randomPatient(ids));
+        catalog.put("historia", ids -> "/fhir/DiagnosticReport/$get-historia?patient=" + randomPatient(ids));
+        catalog.put("historia-history", ids -> "/fhir/DiagnosticReport/$get-historia-history?patient=" + randomPatient(ids));
+        catalog.put("files", ids -> "/fhir/DocumentReference?patient=" + randomPatient(ids));
+        catalog.put("practitioners", ids -> "/fhir/Practitioner");
+        catalog.put("user-types", ids -> "/fhir/Practitioner/$get-user-types");
+        catalog.put("abm-provinces", ids -> "/fhir/Location?_type=province");
+        catalog.put("abm-cities", ids -> "/fhir/Location?provincia=" + (1 + ThreadLocalRandom.current().nextInt(23)));
+        catalog.put("organizations", ids -> "/fhir/Organization?_type=" + (ThreadLocalRandom.current().nextBoolean() ? "insurance" : "program"));
+
+        List<Scenario> scenarios = new ArrayList<>();
+        for (String entry : mixSpec.split(",")) {
+            String[] parts = entry.trim().split(":");
+            Function<List<String>, String> path = catalog.get(parts[0]);
+            if (path == null) {
+                throw new IllegalArgumentException("Escenario desconocido: " + parts[0] + " (disponibles: " + catalog.keySet() + ")");
+            }
+            scenarios.add(new Scenario(parts[0], Integer.parseInt(parts[1]), path));
+        }
+        return scenarios;
+    }
+}
@@ -0,0 +1,207 @@
+package com.serverfhir.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.serverfhir.fhir_server.FhirServerApplication;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prueba de carga de punta a punta: levanta el stand-in de TF_Back, levanta este servidor
+ * FHIR en el mismo proceso apuntando al stand-in, y genera carga contra los endpoints FHIR.
+ *
+ * Uso: {@code ./mvnw -Ploadtest verify -Dloadtest.rps=300 -Dloadtest.duration=60s}
+ *
+ * Propiedades del harness:
+ * <pre>
+ *   loadtest.rps=200
+ *   loadtest.duration=60s
+ *   loadtest.warmup=15s
+ *   loadtest.timeout=10s
+ *   loadtest.mix=patient-read:35,patient-search:5,report-list:20,historia:10,...
+ *   loadtest.target=                 (URL de un servidor FHIR ya levantado; vacío = in-process)
+ *   loadtest.jwt-secret=...          (mismo jwt.secret que el servidor)
+ *   loadtest.report=target/loadtest-report.json
+ * </pre>
+ * Las propiedades {@code standin.*} configuran el simulador (ver {@link TfBackStandIn}).
+ */
+public final class LoadTestMain {
+
+    private static final String DEFAULT_MIX = "patient-read:35,patient-search:5,report-list:20,historia:10,"
+            + "historia-history:3,files:10,practitioners:4,user-types:3,abm-provinces:4,abm-cities:3,organizations:3";
+    private static final String DEV_JWT_SECRET = "df8a3e5d9b2e4c97b1c6a574c0f7ac31a78e497f04d64a2b9c47e9db9a3c49e6";
+
+    private LoadTestMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rps = Settings.integer("loadtest.rps", 200);
+        Duration duration = Settings.duration("loadtest.duration", "60s");
+        Duration warmup = Settings.duration("loadtest.warmup", "15s");
+        Duration timeout = Settings.duration("loadtest.timeout", "10s");
+        String mix = Settings.string("loadtest.mix", DEFAULT_MIX);
+        String target = Settings.string("loadtest.target", "");
+        String jwtSecret = Settings.string("loadtest.jwt-secret", DEV_JWT_SECRET);
+        Path reportPath = Path.of(Settings.string("loadtest.report", "target/loadtest-report.json"));
+
+        TfBackStandIn standIn = null;
+        ConfigurableApplicationContext app = null;
+        try {
+            String baseUrl = target;
+            if (baseUrl.isEmpty()) {
+                standIn = new TfBackStandIn();
+                standIn.start();
+                System.out.println("Stand-in de TF_Back en " + standIn.getBaseUrl());
+
+                app = new SpringApplicationBuilder(FhirServerApplication.class)
+                        .properties(
+                                "server.port=0",
+                                "tfback.url=" + standIn.getBaseUrl(),
+                                "tfback.api.path=/api",
+                                "jwt.secret=" + jwtSecret,
+                                "fhir.tracing.exporter=none",
+                                "logging.level.com.serverfhir=WARN")
+                        .run();
+                int port = ((WebServerApplicationContext) app).getWebServer().getPort();
+                baseUrl = "http://127.0.0.1:" + port;
+                System.out.println("Servidor FHIR en " + baseUrl);
+            }
+
+            String token = Jwts.builder()
+                    .claim("email", "loadtest@example.com")
+                    .subject("loadtest@example.com")
+                    .issuedAt(new Date())
+                    .expiration(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(8)))
+                    .signWith(Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8)))
+                    .compact();
+
+            List<String> patientIds = discoverPatientIds(baseUrl, token);
+            System.out.println("Pacientes disponibles: " + patientIds.size());
+
+            LoadGenerator generator = new LoadGenerator(baseUrl, token, LoadGenerator.scenarios(mix), patientIds, timeout);
+
+            if (!warmup.isZero()) {
+                System.out.printf("Warmup: %d rps durante %ds%n", rps, warmup.toSeconds());
+                generator.run(rps, warmup, false);
+            }
+            System.out.printf("Medición: %d rps durante %ds%n", rps, duration.toSeconds());
+            long start = System.nanoTime();
+            Map<String, LoadGenerator.ScenarioStats> stats = generator.run(rps, duration, true);
+            double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+            Map<String, Object> report = buildReport(rps, elapsedSeconds, stats);
+            printReport(report);
+            Files.createDirectories(reportPath.toAbsolutePath().getParent());
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(reportPath.toFile(), report);
+            System.out.println("Reporte escrito en " + reportPath.toAbsolutePath());
+        } finally {
+            if (app != null) {
+                app.close();
+            }
+            if (standIn != null) {
+                standIn.close();
+            }
+        }
+    }
+
+    private static List<String> discoverPatientIds(String baseUrl, String token) throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/fhir/Patient"))
+                .header("Authorization", token)
+                .header("Accept", "application/fhir+json")
+                .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("No se pudo listar pacientes: HTTP " + response.statusCode());
+        }
+        List<String> ids = new ArrayList<>();
+        JsonNode body = new ObjectMapper().readTree(response.body());
+        for (JsonNode entry : body.path("entry")) {
+            String id = entry.path("resource").path("id").asText(null);
+            if (id != null) {
+                ids.add(id.contains("/") ? id.substring(id.lastIndexOf('/') + 1) : id);
+            }
+        }
+        if (ids.isEmpty()) {
+            throw new IllegalStateException("El servidor no devolvió pacientes para usar en la prueba");
+        }
+        return ids;
+    }
+
+    private static Map<String, Object> buildReport(int rps, double elapsedSeconds,
+                                                   Map<String, LoadGenerator.ScenarioStats> stats) {
+        Histogram total = new Histogram(TimeUnit.MINUTES.toMicros(5), 3);
+        long totalErrors = 0;
+        Map<String, Object> scenarios = new LinkedHashMap<>();
+        for (Map.Entry<String, LoadGenerator.ScenarioStats> entry : stats.entrySet()) {
+            LoadGenerator.ScenarioStats s = entry.getValue();
+            total.add(s.latencyMicros);
+            totalErrors += s.errors.get();
+            Map<String, Object> summary = summarize(s.latencyMicros, s.errors.get(), elapsedSeconds);
+            Map<Integer, Long> statuses = new LinkedHashMap<>();
+            s.statuses.forEach((status, count) -> statuses.put(status, count.get()));
+            summary.put("statuses", statuses);
+            scenarios.put(entry.getKey(), summary);
+        }
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("targetRps", rps);
+        report.put("durationSeconds", Math.round(elapsedSeconds * 10) / 10.0);
+        report.put("total", summarize(total, totalErrors, elapsedSeconds));
+        report.put("scenarios", scenarios);
+        return report;
+    }
+
+    private static Map<String, Object> summarize(Histogram histogram, long errors, double elapsedSeconds) {
+        long count = histogram.getTotalCount();
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("requests", count);
+        summary.put("throughputRps", Math.round(count / elapsedSeconds * 10) / 10.0);
+        summary.put("errorRate", count == 0 ? 0.0 : Math.round(errors * 10000.0 / count) / 10000.0);
+        summary.put("p50Ms", millis(histogram.getValueAtPercentile(50)));
+        summary.put("p99Ms", millis(histogram.getValueAtPercentile(99)));
+        summary.put("p999Ms", millis(histogram.getValueAtPercentile(99.9)));
+        summary.put("maxMs", millis(histogram.getMaxValue()));
+        return summary;
+    }
+
+    private static double millis(long micros) {
+        return Math.round(micros / 10.0) / 100.0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void printReport(Map<String, Object> report) {
+        System.out.println();
+        System.out.printf("%-18s %9s %9s %8s %9s %9s %9s %9s%n",
+                "escenario", "requests", "rps", "errores", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        Map<String, Object> scenarios = (Map<String, Object>) report.get("scenarios");
+        scenarios.forEach((name, summary) -> printRow(name, (Map<String, Object>) summary));
+        printRow("TOTAL", (Map<String, Object>) report.get("total"));
+        System.out.println();
+    }
+
+    private static void printRow(String name, Map<String, Object> s) {
+        System.out.printf("%-18s %9d %9.1f %7.2f%% %9.2f %9.2f %9.2f %9.2f%n",
+                name, (Long) s.get("requests"), (Double) s.get("throughputRps"), (Double) s.get("errorRate") * 100,
+                (Double) s.get("p50Ms"), (Double) s.get("p99Ms"), (Double) s.get("p999Ms"), (Double) s.get("maxMs"));
+    }
+}
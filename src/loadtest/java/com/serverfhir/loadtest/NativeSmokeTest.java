@@ -0,0 +1,168 @@
+package com.serverfhir.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Smoke test del ejecutable nativo contra el stand-in de TF_Back, comparado con el jar de la JVM.
+ * Cada build se lanza como proceso aparte; se mide el tiempo hasta que responde
+ * {@code /fhir/metadata}, se pega a un endpoint de cada provider y se lee el RSS del proceso
+ * ({@code /proc/<pid>/status}, solo Linux).
+ *
+ * Uso: {@code ./mvnw -Ploadtest verify -Dloadtest.main=com.serverfhir.loadtest.NativeSmokeTest}
+ *
+ * <pre>
+ *   smoke.targets=jvm,native
+ *   smoke.jar=target/fhir-server-*.jar         (se busca en target/ si no se indica)
+ *   smoke.native-binary=target/fhir-server
+ *   smoke.startup-timeout=90s
+ *   smoke.report=target/native-smoke-report.json
+ * </pre>
+ */
+public final class NativeSmokeTest {
+
+    private NativeSmokeTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> targets = List.of(Settings.string("smoke.targets", "jvm,native").split(","));
+        Duration startupTimeout = Settings.duration("smoke.startup-timeout", "90s");
+        Path reportPath = Path.of(Settings.string("smoke.report", "target/native-smoke-report.json"));
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        boolean failed = false;
+        try (TfBackStandIn standIn = new TfBackStandIn()) {
+            standIn.start();
+            for (String target : targets) {
+                List<String> command = commandFor(target.trim());
+                if (command == null) {
+                    System.out.println("[" + target + "] sin artefacto, se omite");
+                    continue;
+                }
+                Map<String, Object> result = run(target.trim(), command, standIn.getBaseUrl(), startupTimeout);
+                failed |= !Boolean.TRUE.equals(result.get("ok"));
+                report.put(target.trim(), result);
+            }
+        }
+
+        printReport(report);
+        Files.createDirectories(reportPath.toAbsolutePath().getParent());
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(reportPath.toFile(), report);
+        System.out.println("Reporte escrito en " + reportPath.toAbsolutePath());
+        if (failed) {
+            throw new IllegalStateException("El smoke test falló; ver el reporte");
+        }
+    }
+
+    private static List<String> commandFor(String target) throws IOException {
+        if ("native".equals(target)) {
+            Path binary = Path.of(Settings.string("smoke.native-binary", "target/fhir-server"));
+            return Files.isExecutable(binary) ? List.of(binary.toAbsolutePath().toString()) : null;
+        }
+        String jar = Settings.string("smoke.jar", "");
+        if (jar.isEmpty()) {
+            try (Stream<Path> files = Files.list(Path.of("target"))) {
+                jar = files.map(Path::toString)
+                        .filter(name -> name.matches(".*fhir-server-.*\\.jar"))
+                        .findFirst()
+                        .orElse("");
+            }
+        }
+        return jar.isEmpty() ? null : List.of(ServerProcess.javaCommand(), "-jar", jar);
+    }
+
+    private static Map<String, Object> run(String target, List<String> command, String backendUrl,
+                                           Duration startupTimeout) throws Exception {
+        int port = ServerProcess.freePort();
+        List<String> fullCommand = new ArrayList<>(command);
+        fullCommand.add("--server.port=" + port);
+        fullCommand.add("--tfback.url=" + backendUrl);
+        fullCommand.add("--tfback.api.path=/api");
+        fullCommand.add("--jwt.secret=" + ServerProcess.JWT_SECRET);
+        fullCommand.add("--fhir.tracing.exporter=none");
+        fullCommand.add("--logging.level.com.serverfhir=WARN");
+
+        String baseUrl = "http://127.0.0.1:" + port;
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+        Map<String, Object> result = new LinkedHashMap<>();
+        try (ServerProcess server = ServerProcess.launch(target, fullCommand, Map.of())) {
+            try {
+                result.put("startupMs", server.waitUntilOk(client, baseUrl + "/fhir/metadata", null, startupTimeout));
+                result.put("rssAfterStartupMb", server.rssMb());
+
+                String token = ServerProcess.token();
+                Map<String, Object> checks = new LinkedHashMap<>();
+                boolean ok = true;
+                String patientId = firstPatientId(client, baseUrl, token);
+                for (Map.Entry<String, String> check : checks(patientId).entrySet()) {
+                    long t0 = System.nanoTime();
+                    int status = ServerProcess.get(client, baseUrl + check.getValue(), token).statusCode();
+                    double ms = (System.nanoTime() - t0) / 1e6;
+                    ok &= status == 200;
+                    checks.put(check.getKey(), Map.of("status", status, "ms", Math.round(ms * 10) / 10.0));
+                }
+                result.put("ok", ok);
+                result.put("checks", checks);
+                result.put("rssAfterSmokeMb", server.rssMb());
+            } catch (Exception e) {
+                result.put("ok", false);
+                result.put("error", e.getMessage());
+                result.put("log", server.log().toString());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Un endpoint por provider.
+     */
+    static Map<String, String> checks(String patientId) {
+        Map<String, String> checks = new LinkedHashMap<>();
+        checks.put("Patient", "/fhir/Patient/" + patientId);
+        checks.put("Ehr", "/fhir/DiagnosticReport/$get-historia?patient=" + patientId);
+        checks.put("Report", "/fhir/DiagnosticReport/$list-reports?patient=" + patientId);
+        checks.put("DocumentReference", "/fhir/DocumentReference?patient=" + patientId);
+        checks.put("Practitioner", "/fhir/Practitioner");
+        checks.put("Abm", "/fhir/Location?_type=province");
+        checks.put("Organization", "/fhir/Organization?_type=insurance");
+        return checks;
+    }
+
+    static String firstPatientId(HttpClient client, String baseUrl, String token) throws Exception {
+        HttpResponse<String> response = ServerProcess.get(client, baseUrl + "/fhir/Patient", token);
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("GET /fhir/Patient devolvió HTTP " + response.statusCode());
+        }
+        JsonNode id = new ObjectMapper().readTree(response.body()).path("entry").path(0).path("resource").path("id");
+        if (id.isMissingNode()) {
+            throw new IllegalStateException("El stand-in no devolvió pacientes");
+        }
+        String value = id.asText();
+        return value.contains("/") ? value.substring(value.lastIndexOf('/') + 1) : value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void printReport(Map<String, Object> report) {
+        System.out.println();
+        System.out.printf("%-8s %6s %12s %16s %14s%n", "build", "ok", "arranque ms", "RSS arranque MB", "RSS smoke MB");
+        report.forEach((target, value) -> {
+            Map<String, Object> r = (Map<String, Object>) value;
+            System.out.printf("%-8s %6s %12s %16s %14s%n", target, r.get("ok"), r.getOrDefault("startupMs", "-"),
+                    r.getOrDefault("rssAfterStartupMb", "-"), r.getOrDefault("rssAfterSmokeMb", "-"));
+        });
+        System.out.println();
+    }
+}
@@ -0,0 +1,214 @@
+package com.serverfhir.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.serverfhir.fhir_server.FhirServerApplication;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ráfaga de carga de página: los requests FHIR que el frontend dispara en paralelo al abrir la
+ * pantalla principal (listado de pacientes, desplegables de ABM, organizaciones, tipos de
+ * usuario, profesionales), contra este servidor con HTTP/2 habilitado y el stand-in de TF_Back.
+ *
+ * Se compara HTTP/1.1 limitado a 6 conexiones (como un navegador) contra h2c en una sola
+ * conexión. Antes de medir se valida CORS en los dos protocolos: el preflight OPTIONS responde
+ * 200 con los headers de CORS y los GET devuelven {@code Access-Control-Allow-Origin}.
+ *
+ * Uso: {@code ./mvnw -Ploadtest verify -Dloadtest.main=com.serverfhir.loadtest.PageLoadBurstTest}
+ *
+ * <pre>
+ *   burst.pages=200                 (ráfagas medidas por modo)
+ *   burst.warmup-pages=30
+ *   burst.http1-connections=6
+ *   burst.origin=http://localhost:8081
+ *   burst.report=target/page-load-burst-report.json
+ * </pre>
+ */
+public final class PageLoadBurstTest {
+
+    private static final List<String> PAGE_LOAD = List.of(
+            "/fhir/Patient",
+            "/fhir/Location?_type=province",
+            "/fhir/Location?provincia=1",
+            "/fhir/Location?provincia=2",
+            "/fhir/Organization?_type=insurance",
+            "/fhir/Organization?_type=program",
+            "/fhir/Practitioner/$get-user-types",
+            "/fhir/Practitioner",
+            "/fhir/metadata");
+
+    private PageLoadBurstTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int pages = Settings.integer("burst.pages", 200);
+        int warmupPages = Settings.integer("burst.warmup-pages", 30);
+        int http1Connections = Settings.integer("burst.http1-connections", 6);
+        String origin = Settings.string("burst.origin", "http://localhost:8081");
+        Path reportPath = Path.of(Settings.string("burst.report", "target/page-load-burst-report.json"));
+        String token = ServerProcess.token();
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        ConfigurableApplicationContext app = null;
+        try (TfBackStandIn standIn = new TfBackStandIn()) {
+            standIn.start();
+            app = new SpringApplicationBuilder(FhirServerApplication.class)
+                    .properties(
+                            "server.port=0",
+                            "server.http2.enabled=true",
+                            "spring.web.cors.allowed-origins=" + origin,
+                            "tfback.url=" + standIn.getBaseUrl(),
+                            "tfback.api.path=/api",
+                            "jwt.secret=" + ServerProcess.JWT_SECRET,
+                            "fhir.tracing.exporter=none",
+                            "logging.level.com.serverfhir=WARN")
+                    .run();
+            String baseUrl = "http://127.0.0.1:" + ((WebServerApplicationContext) app).getWebServer().getPort();
+
+            Map<String, HttpClient.Version> modes = new LinkedHashMap<>();
+            modes.put("http1", HttpClient.Version.HTTP_1_1);
+            modes.put("h2c", HttpClient.Version.HTTP_2);
+            for (Map.Entry<String, HttpClient.Version> mode : modes.entrySet()) {
+                try (HttpClient client = HttpClient.newBuilder().version(mode.getValue()).build()) {
+                    // Con h2c el primer request hace el upgrade; el resto va por esa conexión
+                    send(client, "GET", baseUrl + "/fhir/metadata", origin, null).join();
+                    String negotiated = checkCors(client, baseUrl, origin, token);
+                    Semaphore connections = mode.getValue() == HttpClient.Version.HTTP_1_1
+                            ? new Semaphore(http1Connections)
+                            : null;
+                    for (int i = 0; i < warmupPages; i++) {
+                        burst(client, baseUrl, origin, token, connections);
+                    }
+                    Histogram latencyMicros = new Histogram(TimeUnit.MINUTES.toMicros(5), 3);
+                    int errors = 0;
+                    for (int i = 0; i < pages; i++) {
+                        long start = System.nanoTime();
+                        errors += burst(client, baseUrl, origin, token, connections);
+                        latencyMicros.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                    }
+
+                    Map<String, Object> result = new LinkedHashMap<>();
+                    result.put("protocol", negotiated);
+                    result.put("pages", pages);
+                    result.put("requestsPerPage", PAGE_LOAD.size());
+                    result.put("errors", errors);
+                    result.put("p50Ms", latencyMicros.getValueAtPercentile(50) / 1000.0);
+                    result.put("p99Ms", latencyMicros.getValueAtPercentile(99) / 1000.0);
+                    result.put("maxMs", latencyMicros.getMaxValue() / 1000.0);
+                    report.put(mode.getKey(), result);
+                }
+            }
+        } finally {
+            if (app != null) {
+                app.close();
+            }
+        }
+
+        print(report);
+        Files.createDirectories(reportPath.toAbsolutePath().getParent());
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(reportPath.toFile(), report);
+        System.out.println("Reporte escrito en " + reportPath.toAbsolutePath());
+    }
+
+    /**
+     * Una carga de página: todos los requests en paralelo (con HTTP/1.1, de a tantos como
+     * conexiones permita el navegador). Devuelve la cantidad de respuestas con error.
+     */
+    private static int burst(HttpClient client, String baseUrl, String origin, String token, Semaphore connections) {
+        List<CompletableFuture<HttpResponse<Void>>> calls = new ArrayList<>();
+        for (String path : PAGE_LOAD) {
+            if (connections == null) {
+                calls.add(send(client, "GET", baseUrl + path, origin, token));
+                continue;
+            }
+            connections.acquireUninterruptibly();
+            calls.add(send(client, "GET", baseUrl + path, origin, token)
+                    .whenComplete((response, error) -> connections.release()));
+        }
+        int errors = 0;
+        for (CompletableFuture<HttpResponse<Void>> call : calls) {
+            try {
+                if (call.join().statusCode() >= 400) {
+                    errors++;
+                }
+            } catch (RuntimeException e) {
+                errors++;
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Preflight y request real con Origin, como los hace el navegador. Devuelve el protocolo
+     * negociado.
+     */
+    private static String checkCors(HttpClient client, String baseUrl, String origin, String token) {
+        HttpRequest preflight = HttpRequest.newBuilder(URI.create(baseUrl + "/fhir/Patient"))
+                .method("OPTIONS", HttpRequest.BodyPublishers.noBody())
+                .header("Origin", origin)
+                .header("Access-Control-Request-Method", "GET")
+                .header("Access-Control-Request-Headers", "authorization,traceparent")
+                .build();
+        HttpResponse<Void> response = client.sendAsync(preflight, HttpResponse.BodyHandlers.discarding()).join();
+        require(response.statusCode() == 200, "preflight respondió " + response.statusCode());
+        require(origin.equals(response.headers().firstValue("access-control-allow-origin").orElse(null)),
+                "preflight sin Access-Control-Allow-Origin");
+        require(response.headers().firstValue("access-control-allow-headers").orElse("").toLowerCase()
+                .contains("authorization"), "preflight no permite Authorization");
+
+        HttpResponse<Void> get = send(client, "GET", baseUrl + "/fhir/Patient", origin, token).join();
+        require(get.statusCode() == 200, "GET /fhir/Patient respondió " + get.statusCode());
+        require(origin.equals(get.headers().firstValue("access-control-allow-origin").orElse(null)),
+                "GET sin Access-Control-Allow-Origin");
+        return get.version().name();
+    }
+
+    private static CompletableFuture<HttpResponse<Void>> send(HttpClient client, String method, String url,
+                                                              String origin, String token) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofSeconds(30))
+                .method(method, HttpRequest.BodyPublishers.noBody())
+                .header("Accept", "application/fhir+json")
+                .header("Origin", origin);
+        if (token != null) {
+            request.header("Authorization", token);
+        }
+        return client.sendAsync(request.build(), HttpResponse.BodyHandlers.discarding());
+    }
+
+    private static void require(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException("CORS: " + message);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void print(Map<String, Object> report) {
+        System.out.println();
+        System.out.printf("%-6s %10s %10s %10s %8s%n", "modo", "protocolo", "p50 ms", "p99 ms", "errores");
+        report.forEach((mode, value) -> {
+            Map<String, Object> r = (Map<String, Object>) value;
+            System.out.printf("%-6s %10s %10.1f %10.1f %8d%n", mode, r.get("protocol"),
+                    r.get("p50Ms"), r.get("p99Ms"), r.get("errors"));
+        });
+        System.out.println();
+    }
+}
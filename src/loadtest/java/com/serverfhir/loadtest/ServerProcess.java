@@ -0,0 +1,141 @@
+package com.serverfhir.loadtest;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Servidor FHIR lanzado como proceso aparte (jar, binario nativo, restore CRaC), con las
+ * utilidades comunes para medir su arranque: espera hasta que un endpoint responde 200 y
+ * lectura del RSS desde {@code /proc/<pid>/status} (solo Linux).
+ */
+final class ServerProcess implements AutoCloseable {
+
+    static final String JWT_SECRET = "df8a3e5d9b2e4c97b1c6a574c0f7ac31a78e497f04d64a2b9c47e9db9a3c49e6";
+
+    private final Process process;
+    private final long startNanos;
+    private final Path log;
+
+    private ServerProcess(Process process, long startNanos, Path log) {
+        this.process = process;
+        this.startNanos = startNanos;
+        this.log = log;
+    }
+
+    static ServerProcess launch(String name, List<String> command, Map<String, String> env) throws IOException {
+        Path log = Files.createTempFile("fhir-" + name + "-", ".log");
+        ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log.toFile());
+        builder.environment().putAll(env);
+        long start = System.nanoTime();
+        return new ServerProcess(builder.start(), start, log);
+    }
+
+    long pid() {
+        return process.pid();
+    }
+
+    Path log() {
+        return log;
+    }
+
+    /**
+     * Espera a que {@code url} responda 200 y devuelve los ms transcurridos desde el lanzamiento.
+     */
+    double waitUntilOk(HttpClient client, String url, String token, Duration timeout) throws Exception {
+        long deadline = startNanos + timeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("El proceso terminó con código " + process.exitValue() + " (log: " + log + ")");
+            }
+            try {
+                if (get(client, url, token).statusCode() == 200) {
+                    return Math.round((System.nanoTime() - startNanos) / 1e5) / 10.0;
+                }
+            } catch (IOException e) {
+                // todavía no escucha
+            }
+            Thread.sleep(10);
+        }
+        throw new IllegalStateException("No respondió en " + timeout.toSeconds() + " s (log: " + log + ")");
+    }
+
+    /**
+     * Espera a que el proceso termine solo (por ejemplo, después de un checkpoint CRaC).
+     */
+    int waitForExit(Duration timeout) throws InterruptedException {
+        if (!process.waitFor(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            throw new IllegalStateException("El proceso no terminó en " + timeout.toSeconds() + " s (log: " + log + ")");
+        }
+        return process.exitValue();
+    }
+
+    /**
+     * RSS del proceso en MB, o -1 si no se puede leer (fuera de Linux).
+     */
+    double rssMb() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc", String.valueOf(process.pid()), "status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    long kb = Long.parseLong(line.replaceAll("\\D", ""));
+                    return Math.round(kb / 102.4) / 10.0;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // sin /proc
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(10, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+        }
+    }
+
+    static HttpResponse<String> get(HttpClient client, String url, String token) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofSeconds(10))
+                .header("Accept", "application/fhir+json");
+        if (token != null) {
+            request.header("Authorization", token);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    static String token() {
+        return Jwts.builder()
+                .claim("email", "smoke@example.com")
+                .subject("smoke@example.com")
+                .issuedAt(new Date())
+                .expiration(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)))
+                .signWith(Keys.hmacShaKeyFor(JWT_SECRET.getBytes(StandardCharsets.UTF_8)))
+                .compact();
+    }
+
+    static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    static String javaCommand() {
+        return Path.of(System.getProperty("java.home"), "bin", "java").toString();
+    }
+}
@@ -0,0 +1,46 @@
+package com.serverfhir.loadtest;
+
+import java.time.Duration;
+
+/**
+ * Lectura de parámetros del harness desde propiedades de sistema ({@code -Dloadtest.rps=200}).
+ */
+final class Settings {
+
+    private Settings() {
+    }
+
+    static String string(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    static int integer(String key, int defaultValue) {
+        return Integer.parseInt(string(key, String.valueOf(defaultValue)));
+    }
+
+    static double decimal(String key, double defaultValue) {
+        return Double.parseDouble(string(key, String.valueOf(defaultValue)));
+    }
+
+    /**
+     * Duraciones con sufijo: {@code 500ms}, {@code 30s}, {@code 2m}. Sin sufijo se toman segundos.
+     */
+    static Duration duration(String key, String defaultValue) {
+        return parseDuration(string(key, defaultValue));
+    }
+
+    static Duration parseDuration(String value) {
+        String v = value.trim().toLowerCase();
+        if (v.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(v.substring(0, v.length() - 2)));
+        }
+        if (v.endsWith("s")) {
+            return Duration.ofSeconds(Long.parseLong(v.substring(0, v.length() - 1)));
+        }
+        if (v.endsWith("m")) {
+            return Duration.ofMinutes(Long.parseLong(v.substring(0, v.length() - 1)));
+        }
+        return Duration.ofSeconds(Long.parseLong(v));
+    }
+}
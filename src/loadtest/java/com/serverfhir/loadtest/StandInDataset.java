@@ -0,0 +1,205 @@
+package com.serverfhir.loadtest;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Datos sintéticos (y deterministas, a partir de una semilla) que sirve el stand-in de TF_Back.
+ * Los nombres de campos reproducen los que devuelve el backend real.
+ */
+final class StandInDataset {
+
+    private static final String[] NOMBRES = {"Lucía", "Mateo", "Valentina", "Benjamín", "Martina", "Thiago",
+            "Catalina", "Santino", "Emma", "Joaquín", "Isabella", "Felipe", "Sofía", "Lautaro", "Olivia", "Bautista"};
+    private static final String[] APELLIDOS = {"Fernández", "González", "Rodríguez", "López", "Martínez", "García",
+            "Pérez", "Sánchez", "Romero", "Díaz", "Álvarez", "Torres", "Ruiz", "Ramírez", "Flores", "Acosta"};
+    private static final String[] PRESTACIONES = {"Rehabilitación neurológica", "Kinesiología", "Fonoaudiología",
+            "Terapia ocupacional", "Psicopedagogía"};
+    private static final String[] PROVINCIAS = {"Buenos Aires", "Catamarca", "Chaco", "Chubut", "Córdoba",
+            "Corrientes", "Entre Ríos", "Formosa", "Jujuy", "La Pampa", "La Rioja", "Mendoza", "Misiones",
+            "Neuquén", "Río Negro", "Salta", "San Juan", "San Luis", "Santa Cruz", "Santa Fe",
+            "Santiago del Estero", "Tierra del Fuego", "Tucumán"};
+    private static final String[] MUTUALES = {"OSDE", "IOSFA", "PAMI", "APROSS", "Swiss Medical", "Galeno",
+            "OSECAC", "OSPE", "Medifé", "Sancor Salud"};
+    private static final String[] USER_TYPES = {"Administrador", "Médico", "Kinesiólogo", "Fonoaudiólogo", "Secretaría"};
+    private static final DateTimeFormatter ISO_SECONDS = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+    private static final String HASH_CHARS = "abcdefghijkmnopqrstuvwxyzABCDEFGHJKLMNPQRSTUVWXYZ23456789";
+
+    final List<Map<String, Object>> patients = new ArrayList<>();
+    final Map<String, Map<String, Object>> patientsByHash = new LinkedHashMap<>();
+    final Map<String, List<Map<String, Object>>> reportsByPatient = new LinkedHashMap<>();
+    final Map<String, List<Map<String, Object>>> annexesByReport = new LinkedHashMap<>();
+    final Map<String, List<Map<String, Object>>> historiaVersionsByPatient = new LinkedHashMap<>();
+    final Map<String, List<Map<String, Object>>> filesByPatient = new LinkedHashMap<>();
+    final List<Map<String, Object>> users = new ArrayList<>();
+    final List<Map<String, Object>> userTypes = new ArrayList<>();
+    final List<Map<String, Object>> provincias = new ArrayList<>();
+    final List<Map<String, Object>> ciudades = new ArrayList<>();
+    final List<Map<String, Object>> mutuales = new ArrayList<>();
+    final List<Map<String, Object>> prestaciones = new ArrayList<>();
+
+    StandInDataset(long seed, int patientCount, int reportsPerPatient, int annexesPerReport,
+                   int historyVersions, int filesPerPatient, int userCount, int citiesPerProvince) {
+        Random random = new Random(seed);
+
+        for (int i = 0; i < PROVINCIAS.length; i++) {
+            provincias.add(row("id_provincia", i + 1, "nombre", PROVINCIAS[i]));
+            for (int c = 0; c < citiesPerProvince; c++) {
+                ciudades.add(row("id_ciudad", i * citiesPerProvince + c + 1, "id_provincia", i + 1,
+                        "nombre", PROVINCIAS[i] + " - Localidad " + (c + 1)));
+            }
+        }
+        for (int i = 0; i < MUTUALES.length; i++) {
+            mutuales.add(row("id_mutual", i + 1, "nombre", MUTUALES[i]));
+        }
+        for (int i = 0; i < PRESTACIONES.length; i++) {
+            prestaciones.add(row("id_prestacion", i + 1, "nombre", PRESTACIONES[i]));
+        }
+        for (int i = 0; i < USER_TYPES.length; i++) {
+            userTypes.add(row("id_tipo_usuario", i + 1, "nombre", USER_TYPES[i]));
+        }
+        for (int i = 0; i < userCount; i++) {
+            Map<String, Object> user = row(
+                    "hash_id", hash(random),
+                    "dni_usuario", String.valueOf(20_000_000 + random.nextInt(25_000_000)),
+                    "nombre", pick(random, NOMBRES),
+                    "apellido", pick(random, APELLIDOS),
+                    "email", "usuario" + i + "@example.com",
+                    "fecha_nacimiento", LocalDate.of(1960 + random.nextInt(40), 1 + random.nextInt(12), 1 + random.nextInt(28)) + "T00:00:00.000Z",
+                    "inactivo", random.nextInt(20) == 0,
+                    "id_tipo_usuario", 1 + random.nextInt(USER_TYPES.length));
+            users.add(user);
+        }
+
+        long baseEpoch = LocalDateTime.of(2024, 1, 1, 8, 0).toEpochSecond(ZoneOffset.ofHours(-3));
+        int reportId = 1;
+        for (int i = 0; i < patientCount; i++) {
+            String hashId = hash(random);
+            int provincia = 1 + random.nextInt(PROVINCIAS.length);
+            Map<String, Object> patient = row(
+                    "hash_id", hashId,
+                    "hash_id_EHR", hash(random),
+                    "dni_paciente", String.valueOf(38_000_000 + random.nextInt(18_000_000)),
+                    "nombre", pick(random, NOMBRES),
+                    "apellido", pick(random, APELLIDOS),
+                    "fecha_nacimiento", LocalDate.of(2005 + random.nextInt(18), 1 + random.nextInt(12), 1 + random.nextInt(28)).toString(),
+                    "telefono", 3_510_000_000L + random.nextInt(9_999_999),
+                    "inactivo", random.nextInt(10) == 0,
+                    "prestacion", pick(random, PRESTACIONES),
+                    "id_prestacion", 1 + random.nextInt(PRESTACIONES.length),
+                    "calle", "Calle " + (1 + random.nextInt(300)),
+                    "numero_calle", 100 + random.nextInt(4000),
+                    "barrio", "Barrio " + (1 + random.nextInt(80)),
+                    "piso_departamento", random.nextBoolean() ? null : (1 + random.nextInt(9)) + "B",
+                    "id_provincia", provincia,
+                    "id_ciudad", (provincia - 1) * citiesPerProvince + 1 + random.nextInt(Math.max(1, citiesPerProvince)),
+                    "vive_con", "Padres",
+                    "id_mutual", 1 + random.nextInt(MUTUALES.length),
+                    "numero_afiliado", String.format("%02d-%07d-%02d", random.nextInt(100), random.nextInt(10_000_000), random.nextInt(100)),
+                    "ocupacion_actual", "Estudiante",
+                    "ocupacion_anterior", null,
+                    "fecha_modificacion", isoDate(baseEpoch + random.nextInt(60 * 60 * 24 * 600)),
+                    "tutores", List.of(row("nombre", pick(random, NOMBRES), "apellido", pick(random, APELLIDOS),
+                            "dni", String.valueOf(20_000_000 + random.nextInt(20_000_000)), "parentesco", "Madre")));
+            patients.add(patient);
+            patientsByHash.put(hashId, patient);
+
+            List<Map<String, Object>> reports = new ArrayList<>();
+            for (int r = 0; r < reportsPerPatient; r++) {
+                String reportHash = hash(random);
+                Map<String, Object> user = users.isEmpty() ? Map.of() : users.get(random.nextInt(users.size()));
+                reports.add(row("report", row(
+                        "id_informe", reportId++,
+                        "hash_id", reportHash,
+                        "titulo", "Informe de evolución " + (r + 1),
+                        "reporte", "Paciente con buena adherencia al tratamiento. Se observa mejoría en la marcha y en los traslados. "
+                                + "Continúa con plan kinésico 3 veces por semana.",
+                        "fecha_creacion", isoDate(baseEpoch + random.nextInt(60 * 60 * 24 * 600)),
+                        "id_tipo_informe", 1 + random.nextInt(3),
+                        "nombre_tipo_informe", "Evolución",
+                        "id_usuario", users.indexOf(user) + 1,
+                        "nombre_usuario", user.get("nombre"),
+                        "apellido_usuario", user.get("apellido"),
+                        "dni_usuario", user.get("dni_usuario"))));
+                List<Map<String, Object>> annexes = new ArrayList<>();
+                for (int a = 0; a < annexesPerReport; a++) {
+                    annexes.add(row("id_anexo", a + 1, "hash_id", hash(random),
+                            "reporte", "Comentario de seguimiento " + (a + 1),
+                            "fecha_creacion", isoDate(baseEpoch + random.nextInt(60 * 60 * 24 * 600))));
+                }
+                annexesByReport.put(reportHash, annexes);
+            }
+            reportsByPatient.put(hashId, reports);
+
+            List<Map<String, Object>> versions = new ArrayList<>();
+            for (int v = historyVersions; v >= 1; v--) {
+                String effectiveFrom = isoDate(baseEpoch + (long) v * 60 * 60 * 24 * 30);
+                versions.add(row(
+                        "id_hc_fisiatrica", i * 100 + v,
+                        "version_number", v,
+                        "effective_from", effectiveFrom,
+                        "is_current", v == historyVersions,
+                        "evaluacion_consulta", "{\"derivadosPor\":\"Neurología infantil\",\"medicacionActual\":\"Baclofeno 5 mg c/12 h\","
+                                + "\"antecedentesCuadro\":\"Diplejía espástica, versión " + v + "\",\"estudiosRealizados\":\"RMN de cerebro\"}",
+                        "antecedentes", "{\"hereditarios\":\"Sin particularidades\",\"patologicos\":\"Prematurez\",\"quirurgicos\":\"No\","
+                                + "\"metabolicos\":\"No\",\"inmunologicos\":\"Vacunas completas\",\"fisiologico\":{\"dormir\":\"Adecuado\","
+                                + "\"alimentacion\":\"Adecuada\",\"catarsis\":\"Diaria\",\"diuresis\":\"Normal\"}}",
+                        "fisiologico", "{\"dormir\":\"Adecuado\",\"alimentacion\":\"Adecuada\"}",
+                        "anamnesis_sistemica", "{\"neurologico\":\"Espasticidad en miembros inferiores\"}",
+                        "examen_fisico", "{\"tono\":\"Ashworth 2\",\"marcha\":\"Con andador posterior\"}",
+                        "diagnostico_funcional", "{\"diagnosticoFuncional\":\"GMFCS III\",\"conductaSeguir\":\"Kinesiología\","
+                                + "\"objetivosFamilia\":\"Traslados independientes\"}",
+                        "conducta_seguir", "Control en 3 meses"));
+            }
+            historiaVersionsByPatient.put(hashId, versions);
+
+            List<Map<String, Object>> files = new ArrayList<>();
+            for (int f = 0; f < filesPerPatient; f++) {
+                files.add(row("id", i * 100 + f + 1, "type", f % 2 == 0 ? "application/pdf" : "image/jpeg",
+                        "url", "https://files.example.com/" + hash(random),
+                        "name", "estudio-" + (f + 1) + (f % 2 == 0 ? ".pdf" : ".jpg"),
+                        "titulo", "Estudio " + (f + 1), "descripcion", "Archivo adjunto"));
+            }
+            filesByPatient.put(hashId, files);
+        }
+    }
+
+    /**
+     * Versión vigente de la historia fisiátrica (la de mayor version_number).
+     */
+    Map<String, Object> currentHistoria(String patientHash) {
+        List<Map<String, Object>> versions = historiaVersionsByPatient.get(patientHash);
+        return versions == null || versions.isEmpty() ? null : versions.get(0);
+    }
+
+    private static Map<String, Object> row(Object... keyValues) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            map.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return map;
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static String hash(Random random) {
+        StringBuilder sb = new StringBuilder(16);
+        for (int i = 0; i < 16; i++) {
+            sb.append(HASH_CHARS.charAt(random.nextInt(HASH_CHARS.length())));
+        }
+        return sb.toString();
+    }
+
+    private static String isoDate(long epochSeconds) {
+        return LocalDateTime.ofEpochSecond(epochSeconds, 0, ZoneOffset.ofHours(-3)).format(ISO_SECONDS) + ".000-03:00";
+    }
+}
@@ -0,0 +1,194 @@
+package com.serverfhir.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark de arranque: JVM sin más, JVM con AppCDS y restore CRaC, contra el stand-in de
+ * TF_Back. Por corrida mide el tiempo hasta {@code /fhir/metadata}, el time-to-first-request
+ * (primer {@code GET /fhir/Patient/{id}} autenticado con 200), la latencia de un recorrido por
+ * todos los providers justo después (refleja cuánto JIT hace falta todavía) y el RSS.
+ *
+ * Uso: {@code ./mvnw -Ploadtest verify -Dloadtest.main=com.serverfhir.loadtest.StartupBenchmark}
+ *
+ * <pre>
+ *   startup.modes=plain,appcds,crac
+ *   startup.runs=5
+ *   startup.crac-java=/opt/zulu-crac/bin/java     (JDK con CRaC; sin esto se omite el modo crac)
+ *   startup.work-dir=target/startup-bench
+ *   startup.report=target/startup-report.json
+ * </pre>
+ */
+public final class StartupBenchmark {
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> modes = Arrays.stream(Settings.string("startup.modes", "plain,appcds,crac").split(","))
+                .map(String::trim).toList();
+        int runs = Settings.integer("startup.runs", 5);
+        String cracJava = Settings.string("startup.crac-java", "");
+        Path workDir = Path.of(Settings.string("startup.work-dir", "target/startup-bench")).toAbsolutePath();
+        Path reportPath = Path.of(Settings.string("startup.report", "target/startup-report.json"));
+
+        Path jar = extractJar(workDir);
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+        Map<String, Object> report = new LinkedHashMap<>();
+
+        try (TfBackStandIn standIn = new TfBackStandIn()) {
+            standIn.start();
+            Map<String, String> env = Map.of(
+                    "JWT_SECRET", ServerProcess.JWT_SECRET,
+                    "TFBACK_URL", standIn.getBaseUrl(),
+                    "TFBACK_API_PATH", "/api");
+            List<String> common = List.of("--fhir.tracing.exporter=memory", "--logging.level.com.serverfhir=WARN");
+
+            for (String mode : modes) {
+                List<Map<String, Object>> samples = new ArrayList<>();
+                switch (mode) {
+                    case "plain" -> {
+                        for (int i = 0; i < runs; i++) {
+                            samples.add(measure(mode, javaJar(ServerProcess.javaCommand(), jar, List.of(), common), env, client));
+                        }
+                    }
+                    case "appcds" -> {
+                        Path archive = workDir.resolve("app.jsa");
+                        train(javaJar(ServerProcess.javaCommand(), jar,
+                                List.of("-XX:ArchiveClassesAtExit=" + archive, "-Dspring.context.exit=onRefresh"), common), env);
+                        for (int i = 0; i < runs; i++) {
+                            samples.add(measure(mode, javaJar(ServerProcess.javaCommand(), jar,
+                                    List.of("-XX:SharedArchiveFile=" + archive), common), env, client));
+                        }
+                    }
+                    case "crac" -> {
+                        if (cracJava.isEmpty()) {
+                            System.out.println("[crac] sin startup.crac-java, se omite");
+                            continue;
+                        }
+                        Path checkpoint = workDir.resolve("crac");
+                        int port = ServerProcess.freePort();
+                        List<String> cracArgs = new ArrayList<>(common);
+                        cracArgs.addAll(List.of("--server.port=" + port, "--fhir.crac.checkpoint.enabled=true",
+                                "--fhir.crac.warmup.backend-url=" + standIn.getBaseUrl()));
+                        train(javaJar(cracJava, jar, List.of("-XX:CRaCCheckpointTo=" + checkpoint), cracArgs), env);
+                        for (int i = 0; i < runs; i++) {
+                            // El restore mantiene el puerto y la configuración del checkpoint
+                            samples.add(measure(mode, List.of(cracJava, "-XX:CRaCRestoreFrom=" + checkpoint), env, client, port));
+                        }
+                    }
+                    default -> throw new IllegalArgumentException("Modo desconocido: " + mode);
+                }
+                report.put(mode, summarize(samples));
+            }
+        }
+
+        print(report);
+        Files.createDirectories(reportPath.toAbsolutePath().getParent());
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(reportPath.toFile(), report);
+        System.out.println("Reporte escrito en " + reportPath.toAbsolutePath());
+    }
+
+    /**
+     * Extrae el jar ejecutable (lib/ + jar de la app): AppCDS y CRaC necesitan un classpath de
+     * jars planos, y así los tres modos corren exactamente el mismo layout.
+     */
+    private static Path extractJar(Path workDir) throws Exception {
+        Path fatJar;
+        try (Stream<Path> files = Files.list(Path.of("target"))) {
+            fatJar = files.filter(p -> p.getFileName().toString().matches("fhir-server-.*\\.jar"))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalStateException("No hay jar en target/; correr ./mvnw package antes"));
+        }
+        Path extracted = workDir.resolve("extracted");
+        Process process = new ProcessBuilder(ServerProcess.javaCommand(), "-Djarmode=tools", "-jar",
+                fatJar.toString(), "extract", "--force", "--destination", extracted.toString())
+                .inheritIO().start();
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("No se pudo extraer " + fatJar);
+        }
+        return extracted.resolve(fatJar.getFileName());
+    }
+
+    private static List<String> javaJar(String java, Path jar, List<String> jvmArgs, List<String> appArgs) {
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        command.addAll(jvmArgs);
+        command.add("-jar");
+        command.add(jar.toString());
+        command.addAll(appArgs);
+        return command;
+    }
+
+    /**
+     * Corrida de entrenamiento que termina sola (volcado del archivo CDS o checkpoint CRaC).
+     */
+    private static void train(List<String> command, Map<String, String> env) throws Exception {
+        try (ServerProcess process = ServerProcess.launch("training", command, env)) {
+            process.waitForExit(Duration.ofMinutes(5));
+        }
+    }
+
+    private static Map<String, Object> measure(String mode, List<String> command, Map<String, String> env,
+                                               HttpClient client) throws Exception {
+        int port = ServerProcess.freePort();
+        List<String> withPort = new ArrayList<>(command);
+        withPort.add("--server.port=" + port);
+        return measure(mode, withPort, env, client, port);
+    }
+
+    private static Map<String, Object> measure(String mode, List<String> command, Map<String, String> env,
+                                               HttpClient client, int port) throws Exception {
+        String baseUrl = "http://127.0.0.1:" + port;
+        String token = ServerProcess.token();
+        Duration timeout = Duration.ofSeconds(90);
+        Map<String, Object> sample = new LinkedHashMap<>();
+        try (ServerProcess server = ServerProcess.launch(mode, command, env)) {
+            sample.put("metadataMs", server.waitUntilOk(client, baseUrl + "/fhir/metadata", null, timeout));
+            String patientId = NativeSmokeTest.firstPatientId(client, baseUrl, token);
+            sample.put("firstRequestMs", server.waitUntilOk(client, baseUrl + "/fhir/Patient/" + patientId, token, timeout));
+
+            long t0 = System.nanoTime();
+            for (String path : NativeSmokeTest.checks(patientId).values()) {
+                ServerProcess.get(client, baseUrl + path, token);
+            }
+            sample.put("providerSweepMs", Math.round((System.nanoTime() - t0) / 1e5) / 10.0);
+            sample.put("rssMb", server.rssMb());
+        }
+        return sample;
+    }
+
+    private static Map<String, Object> summarize(List<Map<String, Object>> samples) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("runs", samples.size());
+        for (String key : List.of("metadataMs", "firstRequestMs", "providerSweepMs", "rssMb")) {
+            double[] values = samples.stream().mapToDouble(s -> ((Number) s.get(key)).doubleValue()).sorted().toArray();
+            summary.put(key + "Median", values.length == 0 ? Double.NaN : values[values.length / 2]);
+        }
+        summary.put("samples", samples);
+        return summary;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void print(Map<String, Object> report) {
+        System.out.println();
+        System.out.printf("%-8s %14s %18s %16s %10s%n", "modo", "metadata ms", "primer request ms", "recorrido ms", "RSS MB");
+        report.forEach((mode, value) -> {
+            Map<String, Object> s = (Map<String, Object>) value;
+            System.out.printf("%-8s %14.1f %18.1f %16.1f %10.1f%n", mode, s.get("metadataMsMedian"),
+                    s.get("firstRequestMsMedian"), s.get("providerSweepMsMedian"), s.get("rssMbMedian"));
+        });
+        System.out.println();
+    }
+}
@@ -0,0 +1,381 @@
+package com.serverfhir.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.coyote.http2.Http2Protocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simulador de TF_Back para pruebas de carga: sirve los mismos endpoints que consumen los
+ * providers ({@code /api/patient}, {@code /api/abm/*}, {@code /api/user/}, {@code /api/report/*},
+ * {@code /api/ehr/hc-fisiatric/*}, {@code /api/file*}) con datos sintéticos, latencia y tasa de
+ * errores configurables por grupo de rutas.
+ *
+ * Propiedades (todas opcionales):
+ * <pre>
+ *   standin.port=0                          (0 = puerto libre)
+ *   standin.http2=false                     (true = Tomcat embebido con HTTP/1.1 + upgrade h2c)
+ *   standin.latency=lognormal:25,0.5        (default para todos los grupos)
+ *   standin.latency.patient=...             (override por grupo: patient, abm, user, report, ehr, file, auth)
+ *   standin.error-rate=0.0                  (fracción de respuestas 500)
+ *   standin.error-rate.report=...           (override por grupo)
+ *   standin.seed=42
+ *   standin.patients=500
+ *   standin.reports-per-patient=5
+ *   standin.annexes-per-report=2
+ *   standin.history-versions=4
+ *   standin.files-per-patient=3
+ *   standin.users=40
+ *   standin.cities-per-province=20
+ * </pre>
+ *
+ * Cuenta las conexiones distintas que recibió (por puerto de origen), para comparar HTTP/1.1
+ * contra HTTP/2 en {@link BackendFanOutBenchmark}.
+ */
+public class TfBackStandIn implements AutoCloseable {
+
+    enum RouteGroup { PATIENT, ABM, USER, REPORT, EHR, FILE, AUTH, OTHER }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final StandInDataset dataset;
+    private final Map<RouteGroup, LatencyDistribution> latencies = new EnumMap<>(RouteGroup.class);
+    private final Map<RouteGroup, Double> errorRates = new EnumMap<>(RouteGroup.class);
+    private final Map<RouteGroup, AtomicLong> requestCounts = new EnumMap<>(RouteGroup.class);
+    private final Set<String> connections = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpServer server;
+    private final Tomcat tomcat;
+
+    public TfBackStandIn() throws IOException {
+        this(Boolean.parseBoolean(Settings.string("standin.http2", "false")));
+    }
+
+    public TfBackStandIn(boolean http2) throws IOException {
+        this.dataset = new StandInDataset(
+                Settings.integer("standin.seed", 42),
+                Settings.integer("standin.patients", 500),
+                Settings.integer("standin.reports-per-patient", 5),
+                Settings.integer("standin.annexes-per-report", 2),
+                Settings.integer("standin.history-versions", 4),
+                Settings.integer("standin.files-per-patient", 3),
+                Settings.integer("standin.users", 40),
+                Settings.integer("standin.cities-per-province", 20));
+
+        String defaultLatency = Settings.string("standin.latency", "lognormal:25,0.5");
+        double defaultErrorRate = Settings.decimal("standin.error-rate", 0.0);
+        for (RouteGroup group : RouteGroup.values()) {
+            String key = group.name().toLowerCase();
+            latencies.put(group, LatencyDistribution.parse(Settings.string("standin.latency." + key, defaultLatency)));
+            errorRates.put(group, Settings.decimal("standin.error-rate." + key, defaultErrorRate));
+            requestCounts.put(group, new AtomicLong());
+        }
+
+        int port = Settings.integer("standin.port", 0);
+        if (http2) {
+            server = null;
+            tomcat = createTomcat(port);
+        } else {
+            tomcat = null;
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+            server.setExecutor(executor);
+            server.createContext("/", this::handle);
+        }
+    }
+
+    /**
+     * Tomcat embebido (ya está en el classpath por el servidor FHIR) porque el HttpServer del
+     * JDK no habla HTTP/2. Acepta el upgrade h2c y atiende cada request en un virtual thread.
+     */
+    private Tomcat createTomcat(int port) throws IOException {
+        Tomcat instance = new Tomcat();
+        instance.setBaseDir(Files.createTempDirectory("standin-tomcat").toString());
+        instance.setHostname("127.0.0.1");
+        Connector connector = new Connector();
+        connector.setPort(port);
+        connector.setProperty("address", "127.0.0.1");
+        connector.setProperty("useVirtualThreads", "true");
+        Http2Protocol http2 = new Http2Protocol();
+        http2.setMaxConcurrentStreams(1024);
+        http2.setMaxConcurrentStreamExecution(1024);
+        connector.addUpgradeProtocol(http2);
+        instance.setConnector(connector);
+
+        Context context = instance.addContext("", null);
+        Tomcat.addServlet(context, "standin", new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                request.getInputStream().readAllBytes();
+                connections.add(request.getRemoteAddr() + ":" + request.getRemotePort());
+                Reply reply = respond(request.getMethod(), request.getRequestURI(), request.getQueryString());
+                byte[] bytes = objectMapper.writeValueAsBytes(reply.body());
+                response.setStatus(reply.status());
+                response.setContentType("application/json; charset=utf-8");
+                response.setContentLength(bytes.length);
+                response.getOutputStream().write(bytes);
+            }
+        });
+        context.addServletMappingDecoded("/*", "standin");
+        return instance;
+    }
+
+    public void start() {
+        if (tomcat == null) {
+            server.start();
+            return;
+        }
+        try {
+            tomcat.start();
+        } catch (LifecycleException e) {
+            throw new IllegalStateException("No se pudo levantar el stand-in con HTTP/2", e);
+        }
+    }
+
+    public int getPort() {
+        return tomcat != null ? tomcat.getConnector().getLocalPort() : server.getAddress().getPort();
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + getPort();
+    }
+
+    public Map<RouteGroup, AtomicLong> getRequestCounts() {
+        return requestCounts;
+    }
+
+    /**
+     * Conexiones distintas recibidas desde el último {@link #resetConnections()}.
+     */
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    public void resetConnections() {
+        connections.clear();
+    }
+
+    @Override
+    public void close() {
+        if (tomcat != null) {
+            try {
+                tomcat.stop();
+                tomcat.destroy();
+            } catch (LifecycleException e) {
+                // Se está cerrando igual
+            }
+        } else {
+            server.stop(0);
+        }
+        executor.shutdownNow();
+    }
+
+    private record Reply(int status, Object body) {
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange; InputStream body = exchange.getRequestBody()) {
+            body.readAllBytes();
+            connections.add(exchange.getRemoteAddress().toString());
+            URI uri = exchange.getRequestURI();
+            Reply reply = respond(exchange.getRequestMethod(), uri.getPath(), uri.getQuery());
+            send(exchange, reply.status(), reply.body());
+        }
+    }
+
+    private Reply respond(String method, String path, String query) {
+        RouteGroup group = groupOf(path);
+        requestCounts.get(group).incrementAndGet();
+
+        sleep(latencies.get(group).sampleMillis());
+
+        if (ThreadLocalRandom.current().nextDouble() < errorRates.get(group)) {
+            return new Reply(500, Map.of("message", "Error simulado por el stand-in"));
+        }
+
+        Object response = route(method, path, query);
+        if (response == null) {
+            return new Reply(404, Map.of("message", "No encontrado: " + path));
+        }
+        return new Reply("POST".equals(method) ? 201 : 200, response);
+    }
+
+    private Object route(String method, String path, String query) {
+        String p = path.endsWith("/") && path.length() > 1 ? path.substring(0, path.length() - 1) : path;
+        String[] seg = p.split("/");
+        // seg[0] = "", seg[1] = "api" | "auth" | "health"
+
+        if (p.equals("/health")) {
+            return Map.of("status", "ok");
+        }
+        if (p.equals("/auth/login")) {
+            return Map.of("token", "standin-token", "user", Map.of("email", "standin@example.com"));
+        }
+        if (seg.length < 3 || !"api".equals(seg[1])) {
+            return null;
+        }
+
+        switch (seg[2]) {
+            case "patient":
+                if (!"GET".equals(method)) {
+                    return Map.of("message", "ok", "hash_id", seg.length > 3 ? seg[seg.length - 1] : "nuevo");
+                }
+                if (seg.length == 3) {
+                    boolean includeInactive = query != null && query.contains("includeInactive=true");
+                    // Sincronización incremental de la réplica de pacientes
+                    String modifiedSince = queryParam(query, "modifiedSince");
+                    return dataset.patients.stream()
+                            .filter(pt -> includeInactive || !Boolean.TRUE.equals(pt.get("inactivo")))
+                            .filter(pt -> modifiedSince == null
+                                    || OffsetDateTime.parse((String) pt.get("fecha_modificacion")).toInstant()
+                                            .isAfter(Instant.parse(modifiedSince).minusMillis(1)))
+                            .toList();
+                }
+                return dataset.patientsByHash.get(seg[3]);
+            case "abm":
+                if (seg.length < 4) {
+                    return null;
+                }
+                switch (seg[3]) {
+                    case "provincias":
+                        return dataset.provincias;
+                    case "ciudades":
+                        if (seg.length > 4) {
+                            int provincia = Integer.parseInt(seg[4]);
+                            return dataset.ciudades.stream().filter(c -> c.get("id_provincia").equals(provincia)).toList();
+                        }
+                        return dataset.ciudades;
+                    case "mutuales":
+                        return dataset.mutuales;
+                    case "prestaciones":
+                        return dataset.prestaciones;
+                    default:
+                        return null;
+                }
+            case "user":
+                if (!"GET".equals(method)) {
+                    return Map.of("message", "ok", "hash_id", dataset.users.get(0).get("hash_id"));
+                }
+                if (seg.length > 3 && "type".equals(seg[3])) {
+                    return dataset.userTypes;
+                }
+                return dataset.users;
+            case "report":
+                if (!"GET".equals(method)) {
+                    return Map.of("message", "ok", "report", Map.of("id_informe", 999_999, "hash_id", "standinReport0001"));
+                }
+                if (seg.length > 4 && "all".equals(seg[3])) {
+                    return dataset.reportsByPatient.getOrDefault(seg[4], List.of());
+                }
+                if (seg.length > 4 && "annexes".equals(seg[4])) {
+                    return dataset.annexesByReport.getOrDefault(seg[3], List.of());
+                }
+                return null;
+            case "ehr":
+                if (seg.length < 4 || !"hc-fisiatric".equals(seg[3])) {
+                    return null;
+                }
+                if (!"GET".equals(method)) {
+                    return Map.of("message", "ok");
+                }
+                if (seg.length > 5 && "history".equals(seg[5])) {
+                    return dataset.historiaVersionsByPatient.getOrDefault(seg[4], List.of());
+                }
+                return seg.length > 4 ? dataset.currentHistoria(seg[4]) : null;
+            case "file":
+                if (!"GET".equals(method)) {
+                    return Map.of("message", "ok", "files", List.of(Map.of("fileId", 1)));
+                }
+                String hashId = queryParam(query, "hash_id");
+                return hashId == null ? List.of() : dataset.filesByPatient.getOrDefault(hashId, List.of());
+            default:
+                return null;
+        }
+    }
+
+    private static RouteGroup groupOf(String path) {
+        if (path.startsWith("/auth")) {
+            return RouteGroup.AUTH;
+        }
+        String[] seg = path.split("/");
+        if (seg.length < 3) {
+            return RouteGroup.OTHER;
+        }
+        return switch (seg[2]) {
+            case "patient" -> RouteGroup.PATIENT;
+            case "abm" -> RouteGroup.ABM;
+            case "user" -> RouteGroup.USER;
+            case "report" -> RouteGroup.REPORT;
+            case "ehr" -> RouteGroup.EHR;
+            case "file" -> RouteGroup.FILE;
+            default -> RouteGroup.OTHER;
+        };
+    }
+
+    private static String queryParam(String query, String name) {
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                return pair.substring(eq + 1);
+            }
+        }
+        return null;
+    }
+
+    private void send(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Modo independiente: levanta solo el stand-in (por ejemplo, para apuntar un servidor FHIR
+     * ya desplegado con TFBACK_URL).
+     */
+    public static void main(String[] args) throws Exception {
+        TfBackStandIn standIn = new TfBackStandIn();
+        standIn.start();
+        System.out.println("Stand-in de TF_Back escuchando en " + standIn.getBaseUrl());
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,251 @@
+package com.serverfhir.config;
+
+import ca.uhn.fhir.context.FhirContext;
+import com.serverfhir.tracing.TraceContext;
+import com.serverfhir.util.AsyncCompletion;
+import com.serverfhir.util.RequestDeadline;
+import com.serverfhir.util.RequestTimings;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.hl7.fhir.r5.model.OperationOutcome;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Modo asincrónico del servlet FHIR ({@code fhir.async.enabled}).
+ *
+ * El hilo del contenedor pasa el request a modo async y vuelve al pool enseguida; la operación
+ * HAPI corre en un virtual thread, que mientras espera a TF_Back no ocupa ningún hilo de
+ * plataforma. Así la cantidad de requests lentos en vuelo deja de estar limitada por
+ * {@code server.tomcat.threads.max}.
+ *
+ * Cada request tiene un plazo de {@code fhir.async.timeout-ms}: las llamadas a TF_Back usan el
+ * tiempo restante como timeout y, si vence, la respuesta es un 504 con OperationOutcome (ver
+ * DeadlineInterceptor). Si la operación ni siquiera vuelve dentro de
+ * {@code fhir.async.grace-ms} extra, se interrumpe su hilo y ese mismo hilo responde el 504 al
+ * salir.
+ *
+ * Solo el hilo de la operación escribe la respuesta y completa el AsyncContext: si lo hiciera el
+ * contenedor, Tomcat reciclaría request y response mientras la operación todavía puede escribir,
+ * y lo que escribiera tarde terminaría en la respuesta de otro request. Por eso el AsyncContext
+ * no tiene timeout propio y el plazo lo controla un temporizador que solo marca e interrumpe.
+ */
+@Component
+public class AsyncFhirProcessing implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncFhirProcessing.class);
+
+    public interface ServletInvocation {
+        void invoke() throws ServletException, IOException;
+    }
+
+    private final FhirContext fhirContext;
+    private final Counter timeouts;
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("fhir-async-", 0).factory());
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "fhir-async-deadline");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${fhir.async.enabled:true}")
+    private boolean enabled;
+
+    @Value("${fhir.async.timeout-ms:30000}")
+    private long timeoutMs;
+
+    @Value("${fhir.async.grace-ms:2000}")
+    private long graceMs;
+
+    public AsyncFhirProcessing(FhirContext fhirContext, MeterRegistry meterRegistry) {
+        this.fhirContext = fhirContext;
+        this.timeouts = Counter.builder("fhir.async.timeouts")
+                .description("Requests FHIR que vencieron el plazo más el margen y fueron interrumpidos")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Procesa el request fuera del hilo del contenedor. {@code invocation} es el service() de HAPI.
+     */
+    public void dispatch(HttpServletRequest request, HttpServletResponse response, ServletInvocation invocation) {
+        AsyncCompletion completion = AsyncCompletion.start(request);
+        AsyncContext asyncContext = request.startAsync(request, response);
+        // Sin timeout del contenedor: lo completaría por su cuenta (ver Execution)
+        asyncContext.setTimeout(0);
+
+        // Contexto del hilo del contenedor que necesita la operación
+        RequestTimings timings = RequestTimings.current();
+        TraceContext trace = TraceContext.current();
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        SecurityContext security = SecurityContextHolder.getContext();
+        RequestDeadline deadline = RequestDeadline.of(Duration.ofMillis(timeoutMs));
+
+        Execution execution = new Execution();
+        ScheduledFuture<?> expiry = timer.schedule(() -> {
+            if (execution.expire()) {
+                timeouts.increment();
+                logger.warn("Timeout de {} ms en {} {}", timeoutMs + graceMs, request.getMethod(), request.getRequestURI());
+            }
+        }, timeoutMs + graceMs, TimeUnit.MILLISECONDS);
+
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) {
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event) {
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                logger.debug("Error en request asincrónico: {}", String.valueOf(event.getThrowable()));
+                // El cliente se fue: no tiene sentido seguir esperando a TF_Back
+                execution.expire();
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+
+        executor.execute(() -> {
+            RequestTimings.attach(timings);
+            TraceContext.setCurrent(trace);
+            RequestDeadline.attach(deadline);
+            if (mdc != null) {
+                MDC.setContextMap(mdc);
+            }
+            SecurityContextHolder.setContext(security);
+            try {
+                if (execution.start(Thread.currentThread())) {
+                    invocation.invoke();
+                }
+            } catch (Exception e) {
+                if (!execution.isExpired()) {
+                    logger.error("Error procesando {} {}: {}", request.getMethod(), request.getRequestURI(), e.getMessage(), e);
+                    if (!response.isCommitted()) {
+                        response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                    }
+                }
+            } finally {
+                RequestTimings.clear();
+                TraceContext.setCurrent(null);
+                RequestDeadline.attach(null);
+                MDC.clear();
+                SecurityContextHolder.clearContext();
+                expiry.cancel(false);
+                if (execution.finish()) {
+                    writeGatewayTimeout(response);
+                }
+                completion.finish();
+                asyncContext.complete();
+            }
+        });
+    }
+
+    private void writeGatewayTimeout(HttpServletResponse response) {
+        if (response.isCommitted()) {
+            return;
+        }
+        OperationOutcome outcome = new OperationOutcome();
+        outcome.addIssue()
+                .setSeverity(OperationOutcome.IssueSeverity.ERROR)
+                .setCode(OperationOutcome.IssueType.TIMEOUT)
+                .setDiagnostics("La operación no terminó en " + (timeoutMs + graceMs) + " ms");
+        try {
+            response.resetBuffer();
+            response.setStatus(HttpServletResponse.SC_GATEWAY_TIMEOUT);
+            response.setContentType("application/fhir+json;charset=UTF-8");
+            response.getOutputStream().write(
+                    fhirContext.newJsonParser().encodeResourceToString(outcome).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException | IllegalStateException e) {
+            logger.debug("No se pudo escribir la respuesta de timeout: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+        timer.shutdownNow();
+    }
+
+    /**
+     * Estado de un request entre el hilo de la operación y el plazo. El plazo solo marca el
+     * request como vencido e interrumpe el hilo; responder y completar queda siempre del lado de
+     * la operación, que después de {@link #finish()} ya no puede ser interrumpida.
+     */
+    private static final class Execution {
+
+        private Thread worker;
+        private boolean expired;
+        private boolean finished;
+
+        /**
+         * Registra el hilo de la operación; false si el plazo venció antes de que arrancara.
+         */
+        synchronized boolean start(Thread thread) {
+            worker = thread;
+            return !expired;
+        }
+
+        /**
+         * Marca el request como vencido e interrumpe la operación; false si ya había terminado.
+         */
+        synchronized boolean expire() {
+            if (finished || expired) {
+                return false;
+            }
+            expired = true;
+            if (worker != null) {
+                worker.interrupt();
+            }
+            return true;
+        }
+
+        synchronized boolean isExpired() {
+            return expired;
+        }
+
+        /**
+         * Cierra la operación y limpia una interrupción pendiente para poder escribir la
+         * respuesta. Devuelve true si el plazo venció.
+         */
+        boolean finish() {
+            boolean result;
+            synchronized (this) {
+                finished = true;
+                result = expired;
+            }
+            Thread.interrupted();
+            return result;
+        }
+    }
+}
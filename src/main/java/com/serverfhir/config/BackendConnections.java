@@ -0,0 +1,113 @@
+package com.serverfhir.config;
+
+import jakarta.annotation.PostConstruct;
+import org.crac.Context;
+import org.crac.Core;
+import org.crac.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+/**
+ * Dueño del pool de conexiones hacia TF_Back (el HttpClient que usa BackendClient). Se puede
+ * cerrar y volver a abrir sin reconstruir nada más: un checkpoint CRaC no admite sockets
+ * abiertos, y después del restore las conexiones viejas no sirven.
+ *
+ * También permite redirigir temporalmente las llamadas a otro backend (el stand-in usado
+ * para calentar la JVM antes del checkpoint) sin tocar {@code tfback.url}.
+ *
+ * Versión de HTTP según {@code tfback.http2.mode}:
+ * <ul>
+ *   <li>{@code auto}: HTTP/2 por ALPN (h2) contra https, HTTP/1.1 contra http</li>
+ *   <li>{@code h2c}: además intenta el upgrade a h2c contra http (el primer request de cada
+ *       conexión va con {@code Upgrade: h2c})</li>
+ *   <li>{@code off}: siempre HTTP/1.1</li>
+ * </ul>
+ * Si TF_Back no acepta HTTP/2 el HttpClient sigue en HTTP/1.1 solo. Con HTTP/2 las llamadas
+ * concurrentes al mismo host van como streams de una única conexión.
+ */
+@Component
+public class BackendConnections implements Resource {
+
+    private static final Logger logger = LoggerFactory.getLogger(BackendConnections.class);
+
+    @Value("${tfback.url}")
+    private String tfBackUrl;
+
+    @Value("${tfback.connect-timeout-ms:5000}")
+    private long connectTimeoutMs;
+
+    @Value("${tfback.http2.mode:auto}")
+    private String http2Mode;
+
+    private volatile HttpClient httpClient;
+    private volatile String redirectBaseUrl;
+
+    @PostConstruct
+    void init() {
+        open();
+        Core.getGlobalContext().register(this);
+    }
+
+    public HttpClient httpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Aplica la redirección activa (si hay) a una URL de TF_Back.
+     */
+    public URI resolve(URI uri) {
+        String redirect = redirectBaseUrl;
+        if (redirect != null && uri.toString().startsWith(tfBackUrl)) {
+            return URI.create(redirect + uri.toString().substring(tfBackUrl.length()));
+        }
+        return uri;
+    }
+
+    /**
+     * Versión de HTTP a pedir para una URL (ya resuelta) según {@code tfback.http2.mode}.
+     */
+    public HttpClient.Version versionFor(URI uri) {
+        return switch (http2Mode.trim().toLowerCase()) {
+            case "off" -> HttpClient.Version.HTTP_1_1;
+            case "h2c" -> HttpClient.Version.HTTP_2;
+            default -> "https".equalsIgnoreCase(uri.getScheme())
+                    ? HttpClient.Version.HTTP_2
+                    : HttpClient.Version.HTTP_1_1;
+        };
+    }
+
+    /**
+     * Redirige las llamadas a {@code tfback.url} hacia {@code baseUrl}; {@code null} lo desactiva.
+     */
+    public void redirectTo(String baseUrl) {
+        this.redirectBaseUrl = baseUrl == null || baseUrl.isBlank() ? null : baseUrl.replaceAll("/+$", "");
+    }
+
+    private void open() {
+        httpClient = HttpClient.newBuilder()
+                .version("off".equalsIgnoreCase(http2Mode.trim())
+                        ? HttpClient.Version.HTTP_1_1
+                        : HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+    }
+
+    @Override
+    public void beforeCheckpoint(Context<? extends Resource> context) {
+        logger.info("Cerrando conexiones a TF_Back antes del checkpoint");
+        httpClient.close();
+    }
+
+    @Override
+    public void afterRestore(Context<? extends Resource> context) {
+        open();
+        logger.info("Conexiones a TF_Back reabiertas después del restore");
+    }
+}
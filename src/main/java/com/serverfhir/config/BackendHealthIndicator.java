@@ -0,0 +1,42 @@
+package com.serverfhir.config;
+
+import com.serverfhir.service.BackendClient;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+
+/**
+ * Health "backend": OUT_OF_SERVICE hasta que TF_Back respondió por primera vez. Forma parte del
+ * grupo de readiness; una vez abierto no se vuelve a cerrar por fallas puntuales del keep-alive
+ * (quedan en los detalles). También muestra las llamadas en curso y el protocolo por host.
+ */
+@Component
+public class BackendHealthIndicator implements HealthIndicator {
+
+    private final WakeUpBackendRunner wakeUpBackendRunner;
+    private final BackendClient backendClient;
+
+    public BackendHealthIndicator(WakeUpBackendRunner wakeUpBackendRunner, BackendClient backendClient) {
+        this.wakeUpBackendRunner = wakeUpBackendRunner;
+        this.backendClient = backendClient;
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder builder = wakeUpBackendRunner.isReady() ? Health.up() : Health.outOfService();
+        if (wakeUpBackendRunner.getLastSuccessMillis() > 0) {
+            builder.withDetail("lastSuccess", Instant.ofEpochMilli(wakeUpBackendRunner.getLastSuccessMillis()).toString())
+                    .withDetail("lastLatencyMs", wakeUpBackendRunner.getLastLatencyMs());
+        }
+        if (wakeUpBackendRunner.getConsecutiveFailures() > 0) {
+            builder.withDetail("consecutiveFailures", wakeUpBackendRunner.getConsecutiveFailures())
+                    .withDetail("lastError", String.valueOf(wakeUpBackendRunner.getLastError()));
+        }
+        return builder.withDetail("warmResponses", (long) wakeUpBackendRunner.getWarmResponses())
+                .withDetail("coldResponses", (long) wakeUpBackendRunner.getColdResponses())
+                .withDetail("streams", backendClient.streamsByPeer())
+                .build();
+    }
+}
@@ -1,5 +1,6 @@
 package com.serverfhir.config;
 
+import jakarta.annotation.PostConstruct;
 import jakarta.servlet.*;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -19,22 +20,31 @@ public class CorsFilter implements Filter {
     @Value("${spring.web.cors.allowed-origins}")
     private String allowedOrigins;
 
+    private List<String> allowedOriginsList;
+
+    @PostConstruct
+    void parseAllowedOrigins() {
+        allowedOriginsList = Arrays.stream(allowedOrigins.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .toList();
+    }
+
     @Override
     public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain) throws IOException, ServletException {
         HttpServletRequest request = (HttpServletRequest) req;
         HttpServletResponse response = (HttpServletResponse) res;
 
-        List<String> allowedOriginsList = Arrays.stream(allowedOrigins.split(","))
-                .map(String::trim)
-                .filter(s -> !s.isEmpty())
-                .toList();
         String origin = request.getHeader("Origin");
         if (origin != null && allowedOriginsList.contains(origin)) {
             response.setHeader("Access-Control-Allow-Origin", origin);
         }
+        // La respuesta depende del Origin: que ningún cache (proxy HTTP/2 incluido) la comparta
+        response.addHeader("Vary", "Origin");
 
         response.setHeader("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
-        response.setHeader("Access-Control-Allow-Headers", "Origin, X-Requested-With, Content-Type, Accept, Authorization");
+        response.setHeader("Access-Control-Allow-Headers", "Origin, X-Requested-With, Content-Type, Accept, Authorization, traceparent, tracestate");
+        response.setHeader("Access-Control-Expose-Headers", "traceresponse");
         response.setHeader("Access-Control-Allow-Credentials", "true");
         response.setHeader("Access-Control-Max-Age", "3600");
 
@@ -0,0 +1,145 @@
+package com.serverfhir.config;
+
+import com.serverfhir.service.JwtService;
+import org.crac.Core;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Modo checkpoint (CRaC): cuando {@code fhir.crac.checkpoint.enabled=true}, después de arrancar
+ * se ejercitan todos los providers con tráfico HTTP real contra este mismo servidor (con las
+ * llamadas a TF_Back redirigidas a {@code fhir.crac.warmup.backend-url}, normalmente el
+ * stand-in), para que el JIT compile los caminos de mapeo y serialización, y luego se pide el
+ * checkpoint. Al restaurar el proceso sigue desde acá con el código ya compilado.
+ *
+ * Los tokens del warm-up los firma JwtService (este bean no tiene la clave), duran
+ * {@link #WARMUP_TOKEN_TTL} y se renuevan en cada iteración; ninguno queda referenciado al pedir
+ * el checkpoint.
+ *
+ * Requiere una JVM con CRaC y {@code -XX:CRaCCheckpointTo=<dir>}; ver docker/crac-entrypoint.sh.
+ * Si el warmup o el checkpoint fallan la JVM termina con código 1: en este modo el proceso solo
+ * existe para generar la imagen, no para quedarse sirviendo.
+ */
+@Component
+@ConditionalOnProperty(name = "fhir.crac.checkpoint.enabled", havingValue = "true")
+public class CracCheckpointRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(CracCheckpointRunner.class);
+    private static final Duration WARMUP_TOKEN_TTL = Duration.ofMinutes(1);
+    private static final Pattern PATIENT_ID = Pattern.compile("\"resourceType\"\\s*:\\s*\"Patient\"\\s*,\\s*\"id\"\\s*:\\s*\"([^\"]+)\"");
+
+    @Autowired
+    private BackendConnections backendConnections;
+
+    @Autowired
+    private StartupMetrics startupMetrics;
+
+    @Autowired
+    private WakeUpBackendRunner wakeUpBackendRunner;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Value("${local.server.port}")
+    private int port;
+
+    @Value("${fhir.crac.warmup.backend-url:}")
+    private String warmupBackendUrl;
+
+    @Value("${fhir.crac.warmup.iterations:300}")
+    private int iterations;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        Thread thread = new Thread(this::warmUpAndCheckpoint, "crac-checkpoint");
+        thread.start();
+    }
+
+    private void warmUpAndCheckpoint() {
+        long start = System.nanoTime();
+        backendConnections.redirectTo(warmupBackendUrl);
+        try (HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build()) {
+            warmUp(client);
+        } catch (Exception e) {
+            logger.error("Falló el warmup previo al checkpoint: {}", e.getMessage(), e);
+            System.exit(1);
+        } finally {
+            backendConnections.redirectTo(null);
+        }
+        logger.info("Warmup previo al checkpoint en {} ms; pidiendo checkpoint", (System.nanoTime() - start) / 1_000_000);
+
+        try {
+            Core.checkpointRestore();
+        } catch (UnsupportedOperationException e) {
+            logger.error("La JVM no soporta CRaC; no se puede tomar el checkpoint");
+            System.exit(1);
+        } catch (Exception e) {
+            logger.error("Falló el checkpoint/restore: {}", e.getMessage(), e);
+            System.exit(1);
+        }
+
+        // Desde acá corre el proceso restaurado
+        startupMetrics.markRestored();
+        logger.info("Proceso restaurado desde el checkpoint");
+        wakeUpBackendRunner.wakeUp();
+    }
+
+    private void warmUp(HttpClient client) throws Exception {
+        String baseUrl = "http://127.0.0.1:" + port + "/fhir";
+
+        List<String> patientIds = new ArrayList<>();
+        String roster = get(client, jwtService.signWarmupToken(WARMUP_TOKEN_TTL), baseUrl + "/Patient").body();
+        Matcher matcher = PATIENT_ID.matcher(roster);
+        while (matcher.find() && patientIds.size() < 50) {
+            patientIds.add(matcher.group(1));
+        }
+        if (patientIds.isEmpty()) {
+            throw new IllegalStateException("el backend de warmup no devolvió pacientes");
+        }
+
+        int errors = 0;
+        for (int i = 0; i < iterations; i++) {
+            String token = jwtService.signWarmupToken(WARMUP_TOKEN_TTL);
+            String patient = patientIds.get(i % patientIds.size());
+            for (String path : List.of(
+                    "/Patient/" + patient,
+                    "/Patient",
+                    "/DiagnosticReport/$get-historia?patient=" + patient,
+                    "/DiagnosticReport/$list-reports?patient=" + patient,
+                    "/DocumentReference?patient=" + patient,
+                    "/Practitioner",
+                    "/Location?_type=province",
+                    "/Organization?_type=insurance")) {
+                if (get(client, token, baseUrl + path).statusCode() != 200) {
+                    errors++;
+                }
+            }
+        }
+        logger.info("Warmup previo al checkpoint: {} iteraciones, {} errores", iterations, errors);
+    }
+
+    private HttpResponse<String> get(HttpClient client, String token, String url) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofSeconds(10))
+                .header("Authorization", token)
+                .header("Accept", "application/fhir+json")
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
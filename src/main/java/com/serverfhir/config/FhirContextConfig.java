@@ -0,0 +1,30 @@
+package com.serverfhir.config;
+
+import ca.uhn.fhir.context.FhirContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+
+import java.util.List;
+
+/**
+ * FhirContext R5 compartido. Crearlo es caro (escaneo del modelo), así que se crea una sola
+ * vez y lo usan tanto el RestfulServer como el warmup de arranque.
+ */
+@Configuration
+@ImportRuntimeHints(FhirRuntimeHints.class)
+public class FhirContextConfig {
+
+    /**
+     * Tipos de recurso que exponen los providers (más Bundle/OperationOutcome de las respuestas).
+     */
+    static final List<String> SERVED_RESOURCE_TYPES = List.of(
+            "Patient", "DiagnosticReport", "DocumentReference", "Location", "Organization",
+            "Practitioner", "ValueSet", "Bundle", "OperationOutcome", "Subscription", "SubscriptionStatus",
+            "Parameters");
+
+    @Bean
+    public FhirContext fhirContext() {
+        return FhirContext.forR5();
+    }
+}
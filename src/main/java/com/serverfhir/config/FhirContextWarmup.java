@@ -0,0 +1,111 @@
+package com.serverfhir.config;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import ca.uhn.fhir.parser.IParser;
+import jakarta.annotation.PostConstruct;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Precalienta el FhirContext R5 durante el arranque: escanea el modelo de los tipos de recurso
+ * que servimos y hace un encode/parse JSON de cada uno, en paralelo con el resto de la
+ * inicialización de Spring. Sin esto, ese costo (varios segundos en un contenedor chico)
+ * lo pagan los primeros requests después de un cold start.
+ *
+ * Se espera a que termine antes de dar el contexto por listo, con un tope de
+ * {@code fhir.warmup.timeout-seconds}.
+ */
+@Component
+public class FhirContextWarmup implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(FhirContextWarmup.class);
+
+    private final FhirContext fhirContext;
+    private final StartupMetrics startupMetrics;
+
+    @Value("${fhir.warmup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${fhir.warmup.resource-types:Patient,DiagnosticReport,DocumentReference,Location,Organization,Practitioner,ValueSet,Bundle,OperationOutcome}")
+    private List<String> resourceTypes;
+
+    @Value("${fhir.warmup.timeout-seconds:30}")
+    private long timeoutSeconds;
+
+    private ExecutorService executor;
+    private CompletableFuture<Void> warmup;
+    private long startNanos;
+
+    public FhirContextWarmup(FhirContext fhirContext, StartupMetrics startupMetrics) {
+        this.fhirContext = fhirContext;
+        this.startupMetrics = startupMetrics;
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        startNanos = System.nanoTime();
+        AtomicInteger threadIndex = new AtomicInteger();
+        int threads = Math.max(1, Math.min(resourceTypes.size(), Runtime.getRuntime().availableProcessors()));
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "fhir-warmup-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (String type : resourceTypes) {
+            tasks.add(CompletableFuture.runAsync(() -> warmUp(type.trim()), executor));
+        }
+        warmup = CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0]));
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (warmup == null) {
+            return;
+        }
+        try {
+            warmup.get(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            logger.warn("El warmup del FhirContext no terminó en {} s; se continúa el arranque", timeoutSeconds);
+        } catch (Exception e) {
+            logger.warn("Error en el warmup del FhirContext: {}", e.getMessage());
+        } finally {
+            executor.shutdown();
+            long nanos = System.nanoTime() - startNanos;
+            startupMetrics.recordWarmup(nanos);
+            logger.info("Warmup del FhirContext ({} tipos) en {} ms", resourceTypes.size(), TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+    }
+
+    private void warmUp(String type) {
+        try {
+            RuntimeResourceDefinition definition = fhirContext.getResourceDefinition(type);
+            IBaseResource resource = definition.newInstance();
+            resource.setId(type + "/warmup");
+
+            IParser parser = fhirContext.newJsonParser().setPrettyPrint(true);
+            String json = parser.encodeResourceToString(resource);
+            parser.parseResource(definition.getImplementingClass(), json);
+        } catch (Exception e) {
+            logger.warn("No se pudo precalentar el tipo {}: {}", type, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.serverfhir.config;
+
+import ca.uhn.fhir.context.BaseRuntimeChildDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementCompositeDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementDefinition;
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.param.DateParam;
+import ca.uhn.fhir.rest.param.DateRangeParam;
+import ca.uhn.fhir.rest.param.StringParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import com.serverfhir.provider.AbmResourceProvider;
+import com.serverfhir.provider.DocumentReferenceResourceProvider;
+import com.serverfhir.provider.EhrResourceProvider;
+import com.serverfhir.provider.OrganizationResourceProvider;
+import com.serverfhir.provider.PatientResourceProvider;
+import com.serverfhir.provider.PractitionerResourceProvider;
+import com.serverfhir.provider.ReportResourceProvider;
+import com.serverfhir.provider.SubscriptionResourceProvider;
+import com.serverfhir.tracing.SpanRecord;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Hints de reflexión y recursos para la imagen nativa (perfil Maven {@code native}).
+ *
+ * HAPI arma el modelo FHIR por reflexión (campos anotados con {@code @Child}, constructores,
+ * enum factories) y los providers se descubren por sus anotaciones ({@code @Read},
+ * {@code @Search}, {@code @Operation}). En vez de mantener una lista a mano, en tiempo de AOT
+ * se recorre el modelo R5 desde los tipos que servimos y se registran todas las clases alcanzables.
+ */
+public class FhirRuntimeHints implements RuntimeHintsRegistrar {
+
+    private static final MemberCategory[] MODEL_MEMBERS = {
+            MemberCategory.DECLARED_FIELDS,
+            MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+            MemberCategory.INVOKE_PUBLIC_METHODS
+    };
+
+    private static final List<Class<?>> PROVIDERS = List.of(
+            PatientResourceProvider.class,
+            EhrResourceProvider.class,
+            PractitionerResourceProvider.class,
+            ReportResourceProvider.class,
+            DocumentReferenceResourceProvider.class,
+            AbmResourceProvider.class,
+            OrganizationResourceProvider.class,
+            SubscriptionResourceProvider.class);
+
+    /**
+     * Clases de jjwt que se instancian por nombre ({@code io.jsonwebtoken.lang.Classes}).
+     */
+    private static final List<String> JJWT_TYPES = List.of(
+            "io.jsonwebtoken.impl.DefaultJwtBuilder",
+            "io.jsonwebtoken.impl.DefaultJwtParserBuilder",
+            "io.jsonwebtoken.impl.DefaultJwtParser",
+            "io.jsonwebtoken.impl.DefaultClaimsBuilder",
+            "io.jsonwebtoken.impl.io.StandardCompressionAlgorithms",
+            "io.jsonwebtoken.impl.security.StandardSecureDigestAlgorithms",
+            "io.jsonwebtoken.impl.security.StandardKeyOperations",
+            "io.jsonwebtoken.impl.security.StandardKeyAlgorithms",
+            "io.jsonwebtoken.impl.security.StandardEncryptionAlgorithms",
+            "io.jsonwebtoken.impl.security.StandardHashAlgorithms",
+            "io.jsonwebtoken.impl.security.StandardCurves",
+            "io.jsonwebtoken.impl.security.KeysBridge",
+            "io.jsonwebtoken.impl.security.JwksBridge",
+            "io.jsonwebtoken.impl.security.DefaultDynamicJwkBuilder",
+            "io.jsonwebtoken.impl.security.DefaultJwkParserBuilder",
+            "io.jsonwebtoken.impl.security.DefaultJwkSetBuilder",
+            "io.jsonwebtoken.impl.security.DefaultJwkSetParserBuilder",
+            "io.jsonwebtoken.jackson.io.JacksonSerializer",
+            "io.jsonwebtoken.jackson.io.JacksonDeserializer");
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        registerFhirModel(hints);
+
+        for (Class<?> provider : PROVIDERS) {
+            hints.reflection().registerType(provider,
+                    MemberCategory.INVOKE_PUBLIC_METHODS, MemberCategory.INTROSPECT_PUBLIC_METHODS);
+        }
+        for (Class<?> param : List.of(StringParam.class, TokenParam.class, DateParam.class, DateRangeParam.class)) {
+            hints.reflection().registerType(param, MODEL_MEMBERS);
+        }
+
+        for (String type : JJWT_TYPES) {
+            hints.reflection().registerType(TypeReference.of(type), MODEL_MEMBERS);
+        }
+        hints.resources().registerPattern("META-INF/services/io.jsonwebtoken.*");
+
+        new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(), SpanRecord.class);
+    }
+
+    private void registerFhirModel(RuntimeHints hints) {
+        FhirContext ctx = FhirContext.forR5();
+        Set<Class<?>> seen = new HashSet<>();
+        for (String type : FhirContextConfig.SERVED_RESOURCE_TYPES) {
+            walk(ctx.getResourceDefinition(type), seen);
+        }
+        walk(ctx.getElementDefinition("Extension"), seen);
+        for (Class<?> type : seen) {
+            hints.reflection().registerType(type, MODEL_MEMBERS);
+            for (Class<?> nested : type.getDeclaredClasses()) {
+                // Enums de códigos y sus EnumFactory
+                hints.reflection().registerType(nested, MODEL_MEMBERS);
+            }
+        }
+        hints.reflection().registerType(TypeReference.of("org.hl7.fhir.r5.hapi.ctx.FhirR5"), MODEL_MEMBERS);
+
+        hints.resources().registerPattern("org/hl7/fhir/r5/model/*.properties");
+        hints.resources().registerPattern("ca/uhn/fhir/i18n/*.properties");
+        hints.resources().registerPattern("ca/uhn/fhir/context/*.properties");
+        hints.resources().registerPattern("META-INF/services/ca.uhn.fhir.*");
+    }
+
+    private void walk(BaseRuntimeElementDefinition<?> definition, Set<Class<?>> seen) {
+        if (definition == null || !seen.add(definition.getImplementingClass())) {
+            return;
+        }
+        for (Class<?> superType = definition.getImplementingClass().getSuperclass();
+             superType != null && superType != Object.class; superType = superType.getSuperclass()) {
+            seen.add(superType);
+        }
+        if (definition instanceof BaseRuntimeElementCompositeDefinition<?> composite) {
+            for (BaseRuntimeChildDefinition child : composite.getChildren()) {
+                for (String name : child.getValidChildNames()) {
+                    walk(child.getChildByName(name), seen);
+                }
+            }
+        }
+    }
+}
@@ -3,6 +3,8 @@ package com.serverfhir.config;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.rest.api.EncodingEnum;
 import ca.uhn.fhir.rest.server.RestfulServer;
+import com.serverfhir.interceptor.DeadlineInterceptor;
+import com.serverfhir.interceptor.FhirTimingInterceptor;
 import com.serverfhir.provider.PatientResourceProvider;
 import com.serverfhir.provider.AbmResourceProvider;
 import com.serverfhir.provider.OrganizationResourceProvider;
@@ -10,8 +12,14 @@ import com.serverfhir.provider.ReportResourceProvider;
 import com.serverfhir.provider.EhrResourceProvider;
 import com.serverfhir.provider.DocumentReferenceResourceProvider;
 import com.serverfhir.provider.PractitionerResourceProvider;
+import com.serverfhir.provider.SubscriptionResourceProvider;
+import com.serverfhir.provider.BulkExportProvider;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import java.io.IOException;
 import java.util.List;
 
 @Component
@@ -37,15 +45,53 @@ public class FhirServerConfig extends RestfulServer{
     @Autowired
     private PractitionerResourceProvider practitionerResourceProvider;
 
+    @Autowired
+    private SubscriptionResourceProvider subscriptionResourceProvider;
+
+    @Autowired
+    private BulkExportProvider bulkExportProvider;
+
+    @Autowired
+    private FhirTimingInterceptor fhirTimingInterceptor;
+
+    @Autowired
+    private FhirContext fhirContext;
+
+    @Autowired
+    private DeadlineInterceptor deadlineInterceptor;
+
+    @Autowired
+    private AsyncFhirProcessing asyncFhirProcessing;
+
     @Override
     protected void initialize() {
-        // Configuración básica de FHIR
-        setFhirContext(FhirContext.forR5());
+        // Configuración básica de FHIR (contexto compartido, precalentado en FhirContextWarmup)
+        setFhirContext(fhirContext);
         setDefaultPrettyPrint(true);
         setDefaultResponseEncoding(EncodingEnum.JSON);
         
         // Registrar proveedores de recursos
         setResourceProviders(List.of(patientResourceProvider, abmResourceProvider, organizationResourceProvider,
-                reportResourceProvider, ehrResourceProvider, documentReferenceResourceProvider, practitionerResourceProvider));
+                reportResourceProvider, ehrResourceProvider, documentReferenceResourceProvider, practitionerResourceProvider,
+                subscriptionResourceProvider));
+
+        // Operaciones de sistema ($export y $export-poll-status)
+        registerProvider(bulkExportProvider);
+
+        // Medición de fases (mapping / encode) para Server-Timing y métricas
+        registerInterceptor(fhirTimingInterceptor);
+
+        // Plazo vencido -> 504 con OperationOutcome
+        registerInterceptor(deadlineInterceptor);
+    }
+
+    @Override
+    protected void service(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        // En modo async la operación corre en un virtual thread y el hilo del contenedor se libera
+        if (asyncFhirProcessing.isEnabled() && request.isAsyncSupported()) {
+            asyncFhirProcessing.dispatch(request, response, () -> super.service(request, response));
+        } else {
+            super.service(request, response);
+        }
     }
 }
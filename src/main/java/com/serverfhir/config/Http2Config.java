@@ -0,0 +1,56 @@
+package com.serverfhir.config;
+
+import org.apache.coyote.UpgradeProtocol;
+import org.apache.coyote.http2.Http2Protocol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * HTTP/2 en el conector de Tomcat ({@code server.http2.enabled}). Sin TLS, Tomcat acepta h2c
+ * tanto por upgrade como con prior knowledge, que es lo que usan los proxies que terminan TLS y
+ * hablan HTTP/2 con la app; con TLS se negocia h2 por ALPN. Así la ráfaga de requests al abrir
+ * una página ({@code /fhir/*} y {@code /api/*}) va multiplexada en una sola conexión.
+ *
+ * Tomcat limita por defecto a 20 los streams de una conexión que se ejecutan a la vez; con el
+ * procesamiento asincrónico los hilos del contenedor se liberan enseguida, así que se sube con
+ * {@code fhir.http2.max-concurrent-stream-execution}.
+ */
+@Configuration
+public class Http2Config {
+
+    private static final Logger logger = LoggerFactory.getLogger(Http2Config.class);
+
+    @Value("${server.http2.enabled:false}")
+    private boolean http2Enabled;
+
+    @Value("${fhir.http2.max-concurrent-streams:128}")
+    private int maxConcurrentStreams;
+
+    @Value("${fhir.http2.max-concurrent-stream-execution:64}")
+    private int maxConcurrentStreamExecution;
+
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> http2StreamLimits() {
+        return factory -> factory.addConnectorCustomizers(connector -> {
+            if (!http2Enabled) {
+                return;
+            }
+            for (UpgradeProtocol protocol : connector.findUpgradeProtocols()) {
+                if (protocol instanceof Http2Protocol http2) {
+                    http2.setMaxConcurrentStreams(maxConcurrentStreams);
+                    http2.setMaxConcurrentStreamExecution(maxConcurrentStreamExecution);
+                    logger.info("HTTP/2 habilitado ({}): {} streams por conexión, {} en ejecución",
+                            factory.getSsl() != null && factory.getSsl().isEnabled() ? "h2" : "h2c",
+                            maxConcurrentStreams, maxConcurrentStreamExecution);
+                    return;
+                }
+            }
+            logger.warn("server.http2.enabled=true pero el conector no tiene HTTP/2; se sirve solo HTTP/1.1");
+        });
+    }
+}
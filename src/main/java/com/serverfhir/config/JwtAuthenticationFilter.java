@@ -1,13 +1,13 @@
 package com.serverfhir.config;
 
+import com.serverfhir.util.RequestTimings;
+import com.serverfhir.service.JwtService;
 import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.security.Keys;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
@@ -16,8 +16,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import javax.crypto.SecretKey;
 import java.util.ArrayList;
 
 @Component
@@ -25,8 +23,9 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private static final Logger logger = LoggerFactory.getLogger(JwtAuthenticationFilter.class);
 
-    @Value("${jwt.secret:your-secret-key-here}")
-    private String jwtSecret;
+    // La clave vive solo en JwtService (se descarta antes de un checkpoint CRaC)
+    @Autowired
+    private JwtService jwtService;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
@@ -36,15 +35,14 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         
         if (authHeader != null && !authHeader.isEmpty()) {
             String token = authHeader;
+            long start = System.nanoTime();
             
             try {
-                SecretKey key = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
-                Claims claims = Jwts.parser()
-                    .verifyWith(key)
-                    .build()
-                    .parseSignedClaims(token)
-                    .getPayload();
-                String username = claims.get("email", String.class);
+                Claims claims = jwtService.getClaimsFromToken(token);
+                if (claims == null) {
+                    logger.warn("JWT inválido o expirado");
+                }
+                String username = claims != null ? claims.get("email", String.class) : null;
                 
                 if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
                     UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
@@ -55,6 +53,8 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                 
             } catch (Exception e) {
                 logger.error("Error validando JWT", e);
+            } finally {
+                RequestTimings.record(RequestTimings.Phase.AUTH, System.nanoTime() - start);
             }
         } else {
             // Si no hay token, no establecer autenticación
@@ -0,0 +1,211 @@
+package com.serverfhir.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.serverfhir.service.JwtService;
+import com.serverfhir.util.AsyncCompletion;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cache de respuestas ya serializadas para los endpoints FHIR de solo lectura que devuelven
+ * siempre lo mismo (catálogos de ABM, obras sociales/programas, tipos de usuario), listados en
+ * {@code fhir.cache.response.paths}.
+ *
+ * La clave es URL completa + encoding (json/xml) + pretty + usuario del token. En un hit se
+ * escriben los bytes guardados directo en la respuesta, sin pasar por el provider ni por el
+ * encoding de HAPI; si el cliente acepta gzip se usa la variante comprimida, que se calcula una
+ * sola vez al guardar. Solo se cachean respuestas 200 de GET con un token válido, y las entradas
+ * vencen a los {@code fhir.cache.response.ttl-seconds}.
+ *
+ * Corre después de Spring Security, y CorsFilter ya puso los headers de CORS antes de llegar acá.
+ * Métricas de Caffeine con {@code cache=fhir-response}.
+ */
+@Component
+@Order(SecurityProperties.DEFAULT_FILTER_ORDER + 1)
+public class ResponseCacheFilter extends OncePerRequestFilter {
+
+    private record Key(String url, String encoding, boolean pretty, String scope) {
+    }
+
+    private record Entry(String contentType, byte[] identity, byte[] gzip) {
+    }
+
+    private final JwtService jwtService;
+    private final Set<String> paths;
+    private final boolean enabled;
+    private final boolean defaultPretty;
+    private final int gzipMinBytes;
+    private final Cache<Key, Entry> cache;
+
+    public ResponseCacheFilter(JwtService jwtService, MeterRegistry meterRegistry,
+                               @Value("${fhir.cache.response.enabled:true}") boolean enabled,
+                               @Value("${fhir.cache.response.paths:/fhir/Location,/fhir/Organization,/fhir/Practitioner/$get-user-types}") String paths,
+                               @Value("${fhir.cache.response.max-bytes:8388608}") long maxBytes,
+                               @Value("${fhir.cache.response.ttl-seconds:600}") long ttlSeconds,
+                               @Value("${fhir.cache.response.gzip-min-bytes:512}") int gzipMinBytes,
+                               @Value("${hapi.fhir.pretty_print:true}") boolean defaultPretty) {
+        this.jwtService = jwtService;
+        this.enabled = enabled;
+        this.defaultPretty = defaultPretty;
+        this.gzipMinBytes = gzipMinBytes;
+        this.paths = Arrays.stream(paths.split(","))
+                .map(String::trim)
+                .filter(p -> !p.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Key key, Entry entry) -> key.url().length() + entry.identity().length
+                        + (entry.gzip() != null ? entry.gzip().length : 0))
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "fhir-response");
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || !"GET".equals(request.getMethod()) || !paths.contains(pathOf(request));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String scope = jwtService.getUserScope(request.getHeader("Authorization"));
+        if (scope == null) {
+            // Sin token válido no se cachea: la cadena normal lo rechaza
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        Key key = keyOf(request, scope);
+        Entry cached = cache.getIfPresent(key);
+        if (cached != null) {
+            response.setHeader("X-Cache", "HIT");
+            write(request, response, cached);
+            return;
+        }
+
+        // HAPI comprime si el cliente acepta gzip; se le oculta el header para guardar el JSON plano
+        ContentCachingResponseWrapper buffered = new ContentCachingResponseWrapper(response);
+        try {
+            filterChain.doFilter(new IdentityEncodingRequest(request), buffered);
+        } finally {
+            Runnable finish = () -> store(request, key, buffered);
+            if (!AsyncCompletion.deferIfAsync(request, finish)) {
+                finish.run();
+            }
+        }
+    }
+
+    private void store(HttpServletRequest request, Key key, ContentCachingResponseWrapper buffered) {
+        try {
+            String contentType = buffered.getContentType();
+            if (buffered.getStatus() != HttpServletResponse.SC_OK || contentType == null
+                    || buffered.getHeader("Content-Encoding") != null) {
+                buffered.copyBodyToResponse();
+                return;
+            }
+            byte[] body = buffered.getContentAsByteArray();
+            Entry entry = new Entry(contentType, body, body.length >= gzipMinBytes ? gzip(body) : null);
+            cache.put(key, entry);
+            buffered.resetBuffer();
+            buffered.setHeader("X-Cache", "MISS");
+            write(request, (HttpServletResponse) buffered.getResponse(), entry);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void write(HttpServletRequest request, HttpServletResponse response, Entry entry) throws IOException {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        boolean useGzip = entry.gzip() != null && acceptEncoding != null && acceptEncoding.contains("gzip");
+        byte[] body = useGzip ? entry.gzip() : entry.identity();
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(entry.contentType());
+        response.addHeader("Vary", "Accept-Encoding");
+        if (useGzip) {
+            response.setHeader("Content-Encoding", "gzip");
+        }
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+        response.flushBuffer();
+    }
+
+    private Key keyOf(HttpServletRequest request, String scope) {
+        String query = request.getQueryString();
+        String url = query == null ? pathOf(request) : pathOf(request) + "?" + query;
+
+        String format = request.getParameter("_format");
+        String accept = request.getHeader("Accept");
+        boolean xml = format != null ? format.contains("xml") : accept != null && accept.contains("xml");
+
+        String prettyParam = request.getParameter("_pretty");
+        boolean pretty = prettyParam != null ? Boolean.parseBoolean(prettyParam) : defaultPretty;
+        return new Key(url, xml ? "xml" : "json", pretty, scope);
+    }
+
+    /**
+     * Path decodificado y sin context path ({@code %24get-user-types} y {@code $get-user-types}
+     * dan lo mismo).
+     */
+    private static String pathOf(HttpServletRequest request) {
+        String pathInfo = request.getPathInfo();
+        return pathInfo == null ? request.getServletPath() : request.getServletPath() + pathInfo;
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    private static final class IdentityEncodingRequest extends HttpServletRequestWrapper {
+
+        IdentityEncodingRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return "Accept-Encoding".equalsIgnoreCase(name) ? null : super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            return "Accept-Encoding".equalsIgnoreCase(name) ? Collections.emptyEnumeration() : super.getHeaders(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaderNames() {
+            return Collections.enumeration(Collections.list(super.getHeaderNames()).stream()
+                    .filter(name -> !"Accept-Encoding".equalsIgnoreCase(name))
+                    .toList());
+        }
+    }
+}
@@ -32,6 +32,8 @@ public class SecurityConfig {
                 .requestMatchers("/fhir/metadata").permitAll() // Permitir acceso a metadata sin token
                 .requestMatchers("/auth/**").permitAll() // Permitir acceso a endpoints de autenticación
                 .requestMatchers("/api/file/upload").permitAll() // Permitir acceso - el controlador valida el token internamente
+                .requestMatchers("/fhir-ws").permitAll() // WebSocket de Subscriptions: se autentica con el token de binding
+                .requestMatchers("/actuator/health/**").permitAll() // Probes de liveness/readiness (sin token); los detalles solo con token
                 .requestMatchers("OPTIONS", "/fhir/**").permitAll() // Permitir OPTIONS sin autenticación
                 .requestMatchers("/fhir/**").authenticated() // Requerir autenticación para endpoints FHIR
                 .anyRequest().authenticated()
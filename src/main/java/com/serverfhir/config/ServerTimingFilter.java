@@ -0,0 +1,107 @@
+package com.serverfhir.config;
+
+import com.serverfhir.util.AsyncCompletion;
+import com.serverfhir.util.RequestTimings;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mide las fases de cada request (auth, backend, mapping, encode) y las agrega
+ * en el timer {@code fhir.request.phase} de Micrometer.
+ *
+ * Con {@code fhir.timing.server-timing-header=true} además devuelve el desglose en el
+ * header {@code Server-Timing} para poder perfilar desde las DevTools del navegador.
+ * En ese modo la respuesta se bufferea para poder incluir el tiempo de serialización,
+ * por eso solo debe activarse para depurar.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 2)
+public class ServerTimingFilter extends OncePerRequestFilter {
+
+    @Value("${fhir.timing.server-timing-header:false}")
+    private boolean serverTimingHeader;
+
+    private final Map<RequestTimings.Phase, Timer> phaseTimers = new EnumMap<>(RequestTimings.Phase.class);
+    private final Timer totalTimer;
+
+    public ServerTimingFilter(MeterRegistry meterRegistry) {
+        for (RequestTimings.Phase phase : RequestTimings.Phase.values()) {
+            phaseTimers.put(phase, Timer.builder("fhir.request.phase")
+                    .description("Tiempo por fase de los requests FHIR")
+                    .tag("phase", phase.getMetricName())
+                    .register(meterRegistry));
+        }
+        this.totalTimer = Timer.builder("fhir.request.phase")
+                .description("Tiempo por fase de los requests FHIR")
+                .tag("phase", "total")
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+        return !(uri.startsWith("/fhir/") || uri.startsWith("/api/") || uri.startsWith("/auth/"));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+
+        RequestTimings timings = RequestTimings.start();
+        ContentCachingResponseWrapper bufferedResponse = serverTimingHeader
+                ? new ContentCachingResponseWrapper(response)
+                : null;
+
+        try {
+            filterChain.doFilter(request, bufferedResponse != null ? bufferedResponse : response);
+        } finally {
+            RequestTimings.clear();
+            // En modo async la operación sigue en otro hilo; se cierra cuando termine
+            Runnable finish = () -> finish(request, timings, bufferedResponse);
+            if (!AsyncCompletion.deferIfAsync(request, finish)) {
+                finish.run();
+            }
+        }
+    }
+
+    private void finish(HttpServletRequest request, RequestTimings timings, ContentCachingResponseWrapper bufferedResponse) {
+        recordMetrics(timings);
+
+        if (bufferedResponse != null) {
+            bufferedResponse.setHeader("Server-Timing", timings.toServerTimingHeader());
+            String origin = request.getHeader("Origin");
+            if (origin != null) {
+                // Sin este header el navegador oculta Server-Timing en requests cross-origin
+                bufferedResponse.setHeader("Timing-Allow-Origin", origin);
+            }
+            try {
+                bufferedResponse.copyBodyToResponse();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void recordMetrics(RequestTimings timings) {
+        for (Map.Entry<RequestTimings.Phase, Timer> entry : phaseTimers.entrySet()) {
+            entry.getValue().record(timings.getNanos(entry.getKey()), TimeUnit.NANOSECONDS);
+        }
+        totalTimer.record(timings.getTotalNanos(), TimeUnit.NANOSECONDS);
+    }
+}
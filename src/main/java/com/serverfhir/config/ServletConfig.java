@@ -12,6 +12,8 @@ public class ServletConfig {
         ServletRegistrationBean<FhirServerConfig> registration = new ServletRegistrationBean<>(fhirServerConfig, "/fhir/*");
         registration.setName("fhirServlet");
         registration.setLoadOnStartup(1);
+        // Necesario para el modo asincrónico (AsyncFhirProcessing)
+        registration.setAsyncSupported(true);
         return registration;
     }
 }
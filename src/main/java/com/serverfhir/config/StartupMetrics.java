@@ -0,0 +1,103 @@
+package com.serverfhir.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Tiempos de arranque medidos desde el inicio de la JVM, publicados como gauges
+ * {@code fhir.startup.time} (en segundos) con tag {@code phase}:
+ * <ul>
+ *   <li>{@code warmup}: duración del precalentamiento del FhirContext</li>
+ *   <li>{@code ready}: contexto de Spring listo para atender</li>
+ *   <li>{@code first_request}: primer request FHIR respondido con éxito (time-to-first-request)</li>
+ * </ul>
+ * Mientras una fase no ocurrió, su gauge vale NaN.
+ */
+@Component
+public class StartupMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupMetrics.class);
+
+    private volatile long originMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+
+    private volatile double warmupSeconds = Double.NaN;
+    private volatile double readySeconds = Double.NaN;
+    private volatile double firstRequestSeconds = Double.NaN;
+
+    public StartupMetrics(MeterRegistry meterRegistry) {
+        register(meterRegistry, "warmup", this::getWarmupSeconds);
+        register(meterRegistry, "ready", this::getReadySeconds);
+        register(meterRegistry, "first_request", this::getFirstRequestSeconds);
+    }
+
+    private void register(MeterRegistry registry, String phase, java.util.function.DoubleSupplier value) {
+        Gauge.builder("fhir.startup.time", value)
+                .description("Tiempos de arranque desde el inicio de la JVM")
+                .baseUnit("seconds")
+                .tag("phase", phase)
+                .register(registry);
+    }
+
+    public void recordWarmup(long nanos) {
+        warmupSeconds = nanos / 1e9;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void applicationReady() {
+        readySeconds = secondsSinceJvmStart();
+        logger.info("Aplicación lista en {} s desde el inicio de la JVM (warmup FHIR: {} s)",
+                round(readySeconds), round(warmupSeconds));
+    }
+
+    /**
+     * Después de un restore CRaC los tiempos se miden desde el restore, no desde el inicio de la
+     * JVM que tomó el checkpoint.
+     */
+    public void markRestored() {
+        originMillis = System.currentTimeMillis();
+        readySeconds = 0;
+        firstRequestSeconds = Double.NaN;
+    }
+
+    /**
+     * Se llama al terminar cada request FHIR exitoso; solo el primero cuenta.
+     */
+    public void markSuccessfulRequest() {
+        if (!Double.isNaN(firstRequestSeconds)) {
+            return;
+        }
+        synchronized (this) {
+            if (Double.isNaN(firstRequestSeconds)) {
+                firstRequestSeconds = secondsSinceJvmStart();
+                logger.info("Primer request FHIR exitoso a los {} s del inicio de la JVM", round(firstRequestSeconds));
+            }
+        }
+    }
+
+    public double getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    public double getReadySeconds() {
+        return readySeconds;
+    }
+
+    public double getFirstRequestSeconds() {
+        return firstRequestSeconds;
+    }
+
+    private double secondsSinceJvmStart() {
+        return (System.currentTimeMillis() - originMillis) / 1000.0;
+    }
+
+    private static double round(double seconds) {
+        return Math.round(seconds * 100) / 100.0;
+    }
+}
@@ -0,0 +1,39 @@
+package com.serverfhir.config;
+
+import com.serverfhir.subscription.SubscriptionWebSocketHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+import java.util.Arrays;
+
+/**
+ * Endpoint WebSocket de las Subscriptions ({@code /fhir-ws}), fuera del servlet de HAPI. Acepta los
+ * mismos orígenes que CORS; la autenticación es el token de binding (ver SubscriptionWebSocketHandler).
+ */
+@Configuration
+@EnableWebSocket
+public class SubscriptionWebSocketConfig implements WebSocketConfigurer {
+
+    public static final String PATH = "/fhir-ws";
+
+    private final SubscriptionWebSocketHandler handler;
+
+    @Value("${spring.web.cors.allowed-origins}")
+    private String allowedOrigins;
+
+    public SubscriptionWebSocketConfig(SubscriptionWebSocketHandler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        String[] origins = Arrays.stream(allowedOrigins.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .toArray(String[]::new);
+        registry.addHandler(handler, PATH).setAllowedOrigins(origins);
+    }
+}
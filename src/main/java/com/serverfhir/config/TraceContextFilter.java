@@ -0,0 +1,84 @@
+package com.serverfhir.config;
+
+import com.serverfhir.tracing.TraceContext;
+import com.serverfhir.tracing.Tracer;
+import com.serverfhir.util.AsyncCompletion;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.MDC;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Continúa la traza del cliente (header traceparent) o inicia una nueva, la deja en el
+ * hilo del request para que las llamadas a TF_Back la propaguen, y agrega el traceId al
+ * MDC para que aparezca en los logs.
+ *
+ * El traceparent del span del servidor se devuelve en el header {@code traceresponse}
+ * para poder buscar la traza a partir de una respuesta concreta.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public class TraceContextFilter extends OncePerRequestFilter {
+
+    public static final String MDC_TRACE_ID = "traceId";
+    private static final String TRACERESPONSE_HEADER = "traceresponse";
+
+    private final Tracer tracer;
+
+    public TraceContextFilter(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (!tracer.isEnabled()) {
+            return true;
+        }
+        String uri = request.getRequestURI();
+        return !(uri.startsWith("/fhir/") || uri.startsWith("/api/") || uri.startsWith("/auth/"));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+
+        TraceContext context = TraceContext.fromTraceparent(
+                request.getHeader(TraceContext.TRACEPARENT_HEADER),
+                request.getHeader(TraceContext.TRACESTATE_HEADER));
+        if (context == null) {
+            context = tracer.newRootContext();
+        }
+
+        TraceContext.setCurrent(context);
+        MDC.put(MDC_TRACE_ID, context.getTraceId());
+        response.setHeader(TRACERESPONSE_HEADER, context.toTraceparent());
+
+        long startMillis = System.currentTimeMillis();
+        long start = System.nanoTime();
+        TraceContext serverSpan = context;
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            Runnable finish = () -> {
+                String route = Tracer.normalizeRoute(request.getRequestURI());
+                tracer.finishSpan(serverSpan, request.getMethod() + " " + route, "server",
+                        startMillis, System.nanoTime() - start, response.getStatus(),
+                        Map.of("http.route", route));
+            };
+            // En modo async el span se cierra cuando termina la operación, no al volver de la cadena
+            if (!AsyncCompletion.deferIfAsync(request, finish)) {
+                finish.run();
+            }
+            TraceContext.setCurrent(null);
+            MDC.remove(MDC_TRACE_ID);
+        }
+    }
+}
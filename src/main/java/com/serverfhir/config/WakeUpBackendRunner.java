@@ -1,49 +1,211 @@
 package com.serverfhir.config;
 
+import com.serverfhir.service.BackendClient;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * On startup, pings the TF_Back /health endpoint in the background to wake it up
- * when this FHIR server is deployed on Render (cold start).
+ * Warm-up de TF_Back. TF_Back corre en Render y se duerme cuando no recibe tráfico, así que:
+ * <ul>
+ *   <li>al arrancar se le pega a {@code /health} con {@code tfback.warmup.connections} requests en
+ *       paralelo; si no responde se reintenta cada {@code tfback.warmup.retry-seconds}. Con HTTP/1.1
+ *       cada request deja abierta su propia conexión en el pool del cliente compartido; con HTTP/2
+ *       (ver BackendConnections) van como streams de una única conexión, que es la que queda
+ *       abierta</li>
+ *   <li>una vez que respondió, cada {@code tfback.keepalive.interval-seconds} se repite el ping
+ *       para que no vuelva a dormirse (0 lo desactiva)</li>
+ *   <li>hasta la primera respuesta el health {@code backend} queda OUT_OF_SERVICE, lo que mantiene
+ *       cerrado el grupo de readiness ({@code /actuator/health/readiness})</li>
+ * </ul>
+ * Cada respuesta se clasifica como "warm" o "cold" según {@code tfback.warmup.cold-threshold-ms}
+ * (métricas {@code tfback.warmup.responses} y {@code tfback.warmup.latency}).
  */
 @Component
-public class WakeUpBackendRunner implements ApplicationRunner {
+public class WakeUpBackendRunner implements ApplicationRunner, DisposableBean {
 
     private static final Logger logger = LoggerFactory.getLogger(WakeUpBackendRunner.class);
 
+    @Autowired
+    private BackendClient backendClient;
+
     @Value("${tfback.url}")
     private String tfBackUrl;
 
+    @Value("${fhir.crac.checkpoint.enabled:false}")
+    private boolean checkpointMode;
+
+    @Value("${tfback.warmup.connections:4}")
+    private int connections;
+
+    @Value("${tfback.warmup.retry-seconds:5}")
+    private long retrySeconds;
+
+    @Value("${tfback.warmup.cold-threshold-ms:2000}")
+    private long coldThresholdMs;
+
+    @Value("${tfback.keepalive.interval-seconds:300}")
+    private long keepAliveSeconds;
+
+    private final Counter warmResponses;
+    private final Counter coldResponses;
+    private final Counter failedResponses;
+    private final Timer latency;
+
+    private ScheduledExecutorService scheduler;
+    private volatile boolean ready;
+    private volatile long lastSuccessMillis;
+    private volatile long lastLatencyMs = -1;
+    private volatile String lastError;
+    private final AtomicLong consecutiveFailures = new AtomicLong();
+
+    public WakeUpBackendRunner(MeterRegistry meterRegistry) {
+        this.warmResponses = responses(meterRegistry, "warm");
+        this.coldResponses = responses(meterRegistry, "cold");
+        this.failedResponses = responses(meterRegistry, "error");
+        this.latency = Timer.builder("tfback.warmup.latency")
+                .description("Latencia de los pings de warm-up / keep-alive a TF_Back")
+                .register(meterRegistry);
+    }
+
+    private static Counter responses(MeterRegistry registry, String state) {
+        return Counter.builder("tfback.warmup.responses")
+                .description("Respuestas de TF_Back a los pings de warm-up / keep-alive")
+                .tag("state", state)
+                .register(registry);
+    }
+
     @Override
     public void run(ApplicationArguments args) {
-        ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
-            Thread t = new Thread(r, "wake-up-backend");
+        // En modo checkpoint no se deja un socket abierto; se despierta al backend después del restore
+        if (!checkpointMode) {
+            wakeUp();
+        }
+    }
+
+    public synchronized void wakeUp() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "backend-keepalive");
             t.setDaemon(true);
             return t;
         });
-        executor.execute(() -> {
-            try {
-                String healthUrl = tfBackUrl.endsWith("/") ? tfBackUrl + "health" : tfBackUrl + "/health";
-                SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
-                factory.setConnectTimeout(5000);
-                factory.setReadTimeout(5000);
-                RestTemplate rest = new RestTemplate(factory);
-                rest.getForEntity(healthUrl, String.class);
-                logger.info("Wake-up request to backend succeeded: {}", healthUrl);
-            } catch (Exception e) {
-                logger.info("Wake-up request to backend failed (backend may be starting): {}", e.getMessage());
+        scheduler.execute(this::warmUpUntilReady);
+    }
+
+    private void warmUpUntilReady() {
+        if (ping(Math.max(1, connections))) {
+            logger.info("TF_Back respondió ({} ms) a {} pings en paralelo", lastLatencyMs, connections);
+            if (keepAliveSeconds > 0) {
+                scheduler.scheduleWithFixedDelay(this::keepAlive, keepAliveSeconds, keepAliveSeconds, TimeUnit.SECONDS);
             }
-        });
-        executor.shutdown();
+        } else {
+            logger.info("TF_Back todavía no responde ({}); reintento en {} s", lastError, retrySeconds);
+            scheduler.schedule(this::warmUpUntilReady, retrySeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    private void keepAlive() {
+        if (!ping(Math.max(1, connections))) {
+            logger.warn("Keep-alive a TF_Back falló ({} seguidos): {}", consecutiveFailures.get(), lastError);
+        }
+    }
+
+    /**
+     * Pega a /health con {@code parallel} requests simultáneos (en HTTP/1.1 cada uno ocupa su propia
+     * conexión del pool; en HTTP/2 se multiplexan en una). Devuelve true si al menos uno respondió.
+     */
+    private boolean ping(int parallel) {
+        String healthUrl = tfBackUrl.endsWith("/") ? tfBackUrl + "health" : tfBackUrl + "/health";
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<CompletableFuture<Boolean>> pings = new ArrayList<>();
+            for (int i = 0; i < parallel; i++) {
+                pings.add(CompletableFuture.supplyAsync(() -> pingOnce(healthUrl), executor));
+            }
+            boolean anyOk = false;
+            for (CompletableFuture<Boolean> ping : pings) {
+                anyOk |= ping.join();
+            }
+            if (anyOk) {
+                ready = true;
+                consecutiveFailures.set(0);
+            } else {
+                consecutiveFailures.incrementAndGet();
+            }
+            return anyOk;
+        }
+    }
+
+    private boolean pingOnce(String healthUrl) {
+        long start = System.nanoTime();
+        try {
+            backendClient.exchange(healthUrl, HttpMethod.GET, null, String.class);
+            long nanos = System.nanoTime() - start;
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            latency.record(nanos, TimeUnit.NANOSECONDS);
+            (millis >= coldThresholdMs ? coldResponses : warmResponses).increment();
+            lastLatencyMs = millis;
+            lastSuccessMillis = System.currentTimeMillis();
+            return true;
+        } catch (Exception e) {
+            failedResponses.increment();
+            lastError = e.getMessage();
+            return false;
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public long getLastSuccessMillis() {
+        return lastSuccessMillis;
+    }
+
+    public long getLastLatencyMs() {
+        return lastLatencyMs;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public long getConsecutiveFailures() {
+        return consecutiveFailures.get();
+    }
+
+    public double getWarmResponses() {
+        return warmResponses.count();
+    }
+
+    public double getColdResponses() {
+        return coldResponses.count();
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
     }
 }
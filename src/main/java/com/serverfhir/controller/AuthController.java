@@ -8,7 +8,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.client.RestTemplate;
+import com.serverfhir.service.BackendClient;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpEntity;
@@ -27,6 +27,9 @@ public class AuthController {
     @Autowired
     private JwtService jwtService;
 
+    @Autowired
+    private BackendClient backendClient;
+
     @Value("${tfback.url}")
     private String tfBackUrl;
 
@@ -42,7 +45,6 @@ public class AuthController {
             }
 
             // Llamar al servidor TF_Back para autenticación
-            RestTemplate restTemplate = new RestTemplate();
             String fullTfBackUrl = tfBackUrl + "/auth/login";
             
             // Enviar el credential directamente como body
@@ -53,7 +55,7 @@ public class AuthController {
             headers.setContentType(MediaType.APPLICATION_JSON);
             HttpEntity<Map<String, String>> request = new HttpEntity<>(requestBody, headers);
             
-            ResponseEntity<Map> response = restTemplate.postForEntity(fullTfBackUrl, request, Map.class);
+            ResponseEntity<Map> response = backendClient.postForEntity(fullTfBackUrl, request, Map.class);
             
             if (response.getStatusCode().is2xxSuccessful()) {
                 Map<String, Object> responseBody = response.getBody();
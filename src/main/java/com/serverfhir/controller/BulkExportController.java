@@ -0,0 +1,46 @@
+package com.serverfhir.controller;
+
+import com.serverfhir.export.BulkExportService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+
+/**
+ * Descarga de los NDJSON de una exportación {@code $export} terminada (las URLs del manifiesto).
+ * Solo para el usuario que la pidió; el archivo se manda desde disco sin cargarlo en memoria.
+ */
+@RestController
+@RequestMapping("/api/export")
+@CrossOrigin(origins = "*")
+public class BulkExportController {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkExportController.class);
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/fhir+ndjson");
+
+    @Autowired
+    private BulkExportService bulkExportService;
+
+    @GetMapping("/{jobId}/{fileName:.+}")
+    public ResponseEntity<Resource> download(
+            @PathVariable String jobId,
+            @PathVariable String fileName,
+            @RequestHeader(value = "Authorization", required = false) String authHeader) {
+
+        Path file = bulkExportService.file(jobId, fileName, authHeader);
+        if (file == null) {
+            logger.debug("Archivo de exportación no disponible: {}/{}", jobId, fileName);
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok()
+                .contentType(NDJSON)
+                .body(new FileSystemResource(file));
+    }
+}
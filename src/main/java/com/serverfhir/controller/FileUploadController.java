@@ -1,6 +1,7 @@
 package com.serverfhir.controller;
 
 import com.serverfhir.service.JwtService;
+import com.serverfhir.util.PayloadLogger;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -9,7 +10,7 @@ import org.springframework.http.*;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.client.RestTemplate;
+import com.serverfhir.service.BackendClient;
 import org.springframework.web.multipart.MultipartFile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,6 +29,12 @@ public class FileUploadController {
     @Autowired
     private JwtService jwtService;
 
+    @Autowired
+    private BackendClient backendClient;
+
+    @Autowired
+    private PayloadLogger payloadLogger;
+
     @Value("${tfback.url}")
     private String tfBackUrl;
 
@@ -44,7 +51,7 @@ public class FileUploadController {
             @RequestParam("documentReference") String documentReferenceJson,
             @RequestHeader(value = "Authorization", required = false) String authHeader) {
         
-        logger.info("Iniciando carga de archivo");
+        logger.debug("Iniciando carga de archivo");
         
         try {
             // Validar token de autorización
@@ -68,14 +75,13 @@ public class FileUploadController {
                     .body(Map.of("error", "No se encontró el archivo para subir"));
             }
 
-            logger.info("Archivo recibido: " + file.getOriginalFilename() + 
-                       ", tamaño: " + file.getSize() + " bytes, tipo: " + file.getContentType());
+            logger.debug("Archivo recibido: {}, tamaño: {} bytes, tipo: {}", file.getOriginalFilename(), file.getSize(), file.getContentType());
 
             // Validar tipo de archivo
             String contentType = file.getContentType();
             List<String> allowedTypes = List.of("image/jpeg", "image/png", "application/pdf", "video/mp4");
             if (contentType == null || !allowedTypes.contains(contentType)) {
-                logger.error("Tipo de archivo no permitido: " + contentType);
+                logger.error("Tipo de archivo no permitido: {}", contentType);
                 return ResponseEntity.badRequest()
                     .body(Map.of("error", "Tipo de archivo no permitido. Tipos permitidos: image/jpeg, image/png, application/pdf, video/mp4"));
             }
@@ -87,7 +93,7 @@ public class FileUploadController {
                     .body(Map.of("error", "No se encontró el DocumentReference en la petición"));
             }
 
-            logger.info("DocumentReference recibido: " + documentReferenceJson);
+            payloadLogger.log(logger, "DocumentReference recibido:", documentReferenceJson);
 
             // Parsear el DocumentReference JSON
             ObjectMapper objectMapper = new ObjectMapper();
@@ -101,10 +107,7 @@ public class FileUploadController {
             String titulo = extractTitle(docRefMap);
             String descripcion = extractDescription(docRefMap);
 
-            logger.info("Metadatos extraídos - hashId: " + hashId + ", userId: " + userId + 
-                       ", reportId: " + (reportId != null ? reportId : "null") +
-                       ", titulo: " + (titulo != null ? titulo : "null") +
-                       ", descripcion: " + (descripcion != null ? descripcion : "null"));
+            logger.debug("Metadatos extraídos - hashId: {}, userId: {}, reportId: {}", hashId, userId, reportId);
 
             // Validar que hashId y userId estén presentes
             if (hashId == null || hashId.isEmpty()) {
@@ -149,19 +152,18 @@ public class FileUploadController {
             HttpEntity<MultiValueMap<String, Object>> requestEntity = new HttpEntity<>(body, headers);
 
             // Llamar al backend
-            RestTemplate restTemplate = new RestTemplate();
             String backendUrl = buildBackendUrl("/file/upload") + "?hash_id=" + hashId;
 
-            logger.info("Enviando archivo al backend: " + backendUrl);
+            logger.debug("Enviando archivo al backend: {}", backendUrl);
 
             @SuppressWarnings("rawtypes")
-            ResponseEntity<Map> response = restTemplate.postForEntity(
+            ResponseEntity<Map> response = backendClient.postForEntity(
                 backendUrl,
                 requestEntity,
                 Map.class
             );
 
-            logger.info("Respuesta del backend - Status: " + response.getStatusCode());
+            logger.debug("Respuesta del backend - Status: {}", response.getStatusCode());
 
             if (response.getStatusCode() == HttpStatus.CREATED || response.getStatusCode() == HttpStatus.OK) {
                 @SuppressWarnings("unchecked")
@@ -184,7 +186,7 @@ public class FileUploadController {
                         result.put("fileType", firstFile.get("fileType"));
                         result.put("message", "Archivo subido exitosamente");
 
-                        logger.info("Archivo subido exitosamente con ID: " + firstFile.get("fileId"));
+                        logger.info("Archivo subido exitosamente con ID: {}", firstFile.get("fileId"));
                         return ResponseEntity.ok(result);
                     }
                 }
@@ -197,13 +199,13 @@ public class FileUploadController {
                 return ResponseEntity.ok(result);
 
             } else {
-                logger.error("Error en la respuesta del backend: " + response.getStatusCode());
+                logger.error("Error en la respuesta del backend: {}", response.getStatusCode());
                 return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(Map.of("error", "Error al subir el archivo al backend: " + response.getStatusCode()));
             }
 
         } catch (Exception e) {
-            logger.error("Error inesperado al subir el archivo: " + e.getMessage(), e);
+            logger.error("Error inesperado al subir el archivo: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                 .body(Map.of("error", "Error al procesar la carga del archivo: " + e.getMessage()));
         }
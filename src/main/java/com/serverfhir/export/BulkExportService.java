@@ -0,0 +1,302 @@
+package com.serverfhir.export;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import com.serverfhir.service.JwtService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Exportaciones Bulk Data ({@code $export}) en segundo plano.
+ *
+ * Un único hilo corre los jobs de a uno (en cola hasta {@code fhir.export.max-queued-jobs}), así
+ * una exportación nunca ocupa más de una llamada a TF_Back a la vez, y además las espacia
+ * ({@code fhir.export.backend-interval-ms}). Cada tipo pedido se escribe a
+ * {@code <fhir.export.dir>/<job>/<Tipo>.ndjson} a medida que la fuente entrega los recursos, sin
+ * juntarlos: la memoria no depende del tamaño de la exportación.
+ *
+ * Los archivos se descargan hasta {@code fhir.export.retention-minutes} después de terminado el
+ * job; después se borran junto con el job. Los jobs viven en memoria: al arrancar (y en cada
+ * pasada de limpieza) se borra toda carpeta de job en {@code fhir.export.dir} que no sea de un job
+ * vivo, y al apagar se borran las de todos, así no quedan volcados de pacientes en disco.
+ *
+ * Límite: las llamadas a TF_Back se hacen con el token de quien pidió la exportación (no hay
+ * credencial de servicio con permisos por usuario). Si el token vence antes de que termine, TF_Back
+ * responde 401 y el job termina en error pidiendo un token nuevo: una exportación no puede durar
+ * más que la vida del token.
+ */
+@Service
+public class BulkExportService implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkExportService.class);
+
+    private final FhirContext fhirContext;
+    private final JwtService jwtService;
+    private final Path root;
+    private final long backendIntervalMillis;
+    private final Duration retention;
+    private final Map<String, ExportJob> jobs = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor worker;
+    private final ScheduledExecutorService cleaner;
+    private final Counter exported;
+
+    public BulkExportService(FhirContext fhirContext, JwtService jwtService, MeterRegistry meterRegistry,
+                             @Value("${fhir.export.dir:data/bulk-export}") String dir,
+                             @Value("${fhir.export.max-queued-jobs:4}") int maxQueuedJobs,
+                             @Value("${fhir.export.backend-interval-ms:100}") long backendIntervalMillis,
+                             @Value("${fhir.export.retention-minutes:60}") long retentionMinutes) {
+        this.fhirContext = fhirContext;
+        this.jwtService = jwtService;
+        this.root = Paths.get(dir);
+        this.backendIntervalMillis = backendIntervalMillis;
+        this.retention = Duration.ofMinutes(retentionMinutes);
+        this.worker = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, maxQueuedJobs)), r -> {
+                    Thread thread = new Thread(r, "fhir-bulk-export");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "fhir-bulk-export-cleaner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Lo que quedó de una ejecución anterior (reinicio o caída) no tiene job que lo sirva
+        sweepOrphans();
+        this.cleaner.scheduleAtFixedRate(this::expire, 1, 1, TimeUnit.MINUTES);
+
+        this.exported = Counter.builder("fhir.export.resources")
+                .description("Recursos escritos en exportaciones Bulk Data")
+                .register(meterRegistry);
+        Gauge.builder("fhir.export.jobs.queued", worker, w -> w.getQueue().size())
+                .description("Exportaciones esperando al hilo de exportación")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Encola una exportación. Null si ya hay {@code fhir.export.max-queued-jobs} esperando.
+     */
+    public ExportJob start(List<String> types, Instant since, String authorization, String request, ExportSource source) {
+        String scope = jwtService.getUserScope(authorization);
+        if (scope == null) {
+            throw new IllegalArgumentException("Token sin usuario identificable");
+        }
+        String id = UUID.randomUUID().toString();
+        ExportJob job = new ExportJob(id, scope, authorization, types, since, request, root.resolve(id), backendIntervalMillis);
+        jobs.put(id, job);
+        try {
+            worker.execute(() -> run(job, source));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(id);
+            return null;
+        }
+        logger.info("Exportación {} encolada: {} (since {})", id, types, since);
+        return job;
+    }
+
+    /**
+     * El job si existe y es del usuario del token; null si no.
+     */
+    public ExportJob get(String jobId, String authorization) {
+        ExportJob job = jobId == null ? null : jobs.get(jobId);
+        if (job == null || !job.ownerScope().equals(jwtService.getUserScope(authorization))) {
+            return null;
+        }
+        return job;
+    }
+
+    /**
+     * Cancela un job en curso o en cola, o descarta uno terminado con sus archivos.
+     */
+    public boolean cancel(String jobId, String authorization) {
+        ExportJob job = get(jobId, authorization);
+        if (job == null) {
+            return false;
+        }
+        job.cancel();
+        if (job.finishedAt() != null || job.status() == ExportJob.Status.ACCEPTED) {
+            jobs.remove(jobId);
+            delete(job.directory());
+        }
+        logger.info("Exportación {} cancelada", jobId);
+        return true;
+    }
+
+    /**
+     * Archivo de salida de un job terminado del usuario; null si no existe.
+     */
+    public Path file(String jobId, String fileName, String authorization) {
+        ExportJob job = get(jobId, authorization);
+        if (job == null || job.status() != ExportJob.Status.COMPLETE) {
+            return null;
+        }
+        for (ExportJob.Output output : job.outputs()) {
+            if (output.fileName().equals(fileName)) {
+                return job.directory().resolve(fileName);
+            }
+        }
+        return null;
+    }
+
+    private void run(ExportJob job, ExportSource source) {
+        if (job.isCancelled()) {
+            return;
+        }
+        long start = System.nanoTime();
+        IParser parser = fhirContext.newJsonParser().setPrettyPrint(false);
+        try {
+            Files.createDirectories(job.directory());
+            for (String type : job.types()) {
+                job.running("Exportando " + type);
+                String fileName = type + ".ndjson";
+                Path file = job.directory().resolve(fileName);
+                long[] count = {0};
+                try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                    source.export(type, job, resource -> {
+                        try {
+                            parser.encodeResourceToWriter(resource, writer);
+                            writer.write('\n');
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        count[0]++;
+                    });
+                }
+                exported.increment(count[0]);
+                // Sin recursos no hay archivo (Bulk Data omite los tipos vacíos del manifiesto)
+                if (count[0] == 0) {
+                    Files.deleteIfExists(file);
+                } else {
+                    job.addOutput(new ExportJob.Output(type, fileName, count[0]));
+                }
+            }
+            removeWorkFiles(job);
+            job.finish(ExportJob.Status.COMPLETE, null);
+            logger.info("Exportación {} terminada en {} ms: {}", job.id(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), job.outputs());
+        } catch (CancellationException e) {
+            job.finish(ExportJob.Status.CANCELLED, null);
+            jobs.remove(job.id());
+            delete(job.directory());
+        } catch (HttpClientErrorException.Unauthorized e) {
+            logger.warn("Exportación {}: TF_Back rechazó el token ({}) tras {} ms", job.id(), e.getStatusCode(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            job.finish(ExportJob.Status.ERROR, "El token de quien pidió la exportación venció o fue revocado "
+                    + "antes de que terminara; vuelva a pedirla con un token nuevo (o acotada con _type/_since)");
+            delete(job.directory());
+        } catch (Exception e) {
+            logger.error("Exportación {} falló: {}", job.id(), e.getMessage(), e);
+            job.finish(ExportJob.Status.ERROR, e.getMessage());
+            delete(job.directory());
+        }
+    }
+
+    /**
+     * Borra lo que no sea un archivo de salida (listas de trabajo de las fuentes).
+     */
+    private void removeWorkFiles(ExportJob job) throws IOException {
+        List<String> outputs = job.outputs().stream().map(ExportJob.Output::fileName).toList();
+        try (Stream<Path> files = Files.list(job.directory())) {
+            for (Path file : files.toList()) {
+                if (!outputs.contains(file.getFileName().toString())) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private void expire() {
+        Instant limit = Instant.now().minus(retention);
+        jobs.values().removeIf(job -> {
+            if (job.finishedAt() != null && job.finishedAt().isBefore(limit)) {
+                delete(job.directory());
+                return true;
+            }
+            return false;
+        });
+        sweepOrphans();
+    }
+
+    /**
+     * Borra las carpetas de job (nombre UUID) de {@code root} que no son de un job vivo. Solo toca
+     * carpetas con nombre de job, por si {@code fhir.export.dir} apunta a una carpeta compartida.
+     */
+    private void sweepOrphans() {
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        try (Stream<Path> entries = Files.list(root)) {
+            for (Path directory : entries.filter(Files::isDirectory).toList()) {
+                String name = directory.getFileName().toString();
+                if (isJobId(name) && !jobs.containsKey(name)) {
+                    logger.info("Borrando exportación huérfana {}", name);
+                    delete(directory);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("No se pudo recorrer {}: {}", root, e.getMessage());
+        }
+    }
+
+    private static boolean isJobId(String name) {
+        try {
+            return UUID.fromString(name).toString().equals(name);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static void delete(Path directory) {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            logger.warn("No se pudo borrar {}: {}", directory, e.getMessage());
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        jobs.values().forEach(ExportJob::cancel);
+        cleaner.shutdownNow();
+        worker.shutdownNow();
+        worker.awaitTermination(5, TimeUnit.SECONDS);
+        // Sin los jobs en memoria nadie puede volver a bajar estos archivos
+        jobs.values().forEach(job -> delete(job.directory()));
+        jobs.clear();
+    }
+}
@@ -0,0 +1,166 @@
+package com.serverfhir.export;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Una exportación Bulk Data ({@code $export}): lo pedido, su estado y los archivos NDJSON que ya
+ * se escribieron. Solo la ve y la descarga el usuario que la pidió.
+ */
+public final class ExportJob {
+
+    public enum Status { ACCEPTED, IN_PROGRESS, COMPLETE, ERROR, CANCELLED }
+
+    /**
+     * Un archivo NDJSON de salida, con un recurso por línea.
+     */
+    public record Output(String type, String fileName, long count) {
+    }
+
+    private final String id;
+    private final String ownerScope;
+    private final String authorization;
+    private final List<String> types;
+    private final Instant since;
+    private final String request;
+    private final Instant transactionTime = Instant.now();
+    private final Path directory;
+    private final long backendIntervalMillis;
+    private final List<Output> outputs = new CopyOnWriteArrayList<>();
+
+    private volatile Status status = Status.ACCEPTED;
+    private volatile String progress = "En cola";
+    private volatile String error;
+    private volatile boolean cancelled;
+    private volatile Instant finishedAt;
+    private long lastBackendCallNanos;
+
+    ExportJob(String id, String ownerScope, String authorization, List<String> types, Instant since,
+              String request, Path directory, long backendIntervalMillis) {
+        this.id = id;
+        this.ownerScope = ownerScope;
+        this.authorization = authorization;
+        this.types = List.copyOf(types);
+        this.since = since;
+        this.request = request;
+        this.directory = directory;
+        this.backendIntervalMillis = backendIntervalMillis;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    String ownerScope() {
+        return ownerScope;
+    }
+
+    /**
+     * Header Authorization del kick-off: las llamadas a TF_Back se hacen con los permisos de quien
+     * pidió la exportación.
+     */
+    public String authorization() {
+        return authorization;
+    }
+
+    public List<String> types() {
+        return types;
+    }
+
+    /**
+     * {@code _since} del kick-off, o null.
+     */
+    public Instant since() {
+        return since;
+    }
+
+    /**
+     * URL del kick-off, tal como va en el manifiesto.
+     */
+    public String request() {
+        return request;
+    }
+
+    public Instant transactionTime() {
+        return transactionTime;
+    }
+
+    /**
+     * Carpeta del job; las fuentes pueden dejar archivos de trabajo acá (se borran al terminar).
+     */
+    public Path directory() {
+        return directory;
+    }
+
+    public Status status() {
+        return status;
+    }
+
+    public String progress() {
+        return progress;
+    }
+
+    public String error() {
+        return error;
+    }
+
+    public List<Output> outputs() {
+        return List.copyOf(outputs);
+    }
+
+    Instant finishedAt() {
+        return finishedAt;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    void running(String progress) {
+        this.status = Status.IN_PROGRESS;
+        this.progress = progress;
+    }
+
+    void addOutput(Output output) {
+        outputs.add(output);
+    }
+
+    void finish(Status status, String error) {
+        this.status = status;
+        this.error = error;
+        this.progress = null;
+        this.finishedAt = Instant.now();
+    }
+
+    /**
+     * Corta si el job se canceló y espacia las llamadas a TF_Back
+     * ({@code fhir.export.backend-interval-ms}) para no competir con el tráfico clínico.
+     */
+    public void beforeBackendCall() {
+        checkCancelled();
+        long waitNanos = lastBackendCallNanos + backendIntervalMillis * 1_000_000 - System.nanoTime();
+        if (lastBackendCallNanos != 0 && waitNanos > 0) {
+            try {
+                Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Exportación interrumpida");
+            }
+            checkCancelled();
+        }
+        lastBackendCallNanos = System.nanoTime();
+    }
+
+    public void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Exportación cancelada");
+        }
+    }
+}
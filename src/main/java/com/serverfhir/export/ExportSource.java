@@ -0,0 +1,19 @@
+package com.serverfhir.export;
+
+import org.hl7.fhir.r5.model.Resource;
+
+import java.util.function.Consumer;
+
+/**
+ * De dónde salen los recursos de una exportación. Lo implementan los providers, que saben pedir
+ * y mapear cada tipo; BulkExportService solo escribe lo que le entregan.
+ */
+@FunctionalInterface
+public interface ExportSource {
+
+    /**
+     * Entrega de a uno los recursos de {@code resourceType}, sin juntarlos. Antes de cada llamada a
+     * TF_Back tiene que pasar por {@link ExportJob#beforeBackendCall()}.
+     */
+    void export(String resourceType, ExportJob job, Consumer<? super Resource> sink);
+}
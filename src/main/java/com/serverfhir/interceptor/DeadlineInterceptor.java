@@ -0,0 +1,43 @@
+package com.serverfhir.interceptor;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import ca.uhn.fhir.rest.server.exceptions.UnclassifiedServerFailureException;
+import com.serverfhir.service.BackendBusyException;
+import com.serverfhir.util.RequestDeadline;
+import org.springframework.stereotype.Component;
+
+/**
+ * Si el plazo del request venció (normalmente porque TF_Back no respondió a tiempo), el error
+ * que haya armado el provider se reemplaza por un 504, que HAPI devuelve como OperationOutcome.
+ * Si la llamada a TF_Back se rechazó por saturación ({@link BackendBusyException}) se devuelve 503.
+ */
+@Component
+@Interceptor
+public class DeadlineInterceptor {
+
+    @Hook(Pointcut.SERVER_PRE_PROCESS_OUTGOING_EXCEPTION)
+    public BaseServerResponseException deadlineExceeded(RequestDetails requestDetails, Throwable exception) {
+        RequestDeadline deadline = RequestDeadline.current();
+        if ((deadline != null && deadline.isBackendBusy()) || causedByBusyBackend(exception)) {
+            return new UnclassifiedServerFailureException(503, "TF_Back saturado, reintentar más tarde");
+        }
+        if (deadline == null || !deadline.isExpired()) {
+            return null;
+        }
+        return new UnclassifiedServerFailureException(504,
+                "TF_Back no respondió dentro del plazo de " + deadline.getBudget().toMillis() + " ms");
+    }
+
+    private static boolean causedByBusyBackend(Throwable exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof BackendBusyException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,6 +1,7 @@
 package com.serverfhir.interceptor;
 
 import com.serverfhir.service.JwtService;
+import com.serverfhir.util.RequestTimings;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -31,7 +32,11 @@ public class FhirAuthInterceptor implements HandlerInterceptor {
             
             String token = authHeader;
             
-            if (!jwtService.validateToken(token)) {
+            long start = System.nanoTime();
+            boolean valid = jwtService.validateToken(token);
+            RequestTimings.record(RequestTimings.Phase.AUTH, System.nanoTime() - start);
+
+            if (!valid) {
                 response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
                 response.getWriter().write("{\"error\": \"Invalid or expired token\"}");
                 return false;
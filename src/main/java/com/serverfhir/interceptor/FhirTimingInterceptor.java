@@ -0,0 +1,55 @@
+package com.serverfhir.interceptor;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import com.serverfhir.config.StartupMetrics;
+import com.serverfhir.util.RequestTimings;
+import org.springframework.stereotype.Component;
+
+/**
+ * Interceptor HAPI que delimita el tiempo del método del provider y el de la
+ * serialización de la respuesta, para separar las fases "mapping" y "encode".
+ * También marca el primer request exitoso para la métrica de time-to-first-request.
+ */
+@Component
+@Interceptor
+public class FhirTimingInterceptor {
+
+    private final StartupMetrics startupMetrics;
+
+    public FhirTimingInterceptor(StartupMetrics startupMetrics) {
+        this.startupMetrics = startupMetrics;
+    }
+
+    @Hook(Pointcut.SERVER_INCOMING_REQUEST_PRE_HANDLED)
+    public void handlerStarted(RequestDetails requestDetails) {
+        RequestTimings timings = RequestTimings.current();
+        if (timings != null) {
+            timings.markHandlerStart();
+        }
+    }
+
+    @Hook(Pointcut.SERVER_OUTGOING_RESPONSE)
+    public boolean handlerFinished(RequestDetails requestDetails) {
+        RequestTimings timings = RequestTimings.current();
+        if (timings != null) {
+            timings.markHandlerEnd();
+        }
+        return true;
+    }
+
+    @Hook(Pointcut.SERVER_PROCESSING_COMPLETED)
+    public void processingCompleted(RequestDetails requestDetails) {
+        RequestTimings timings = RequestTimings.current();
+        if (timings != null) {
+            timings.markEncodeEnd();
+        }
+    }
+
+    @Hook(Pointcut.SERVER_PROCESSING_COMPLETED_NORMALLY)
+    public void processingCompletedNormally(RequestDetails requestDetails) {
+        startupMetrics.markSuccessfulRequest();
+    }
+}
@@ -6,14 +6,19 @@ import ca.uhn.fhir.rest.annotation.Search;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.param.StringParam;
+import ca.uhn.fhir.rest.param.TokenOrListParam;
+import ca.uhn.fhir.rest.annotation.OptionalParam;
 import ca.uhn.fhir.rest.annotation.RequiredParam;
 import org.hl7.fhir.r5.model.Location;
 import org.hl7.fhir.r5.model.IdType;
 import org.hl7.fhir.r5.model.Reference;
 import org.hl7.fhir.r5.model.CodeableConcept;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
+import com.serverfhir.service.BackendClient;
+import com.serverfhir.util.SearchIds;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
@@ -21,6 +26,9 @@ import org.springframework.http.HttpMethod;
 import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,6 +37,9 @@ public class AbmResourceProvider implements IResourceProvider {
 
     private static final Logger logger = LoggerFactory.getLogger(AbmResourceProvider.class);
 
+    @Autowired
+    private BackendClient backendClient;
+
     @Value("${tfback.url}")
     private String tfBackUrl;
 
@@ -50,7 +61,6 @@ public class AbmResourceProvider implements IResourceProvider {
     public List<Location> searchProvinces(@RequiredParam(name = "_type") StringParam type,RequestDetails requestDetails) {
         try {
             String token = requestDetails.getHeader("Authorization");
-            RestTemplate restTemplate = new RestTemplate();
             
             HttpHeaders headers = new HttpHeaders();
             if (token != null && !token.isEmpty()) {
@@ -58,7 +68,7 @@ public class AbmResourceProvider implements IResourceProvider {
             }
 
             HttpEntity<String> entity = new HttpEntity<>(headers);
-            ResponseEntity<List> response = restTemplate.exchange(
+            ResponseEntity<List> response = backendClient.exchange(
                 buildBackendUrl("/abm/provincias"), 
                 HttpMethod.GET, 
                 entity, 
@@ -88,7 +98,7 @@ public class AbmResourceProvider implements IResourceProvider {
             return locations;
 
         } catch (Exception e) {
-            logger.error("Error al obtener provincias: " + e.getMessage());
+            logger.error("Error al obtener provincias: {}", e.getMessage());
             return new ArrayList<>();
         }
     }
@@ -97,7 +107,6 @@ public class AbmResourceProvider implements IResourceProvider {
     public List<Location> searchCities(RequestDetails requestDetails) {
         try {
             String token = requestDetails.getHeader("Authorization");
-            RestTemplate restTemplate = new RestTemplate();
             
             HttpHeaders headers = new HttpHeaders();
             if (token != null && !token.isEmpty()) {
@@ -105,7 +114,7 @@ public class AbmResourceProvider implements IResourceProvider {
             }
 
             HttpEntity<String> entity = new HttpEntity<>(headers);
-            ResponseEntity<List> response = restTemplate.exchange(
+            ResponseEntity<List> response = backendClient.exchange(
                 buildBackendUrl("/abm/ciudades"), 
                 HttpMethod.GET, 
                 entity, 
@@ -142,7 +151,7 @@ public class AbmResourceProvider implements IResourceProvider {
             return locations;
 
         } catch (Exception e) {
-            logger.error("Error al obtener ciudades: " + e.getMessage());
+            logger.error("Error al obtener ciudades: {}", e.getMessage());
             return new ArrayList<>();
         }
     }
@@ -158,15 +167,13 @@ public class AbmResourceProvider implements IResourceProvider {
             }
             String provinciaIdValue = provinciaId.getValue();
             
-            RestTemplate restTemplate = new RestTemplate();
-            
             HttpHeaders headers = new HttpHeaders();
             if (token != null && !token.isEmpty()) {
                 headers.set("Authorization", token);
             }
 
             HttpEntity<String> entity = new HttpEntity<>(headers);
-            ResponseEntity<List> response = restTemplate.exchange(
+            ResponseEntity<List> response = backendClient.exchange(
                 buildBackendUrl("/abm/ciudades/" + provinciaIdValue), 
                 HttpMethod.GET, 
                 entity, 
@@ -199,20 +206,74 @@ public class AbmResourceProvider implements IResourceProvider {
                 ciudadesDeProvincia.add(location);
             }
 
-            logger.info("searchCitiesByProvince: Found {} cities for province {}", ciudadesDeProvincia.size(), provinciaId);
+            logger.debug("searchCitiesByProvince: Found {} cities for province {}", ciudadesDeProvincia.size(), provinciaId);
             return ciudadesDeProvincia;
 
         } catch (Exception e) {
-            logger.error("Error al obtener ciudades por provincia: " + e.getMessage());
+            logger.error("Error al obtener ciudades por provincia: {}", e.getMessage());
             return new ArrayList<>();
         }
     }
 
+    /**
+     * {@code GET /Location?_id=a,b,c[&_type=province|city]}: provincias y ciudades por id en un solo
+     * Bundle, a partir de los listados de TF_Back (uno por tabla, sin una llamada por id). Los ids
+     * de las dos tablas se superponen: sin {@code _type} se buscan en ambas, con los dos listados
+     * pedidos en paralelo.
+     */
+    @Search
+    public List<Location> searchLocationsById(
+        @RequiredParam(name = "_id") TokenOrListParam idParam,
+        @OptionalParam(name = "_type") StringParam type,
+        RequestDetails requestDetails) {
+
+        String tipo = type != null ? type.getValue() : null;
+        boolean provinces = tipo == null || "province".equalsIgnoreCase(tipo);
+        boolean cities = tipo == null || "city".equalsIgnoreCase(tipo);
+        Set<String> ids = SearchIds.of(idParam);
+
+        try {
+            String token = requestDetails.getHeader("Authorization");
+
+            HttpHeaders headers = new HttpHeaders();
+            if (token != null && !token.isEmpty()) {
+                headers.set("Authorization", token);
+            }
+
+            HttpEntity<String> entity = new HttpEntity<>(headers);
+            CompletableFuture<ResponseEntity<List<Map<String, Object>>>> provincias = provinces
+                ? backendClient.exchangeAsync(buildBackendUrl("/abm/provincias"), HttpMethod.GET, entity,
+                    new ParameterizedTypeReference<List<Map<String, Object>>>() {})
+                : CompletableFuture.completedFuture(null);
+            CompletableFuture<ResponseEntity<List<Map<String, Object>>>> ciudades = cities
+                ? backendClient.exchangeAsync(buildBackendUrl("/abm/ciudades"), HttpMethod.GET, entity,
+                    new ParameterizedTypeReference<List<Map<String, Object>>>() {})
+                : CompletableFuture.completedFuture(null);
+            backendClient.await(CompletableFuture.allOf(provincias, ciudades));
+
+            Map<String, Map<String, Object>> provinciaById = byId(provincias.join(), "id_provincia");
+            Map<String, Map<String, Object>> ciudadById = byId(ciudades.join(), "id_ciudad");
+            List<Location> locations = new ArrayList<>();
+            for (String id : ids) {
+                if (provinciaById.containsKey(id)) {
+                    locations.add(toProvince(provinciaById.get(id)));
+                }
+                if (ciudadById.containsKey(id)) {
+                    locations.add(toCity(ciudadById.get(id)));
+                }
+            }
+            return locations;
+
+        } catch (Exception e) {
+            logger.error("Error en searchLocationsById: {}", e.getMessage());
+            throw new ca.uhn.fhir.rest.server.exceptions.InternalErrorException("Error interno del servidor");
+        }
+    }
+
     @Read
     public Location readProvince(@IdParam IdType id, RequestDetails requestDetails) {
         try {
             String token = requestDetails.getHeader("Authorization");
-            RestTemplate restTemplate = new RestTemplate();
             
             HttpHeaders headers = new HttpHeaders();
             if (token != null && !token.isEmpty()) {
@@ -220,7 +281,7 @@ public class AbmResourceProvider implements IResourceProvider {
             }
 
             HttpEntity<String> entity = new HttpEntity<>(headers);
-            ResponseEntity<List> response = restTemplate.exchange(
+            ResponseEntity<List> response = backendClient.exchange(
                 buildBackendUrl("/abm/provincias"), 
                 HttpMethod.GET, 
                 entity, 
@@ -231,19 +292,7 @@ public class AbmResourceProvider implements IResourceProvider {
             
             for (Map<String, Object> provincia : provincias) {
                 if (provincia.get("id_provincia").toString().equals(id.getIdPart())) {
-                    Location location = new Location();
-                    location.setId(provincia.get("id_provincia").toString());
-                    location.setName(provincia.get("nombre").toString());
-                    location.setStatus(Location.LocationStatus.ACTIVE);
-                    
-                    CodeableConcept type = new CodeableConcept();
-                    type.addCoding()
-                        .setSystem("http://terminology.hl7.org/CodeSystem/v3-RoleCode")
-                        .setCode("PROV")
-                        .setDisplay("Provincia");
-                    location.addType(type);
-
-                    return location;
+                    return toProvince(provincia);
                 }
             }
 
@@ -253,7 +302,7 @@ public class AbmResourceProvider implements IResourceProvider {
             if (e instanceof ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException) {
                 throw e;
             }
-            logger.error("Error al obtener provincia: " + e.getMessage());
+            logger.error("Error al obtener provincia: {}", e.getMessage());
             throw new ca.uhn.fhir.rest.server.exceptions.InternalErrorException("Error interno del servidor");
         }
     }
@@ -262,7 +311,6 @@ public class AbmResourceProvider implements IResourceProvider {
     public Location readCity(@IdParam IdType id, RequestDetails requestDetails) {
         try {
             String token = requestDetails.getHeader("Authorization");
-            RestTemplate restTemplate = new RestTemplate();
             
             HttpHeaders headers = new HttpHeaders();
             if (token != null && !token.isEmpty()) {
@@ -270,7 +318,7 @@ public class AbmResourceProvider implements IResourceProvider {
             }
 
             HttpEntity<String> entity = new HttpEntity<>(headers);
-            ResponseEntity<List> response = restTemplate.exchange(
+            ResponseEntity<List> response = backendClient.exchange(
                 buildBackendUrl("/abm/ciudades"), 
                 HttpMethod.GET, 
                 entity, 
@@ -281,25 +329,7 @@ public class AbmResourceProvider implements IResourceProvider {
             
             for (Map<String, Object> ciudad : ciudades) {
                 if (ciudad.get("id_ciudad").toString().equals(id.getIdPart())) {
-                    Location location = new Location();
-                    location.setId(ciudad.get("id_ciudad").toString());
-                    location.setName(ciudad.get("nombre").toString());
-                    location.setStatus(Location.LocationStatus.ACTIVE);
-                    
-                    CodeableConcept type = new CodeableConcept();
-                    type.addCoding()
-                        .setSystem("http://terminology.hl7.org/CodeSystem/v3-RoleCode")
-                        .setCode("CITY")
-                        .setDisplay("Ciudad");
-                    location.addType(type);
-
-                    if (ciudad.get("id_provincia") != null) {
-                        Reference partOf = new Reference();
-                        partOf.setReference("Location/" + ciudad.get("id_provincia"));
-                        location.setPartOf(partOf);
-                    }
-
-                    return location;
+                    return toCity(ciudad);
                 }
             }
 
@@ -309,8 +339,56 @@ public class AbmResourceProvider implements IResourceProvider {
             if (e instanceof ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException) {
                 throw e;
             }
-            logger.error("Error al obtener ciudad: " + e.getMessage());
+            logger.error("Error al obtener ciudad: {}", e.getMessage());
             throw new ca.uhn.fhir.rest.server.exceptions.InternalErrorException("Error interno del servidor");
         }
     }
+
+    private static Map<String, Map<String, Object>> byId(ResponseEntity<List<Map<String, Object>>> response, String idKey) {
+        Map<String, Map<String, Object>> rows = new HashMap<>();
+        if (response != null && response.getBody() != null) {
+            for (Map<String, Object> row : response.getBody()) {
+                if (row.get(idKey) != null) {
+                    rows.put(row.get(idKey).toString(), row);
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static Location toProvince(Map<String, Object> provincia) {
+        Location location = new Location();
+        location.setId(provincia.get("id_provincia").toString());
+        location.setName(provincia.get("nombre").toString());
+        location.setStatus(Location.LocationStatus.ACTIVE);
+
+        CodeableConcept type = new CodeableConcept();
+        type.addCoding()
+            .setSystem("http://terminology.hl7.org/CodeSystem/v3-RoleCode")
+            .setCode("PROV")
+            .setDisplay("Provincia");
+        location.addType(type);
+        return location;
+    }
+
+    private static Location toCity(Map<String, Object> ciudad) {
+        Location location = new Location();
+        location.setId(ciudad.get("id_ciudad").toString());
+        location.setName(ciudad.get("nombre").toString());
+        location.setStatus(Location.LocationStatus.ACTIVE);
+
+        CodeableConcept type = new CodeableConcept();
+        type.addCoding()
+            .setSystem("http://terminology.hl7.org/CodeSystem/v3-RoleCode")
+            .setCode("CITY")
+            .setDisplay("Ciudad");
+        location.addType(type);
+
+        if (ciudad.get("id_provincia") != null) {
+            Reference partOf = new Reference();
+            partOf.setReference("Location/" + ciudad.get("id_provincia"));
+            location.setPartOf(partOf);
+        }
+        return location;
+    }
 }
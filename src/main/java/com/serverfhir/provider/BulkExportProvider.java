@@ -0,0 +1,265 @@
+package com.serverfhir.provider;
+
+import ca.uhn.fhir.rest.annotation.Operation;
+import ca.uhn.fhir.rest.annotation.OperationParam;
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
+import ca.uhn.fhir.rest.server.exceptions.AuthenticationException;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import ca.uhn.fhir.rest.server.exceptions.UnclassifiedServerFailureException;
+import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.serverfhir.export.BulkExportService;
+import com.serverfhir.export.ExportJob;
+import com.serverfhir.service.JwtService;
+import com.serverfhir.util.LastUpdated;
+import jakarta.servlet.http.HttpServletResponse;
+import org.hl7.fhir.r5.model.DiagnosticReport;
+import org.hl7.fhir.r5.model.InstantType;
+import org.hl7.fhir.r5.model.Resource;
+import org.hl7.fhir.r5.model.StringType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Bulk Data {@code $export} (nivel sistema): el kick-off encola la exportación en
+ * {@link BulkExportService} y responde 202 con la URL de estado; {@code $export-poll-status}
+ * informa el progreso y, al terminar, el manifiesto con las URLs de descarga de los NDJSON
+ * ({@code /api/export/{job}/{archivo}}, con el mismo token).
+ *
+ * TF_Back no tiene un listado global de informes ni de archivos, así que DiagnosticReport y
+ * DocumentReference se piden paciente por paciente. La lista de pacientes se guarda en un archivo
+ * de trabajo del job y se lee línea por línea, sin tenerla en memoria.
+ */
+@Component
+public class BulkExportProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkExportProvider.class);
+
+    private static final List<String> TYPES = List.of("Patient", "DiagnosticReport", "DocumentReference");
+    private static final Set<String> OUTPUT_FORMATS = Set.of("application/fhir+ndjson", "application/ndjson", "ndjson");
+    private static final String PATIENT_IDS = "patients.ids";
+    private static final String RETRY_AFTER_SECONDS = "5";
+
+    @Autowired
+    private BulkExportService bulkExportService;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Autowired
+    private PatientResourceProvider patientResourceProvider;
+
+    @Autowired
+    private ReportResourceProvider reportResourceProvider;
+
+    @Autowired
+    private DocumentReferenceResourceProvider documentReferenceResourceProvider;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // GET /fhir/$export[?_type=Patient,DiagnosticReport][&_since=...]  (Prefer: respond-async)
+    @Operation(name = "$export", idempotent = true, manualResponse = true)
+    public void export(
+            @OperationParam(name = "_type") StringType typeParam,
+            @OperationParam(name = "_since") InstantType sinceParam,
+            @OperationParam(name = "_outputFormat") StringType outputFormat,
+            ServletRequestDetails requestDetails) {
+
+        String prefer = requestDetails.getHeader("Prefer");
+        if (prefer == null || !prefer.contains("respond-async")) {
+            throw new InvalidRequestException("$export requiere el header Prefer: respond-async");
+        }
+        if (outputFormat != null && outputFormat.hasValue() && !OUTPUT_FORMATS.contains(outputFormat.getValue())) {
+            throw new InvalidRequestException("_outputFormat no soportado: " + outputFormat.getValue()
+                    + ". Disponible: application/fhir+ndjson");
+        }
+        List<String> types = types(typeParam);
+        Instant since = sinceParam != null && sinceParam.getValue() != null ? sinceParam.getValue().toInstant() : null;
+
+        String authorization = requestDetails.getHeader("Authorization");
+        if (jwtService.getUserScope(authorization) == null) {
+            throw new AuthenticationException("Token inválido o expirado");
+        }
+
+        ExportJob job = bulkExportService.start(types, since, authorization, requestDetails.getCompleteUrl(), this::export);
+        if (job == null) {
+            throw new UnclassifiedServerFailureException(429,
+                    "Hay demasiadas exportaciones en cola; reintente más tarde");
+        }
+
+        HttpServletResponse response = requestDetails.getServletResponse();
+        response.setStatus(HttpServletResponse.SC_ACCEPTED);
+        response.setHeader("Content-Location",
+                requestDetails.getFhirServerBase() + "/$export-poll-status?_jobId=" + job.id());
+    }
+
+    // GET /fhir/$export-poll-status?_jobId=...     estado o manifiesto
+    // DELETE /fhir/$export-poll-status?_jobId=...  cancela la exportación y borra sus archivos
+    @Operation(name = "$export-poll-status", idempotent = true, manualResponse = true, deleteEnabled = true)
+    public void exportPollStatus(
+            @OperationParam(name = "_jobId", min = 1) StringType jobId,
+            ServletRequestDetails requestDetails) throws IOException {
+
+        String authorization = requestDetails.getHeader("Authorization");
+        String id = jobId != null ? jobId.getValue() : null;
+        HttpServletResponse response = requestDetails.getServletResponse();
+
+        if (requestDetails.getRequestType() == RequestTypeEnum.DELETE) {
+            if (!bulkExportService.cancel(id, authorization)) {
+                throw new ResourceNotFoundException("Exportación no encontrada: " + id);
+            }
+            response.setStatus(HttpServletResponse.SC_ACCEPTED);
+            return;
+        }
+
+        ExportJob job = bulkExportService.get(id, authorization);
+        if (job == null || job.status() == ExportJob.Status.CANCELLED) {
+            throw new ResourceNotFoundException("Exportación no encontrada: " + id);
+        }
+        switch (job.status()) {
+            case ERROR -> throw new ca.uhn.fhir.rest.server.exceptions.InternalErrorException(
+                    "La exportación falló: " + job.error());
+            case COMPLETE -> {
+                response.setStatus(HttpServletResponse.SC_OK);
+                response.setContentType("application/json");
+                response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+                objectMapper.writeValue(response.getOutputStream(), manifest(job, requestDetails.getFhirServerBase()));
+            }
+            default -> {
+                response.setStatus(HttpServletResponse.SC_ACCEPTED);
+                response.setHeader("X-Progress", job.progress());
+                response.setHeader("Retry-After", RETRY_AFTER_SECONDS);
+            }
+        }
+    }
+
+    private static List<String> types(StringType typeParam) {
+        if (typeParam == null || !typeParam.hasValue() || typeParam.getValue().isBlank()) {
+            return TYPES;
+        }
+        Set<String> types = new LinkedHashSet<>();
+        for (String type : typeParam.getValue().split(",")) {
+            String trimmed = type.trim();
+            if (!TYPES.contains(trimmed)) {
+                throw new InvalidRequestException("_type no soportado: " + trimmed + ". Disponibles: " + TYPES);
+            }
+            types.add(trimmed);
+        }
+        return List.copyOf(types);
+    }
+
+    private static Map<String, Object> manifest(ExportJob job, String fhirServerBase) {
+        String root = fhirServerBase.endsWith("/fhir")
+                ? fhirServerBase.substring(0, fhirServerBase.length() - "/fhir".length())
+                : fhirServerBase;
+        List<Map<String, Object>> output = new ArrayList<>();
+        for (ExportJob.Output file : job.outputs()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("type", file.type());
+            entry.put("url", root + "/api/export/" + job.id() + "/" + file.fileName());
+            entry.put("count", file.count());
+            output.add(entry);
+        }
+        Map<String, Object> manifest = new LinkedHashMap<>();
+        manifest.put("transactionTime", job.transactionTime().toString());
+        manifest.put("request", job.request());
+        manifest.put("requiresAccessToken", true);
+        manifest.put("output", output);
+        manifest.put("error", List.of());
+        return manifest;
+    }
+
+    // ========== FUENTE DE LA EXPORTACIÓN (hilo de BulkExportService) ==========
+
+    private void export(String type, ExportJob job, Consumer<? super Resource> sink) {
+        String token = job.authorization();
+        switch (type) {
+            case "Patient" -> {
+                job.beforeBackendCall();
+                patientResourceProvider.streamPatients(job.since(), token, patient -> {
+                    job.checkCancelled();
+                    sink.accept(patient);
+                });
+            }
+            case "DiagnosticReport" -> forEachPatient(job, patientId -> {
+                for (DiagnosticReport report : reportResourceProvider.reportsOf(patientId, token)) {
+                    // _since: solo los informes creados desde esa fecha
+                    if (LastUpdated.matches(report, job.since(), null)) {
+                        sink.accept(report);
+                    }
+                }
+            });
+            // Los archivos no tienen fecha en TF_Back: _since no los filtra
+            case "DocumentReference" -> forEachPatient(job, patientId ->
+                    documentReferenceResourceProvider.filesOf(patientId, null, token).forEach(sink));
+            default -> throw new IllegalArgumentException("Tipo no exportable: " + type);
+        }
+    }
+
+    /**
+     * Aplica {@code action} a cada paciente (incluidos los inactivos), espaciando las llamadas a
+     * TF_Back. Los pacientes que no existen o que el usuario no puede ver se saltean.
+     */
+    private void forEachPatient(ExportJob job, Consumer<String> action) {
+        Path roster = job.directory().resolve(PATIENT_IDS);
+        try {
+            if (!Files.exists(roster)) {
+                writeRoster(job, roster);
+            }
+            try (BufferedReader reader = Files.newBufferedReader(roster, StandardCharsets.UTF_8)) {
+                String patientId;
+                while ((patientId = reader.readLine()) != null) {
+                    job.beforeBackendCall();
+                    try {
+                        action.accept(patientId);
+                    } catch (HttpClientErrorException.NotFound | HttpClientErrorException.Forbidden e) {
+                        logger.debug("Exportación {}: paciente {} salteado ({})", job.id(), patientId, e.getStatusCode());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeRoster(ExportJob job, Path roster) throws IOException {
+        job.beforeBackendCall();
+        Path partial = job.directory().resolve(PATIENT_IDS + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(partial, StandardCharsets.UTF_8)) {
+            patientResourceProvider.streamPatients(null, job.authorization(), patient -> {
+                job.checkCancelled();
+                String patientId = patient.getIdElement().getIdPart();
+                if (patientId == null) {
+                    return;
+                }
+                try {
+                    writer.write(patientId);
+                    writer.newLine();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        Files.move(partial, roster);
+    }
+}
@@ -23,9 +23,10 @@ import org.hl7.fhir.r5.model.Bundle.BundleType;
 import org.hl7.fhir.r5.model.StringType;
 import org.hl7.fhir.r5.model.DocumentReference.DocumentReferenceContentComponent;
 import org.hl7.fhir.r5.model.DocumentReference.DocumentReferenceStatus;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
+import com.serverfhir.service.BackendClient;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
@@ -42,6 +43,9 @@ public class DocumentReferenceResourceProvider implements IResourceProvider {
 
     private static final Logger logger = LoggerFactory.getLogger(DocumentReferenceResourceProvider.class);
 
+    @Autowired
+    private BackendClient backendClient;
+
     @Value("${tfback.url}")
     private String tfBackUrl;
 
@@ -105,74 +109,74 @@ public class DocumentReferenceResourceProvider implements IResourceProvider {
             @OptionalParam(name = "fileType") StringParam fileType,
             RequestDetails requestDetails) {
 
-        logger.info("Buscando archivos para paciente con hashId: " +
-                (patientHashId != null ? patientHashId.getValue() : "null"));
+        logger.debug("Buscando archivos para paciente con hashId: {}", (patientHashId != null ? patientHashId.getValue() : "null"));
 
         if (patientHashId == null || patientHashId.getValue() == null || patientHashId.getValue().isEmpty()) {
             logger.warn("No se proporcionó hashId del paciente");
             return new ArrayList<>();
         }
 
-        RestTemplate restTemplate = new RestTemplate();
-
         // Obtener el token del contexto de la petición
         String token = requestDetails.getHeader("Authorization");
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-
-        // Agregar el token de autorización a los headers
-        if (token != null && !token.isEmpty()) {
-            headers.set("Authorization", token);
-        } else {
+        if (token == null || token.isEmpty()) {
             logger.error("No se encontró el token de autorización");
             throw new RuntimeException("No se pudo consultar los archivos. No se encontró el accessToken.");
         }
 
-        HttpEntity<String> request = new HttpEntity<>(headers);
-
         try {
-            String url = buildBackendUrl("/file") + "?hash_id=" + patientHashId.getValue();
-            if (fileType != null && fileType.getValue() != null && !fileType.getValue().isEmpty()) {
-                url += "&fileType=" + fileType.getValue();
-            }
-            
-            logger.info("Consultando archivos en: " + url);
-
-            @SuppressWarnings("rawtypes")
-            ResponseEntity<List> response = restTemplate.exchange(
-                    url,
-                    org.springframework.http.HttpMethod.GET,
-                    request,
-                    List.class);
-
-            logger.info("Respuesta recibida del backend - Status: " + response.getStatusCode());
-
-            if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
-                @SuppressWarnings("unchecked")
-                List<Map<String, Object>> filesData = (List<Map<String, Object>>) response.getBody();
-
-                List<DocumentReference> documentReferences = new ArrayList<>();
-
-                for (Map<String, Object> fileData : filesData) {
-                    DocumentReference documentReference = convertToDocumentReference(fileData, patientHashId.getValue());
-                    documentReferences.add(documentReference);
-                }
-
-                logger.info("Se encontraron " + documentReferences.size() + " archivos para el paciente");
-                return documentReferences;
-            } else {
-                logger.warn("No se encontraron archivos o error en la respuesta: " + response.getStatusCode());
-                return new ArrayList<>();
-            }
-
+            String type = fileType != null && fileType.getValue() != null && !fileType.getValue().isEmpty()
+                    ? fileType.getValue()
+                    : null;
+            List<DocumentReference> documentReferences = filesOf(patientHashId.getValue(), type, token);
+            logger.debug("Se encontraron {} archivos para el paciente", documentReferences.size());
+            return documentReferences;
         } catch (Exception e) {
-            logger.error("Error al consultar los archivos: " + e.getMessage(), e);
+            logger.error("Error al consultar los archivos: {}", e.getMessage(), e);
             throw new ca.uhn.fhir.rest.server.exceptions.InternalErrorException(
                     "No se pudieron consultar los archivos: " + e.getMessage());
         }
     }
 
+    /**
+     * Archivos de un paciente ({@code GET /file?hash_id=}), opcionalmente de un tipo. Lo usan la
+     * búsqueda y la exportación masiva; los errores de TF_Back salen sin envolver.
+     */
+    List<DocumentReference> filesOf(String patientHashId, String fileType, String token) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set("Authorization", token);
+        HttpEntity<String> request = new HttpEntity<>(headers);
+
+        String url = buildBackendUrl("/file") + "?hash_id=" + patientHashId;
+        if (fileType != null) {
+            url += "&fileType=" + fileType;
+        }
+
+        logger.debug("Consultando archivos en: {}", url);
+
+        @SuppressWarnings("rawtypes")
+        ResponseEntity<List> response = backendClient.exchange(
+                url,
+                org.springframework.http.HttpMethod.GET,
+                request,
+                List.class);
+
+        logger.debug("Respuesta recibida del backend - Status: {}", response.getStatusCode());
+
+        List<DocumentReference> documentReferences = new ArrayList<>();
+        if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> filesData = (List<Map<String, Object>>) response.getBody();
+            for (Map<String, Object> fileData : filesData) {
+                documentReferences.add(convertToDocumentReference(fileData, patientHashId));
+            }
+        } else {
+            logger.warn("No se encontraron archivos o error en la respuesta: {}", response.getStatusCode());
+        }
+        return documentReferences;
+    }
+
     private MethodOutcome createNormalDocumentReference(DocumentReference documentReference, RequestDetails requestDetails) {
         // Implementación para crear DocumentReference normal (sin archivos)
         // Por ahora, solo retornamos un resultado exitoso
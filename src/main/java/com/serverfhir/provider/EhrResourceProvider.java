@@ -1,5 +1,6 @@
 package com.serverfhir.provider;
 
+import ca.uhn.fhir.rest.annotation.History;
 import ca.uhn.fhir.rest.annotation.IdParam;
 import ca.uhn.fhir.rest.annotation.Read;
 import ca.uhn.fhir.rest.annotation.Search;
@@ -7,13 +8,18 @@ import ca.uhn.fhir.rest.annotation.Create;
 import ca.uhn.fhir.rest.annotation.Operation;
 import ca.uhn.fhir.rest.annotation.OperationParam;
 import ca.uhn.fhir.rest.annotation.ResourceParam;
+import ca.uhn.fhir.rest.annotation.Since;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.param.StringParam;
 import ca.uhn.fhir.rest.annotation.RequiredParam;
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import ca.uhn.fhir.rest.server.exceptions.ForbiddenOperationException;
 import org.hl7.fhir.r5.model.DiagnosticReport;
 import org.hl7.fhir.r5.model.IdType;
+import org.hl7.fhir.r5.model.InstantType;
+import org.hl7.fhir.r5.model.ResourceType;
 import org.hl7.fhir.r5.model.CodeableConcept;
 import org.hl7.fhir.r5.model.Reference;
 import org.hl7.fhir.r5.model.Extension;
@@ -21,19 +27,36 @@ import org.hl7.fhir.r5.model.StringType;
 import org.hl7.fhir.r5.model.DateTimeType;
 import org.hl7.fhir.r5.model.IntegerType;
 import org.hl7.fhir.r5.model.BooleanType;
+import org.hl7.fhir.r5.model.CodeType;
+import org.hl7.fhir.r5.model.Parameters;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.stereotype.Component;
+import com.serverfhir.util.BackendErrorHandler;
+import com.serverfhir.util.JsonDiff;
+import com.serverfhir.util.LastUpdated;
+import com.serverfhir.util.PayloadLogger;
 import org.hl7.fhir.r5.model.Bundle;
 import org.hl7.fhir.r5.model.Bundle.BundleType;
-import org.springframework.web.client.RestTemplate;
+import com.serverfhir.service.BackendClient;
+import com.serverfhir.service.HistoriaVersionCache;
+import com.serverfhir.subscription.SubscriptionDispatcher;
+import com.serverfhir.subscription.SubscriptionEvent;
+import com.serverfhir.subscription.SubscriptionTopics;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpStatusCodeException;
+import java.time.Instant;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -44,6 +67,18 @@ public class EhrResourceProvider implements IResourceProvider {
 
     private static final Logger logger = LoggerFactory.getLogger(EhrResourceProvider.class);
 
+    @Autowired
+    private BackendClient backendClient;
+
+    @Autowired
+    private PayloadLogger payloadLogger;
+
+    @Autowired
+    private SubscriptionDispatcher subscriptionDispatcher;
+
+    @Autowired
+    private HistoriaVersionCache historiaVersionCache;
+
     @Value("${tfback.url}")
     private String tfBackUrl;
 
@@ -55,6 +90,10 @@ public class EhrResourceProvider implements IResourceProvider {
     }
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    private static final Set<String> VERSION_COLUMNS = Set.of(
+        "id_hc_fisiatrica", "version_number", "effective_from", "effective_to", "is_current",
+        "fecha_creacion", "fecha_modificacion");
+
     @Override
     public Class<DiagnosticReport> getResourceType() {
         return DiagnosticReport.class;
@@ -69,21 +108,20 @@ public class EhrResourceProvider implements IResourceProvider {
 
         try {
             String token = requestDetails.getHeader("Authorization");
-            RestTemplate restTemplate = new RestTemplate();
 
             HttpHeaders headers = new HttpHeaders();
             if (token != null && !token.isEmpty()) {
                 headers.set("Authorization", token);
             }
 
-            logger.info("patientId", patientId.getValue());
+            logger.debug("patientId: {}", patientId.getValue());
 
             // Llamar al endpoint del backend para obtener la historia fisiatrica
             String backendUrl = buildBackendUrl("/ehr/hc-fisiatric/" + patientId.getValue());
-            logger.info("Llamando al backend con URL: " + backendUrl);
+            logger.debug("Llamando al backend con URL: {}", backendUrl);
             
             HttpEntity<String> entity = new HttpEntity<>(headers);
-            ResponseEntity<Map<String, Object>> response = restTemplate.exchange(
+            ResponseEntity<Map<String, Object>> response = backendClient.exchange(
                 backendUrl,
                 HttpMethod.GET,
                 entity,
@@ -103,7 +141,7 @@ public class EhrResourceProvider implements IResourceProvider {
             return reports;
 
         } catch (Exception e) {
-            logger.error("Error en searchHistoriaFisiatrica: " + e.getMessage());
+            logger.error("Error en searchHistoriaFisiatrica: {}", e.getMessage());
             return new ArrayList<>();
         }
     }
@@ -136,41 +174,293 @@ public class EhrResourceProvider implements IResourceProvider {
     ) {
         Bundle bundle = new Bundle();
         bundle.setType(BundleType.SEARCHSET);
+        if (patientId == null || !patientId.hasValue()) {
+            return bundle;
+        }
         try {
-            if (patientId == null || !patientId.hasValue()) {
-                return bundle;
+            for (DiagnosticReport report : historiaVersions(patientId.getValue(), requestDetails.getHeader("Authorization"))) {
+                bundle.addEntry().setResource(report);
             }
-            String token = requestDetails.getHeader("Authorization");
-            RestTemplate restTemplate = new RestTemplate();
-            HttpHeaders headers = new HttpHeaders();
-            if (token != null && !token.isEmpty()) {
-                headers.set("Authorization", token);
+        } catch (Exception e) {
+            logger.error("Error en getHistoriaHistoryOperation: {}", e.getMessage());
+        }
+        return bundle;
+    }
+
+    /**
+     * Todas las versiones de la historia fisiátrica del paciente, con {@code meta.versionId} =
+     * {@code version_number} y {@code meta.lastUpdated} = {@code effective_from} (o
+     * {@code fecha_creacion}). Lo usan {@code $get-historia-history} y los {@code _history} de
+     * DiagnosticReport. El listado se pide siempre a TF_Back (puede haber versiones nuevas), pero
+     * las versiones pasadas se mapean una sola vez (HistoriaVersionCache).
+     */
+    List<DiagnosticReport> historiaVersions(String patientId, String token) {
+        List<DiagnosticReport> versions = new ArrayList<>();
+        for (Map<String, Object> row : historiaRows(patientId, token)) {
+            versions.add(historiaVersion(row, patientId).report());
+        }
+        return versions;
+    }
+
+    /**
+     * Filas de {@code /ehr/hc-fisiatric/{hash_id}/history}, una por versión. Deja anotado en el
+     * cache que este usuario puede ver el historial del paciente.
+     */
+    private List<Map<String, Object>> historiaRows(String patientId, String token) {
+        HttpHeaders headers = new HttpHeaders();
+        if (token != null && !token.isEmpty()) {
+            headers.set("Authorization", token);
+        }
+        String backendUrl = buildBackendUrl("/ehr/hc-fisiatric/" + patientId + "/history");
+        logger.debug("Llamando al backend historial con URL: {}", backendUrl);
+        HttpEntity<String> entity = new HttpEntity<>(headers);
+        ResponseEntity<List<Map<String, Object>>> response = backendClient.exchange(
+            backendUrl,
+            HttpMethod.GET,
+            entity,
+            new ParameterizedTypeReference<List<Map<String, Object>>>() {}
+        );
+        List<Map<String, Object>> history = response.getBody();
+        if (history == null) {
+            return List.of();
+        }
+        historiaVersionCache.grant(patientId, token);
+        return history;
+    }
+
+    /**
+     * Una fila del historial mapeada y con sus campos parseados. Las versiones pasadas salen del
+     * cache o se guardan en él; la vigente se mapea siempre.
+     */
+    private HistoriaVersionCache.Version historiaVersion(Map<String, Object> row, String patientId) {
+        Integer versionNumber = versionNumber(row);
+        // Sin is_current se la trata como vigente (no se cachea)
+        boolean past = versionNumber != null && Boolean.FALSE.equals(row.get("is_current"));
+        HistoriaVersionCache.Version cached = past ? historiaVersionCache.get(patientId, versionNumber) : null;
+        if (cached != null) {
+            return cached;
+        }
+        Map<String, Object> fields = parseFields(row);
+        DiagnosticReport report = convertVersion(row, patientId);
+        if (past) {
+            historiaVersionCache.put(patientId, versionNumber, report, fields);
+        }
+        return new HistoriaVersionCache.Version(report, fields);
+    }
+
+    private static Integer versionNumber(Map<String, Object> row) {
+        return row.get("version_number") instanceof Number n ? n.intValue() : null;
+    }
+
+    private DiagnosticReport convertVersion(Map<String, Object> row, String patientId) {
+        if (row.get("fecha_creacion") == null && row.get("effective_from") != null) {
+            row.put("fecha_creacion", row.get("effective_from"));
+        }
+        DiagnosticReport report = convertToDiagnosticReport(row, patientId);
+        addVersionExtensions(report, row);
+        if (row.get("version_number") != null) {
+            report.getMeta().setVersionId(row.get("version_number").toString());
+        }
+        LastUpdated.stamp(report, row.get("effective_from") != null ? row.get("effective_from") : row.get("fecha_creacion"));
+        return report;
+    }
+
+    /**
+     * Historial de la historia fisiátrica como recurso versionado:
+     * {@code GET /DiagnosticReport/{hash_id}/_history}. TF_Back versiona la historia por paciente,
+     * así que el id lógico es el hash_id del paciente; cada versión va con
+     * {@code versionId = version_number} y su {@code id_hc_fisiatrica} como identifier.
+     */
+    @History
+    public List<DiagnosticReport> historiaInstanceHistory(@IdParam IdType id, @Since InstantType since,
+                                                          RequestDetails requestDetails) {
+        Instant from = since != null && since.getValue() != null ? since.getValue().toInstant() : null;
+        List<DiagnosticReport> versions = new ArrayList<>();
+        try {
+            for (DiagnosticReport report : historiaVersions(id.getIdPart(), requestDetails.getHeader("Authorization"))) {
+                versions.add(asVersionOf(id.getIdPart(), report));
             }
-            String backendUrl = buildBackendUrl("/ehr/hc-fisiatric/" + patientId.getValue() + "/history");
-            logger.info("Llamando al backend historial con URL: " + backendUrl);
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-            ResponseEntity<List<Map<String, Object>>> response = restTemplate.exchange(
-                backendUrl,
-                HttpMethod.GET,
-                entity,
-                new ParameterizedTypeReference<List<Map<String, Object>>>() {}
-            );
-            List<Map<String, Object>> history = response.getBody();
-            if (history == null || history.isEmpty()) {
-                return bundle;
+        } catch (Exception e) {
+            throw historiaError(e, "No se pudo obtener el historial");
+        }
+        return LastUpdated.newestFirst(versions, from, null);
+    }
+
+    /**
+     * vread de una versión: {@code GET /DiagnosticReport/{hash_id}/_history/{version_number}}.
+     * Si el usuario ya obtuvo el historial del paciente y la versión está en el cache, no se
+     * llama a TF_Back.
+     */
+    private DiagnosticReport vreadHistoria(IdType id, RequestDetails requestDetails) {
+        String patientId = id.getIdPart();
+        int versionNumber;
+        try {
+            versionNumber = Integer.parseInt(id.getVersionIdPart());
+        } catch (NumberFormatException e) {
+            throw new ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException(id);
+        }
+        String token = requestDetails.getHeader("Authorization");
+        if (historiaVersionCache.isGranted(patientId, token)) {
+            HistoriaVersionCache.Version cached = historiaVersionCache.get(patientId, versionNumber);
+            if (cached != null) {
+                return asVersionOf(patientId, cached.report());
             }
-            for (Map<String, Object> row : history) {
-                if (row.get("fecha_creacion") == null && row.get("effective_from") != null) {
-                    row.put("fecha_creacion", row.get("effective_from"));
+        }
+        List<DiagnosticReport> versions;
+        try {
+            versions = historiaVersions(patientId, token);
+        } catch (Exception e) {
+            throw historiaError(e, "No se pudo obtener la versión");
+        }
+        for (DiagnosticReport report : versions) {
+            if (id.getVersionIdPart().equals(report.getMeta().getVersionId())) {
+                return asVersionOf(patientId, report);
+            }
+        }
+        throw new ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException(id);
+    }
+
+    /**
+     * Diferencia entre dos versiones de la historia fisiátrica:
+     * {@code GET /DiagnosticReport/{hash_id}/$diff?from={version_number}&to={version_number}}.
+     * Solo los campos que cambian entre las dos versiones, como {@code operation} (type
+     * {@code insert}/{@code delete}/{@code replace}, {@code path}, {@code previousValue},
+     * {@code value}), en vez de todas las versiones completas de {@code $get-historia-history}.
+     * Los campos JSON ({@code examen_fisico}, {@code antecedentes}, ...) se comparan hoja por hoja;
+     * los valores que son objetos o listas van como JSON. Las versiones pasadas ya parseadas salen
+     * del cache; solo se pide el historial a TF_Back si falta alguna (o la vigente).
+     */
+    @Operation(name = "$diff", idempotent = true)
+    public Parameters diffHistoria(
+        @IdParam IdType id,
+        @OperationParam(name = "from", min = 1) IntegerType from,
+        @OperationParam(name = "to", min = 1) IntegerType to,
+        RequestDetails requestDetails
+    ) {
+        if (from == null || from.getValue() == null || to == null || to.getValue() == null) {
+            throw new ca.uhn.fhir.rest.server.exceptions.InvalidRequestException("$diff requiere los parámetros from y to (version_number)");
+        }
+        String patientId = id.getIdPart();
+        String token = requestDetails.getHeader("Authorization");
+        Map<String, Object> fromFields = null;
+        Map<String, Object> toFields = null;
+        if (historiaVersionCache.isGranted(patientId, token)) {
+            HistoriaVersionCache.Version cachedFrom = historiaVersionCache.get(patientId, from.getValue());
+            HistoriaVersionCache.Version cachedTo = historiaVersionCache.get(patientId, to.getValue());
+            fromFields = cachedFrom == null ? null : cachedFrom.fields();
+            toFields = cachedTo == null ? null : cachedTo.fields();
+        }
+        if (fromFields == null || toFields == null) {
+            try {
+                for (Map<String, Object> row : historiaRows(patientId, token)) {
+                    Integer versionNumber = versionNumber(row);
+                    if (!from.getValue().equals(versionNumber) && !to.getValue().equals(versionNumber)) {
+                        continue;
+                    }
+                    Map<String, Object> fields = historiaVersion(row, patientId).fields();
+                    if (from.getValue().equals(versionNumber)) {
+                        fromFields = fields;
+                    }
+                    if (to.getValue().equals(versionNumber)) {
+                        toFields = fields;
+                    }
                 }
-                DiagnosticReport report = convertToDiagnosticReport(row, patientId.getValue());
-                addVersionExtensions(report, row);
-                bundle.addEntry().setResource(report);
+            } catch (Exception e) {
+                throw historiaError(e, "No se pudo obtener el historial");
             }
-        } catch (Exception e) {
-            logger.error("Error en getHistoriaHistoryOperation: " + e.getMessage());
         }
-        return bundle;
+        if (fromFields == null || toFields == null) {
+            throw new ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException(
+                "DiagnosticReport/" + patientId + " no tiene la versión " + (fromFields == null ? from.getValue() : to.getValue()));
+        }
+
+        List<JsonDiff.Change> changes = JsonDiff.diff(fromFields, toFields);
+        logger.debug("$diff de la historia {}: versiones {} -> {}, {} cambios", patientId, from.getValue(), to.getValue(), changes.size());
+        Parameters parameters = new Parameters();
+        parameters.addParameter().setName("from").setValue(new IntegerType(from.getValue()));
+        parameters.addParameter().setName("to").setValue(new IntegerType(to.getValue()));
+        for (JsonDiff.Change change : changes) {
+            Parameters.ParametersParameterComponent operation = parameters.addParameter().setName("operation");
+            operation.addPart().setName("type").setValue(new CodeType(change.type()));
+            operation.addPart().setName("path").setValue(new StringType(change.path()));
+            if (change.previous() != null) {
+                operation.addPart().setName("previousValue").setValue(new StringType(diffValue(change.previous())));
+            }
+            if (change.value() != null) {
+                operation.addPart().setName("value").setValue(new StringType(diffValue(change.value())));
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Error al leer el historial como excepción FHIR: 401 y 404 de TF_Back según
+     * BackendErrorHandler, 403 como ForbiddenOperationException y las excepciones FHIR tal cual;
+     * solo lo demás es un 500.
+     */
+    private static BaseServerResponseException historiaError(Exception e, String message) {
+        if (e instanceof BaseServerResponseException fhirException) {
+            return fhirException;
+        }
+        if (e instanceof HttpClientErrorException.Forbidden) {
+            return new ForbiddenOperationException(message + ": acceso prohibido");
+        }
+        if (e instanceof HttpStatusCodeException httpException) {
+            try {
+                BackendErrorHandler.handleHttpException(httpException);
+            } catch (BaseServerResponseException mapped) {
+                return mapped;
+            }
+        }
+        logger.error("{}: {}", message, e.getMessage(), e);
+        return new ca.uhn.fhir.rest.server.exceptions.InternalErrorException(message + ": " + e.getMessage(), e);
+    }
+
+    /**
+     * Columnas de la fila que se comparan, con los campos JSON parseados. Quedan afuera los datos
+     * propios de cada versión (id, número, fechas, vigencia), que siempre difieren.
+     */
+    private Map<String, Object> parseFields(Map<String, Object> row) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : row.entrySet()) {
+            if (VERSION_COLUMNS.contains(entry.getKey())) {
+                continue;
+            }
+            Object value = entry.getValue();
+            if (value instanceof String text && (text.startsWith("{") || text.startsWith("["))) {
+                try {
+                    value = objectMapper.readValue(text, Object.class);
+                } catch (JsonProcessingException e) {
+                    logger.debug("Campo {} de la historia no es JSON, se compara como texto", entry.getKey());
+                }
+            }
+            fields.put(entry.getKey(), value);
+        }
+        return Collections.unmodifiableMap(fields);
+    }
+
+    private String diffValue(Object value) {
+        if (value instanceof Map || value instanceof List) {
+            try {
+                return objectMapper.writeValueAsString(value);
+            } catch (JsonProcessingException e) {
+                return value.toString();
+            }
+        }
+        return value.toString();
+    }
+
+    /**
+     * Re-identifica una versión (copia propia) como {@code DiagnosticReport/{hash_id}/_history/{versión}}.
+     */
+    private DiagnosticReport asVersionOf(String patientId, DiagnosticReport report) {
+        if (report.getIdElement().hasIdPart()) {
+            report.addIdentifier()
+                .setSystem("http://mi-servidor.com/fhir/StructureDefinition/id-hc-fisiatrica")
+                .setValue(report.getIdElement().getIdPart());
+        }
+        report.setId(new IdType(ResourceType.DiagnosticReport.name(), patientId, report.getMeta().getVersionId()));
+        return report;
     }
 
     private void addVersionExtensions(DiagnosticReport report, Map<String, Object> row) {
@@ -191,11 +481,13 @@ public class EhrResourceProvider implements IResourceProvider {
         }
     }
 
-    @Read
+    @Read(version = true)
     public DiagnosticReport readHistoriaFisiatrica(@IdParam IdType id, RequestDetails requestDetails) {
+        if (id.hasVersionIdPart()) {
+            return vreadHistoria(id, requestDetails);
+        }
         try {
             String token = requestDetails.getHeader("Authorization");
-            RestTemplate restTemplate = new RestTemplate();
             
             HttpHeaders headers = new HttpHeaders();
             if (token != null && !token.isEmpty()) {
@@ -203,7 +495,7 @@ public class EhrResourceProvider implements IResourceProvider {
             }
 
             HttpEntity<String> entity = new HttpEntity<>(headers);
-            ResponseEntity<Map<String, Object>> response = restTemplate.exchange(
+            ResponseEntity<Map<String, Object>> response = backendClient.exchange(
                 buildBackendUrl("/ehr/hc-fisiatric"), 
                 HttpMethod.POST, 
                 entity, 
@@ -222,7 +514,7 @@ public class EhrResourceProvider implements IResourceProvider {
             if (e instanceof ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException) {
                 throw e;
             }
-            logger.error("Error al obtener historia fisiatrica: " + e.getMessage());
+            logger.error("Error al obtener historia fisiatrica: {}", e.getMessage());
             throw new ca.uhn.fhir.rest.server.exceptions.InternalErrorException("Error interno del servidor");
         }
     }
@@ -246,13 +538,12 @@ public class EhrResourceProvider implements IResourceProvider {
             try {
                 backendData = transformToBackendFormat(diagnosticReport, patientId);
             } catch (JsonProcessingException e) {
-                logger.error("Error al transformar datos a JSON: " + e.getMessage());
+                logger.error("Error al transformar datos a JSON: {}", e.getMessage());
                 throw new ca.uhn.fhir.rest.server.exceptions.InternalErrorException("Error al procesar datos JSON");
             }
             
             // Enviar al backend
             String token = requestDetails.getHeader("Authorization");
-            RestTemplate restTemplate = new RestTemplate();
             
             HttpHeaders headers = new HttpHeaders();
             headers.set("Content-Type", "application/json");
@@ -260,9 +551,9 @@ public class EhrResourceProvider implements IResourceProvider {
                 headers.set("Authorization", token);
             }
 
-            logger.info("Enviando datos al backend: " + backendData);
+            payloadLogger.log(logger, "Enviando datos al backend:", backendData);
             HttpEntity<Map<String, Object>> entity = new HttpEntity<>(backendData, headers);
-            ResponseEntity<Map<String, Object>> response = restTemplate.exchange(
+            ResponseEntity<Map<String, Object>> response = backendClient.exchange(
                 buildBackendUrl("/ehr/hc-fisiatric"),
                 HttpMethod.POST,
                 entity,
@@ -282,15 +573,17 @@ public class EhrResourceProvider implements IResourceProvider {
                 outcome.setResource(diagnosticReport);
                 outcome.setCreated(true);
                 outcome.setId(diagnosticReport.getIdElement());
-                
+
+                subscriptionDispatcher.publish(SubscriptionEvent.diagnosticReport(SubscriptionTopics.CATEGORY_HISTORIA,
+                        diagnosticReport.getIdElement().getIdPart(), patientId, null));
                 return outcome;
             } else {
-                logger.error("Error al crear historia fisiatrica en backend: " + response.getStatusCode());
+                logger.error("Error al crear historia fisiatrica en backend: {}", response.getStatusCode());
                 throw new ca.uhn.fhir.rest.server.exceptions.InternalErrorException("Error al crear historia en backend");
             }
             
         } catch (Exception e) {
-            logger.error("Error al crear historia fisiatrica: " + e.getMessage());
+            logger.error("Error al crear historia fisiatrica: {}", e.getMessage());
             throw new ca.uhn.fhir.rest.server.exceptions.InternalErrorException("Error interno del servidor: " + e.getMessage());
         }
     }
@@ -309,7 +602,7 @@ public class EhrResourceProvider implements IResourceProvider {
     /**
      * Convierte los datos de la historia fisiatrica de la base de datos a un DiagnosticReport FHIR
      */
-    private DiagnosticReport convertToDiagnosticReport(Map<String, Object> hcFisiatrica, String patientId) {
+    DiagnosticReport convertToDiagnosticReport(Map<String, Object> hcFisiatrica, String patientId) {
         DiagnosticReport report = new DiagnosticReport();
         
         // ID del recurso
@@ -331,6 +624,7 @@ public class EhrResourceProvider implements IResourceProvider {
         if (hcFisiatrica.get("fecha_creacion") != null) {
             report.setEffective(new DateTimeType(hcFisiatrica.get("fecha_creacion").toString()));
         }
+        LastUpdated.stamp(report, hcFisiatrica.get("fecha_creacion"));
         
         // Referencia al paciente
         Reference subject = new Reference();
@@ -370,7 +664,7 @@ public class EhrResourceProvider implements IResourceProvider {
                     conclusion.append(evaluacionConsulta.get("estudiosRealizados").toString()).append("\n\n");
                 }
             } catch (Exception e) {
-                logger.warn("Error parseando evaluacion_consulta: " + e.getMessage());
+                logger.warn("Error parseando evaluacion_consulta: {}", e.getMessage());
             }
         }
         
@@ -456,7 +750,7 @@ public class EhrResourceProvider implements IResourceProvider {
         extensions.add(tipoExtension);
         
         // Mapear campos de evaluacion_consulta a extensiones FHIR
-        logger.info("hcFisiatrica.get('evaluacion_consulta')", hcFisiatrica.get("evaluacion_consulta"));
+        payloadLogger.log(logger, "evaluacion_consulta recibida:", hcFisiatrica.get("evaluacion_consulta"));
         if (hcFisiatrica.get("evaluacion_consulta") != null) {
             try {
                 @SuppressWarnings("unchecked")
@@ -497,7 +791,7 @@ public class EhrResourceProvider implements IResourceProvider {
                     extensions.add(ext);
                 }
             } catch (Exception e) {
-                logger.warn("Error parseando evaluacion_consulta para extensiones: " + e.getMessage());
+                logger.warn("Error parseando evaluacion_consulta para extensiones: {}", e.getMessage());
             }
         }
         
@@ -598,7 +892,7 @@ public class EhrResourceProvider implements IResourceProvider {
                     }
                 }
             } catch (Exception e) {
-                logger.warn("Error parseando antecedentes para extensiones: " + e.getMessage());
+                logger.warn("Error parseando antecedentes para extensiones: {}", e.getMessage());
             }
         }
         
@@ -635,7 +929,7 @@ public class EhrResourceProvider implements IResourceProvider {
                     extensions.add(ext);
                 }
             } catch (Exception e) {
-                logger.warn("Error parseando diagnostico_funcional para extensiones: " + e.getMessage());
+                logger.warn("Error parseando diagnostico_funcional para extensiones: {}", e.getMessage());
             }
         }
         
@@ -676,7 +970,7 @@ public class EhrResourceProvider implements IResourceProvider {
     /**
      * Transforma un recurso FHIR DiagnosticReport al formato esperado por el backend
      */
-    private Map<String, Object> transformToBackendFormat(DiagnosticReport diagnosticReport, String patientId) throws JsonProcessingException {
+    Map<String, Object> transformToBackendFormat(DiagnosticReport diagnosticReport, String patientId) throws JsonProcessingException {
         Map<String, Object> backendData = new java.util.HashMap<>();
         
         // Estructura básica esperada por el backend
@@ -6,20 +6,28 @@ import ca.uhn.fhir.rest.annotation.Search;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.param.StringParam;
+import ca.uhn.fhir.rest.param.TokenOrListParam;
+import ca.uhn.fhir.rest.annotation.OptionalParam;
 import ca.uhn.fhir.rest.annotation.RequiredParam;
 import org.hl7.fhir.r5.model.Organization;
 import org.hl7.fhir.r5.model.IdType;
 import org.hl7.fhir.r5.model.CodeableConcept;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
+import com.serverfhir.service.BackendClient;
+import com.serverfhir.util.SearchIds;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,6 +36,9 @@ public class OrganizationResourceProvider implements IResourceProvider {
 
     private static final Logger logger = LoggerFactory.getLogger(OrganizationResourceProvider.class);
 
+    @Autowired
+    private BackendClient backendClient;
+
     @Value("${tfback.url}")
     private String tfBackUrl;
 
@@ -63,7 +74,6 @@ public class OrganizationResourceProvider implements IResourceProvider {
 
         try {
             String token = requestDetails.getHeader("Authorization");
-            RestTemplate restTemplate = new RestTemplate();
 
             HttpHeaders headers = new HttpHeaders();
             if (token != null && !token.isEmpty()) {
@@ -71,7 +81,7 @@ public class OrganizationResourceProvider implements IResourceProvider {
             }
 
             HttpEntity<String> entity = new HttpEntity<>(headers);
-            ResponseEntity<List> response = restTemplate.exchange(
+            ResponseEntity<List> response = backendClient.exchange(
                 buildBackendUrl(endpoint),
                 HttpMethod.GET,
                 entity,
@@ -82,48 +92,76 @@ public class OrganizationResourceProvider implements IResourceProvider {
             List<Organization> organizations = new ArrayList<>();
 
             for (Map<String, Object> row : results) {
-                Organization org = new Organization();
-
-                if ("insurance".equalsIgnoreCase(tipo)) {
-                    org.setId(row.get("id_mutual").toString());
-                    org.setName(row.get("nombre").toString());
-
-                    CodeableConcept t = new CodeableConcept();
-                    t.addCoding()
-                        .setSystem("http://terminology.hl7.org/CodeSystem/organization-type")
-                        .setCode("INS")
-                        .setDisplay("Insurance Company");
-                    org.addType(t);
-
-                } else if ("program".equalsIgnoreCase(tipo)) {
-                    org.setId(row.get("id_prestacion").toString());
-                    org.setName(row.get("nombre").toString());
-
-                    CodeableConcept t = new CodeableConcept();
-                    t.addCoding()
-                        .setSystem("http://terminology.hl7.org/CodeSystem/organization-type")
-                        .setCode("PROG")
-                        .setDisplay("Program");
-                    org.addType(t);
-                }
-
-                org.setActive(true);
-                organizations.add(org);
+                organizations.add("insurance".equalsIgnoreCase(tipo) ? toMutual(row) : toPrestacion(row));
             }
 
             return organizations;
 
         } catch (Exception e) {
-            logger.error("Error en searchOrganizations: " + e.getMessage());
+            logger.error("Error en searchOrganizations: {}", e.getMessage());
             return new ArrayList<>();
         }
     }
 
+    /**
+     * {@code GET /Organization?_id=a,b,c[&_type=insurance|program]}: mutuales y prestaciones por id
+     * en un solo Bundle, a partir de los listados de TF_Back (uno por tabla, sin una llamada por
+     * id). Los ids de las dos tablas se superponen: sin {@code _type} se buscan en ambas, con los
+     * dos listados pedidos en paralelo.
+     */
+    @Search
+    public List<Organization> searchOrganizationsById(
+        @RequiredParam(name = "_id") TokenOrListParam idParam,
+        @OptionalParam(name = "_type") StringParam type,
+        RequestDetails requestDetails) {
+
+        String tipo = type != null ? type.getValue() : null;
+        boolean insurance = tipo == null || "insurance".equalsIgnoreCase(tipo);
+        boolean program = tipo == null || "program".equalsIgnoreCase(tipo);
+        Set<String> ids = SearchIds.of(idParam);
+
+        try {
+            String token = requestDetails.getHeader("Authorization");
+
+            HttpHeaders headers = new HttpHeaders();
+            if (token != null && !token.isEmpty()) {
+                headers.set("Authorization", token);
+            }
+
+            HttpEntity<String> entity = new HttpEntity<>(headers);
+            CompletableFuture<ResponseEntity<List<Map<String, Object>>>> mutuales = insurance
+                ? backendClient.exchangeAsync(buildBackendUrl("/abm/mutuales"), HttpMethod.GET, entity,
+                    new ParameterizedTypeReference<List<Map<String, Object>>>() {})
+                : CompletableFuture.completedFuture(null);
+            CompletableFuture<ResponseEntity<List<Map<String, Object>>>> prestaciones = program
+                ? backendClient.exchangeAsync(buildBackendUrl("/abm/prestaciones"), HttpMethod.GET, entity,
+                    new ParameterizedTypeReference<List<Map<String, Object>>>() {})
+                : CompletableFuture.completedFuture(null);
+            backendClient.await(CompletableFuture.allOf(mutuales, prestaciones));
+
+            Map<String, Map<String, Object>> mutualById = byId(mutuales.join(), "id_mutual");
+            Map<String, Map<String, Object>> prestacionById = byId(prestaciones.join(), "id_prestacion");
+            List<Organization> organizations = new ArrayList<>();
+            for (String id : ids) {
+                if (mutualById.containsKey(id)) {
+                    organizations.add(toMutual(mutualById.get(id)));
+                }
+                if (prestacionById.containsKey(id)) {
+                    organizations.add(toPrestacion(prestacionById.get(id)));
+                }
+            }
+            return organizations;
+
+        } catch (Exception e) {
+            logger.error("Error en searchOrganizationsById: {}", e.getMessage());
+            throw new ca.uhn.fhir.rest.server.exceptions.InternalErrorException("Error interno del servidor");
+        }
+    }
+
     @Read
     public Organization readMutual(@IdParam IdType id, RequestDetails requestDetails) {
         try {
             String token = requestDetails.getHeader("Authorization");
-            RestTemplate restTemplate = new RestTemplate();
             
             HttpHeaders headers = new HttpHeaders();
             if (token != null && !token.isEmpty()) {
@@ -131,7 +169,7 @@ public class OrganizationResourceProvider implements IResourceProvider {
             }
 
             HttpEntity<String> entity = new HttpEntity<>(headers);
-            ResponseEntity<List> response = restTemplate.exchange(
+            ResponseEntity<List> response = backendClient.exchange(
                 buildBackendUrl("/abm/mutuales"), 
                 HttpMethod.GET, 
                 entity, 
@@ -142,19 +180,7 @@ public class OrganizationResourceProvider implements IResourceProvider {
             
             for (Map<String, Object> mutual : mutuales) {
                 if (mutual.get("id_mutual").toString().equals(id.getIdPart())) {
-                    Organization organization = new Organization();
-                    organization.setId(mutual.get("id_mutual").toString());
-                    organization.setName(mutual.get("nombre").toString());
-                    organization.setActive(true);
-                    
-                    CodeableConcept type = new CodeableConcept();
-                    type.addCoding()
-                        .setSystem("http://terminology.hl7.org/CodeSystem/organization-type")
-                        .setCode("INS")
-                        .setDisplay("Insurance Company");
-                    organization.addType(type);
-
-                    return organization;
+                    return toMutual(mutual);
                 }
             }
 
@@ -164,7 +190,7 @@ public class OrganizationResourceProvider implements IResourceProvider {
             if (e instanceof ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException) {
                 throw e;
             }
-            logger.error("Error al obtener mutual: " + e.getMessage());
+            logger.error("Error al obtener mutual: {}", e.getMessage());
             throw new ca.uhn.fhir.rest.server.exceptions.InternalErrorException("Error interno del servidor");
         }
     }
@@ -173,7 +199,6 @@ public class OrganizationResourceProvider implements IResourceProvider {
     public Organization readService(@IdParam IdType id, RequestDetails requestDetails) {
         try {
             String token = requestDetails.getHeader("Authorization");
-            RestTemplate restTemplate = new RestTemplate();
             
             HttpHeaders headers = new HttpHeaders();
             if (token != null && !token.isEmpty()) {
@@ -181,7 +206,7 @@ public class OrganizationResourceProvider implements IResourceProvider {
             }
 
             HttpEntity<String> entity = new HttpEntity<>(headers);
-            ResponseEntity<List> response = restTemplate.exchange(
+            ResponseEntity<List> response = backendClient.exchange(
                 buildBackendUrl("/abm/prestaciones"), 
                 HttpMethod.GET, 
                 entity, 
@@ -192,19 +217,7 @@ public class OrganizationResourceProvider implements IResourceProvider {
             
             for (Map<String, Object> prestacion : prestaciones) {
                 if (prestacion.get("id_prestacion").toString().equals(id.getIdPart())) {
-                    Organization organization = new Organization();
-                    organization.setId(prestacion.get("id_prestacion").toString());
-                    organization.setName(prestacion.get("nombre").toString());
-                    organization.setActive(true);
-                    
-                    CodeableConcept type = new CodeableConcept();
-                    type.addCoding()
-                        .setSystem("http://terminology.hl7.org/CodeSystem/organization-type")
-                        .setCode("PROG")
-                        .setDisplay("Program");
-                    organization.addType(type);
-
-                    return organization;
+                    return toPrestacion(prestacion);
                 }
             }
 
@@ -214,8 +227,50 @@ public class OrganizationResourceProvider implements IResourceProvider {
             if (e instanceof ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException) {
                 throw e;
             }
-            logger.error("Error al obtener prestación: " + e.getMessage());
+            logger.error("Error al obtener prestación: {}", e.getMessage());
             throw new ca.uhn.fhir.rest.server.exceptions.InternalErrorException("Error interno del servidor");
         }
     }
+
+    private static Map<String, Map<String, Object>> byId(ResponseEntity<List<Map<String, Object>>> response, String idKey) {
+        Map<String, Map<String, Object>> rows = new HashMap<>();
+        if (response != null && response.getBody() != null) {
+            for (Map<String, Object> row : response.getBody()) {
+                if (row.get(idKey) != null) {
+                    rows.put(row.get(idKey).toString(), row);
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static Organization toMutual(Map<String, Object> mutual) {
+        Organization organization = new Organization();
+        organization.setId(mutual.get("id_mutual").toString());
+        organization.setName(mutual.get("nombre").toString());
+        organization.setActive(true);
+
+        CodeableConcept type = new CodeableConcept();
+        type.addCoding()
+            .setSystem("http://terminology.hl7.org/CodeSystem/organization-type")
+            .setCode("INS")
+            .setDisplay("Insurance Company");
+        organization.addType(type);
+        return organization;
+    }
+
+    private static Organization toPrestacion(Map<String, Object> prestacion) {
+        Organization organization = new Organization();
+        organization.setId(prestacion.get("id_prestacion").toString());
+        organization.setName(prestacion.get("nombre").toString());
+        organization.setActive(true);
+
+        CodeableConcept type = new CodeableConcept();
+        type.addCoding()
+            .setSystem("http://terminology.hl7.org/CodeSystem/organization-type")
+            .setCode("PROG")
+            .setDisplay("Program");
+        organization.addType(type);
+        return organization;
+    }
 }
@@ -1,24 +1,51 @@
 package com.serverfhir.provider;
 
+import ca.uhn.fhir.rest.annotation.History;
 import ca.uhn.fhir.rest.annotation.IdParam;
 import ca.uhn.fhir.rest.annotation.Read;
 import ca.uhn.fhir.rest.annotation.ResourceParam;
 import ca.uhn.fhir.rest.annotation.Search;
 import ca.uhn.fhir.rest.annotation.Update;
 import ca.uhn.fhir.rest.annotation.OptionalParam;
+import ca.uhn.fhir.rest.annotation.Since;
+import ca.uhn.fhir.rest.param.DateParam;
+import ca.uhn.fhir.rest.param.DateRangeParam;
 import ca.uhn.fhir.rest.param.StringParam;
+import ca.uhn.fhir.rest.param.TokenOrListParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import ca.uhn.fhir.model.api.ResourceMetadataKeyEnum;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import org.hl7.fhir.r5.model.Patient;
 import org.hl7.fhir.r5.model.IdType;
+import org.hl7.fhir.r5.model.InstantType;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
+import com.serverfhir.util.LastUpdated;
+import com.serverfhir.util.PayloadLogger;
+import com.serverfhir.util.SearchIds;
+import com.serverfhir.service.BackendClient;
+import com.serverfhir.service.JwtService;
+import com.serverfhir.service.PatientCache;
+import com.serverfhir.service.PatientReplica;
+import com.serverfhir.service.PatientRoster;
+import com.serverfhir.service.PatientSearchIndex;
+import com.serverfhir.subscription.SubscriptionDispatcher;
+import com.serverfhir.subscription.SubscriptionEvent;
 import org.springframework.http.ResponseEntity;
+import org.springframework.core.ParameterizedTypeReference;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import org.hl7.fhir.r5.model.Extension;
 import org.hl7.fhir.r5.model.StringType;
 import org.hl7.fhir.r5.model.Identifier;
@@ -43,12 +70,42 @@ public class PatientResourceProvider implements IResourceProvider{
 
     private static final Logger logger = LoggerFactory.getLogger(PatientResourceProvider.class);
 
+    @Autowired
+    private BackendClient backendClient;
+
+    @Autowired
+    private PayloadLogger payloadLogger;
+
+    @Autowired
+    private PatientCache patientCache;
+
+    @Autowired
+    private PatientReplica patientReplica;
+
+    @Autowired
+    private PatientSearchIndex patientSearchIndex;
+
+    @Autowired
+    private PatientRoster patientRoster;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Autowired
+    private SubscriptionDispatcher subscriptionDispatcher;
+
     @Value("${tfback.url}")
     private String tfBackUrl;
 
     @Value("${tfback.api.path}")
     private String tfBackApiPath;
 
+    @Value("${fhir.search.patient.id-concurrency:8}")
+    private int idConcurrency;
+
+    @Value("${fhir.search.patient.max-ids:100}")
+    private int maxIds;
+
     private String buildBackendUrl(String path) {
         return tfBackUrl + tfBackApiPath + path;
     }
@@ -56,7 +113,7 @@ public class PatientResourceProvider implements IResourceProvider{
     /**
      * Convierte fecha_modificacion del backend (Long, Date o String) a ISO 8601 para extensión FHIR.
      */
-    private static String formatFechaModificacionToIso(Object value) {
+    static String formatFechaModificacionToIso(Object value) {
         if (value == null) return null;
         try {
             Date date = null;
@@ -79,7 +136,7 @@ public class PatientResourceProvider implements IResourceProvider{
                 return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX").format(date);
             }
         } catch (Exception e) {
-            logger.warn("Error al formatear fecha_modificacion: " + e.getMessage());
+            logger.warn("Error al formatear fecha_modificacion: {}", e.getMessage());
         }
         return null;
     }
@@ -93,11 +150,19 @@ public class PatientResourceProvider implements IResourceProvider{
     public Patient read(@IdParam IdType id, RequestDetails requestDetails) {
         // Validación de token ya se hace en el interceptor
         String hashId = id.getIdPart();
-        RestTemplate restTemplate = new RestTemplate();
     
         // Obtener el token del contexto de la petición
         String token = requestDetails.getHeader("Authorization");
-        
+
+        return patientCache.get(hashId, token, () -> fetchPatient(hashId, token));
+    }
+
+    private Patient fetchPatient(String hashId, String token) {
+        Map<String, Object> local = patientReplica.detail(hashId, jwtService.getUserScope(token));
+        if (local != null) {
+            return mapToPatient(hashId, local);
+        }
+
         String url = buildBackendUrl("/patient/{hash_id}");
         Map<String, String> params = new HashMap<>();
         params.put("hash_id", hashId);
@@ -110,286 +175,158 @@ public class PatientResourceProvider implements IResourceProvider{
     
         try {
             HttpEntity<String> entity = new HttpEntity<>(headers);
-            ResponseEntity<Map> response = restTemplate.exchange(url, org.springframework.http.HttpMethod.GET, entity, Map.class, params);
+            ResponseEntity<Map> response = backendClient.exchange(url, org.springframework.http.HttpMethod.GET, entity, Map.class, params);
             Map data = response.getBody();
     
             // Validar que data no sea null
             if (data == null || data.isEmpty()) {
-                logger.warn("Paciente no encontrado: " + hashId);
+                logger.warn("Paciente no encontrado: {}", hashId);
                 throw new ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException("Paciente no encontrado: " + hashId);
             }
-    
-            Patient patient = new Patient();
-            patient.setId(hashId);
-            patient.addIdentifier().setValue(hashId);
-    
-            // Agregar DNI como identificador separado si existe
-            if (data.get("dni_paciente") != null) {
-                patient.addIdentifier()
-                    .setSystem("http://mi-servidor.com/fhir/dni")
-                    .setValue(String.valueOf(data.get("dni_paciente")));
-            }
-    
-            // Validar que nombre y apellido existan antes de usarlos
-            String nombre = (String) data.get("nombre");
-            String apellido = (String) data.get("apellido");
-            
-            if (nombre != null && apellido != null) {
-                patient.addName()
-                        .setFamily(apellido)
-                        .addGiven(nombre);
-            }
-    
-            // Fecha de nacimiento (campo estándar FHIR)
-            if (data.get("fecha_nacimiento") != null) {
-                try {
-                    Object fechaObj = data.get("fecha_nacimiento");
-                    if (fechaObj instanceof Date) {
-                        patient.setBirthDate((Date) fechaObj);
-                    } else if (fechaObj instanceof Long) {
-                        // Timestamp de PostgreSQL
-                        Date fecha = new Date((Long) fechaObj);
-                        patient.setBirthDate(fecha);
-                    } else if (fechaObj instanceof String) {
-                        // Intentar parsear como string
-                        try {
-                            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-                            Date fecha = sdf.parse((String) fechaObj);
-                            patient.setBirthDate(fecha);
-                        } catch (Exception e) {
-                            logger.warn("No se pudo parsear fecha_nacimiento como string: " + fechaObj);
-                        }
-                    }
-                } catch (Exception e) {
-                    logger.warn("Error al procesar fecha_nacimiento: " + e.getMessage());
-                }
-            }
-    
-            // Teléfono (campo estándar FHIR)
-            if (data.get("telefono") != null) {
-                try {
-                    String telefono = String.valueOf(data.get("telefono"));
-                    patient.addTelecom()
-                        .setSystem(ContactPoint.ContactPointSystem.PHONE)
-                        .setValue(telefono);
-                } catch (Exception e) {
-                    logger.warn("Error al procesar telefono: " + e.getMessage());
-                }
-            }
-    
-            // Estado activo/inactivo (campo estándar FHIR)
-            Boolean inactivo = false;
-            if (data.get("inactivo") != null) {
-                try {
-                    if (data.get("inactivo") instanceof Boolean) {
-                        inactivo = (Boolean) data.get("inactivo");
-                    } else if (data.get("inactivo") instanceof String) {
-                        inactivo = Boolean.parseBoolean((String) data.get("inactivo"));
-                    }
-                    patient.setActive(!inactivo);
-                } catch (Exception e) {
-                    logger.warn("Error al procesar inactivo: " + e.getMessage());
-                }
-            } else {
-                patient.setActive(true); // Por defecto activo
-            }
-    
-            // Inactivo como extensión BooleanType
-            patient.addExtension(
-                new Extension("http://mi-servidor.com/fhir/StructureDefinition/inactivo",
-                    new BooleanType(inactivo))
-            );
-    
-            // Hash ID como extensión personalizada
-            if (data.get("hash_id") != null) {
-                patient.addExtension(
-                    new Extension("http://mi-servidor.com/fhir/StructureDefinition/hash-id",
-                        new StringType(String.valueOf(data.get("hash_id"))))
-                );
-            }
-            
-            // Hash ID EHR - verificar tanto hash_id_ehr como hash_id_EHR (mayúsculas)
-            Object hashIdEhr = data.get("hash_id_ehr");
-            if (hashIdEhr == null) {
-                hashIdEhr = data.get("hash_id_EHR"); // Intentar con mayúsculas
-            }
-            if (hashIdEhr != null) {
-                patient.addExtension(
-                    new Extension("http://mi-servidor.com/fhir/StructureDefinition/hash-id-ehr",
-                        new StringType(String.valueOf(hashIdEhr)))
-                );
-            }
-    
-            // Prestación como extensión personalizada
-            if (data.get("prestacion") != null) {
-                patient.addExtension(
-                    new Extension("http://mi-servidor.com/fhir/StructureDefinition/prestacion",
-                        new StringType(String.valueOf(data.get("prestacion"))))
-                );
-            }
-            
-            // ID Prestación como extensión personalizada (para match con dropdown)
-            if (data.get("id_prestacion") != null) {
-                patient.addExtension(
-                    new Extension("http://mi-servidor.com/fhir/StructureDefinition/id_prestacion",
-                        new StringType(String.valueOf(data.get("id_prestacion"))))
-                );
-            }
-            
-            // Extensiones para campos de domicilio
-            if (data.get("calle") != null) {
-                patient.addExtension(
-                    new Extension("http://mi-servidor.com/fhir/StructureDefinition/calle",
-                        new StringType(String.valueOf(data.get("calle"))))
-                );
-            }
-            
-            if (data.get("barrio") != null) {
-                patient.addExtension(
-                    new Extension("http://mi-servidor.com/fhir/StructureDefinition/barrio",
-                        new StringType(String.valueOf(data.get("barrio"))))
-                );
-            }
-            
-            if (data.get("id_ciudad") != null) {
-                patient.addExtension(
-                    new Extension("http://mi-servidor.com/fhir/StructureDefinition/id_ciudad",
-                        new StringType(String.valueOf(data.get("id_ciudad"))))
-                );
-            }
-            
-            if (data.get("piso_departamento") != null) {
-                patient.addExtension(
-                    new Extension("http://mi-servidor.com/fhir/StructureDefinition/piso_departamento",
-                        new StringType(String.valueOf(data.get("piso_departamento"))))
-                );
-            }
-            
-            // Número de domicilio (buscar tanto numero como numero_calle)
-            Object numero = data.get("numero");
-            if (numero == null) {
-                numero = data.get("numero_calle"); // Intentar con nombre de columna de BD
-            }
-            if (numero != null) {
-                patient.addExtension(
-                    new Extension("http://mi-servidor.com/fhir/StructureDefinition/numero",
-                        new StringType(String.valueOf(numero)))
-                );
-            }
-            
-            // ID Provincia
-            if (data.get("id_provincia") != null) {
-                patient.addExtension(
-                    new Extension("http://mi-servidor.com/fhir/StructureDefinition/id_provincia",
-                        new StringType(String.valueOf(data.get("id_provincia"))))
-                );
-            }
-            
-            // Con quien vive
-            // Buscar tanto con_quien_vive como vive_con (nombre de columna en BD)
-            Object conQuienVive = data.get("con_quien_vive");
-            if (conQuienVive == null) {
-                conQuienVive = data.get("vive_con"); // Intentar con nombre de columna de BD
-            }
-            if (conQuienVive != null) {
-                patient.addExtension(
-                    new Extension("http://mi-servidor.com/fhir/StructureDefinition/con_quien_vive",
-                        new StringType(String.valueOf(conQuienVive)))
-                );
-            }
-            
-            // ID Mutual
-            if (data.get("id_mutual") != null) {
-                patient.addExtension(
-                    new Extension("http://mi-servidor.com/fhir/StructureDefinition/id_mutual",
-                        new StringType(String.valueOf(data.get("id_mutual"))))
-                );
-            }
-            
-            // Número de afiliado
-            if (data.get("numero_afiliado") != null) {
-                patient.addExtension(
-                    new Extension("http://mi-servidor.com/fhir/StructureDefinition/numero_afiliado",
-                        new StringType(String.valueOf(data.get("numero_afiliado"))))
-                );
-            }
-            
-            // Ocupación actual
-            if (data.get("ocupacion_actual") != null) {
-                patient.addExtension(
-                    new Extension("http://mi-servidor.com/fhir/StructureDefinition/ocupacion_actual",
-                        new StringType(String.valueOf(data.get("ocupacion_actual"))))
-                );
-            }
-            
-            // Ocupación anterior
-            if (data.get("ocupacion_anterior") != null) {
-                patient.addExtension(
-                    new Extension("http://mi-servidor.com/fhir/StructureDefinition/ocupacion_anterior",
-                        new StringType(String.valueOf(data.get("ocupacion_anterior"))))
-                );
-            }
-            
-            // Inactivo como extensión BooleanType
-            patient.addExtension(
-                new Extension("http://mi-servidor.com/fhir/StructureDefinition/inactivo",
-                    new BooleanType(inactivo))
-            );
-            
-            // Tutores (si existen, serializar como JSON)
-            if (data.get("tutores") != null) {
-                try {
-                    ObjectMapper mapper = new ObjectMapper();
-                    String tutoresJson = mapper.writeValueAsString(data.get("tutores"));
-                    patient.addExtension(
-                        new Extension("http://mi-servidor.com/fhir/StructureDefinition/tutores",
-                            new StringType(tutoresJson))
-                    );
-                } catch (Exception e) {
-                    logger.warn("Error al serializar tutores: " + e.getMessage());
-                }
-            }
 
-            // Última modificación (historia clínica) como extensión
-            String ultimaModificacionIso = formatFechaModificacionToIso(data.get("fecha_modificacion"));
-            if (ultimaModificacionIso != null) {
-                patient.addExtension(
-                    new Extension("http://mi-servidor.com/fhir/StructureDefinition/ultima-modificacion",
-                        new StringType(ultimaModificacionIso))
-                );
-            }
-    
-            return patient;
+            @SuppressWarnings("unchecked")
+            Map<String, Object> detail = (Map<String, Object>) data;
+            patientReplica.recordDetail(hashId, jwtService.getUserScope(token), detail);
+            return mapToPatient(hashId, data);
     
         } catch (ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException e) {
             throw e;
         } catch (Exception e) {
-            logger.error("Error al obtener el paciente: " + e.getMessage(), e);
+            logger.error("Error al obtener el paciente: {}", e.getMessage(), e);
             throw new ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException("Paciente no encontrado: " + hashId);
         }
     }
 
-    @Search
+    // allowUnknownParams: name:fuzzy no es un modificador que HAPI conozca, se lee de los parámetros crudos
+    @Search(allowUnknownParams = true)
     public List<Patient> searchPatients(
             @OptionalParam(name = "includeInactive") StringParam includeInactiveParam,
+            @OptionalParam(name = Patient.SP_NAME) StringParam nameParam,
+            @OptionalParam(name = Patient.SP_FAMILY) StringParam familyParam,
+            @OptionalParam(name = Patient.SP_GIVEN) StringParam givenParam,
+            @OptionalParam(name = Patient.SP_IDENTIFIER) TokenParam identifierParam,
+            @OptionalParam(name = Patient.SP_BIRTHDATE) DateRangeParam birthdateParam,
+            @OptionalParam(name = Patient.SP_ACTIVE) TokenParam activeParam,
+            @OptionalParam(name = "_lastUpdated") DateRangeParam lastUpdatedParam,
+            @OptionalParam(name = "_since") DateParam sinceParam,
+            @OptionalParam(name = "_id") TokenOrListParam idParam,
             RequestDetails requestDetails) {
         // Validación de token ya se hace en el interceptor
-        RestTemplate restTemplate = new RestTemplate();
 
         // Obtener el token del contexto de la petición
         String token = requestDetails.getHeader("Authorization");
 
+        if (idParam != null) {
+            // Los de control (_format, _count, _summary...) sí; los filtros no
+            boolean filtered = requestDetails.getParameters().keySet().stream()
+                    .anyMatch(name -> !name.startsWith("_") || name.equals("_lastUpdated") || name.equals("_since"));
+            if (filtered) {
+                throw new ca.uhn.fhir.rest.server.exceptions.InvalidRequestException(
+                    "_id no se combina con otros parámetros de búsqueda");
+            }
+            return readPatients(SearchIds.of(idParam), token);
+        }
+
         // Leer el parámetro includeInactive de la request FHIR
         boolean includeInactive = includeInactiveParam != null 
                                   && includeInactiveParam.getValue() != null 
                                   && !includeInactiveParam.getValue().isEmpty()
                                   && "true".equalsIgnoreCase(includeInactiveParam.getValue());
 
-        String url = buildBackendUrl("/patient");
+        // active explícito manda sobre includeInactive; sin ninguno de los dos, solo activos
+        Boolean active = null;
+        if (activeParam != null && activeParam.getValue() != null) {
+            active = Boolean.parseBoolean(activeParam.getValue());
+        } else if (!includeInactive) {
+            active = true;
+        }
+        String[] fuzzyParam = requestDetails.getParameters().get(Patient.SP_NAME + ":fuzzy");
+        String fuzzy = fuzzyParam != null && fuzzyParam.length > 0 && !fuzzyParam[0].isBlank() ? fuzzyParam[0] : null;
+
+        PatientSearchIndex.Criteria criteria = new PatientSearchIndex.Criteria(
+                nameText(nameParam, fuzzy != null), toText(familyParam), toText(givenParam),
+                identifierParam != null ? identifierParam.getSystem() : null,
+                identifierParam != null ? identifierParam.getValue() : null,
+                birthdateParam != null ? birthdateParam.getLowerBoundAsDateInteger() : null,
+                birthdateParam != null ? birthdateParam.getUpperBoundAsDateInteger() : null,
+                LastUpdated.lowerBound(lastUpdatedParam, sinceParam != null ? sinceParam.getValue() : null),
+                LastUpdated.upperBound(lastUpdatedParam),
+                active);
+
+        // Índice restringido al listado que TF_Back le devuelve a este usuario (ver PatientRoster)
+        boolean withInactive = active == null || !active;
+        if (fuzzy != null) {
+            List<PatientSearchIndex.Scored> scored = fromRoster(() -> patientRoster.fuzzy(token, fuzzy, criteria));
+            return toScoredPatients(scored != null ? scored : patientSearchIndex.fuzzy(fuzzy, criteria,
+                    fetchRoster(token, withInactive, criteria.updatedFrom())));
+        }
+        List<Patient> patients = new ArrayList<>();
+        for (Map<String, Object> row : rosterOrLive(token, criteria, withInactive)) {
+            // El listado en vivo llega sin filtrar; lo del índice ya cumple y el filtro no lo cambia
+            if (PatientSearchIndex.matches(criteria, row)) {
+                patients.add(mapToPatientSummary(row));
+            }
+        }
+        return patients;
+    }
+
+    /**
+     * Historia de tipo ({@code GET /Patient/_history?_since=...}): los pacientes modificados desde
+     * {@code _since} (todos si no viene), del más reciente al más antiguo, incluidos los inactivos.
+     * TF_Back no guarda versiones del paciente, así que cada uno aparece una vez con su estado actual
+     * y {@code meta.lastUpdated} = {@code fecha_modificacion}; alcanza para sincronizar incrementalmente.
+     */
+    @History
+    public List<Patient> patientHistory(@Since InstantType since, RequestDetails requestDetails) {
+        Instant from = since != null && since.getValue() != null ? since.getValue().toInstant() : null;
+        PatientSearchIndex.Criteria criteria = new PatientSearchIndex.Criteria(
+                null, null, null, null, null, null, null, from, null, null);
+
+        String token = requestDetails.getHeader("Authorization");
+        List<Patient> patients = new ArrayList<>();
+        for (Map<String, Object> row : rosterOrLive(token, criteria, true)) {
+            if (PatientSearchIndex.matches(criteria, row)) {
+                patients.add(mapToPatientSummary(row));
+            }
+        }
+        return LastUpdated.newestFirst(patients, from, null);
+    }
+
+    /**
+     * Pacientes del índice que ve el usuario (ver PatientRoster) o, si no se puede usar, el
+     * listado en vivo de TF_Back.
+     */
+    private List<Map<String, Object>> rosterOrLive(String token, PatientSearchIndex.Criteria criteria,
+                                                   boolean includeInactive) {
+        List<Map<String, Object>> rows = fromRoster(() -> patientRoster.search(token, criteria));
+        return rows != null ? rows : fetchRoster(token, includeInactive, criteria.updatedFrom());
+    }
+
+    private <T> T fromRoster(Supplier<T> search) {
+        try {
+            return search.get();
+        } catch (Exception e) {
+            logger.error("Error al obtener la lista de pacientes: {}", e.getMessage(), e);
+            throw new ca.uhn.fhir.rest.server.exceptions.InternalErrorException(
+                "No se pudieron obtener los pacientes: " + e.getMessage()
+            );
+        }
+    }
+
+    /**
+     * Listado de pacientes de TF_Back. Con {@code modifiedSince} TF_Back devuelve solo los
+     * modificados desde esa marca; igual se vuelve a filtrar con los criterios del índice.
+     */
+    private List<Map<String, Object>> fetchRoster(String token, boolean includeInactive, Instant modifiedSince) {
+        List<String> query = new ArrayList<>();
         if (includeInactive) {
-            url += "?includeInactive=true";
+            query.add("includeInactive=true");
         }
-        
+        if (modifiedSince != null) {
+            query.add("modifiedSince=" + modifiedSince);
+        }
+        String url = buildBackendUrl("/patient") + (query.isEmpty() ? "" : "?" + String.join("&", query));
+
         // Crear headers con el token de autorización
         HttpHeaders headers = new HttpHeaders();
         if (token != null && !token.isEmpty()) {
@@ -398,134 +335,524 @@ public class PatientResourceProvider implements IResourceProvider{
 
         try {
             HttpEntity<String> entity = new HttpEntity<>(headers);
-            ResponseEntity<List> response = restTemplate.exchange(
-                url, 
-                org.springframework.http.HttpMethod.GET, 
-                entity, 
+            ResponseEntity<List> response = backendClient.exchange(
+                url,
+                org.springframework.http.HttpMethod.GET,
+                entity,
                 List.class
             );
-            
+
             @SuppressWarnings("unchecked")
-            List<Map> patientsData = (List<Map>) response.getBody();
-            List<Patient> patients = new ArrayList<>();
-
-            if (patientsData != null) {
-                for (Map data : patientsData) {
-                    Patient patient = new Patient();
-                    
-                    // ID del paciente (hash_id)
-                    String hashId = (String) data.get("hash_id");
-                    if (hashId != null) {
-                        patient.setId(hashId);
-                        patient.addIdentifier().setValue(hashId);
-                    }
+            List<Map<String, Object>> rows = (List<Map<String, Object>>) response.getBody();
+            return rows != null ? rows : List.of();
+
+        } catch (Exception e) {
+            logger.error("Error al obtener la lista de pacientes: {}", e.getMessage(), e);
+            throw new ca.uhn.fhir.rest.server.exceptions.InternalErrorException(
+                "No se pudieron obtener los pacientes: " + e.getMessage()
+            );
+        }
+    }
+
+    /**
+     * Recorre los pacientes modificados desde {@code since} (todos si es null), incluidos los
+     * inactivos, sin juntarlos en una lista: para la exportación masiva. Con la réplica sirviendo
+     * salen del índice, restringidos a los pacientes del usuario; si no, el listado de TF_Back se
+     * lee a medida que llega.
+     */
+    void streamPatients(Instant since, String token, Consumer<Patient> consumer) {
+        PatientSearchIndex.Criteria criteria = new PatientSearchIndex.Criteria(
+                null, null, null, null, null, null, null, since, null, null);
+        List<Map<String, Object>> rows = patientReplica.isServing()
+                ? fromRoster(() -> patientRoster.search(token, criteria))
+                : null;
+        if (rows != null) {
+            for (Map<String, Object> row : rows) {
+                consumer.accept(mapToPatientSummary(row));
+            }
+            return;
+        }
+        String url = buildBackendUrl("/patient") + "?includeInactive=true"
+                + (since != null ? "&modifiedSince=" + since : "");
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Authorization", token);
+        backendClient.streamArray(url, headers, row -> {
+            if (PatientSearchIndex.matches(criteria, row)) {
+                consumer.accept(mapToPatientSummary(row));
+            }
+        });
+    }
+
+    /**
+     * {@code GET /Patient?_id=a,b,c}: los pacientes pedidos en un solo Bundle y en el orden pedido,
+     * igual que sus lecturas una por una (incluidos los inactivos). Cada uno sale del cache de
+     * lecturas o de la réplica si está; el resto se pide a {@code /patient/{hash_id}} en paralelo,
+     * con a lo sumo {@code fhir.search.patient.id-concurrency} llamadas en curso. Los ids que no
+     * existen se omiten, como en cualquier búsqueda.
+     */
+    private List<Patient> readPatients(Set<String> hashIds, String token) {
+        if (hashIds.size() > maxIds) {
+            throw new ca.uhn.fhir.rest.server.exceptions.InvalidRequestException(
+                "_id admite hasta " + maxIds + " ids por búsqueda");
+        }
+        String scope = jwtService.getUserScope(token);
+        Map<String, Patient> found = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String hashId : hashIds) {
+            Patient patient = patientCache.getIfPresent(hashId, token);
+            if (patient == null) {
+                Map<String, Object> local = patientReplica.detail(hashId, scope);
+                patient = local != null ? mapToPatient(hashId, local) : null;
+            }
+            // null guarda el lugar para respetar el orden pedido
+            found.put(hashId, patient);
+            if (patient == null) {
+                missing.add(hashId);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            HttpHeaders headers = new HttpHeaders();
+            if (token != null && !token.isEmpty()) {
+                headers.set("Authorization", token);
+            }
+            HttpEntity<String> entity = new HttpEntity<>(headers);
+            Map<String, Map<String, Object>> fetched;
+            try {
+                fetched = backendClient.fanOut(missing, idConcurrency,
+                    hashId -> backendClient.exchangeAsync(
+                        buildBackendUrl("/patient/" + hashId),
+                        HttpMethod.GET,
+                        entity,
+                        new ParameterizedTypeReference<Map<String, Object>>() {}));
+            } catch (Exception e) {
+                logger.error("Error al obtener los pacientes por _id: {}", e.getMessage(), e);
+                throw new ca.uhn.fhir.rest.server.exceptions.InternalErrorException(
+                    "No se pudieron obtener los pacientes: " + e.getMessage()
+                );
+            }
+            fetched.forEach((hashId, detail) -> {
+                if (detail.isEmpty()) {
+                    return;
+                }
+                patientReplica.recordDetail(hashId, scope, detail);
+                Patient patient = mapToPatient(hashId, detail);
+                patientCache.put(hashId, token, patient);
+                found.put(hashId, patient);
+            });
+        }
+
+        List<Patient> patients = new ArrayList<>();
+        for (Patient patient : found.values()) {
+            if (patient != null) {
+                patients.add(patient);
+            }
+        }
+        logger.debug("_id: {} pedidos, {} desde TF_Back, {} encontrados", hashIds.size(), missing.size(), patients.size());
+        return patients;
+    }
+
+    /**
+     * Resultados de name:fuzzy en orden de puntaje, con el puntaje en {@code Bundle.entry.search.score}.
+     */
+    private List<Patient> toScoredPatients(List<PatientSearchIndex.Scored> results) {
+        List<Patient> patients = new ArrayList<>();
+        for (PatientSearchIndex.Scored result : results) {
+            Patient patient = mapToPatientSummary(result.row());
+            ResourceMetadataKeyEnum.ENTRY_SEARCH_SCORE.put(patient,
+                    BigDecimal.valueOf(result.score()).setScale(3, RoundingMode.HALF_UP));
+            patients.add(patient);
+        }
+        return patients;
+    }
+
+    /**
+     * Criterio {@code name}. HAPI liga {@code name:fuzzy=...} también a {@code nameParam} (como
+     * prefijo, porque no conoce el modificador): con {@code name:fuzzy} presente se ignora, si no
+     * el prefijo descartaría justo los resultados con errores de tipeo.
+     */
+    static PatientSearchIndex.Text nameText(StringParam nameParam, boolean fuzzy) {
+        return fuzzy ? null : toText(nameParam);
+    }
+
+    /**
+     * Parámetro string de FHIR a criterio del índice: prefijo por defecto, {@code :exact} o {@code :contains}.
+     */
+    private static PatientSearchIndex.Text toText(StringParam param) {
+        if (param == null || param.getValue() == null || param.getValue().isBlank()) {
+            return null;
+        }
+        PatientSearchIndex.Match match = param.isExact() ? PatientSearchIndex.Match.EXACT
+                : param.isContains() ? PatientSearchIndex.Match.CONTAINS
+                : PatientSearchIndex.Match.PREFIX;
+        return new PatientSearchIndex.Text(param.getValue(), match);
+    }
+
+    /**
+     * Convierte el paciente devuelto por TF_Back (GET /patient/{hash_id}) a un Patient FHIR completo.
+     */
+    Patient mapToPatient(String hashId, Map data) {
+        Patient patient = new Patient();
+        patient.setId(hashId);
+        patient.addIdentifier().setValue(hashId);
+
+        // Agregar DNI como identificador separado si existe
+        if (data.get("dni_paciente") != null) {
+            patient.addIdentifier()
+                .setSystem("http://mi-servidor.com/fhir/dni")
+                .setValue(String.valueOf(data.get("dni_paciente")));
+        }
+
+        // Validar que nombre y apellido existan antes de usarlos
+        String nombre = (String) data.get("nombre");
+        String apellido = (String) data.get("apellido");
+        
+        if (nombre != null && apellido != null) {
+            patient.addName()
+                    .setFamily(apellido)
+                    .addGiven(nombre);
+        }
 
-                    // Agregar DNI como identificador separado si existe
-                    if (data.get("dni_paciente") != null) {
-                        patient.addIdentifier()
-                            .setSystem("http://mi-servidor.com/fhir/dni")
-                            .setValue((String) data.get("dni_paciente"));
+        // Fecha de nacimiento (campo estándar FHIR)
+        if (data.get("fecha_nacimiento") != null) {
+            try {
+                Object fechaObj = data.get("fecha_nacimiento");
+                if (fechaObj instanceof Date) {
+                    patient.setBirthDate((Date) fechaObj);
+                } else if (fechaObj instanceof Long) {
+                    // Timestamp de PostgreSQL
+                    Date fecha = new Date((Long) fechaObj);
+                    patient.setBirthDate(fecha);
+                } else if (fechaObj instanceof String) {
+                    // Intentar parsear como string
+                    try {
+                        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
+                        Date fecha = sdf.parse((String) fechaObj);
+                        patient.setBirthDate(fecha);
+                    } catch (Exception e) {
+                        logger.warn("No se pudo parsear fecha_nacimiento como string");
                     }
+                }
+            } catch (Exception e) {
+                logger.warn("Error al procesar fecha_nacimiento: {}", e.getMessage());
+            }
+        }
 
-                     // Nombre y apellido
-                     if (data.get("nombre") != null && data.get("apellido") != null) {
-                         patient.addName()
-                                 .setFamily((String) data.get("apellido"))
-                                 .addGiven((String) data.get("nombre"));
-                     }
-
-                     // Estado activo/inactivo (campo estándar FHIR)
-                     Boolean inactivo = false;
-                     if (data.get("inactivo") != null) {
-                         try {
-                             if (data.get("inactivo") instanceof Boolean) {
-                                 inactivo = (Boolean) data.get("inactivo");
-                             } else if (data.get("inactivo") instanceof String) {
-                                 inactivo = Boolean.parseBoolean((String) data.get("inactivo"));
-                             }
-                             patient.setActive(!inactivo);
-                         } catch (Exception e) {
-                             logger.warn("Error al procesar inactivo: " + e.getMessage());
-                             patient.setActive(true); // Por defecto activo si hay error
-                         }
-                     } else {
-                         patient.setActive(true); // Por defecto activo
-                     }
-
-                     // Hash ID como extensión personalizada
-                     if (data.get("hash_id") != null) {
-                         patient.addExtension(
-                             new Extension("http://mi-servidor.com/fhir/StructureDefinition/hash-id",
-                                 new StringType(String.valueOf(data.get("hash_id"))))
-                         );
-                     }
-
-                     // Prestación como extensión personalizada
-                     if (data.get("prestacion") != null) {
-                         patient.addExtension(
-                             new Extension("http://mi-servidor.com/fhir/StructureDefinition/prestacion",
-                                 new StringType(String.valueOf(data.get("prestacion"))))
-                         );
-                     }
-
-                     if (data.get("ocupacion_actual") != null) {
-                         patient.addExtension(
-                             new Extension("http://mi-servidor.com/fhir/StructureDefinition/ocupacion_actual",
-                                 new StringType(String.valueOf(data.get("ocupacion_actual"))))
-                         );
-                     }
-                     if (data.get("ocupacion_anterior") != null) {
-                         patient.addExtension(
-                             new Extension("http://mi-servidor.com/fhir/StructureDefinition/ocupacion_anterior",
-                                 new StringType(String.valueOf(data.get("ocupacion_anterior"))))
-                         );
-                     }
-                     if (data.get("id_mutual") != null) {
-                         patient.addExtension(
-                             new Extension("http://mi-servidor.com/fhir/StructureDefinition/id_mutual",
-                                 new StringType(String.valueOf(data.get("id_mutual"))))
-                         );
-                     }
-                     if (data.get("numero_afiliado") != null) {
-                         patient.addExtension(
-                             new Extension("http://mi-servidor.com/fhir/StructureDefinition/numero_afiliado",
-                                 new StringType(String.valueOf(data.get("numero_afiliado"))))
-                         );
-                     }
-
-                     // Inactivo como extensión BooleanType
-                     patient.addExtension(
-                         new Extension("http://mi-servidor.com/fhir/StructureDefinition/inactivo",
-                             new BooleanType(inactivo))
-                     );
-
-                     // Última modificación (historia clínica) como extensión
-                     String ultimaModificacionIso = formatFechaModificacionToIso(data.get("fecha_modificacion"));
-                     if (ultimaModificacionIso != null) {
-                         patient.addExtension(
-                             new Extension("http://mi-servidor.com/fhir/StructureDefinition/ultima-modificacion",
-                                 new StringType(ultimaModificacionIso))
-                         );
-                     }
-
-                    patients.add(patient);
+        // Teléfono (campo estándar FHIR)
+        if (data.get("telefono") != null) {
+            try {
+                String telefono = String.valueOf(data.get("telefono"));
+                patient.addTelecom()
+                    .setSystem(ContactPoint.ContactPointSystem.PHONE)
+                    .setValue(telefono);
+            } catch (Exception e) {
+                logger.warn("Error al procesar telefono: {}", e.getMessage());
+            }
+        }
+
+        // Estado activo/inactivo (campo estándar FHIR)
+        Boolean inactivo = false;
+        if (data.get("inactivo") != null) {
+            try {
+                if (data.get("inactivo") instanceof Boolean) {
+                    inactivo = (Boolean) data.get("inactivo");
+                } else if (data.get("inactivo") instanceof String) {
+                    inactivo = Boolean.parseBoolean((String) data.get("inactivo"));
                 }
+                patient.setActive(!inactivo);
+            } catch (Exception e) {
+                logger.warn("Error al procesar inactivo: {}", e.getMessage());
             }
+        } else {
+            patient.setActive(true); // Por defecto activo
+        }
 
-            return patients;
+        // Inactivo como extensión BooleanType
+        patient.addExtension(
+            new Extension("http://mi-servidor.com/fhir/StructureDefinition/inactivo",
+                new BooleanType(inactivo))
+        );
 
-        } catch (Exception e) {
-            logger.error("Error al obtener la lista de pacientes: " + e.getMessage(), e);
-            throw new ca.uhn.fhir.rest.server.exceptions.InternalErrorException(
-                "No se pudieron obtener los pacientes: " + e.getMessage()
+        // Hash ID como extensión personalizada
+        if (data.get("hash_id") != null) {
+            patient.addExtension(
+                new Extension("http://mi-servidor.com/fhir/StructureDefinition/hash-id",
+                    new StringType(String.valueOf(data.get("hash_id"))))
+            );
+        }
+        
+        // Hash ID EHR - verificar tanto hash_id_ehr como hash_id_EHR (mayúsculas)
+        Object hashIdEhr = data.get("hash_id_ehr");
+        if (hashIdEhr == null) {
+            hashIdEhr = data.get("hash_id_EHR"); // Intentar con mayúsculas
+        }
+        if (hashIdEhr != null) {
+            patient.addExtension(
+                new Extension("http://mi-servidor.com/fhir/StructureDefinition/hash-id-ehr",
+                    new StringType(String.valueOf(hashIdEhr)))
+            );
+        }
+
+        // Prestación como extensión personalizada
+        if (data.get("prestacion") != null) {
+            patient.addExtension(
+                new Extension("http://mi-servidor.com/fhir/StructureDefinition/prestacion",
+                    new StringType(String.valueOf(data.get("prestacion"))))
+            );
+        }
+        
+        // ID Prestación como extensión personalizada (para match con dropdown)
+        if (data.get("id_prestacion") != null) {
+            patient.addExtension(
+                new Extension("http://mi-servidor.com/fhir/StructureDefinition/id_prestacion",
+                    new StringType(String.valueOf(data.get("id_prestacion"))))
+            );
+        }
+        
+        // Extensiones para campos de domicilio
+        if (data.get("calle") != null) {
+            patient.addExtension(
+                new Extension("http://mi-servidor.com/fhir/StructureDefinition/calle",
+                    new StringType(String.valueOf(data.get("calle"))))
+            );
+        }
+        
+        if (data.get("barrio") != null) {
+            patient.addExtension(
+                new Extension("http://mi-servidor.com/fhir/StructureDefinition/barrio",
+                    new StringType(String.valueOf(data.get("barrio"))))
+            );
+        }
+        
+        if (data.get("id_ciudad") != null) {
+            patient.addExtension(
+                new Extension("http://mi-servidor.com/fhir/StructureDefinition/id_ciudad",
+                    new StringType(String.valueOf(data.get("id_ciudad"))))
+            );
+        }
+        
+        if (data.get("piso_departamento") != null) {
+            patient.addExtension(
+                new Extension("http://mi-servidor.com/fhir/StructureDefinition/piso_departamento",
+                    new StringType(String.valueOf(data.get("piso_departamento"))))
+            );
+        }
+        
+        // Número de domicilio (buscar tanto numero como numero_calle)
+        Object numero = data.get("numero");
+        if (numero == null) {
+            numero = data.get("numero_calle"); // Intentar con nombre de columna de BD
+        }
+        if (numero != null) {
+            patient.addExtension(
+                new Extension("http://mi-servidor.com/fhir/StructureDefinition/numero",
+                    new StringType(String.valueOf(numero)))
+            );
+        }
+        
+        // ID Provincia
+        if (data.get("id_provincia") != null) {
+            patient.addExtension(
+                new Extension("http://mi-servidor.com/fhir/StructureDefinition/id_provincia",
+                    new StringType(String.valueOf(data.get("id_provincia"))))
+            );
+        }
+        
+        // Con quien vive
+        // Buscar tanto con_quien_vive como vive_con (nombre de columna en BD)
+        Object conQuienVive = data.get("con_quien_vive");
+        if (conQuienVive == null) {
+            conQuienVive = data.get("vive_con"); // Intentar con nombre de columna de BD
+        }
+        if (conQuienVive != null) {
+            patient.addExtension(
+                new Extension("http://mi-servidor.com/fhir/StructureDefinition/con_quien_vive",
+                    new StringType(String.valueOf(conQuienVive)))
+            );
+        }
+        
+        // ID Mutual
+        if (data.get("id_mutual") != null) {
+            patient.addExtension(
+                new Extension("http://mi-servidor.com/fhir/StructureDefinition/id_mutual",
+                    new StringType(String.valueOf(data.get("id_mutual"))))
+            );
+        }
+        
+        // Número de afiliado
+        if (data.get("numero_afiliado") != null) {
+            patient.addExtension(
+                new Extension("http://mi-servidor.com/fhir/StructureDefinition/numero_afiliado",
+                    new StringType(String.valueOf(data.get("numero_afiliado"))))
+            );
+        }
+        
+        // Ocupación actual
+        if (data.get("ocupacion_actual") != null) {
+            patient.addExtension(
+                new Extension("http://mi-servidor.com/fhir/StructureDefinition/ocupacion_actual",
+                    new StringType(String.valueOf(data.get("ocupacion_actual"))))
+            );
+        }
+        
+        // Ocupación anterior
+        if (data.get("ocupacion_anterior") != null) {
+            patient.addExtension(
+                new Extension("http://mi-servidor.com/fhir/StructureDefinition/ocupacion_anterior",
+                    new StringType(String.valueOf(data.get("ocupacion_anterior"))))
+            );
+        }
+        
+        // Inactivo como extensión BooleanType
+        patient.addExtension(
+            new Extension("http://mi-servidor.com/fhir/StructureDefinition/inactivo",
+                new BooleanType(inactivo))
+        );
+        
+        // Tutores (si existen, serializar como JSON)
+        if (data.get("tutores") != null) {
+            try {
+                ObjectMapper mapper = new ObjectMapper();
+                String tutoresJson = mapper.writeValueAsString(data.get("tutores"));
+                patient.addExtension(
+                    new Extension("http://mi-servidor.com/fhir/StructureDefinition/tutores",
+                        new StringType(tutoresJson))
+                );
+            } catch (Exception e) {
+                logger.warn("Error al serializar tutores: {}", e.getMessage());
+            }
+        }
+
+        // Última modificación (historia clínica) como extensión y como meta.lastUpdated
+        LastUpdated.stamp(patient, data.get("fecha_modificacion"));
+        String ultimaModificacionIso = formatFechaModificacionToIso(data.get("fecha_modificacion"));
+        if (ultimaModificacionIso != null) {
+            patient.addExtension(
+                new Extension("http://mi-servidor.com/fhir/StructureDefinition/ultima-modificacion",
+                    new StringType(ultimaModificacionIso))
+            );
+        }
+
+        return patient;
+    }
+
+    /**
+     * Convierte un elemento del listado de TF_Back (GET /patient) a un Patient FHIR resumido.
+     */
+    Patient mapToPatientSummary(Map data) {
+        Patient patient = new Patient();
+
+        // ID del paciente (hash_id)
+        String hashId = (String) data.get("hash_id");
+        if (hashId != null) {
+            patient.setId(hashId);
+            patient.addIdentifier().setValue(hashId);
+        }
+
+        // Agregar DNI como identificador separado si existe
+        if (data.get("dni_paciente") != null) {
+            patient.addIdentifier()
+                .setSystem("http://mi-servidor.com/fhir/dni")
+                .setValue((String) data.get("dni_paciente"));
+        }
+
+        // Nombre y apellido
+        if (data.get("nombre") != null && data.get("apellido") != null) {
+            patient.addName()
+                    .setFamily((String) data.get("apellido"))
+                    .addGiven((String) data.get("nombre"));
+        }
+
+        // Fecha de nacimiento, si el listado la trae (se usa para buscar por birthdate)
+        if (data.get("fecha_nacimiento") instanceof String fechaNacimiento && fechaNacimiento.length() >= 10) {
+            try {
+                patient.setBirthDate(new SimpleDateFormat("yyyy-MM-dd").parse(fechaNacimiento.substring(0, 10)));
+            } catch (Exception e) {
+                logger.warn("No se pudo parsear fecha_nacimiento del listado: {}", e.getMessage());
+            }
+        }
+
+        // Estado activo/inactivo (campo estándar FHIR)
+        Boolean inactivo = false;
+        if (data.get("inactivo") != null) {
+            try {
+                if (data.get("inactivo") instanceof Boolean) {
+                    inactivo = (Boolean) data.get("inactivo");
+                } else if (data.get("inactivo") instanceof String) {
+                    inactivo = Boolean.parseBoolean((String) data.get("inactivo"));
+                }
+                patient.setActive(!inactivo);
+            } catch (Exception e) {
+                logger.warn("Error al procesar inactivo: {}", e.getMessage());
+                patient.setActive(true); // Por defecto activo si hay error
+            }
+        } else {
+            patient.setActive(true); // Por defecto activo
+        }
+
+        // Hash ID como extensión personalizada
+        if (data.get("hash_id") != null) {
+            patient.addExtension(
+                new Extension("http://mi-servidor.com/fhir/StructureDefinition/hash-id",
+                    new StringType(String.valueOf(data.get("hash_id"))))
+            );
+        }
+
+        // Prestación como extensión personalizada
+        if (data.get("prestacion") != null) {
+            patient.addExtension(
+                new Extension("http://mi-servidor.com/fhir/StructureDefinition/prestacion",
+                    new StringType(String.valueOf(data.get("prestacion"))))
+            );
+        }
+
+        if (data.get("ocupacion_actual") != null) {
+            patient.addExtension(
+                new Extension("http://mi-servidor.com/fhir/StructureDefinition/ocupacion_actual",
+                    new StringType(String.valueOf(data.get("ocupacion_actual"))))
+            );
+        }
+        if (data.get("ocupacion_anterior") != null) {
+            patient.addExtension(
+                new Extension("http://mi-servidor.com/fhir/StructureDefinition/ocupacion_anterior",
+                    new StringType(String.valueOf(data.get("ocupacion_anterior"))))
+            );
+        }
+        if (data.get("id_mutual") != null) {
+            patient.addExtension(
+                new Extension("http://mi-servidor.com/fhir/StructureDefinition/id_mutual",
+                    new StringType(String.valueOf(data.get("id_mutual"))))
+            );
+        }
+        if (data.get("numero_afiliado") != null) {
+            patient.addExtension(
+                new Extension("http://mi-servidor.com/fhir/StructureDefinition/numero_afiliado",
+                    new StringType(String.valueOf(data.get("numero_afiliado"))))
+            );
+        }
+
+        // Inactivo como extensión BooleanType
+        patient.addExtension(
+            new Extension("http://mi-servidor.com/fhir/StructureDefinition/inactivo",
+                new BooleanType(inactivo))
+        );
+
+        // Última modificación (historia clínica) como extensión y como meta.lastUpdated
+        LastUpdated.stamp(patient, data.get("fecha_modificacion"));
+        String ultimaModificacionIso = formatFechaModificacionToIso(data.get("fecha_modificacion"));
+        if (ultimaModificacionIso != null) {
+            patient.addExtension(
+                new Extension("http://mi-servidor.com/fhir/StructureDefinition/ultima-modificacion",
+                    new StringType(ultimaModificacionIso))
             );
         }
+
+        return patient;
     }
 
     @Create
     public MethodOutcome createPatient(@ResourceParam Patient patient, RequestDetails requestDetails) {
         // Validación de token ya se hace en el interceptor
-        RestTemplate restTemplate = new RestTemplate();
 
         // Obtener el token del contexto de la petición
         String token = requestDetails.getHeader("Authorization");
@@ -565,7 +892,7 @@ public class PatientResourceProvider implements IResourceProvider{
             try {
                 payload.put("telefono", Long.parseLong(telefono));
             } catch (NumberFormatException e) {
-                logger.warn("No se pudo convertir el teléfono a número: " + telefono);
+                logger.warn("No se pudo convertir el teléfono a número ({} caracteres)", telefono.length());
                 payload.put("telefono", telefono);
             }
         }
@@ -581,16 +908,15 @@ public class PatientResourceProvider implements IResourceProvider{
                     // La extensión de tutores contiene un JSON stringificado
                     try {
                         String tutoresJson = extension.getValue().toString();
-                        logger.info("JSON de tutores recibido: " + tutoresJson);
+                        payloadLogger.log(logger, "JSON de tutores recibido:", tutoresJson);
                         
                         // Parsear el JSON de tutores
                         ObjectMapper mapper = new ObjectMapper();
                         List<Map<String, Object>> tutoresList = mapper.readValue(tutoresJson, List.class);
                         payload.put("tutores", tutoresList);
-                        logger.info("Tutores procesados exitosamente: " + tutoresList.size());
-                        logger.info("Datos de tutores: " + tutoresList.toString());
+                        logger.debug("Tutores procesados exitosamente: {}", tutoresList.size());
                     } catch (Exception e) {
-                        logger.error("Error al procesar tutores: " + e.getMessage(), e);
+                        logger.error("Error al procesar tutores: {}", e.getMessage(), e);
                         payload.put("tutores", new ArrayList<>());
                     }
                     break;
@@ -599,7 +925,7 @@ public class PatientResourceProvider implements IResourceProvider{
         }
         
         // Log del payload final
-        logger.info("Payload final enviado al backend: " + payload.toString());
+        payloadLogger.log(logger, "Payload final enviado al backend:", payload);
 
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
@@ -615,11 +941,20 @@ public class PatientResourceProvider implements IResourceProvider{
 
         try {
             String url = buildBackendUrl("/patient");
-            ResponseEntity<Void> response = restTemplate.postForEntity(url, request, Void.class);
+            ResponseEntity<Void> response = backendClient.postForEntity(url, request, Void.class);
 
             if (response.getStatusCode() == HttpStatus.CREATED || response.getStatusCode() == HttpStatus.OK) {
+                String hashId = patient.getIdElement().getIdPart();
+                patientReplica.requestSync();
+                patientRoster.requestRefresh();
+                // TF_Back no devuelve el hash_id del alta: sin el id del cliente no hay nada que
+                // invalidar ni a quién notificar, alcanza con la sincronización
+                if (hashId != null) {
+                    patientCache.invalidate(hashId);
+                    subscriptionDispatcher.publish(SubscriptionEvent.patient(hashId));
+                }
                 MethodOutcome outcome = new MethodOutcome();
-                outcome.setId(new IdType(ResourceType.Patient.name(), patient.getIdElement().getIdPart()));
+                outcome.setId(new IdType(ResourceType.Patient.name(), hashId));
                 return outcome;
             } else {
                 throw new RuntimeException("Error en la API externa: código " + response.getStatusCode());
@@ -632,6 +967,21 @@ public class PatientResourceProvider implements IResourceProvider{
 
     @Update
     public MethodOutcome updatePatient(@IdParam IdType id, @ResourceParam Patient patient, RequestDetails requestDetails) {
+        try {
+            MethodOutcome outcome = doUpdatePatient(id, patient, requestDetails);
+            patient.setId(id.getIdPart());
+            subscriptionDispatcher.publish(SubscriptionEvent.patient(id.getIdPart()));
+            return outcome;
+        } finally {
+            // Edición, baja o reactivación: aunque haya fallado, TF_Back pudo haber aplicado el cambio
+            patientCache.invalidate(id.getIdPart());
+            String token = requestDetails.getHeader("Authorization");
+            patientReplica.refresh(id.getIdPart(), token, jwtService.getUserScope(token));
+            patientRoster.requestRefresh();
+        }
+    }
+
+    private MethodOutcome doUpdatePatient(IdType id, Patient patient, RequestDetails requestDetails) {
         String hashId = id.getIdPart();
         String token = requestDetails.getHeader("Authorization");
         if (token == null || token.isEmpty()) {
@@ -650,7 +1000,7 @@ public class PatientResourceProvider implements IResourceProvider{
         if (isDeactivate) {
             try {
                 String url = buildBackendUrl("/patient/delete/" + hashId);
-                ResponseEntity<Void> response = new RestTemplate().exchange(
+                ResponseEntity<Void> response = backendClient.exchange(
                     url,
                     HttpMethod.DELETE,
                     new HttpEntity<>(headers),
@@ -673,7 +1023,7 @@ public class PatientResourceProvider implements IResourceProvider{
         if (isActivate && !patient.hasBirthDate()) {
             try {
                 String url = buildBackendUrl("/patient/activate/" + hashId);
-                ResponseEntity<Void> response = new RestTemplate().exchange(
+                ResponseEntity<Void> response = backendClient.exchange(
                     url,
                     HttpMethod.PUT,
                     new HttpEntity<>(headers),
@@ -736,7 +1086,7 @@ public class PatientResourceProvider implements IResourceProvider{
 
         try {
             String url = buildBackendUrl("/patient/" + hashId);
-            ResponseEntity<Void> response = new RestTemplate().exchange(
+            ResponseEntity<Void> response = backendClient.exchange(
                 url,
                 HttpMethod.PUT,
                 new HttpEntity<>(payload, headers),
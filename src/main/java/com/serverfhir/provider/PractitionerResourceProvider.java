@@ -4,12 +4,14 @@ import ca.uhn.fhir.rest.annotation.Create;
 import ca.uhn.fhir.rest.annotation.IdParam;
 import ca.uhn.fhir.rest.annotation.Operation;
 import ca.uhn.fhir.rest.annotation.Read;
+import ca.uhn.fhir.rest.annotation.RequiredParam;
 import ca.uhn.fhir.rest.annotation.ResourceParam;
 import ca.uhn.fhir.rest.annotation.Search;
 import ca.uhn.fhir.rest.annotation.Update;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.param.TokenOrListParam;
 import org.hl7.fhir.r5.model.Practitioner;
 import org.hl7.fhir.r5.model.IdType;
 import org.hl7.fhir.r5.model.Extension;
@@ -21,21 +23,26 @@ import org.hl7.fhir.r5.model.DateType;
 import org.hl7.fhir.r5.model.DateTimeType;
 import org.hl7.fhir.r5.model.ValueSet;
 import org.hl7.fhir.r5.model.Enumerations;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
+import com.serverfhir.service.BackendClient;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import com.serverfhir.util.BackendErrorHandler;
+import com.serverfhir.util.PayloadLogger;
+import com.serverfhir.util.SearchIds;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Set;
 import java.util.Date;
 import java.text.SimpleDateFormat;
 import java.text.ParseException;
@@ -47,6 +54,12 @@ public class PractitionerResourceProvider implements IResourceProvider {
 
     private static final Logger logger = LoggerFactory.getLogger(PractitionerResourceProvider.class);
 
+    @Autowired
+    private BackendClient backendClient;
+
+    @Autowired
+    private PayloadLogger payloadLogger;
+
     @Value("${tfback.url}")
     private String tfBackUrl;
 
@@ -66,11 +79,10 @@ public class PractitionerResourceProvider implements IResourceProvider {
     // GET /fhir/Practitioner/$get-user-types
     @Operation(name = "$get-user-types", idempotent = true, type = Practitioner.class)
     public ValueSet getUserTypesOperation(RequestDetails requestDetails) {
-        logger.info("Obteniendo lista de tipos de usuarios");
+        logger.debug("Obteniendo lista de tipos de usuarios");
         
         try {
             String token = requestDetails.getHeader("Authorization");
-            RestTemplate restTemplate = new RestTemplate();
 
             HttpHeaders headers = new HttpHeaders();
             if (token != null && !token.isEmpty()) {
@@ -83,26 +95,26 @@ public class PractitionerResourceProvider implements IResourceProvider {
             HttpEntity<String> entity = new HttpEntity<>(headers);
             String url = buildBackendUrl("/user/type");
             
-            logger.info("Consultando tipos de usuarios en: " + url);
+            logger.debug("Consultando tipos de usuarios en: {}", url);
 
             @SuppressWarnings("rawtypes")
-            ResponseEntity<List> response = restTemplate.exchange(
+            ResponseEntity<List> response = backendClient.exchange(
                     url,
                     HttpMethod.GET,
                     entity,
                     List.class);
 
-            logger.info("Respuesta recibida del backend - Status: " + response.getStatusCode());
+            logger.debug("Respuesta recibida del backend - Status: {}", response.getStatusCode());
 
             if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
                 @SuppressWarnings("unchecked")
                 List<Map<String, Object>> userTypesData = (List<Map<String, Object>>) response.getBody();
                 
                 ValueSet valueSet = convertToValueSet(userTypesData);
-                logger.info("Se encontraron " + userTypesData.size() + " tipos de usuarios");
+                logger.debug("Se encontraron {} tipos de usuarios", userTypesData.size());
                 return valueSet;
             } else {
-                logger.warn("No se encontraron tipos de usuarios o error en la respuesta: " + response.getStatusCode());
+                logger.warn("No se encontraron tipos de usuarios o error en la respuesta: {}", response.getStatusCode());
                 return convertToValueSet(new ArrayList<>());
             }
 
@@ -110,7 +122,7 @@ public class PractitionerResourceProvider implements IResourceProvider {
             BackendErrorHandler.handleHttpException(e);
             return null; // Nunca se ejecutará, pero necesario para compilación
         } catch (Exception e) {
-            logger.error("Error al consultar los tipos de usuarios: " + e.getMessage(), e);
+            logger.error("Error al consultar los tipos de usuarios: {}", e.getMessage(), e);
             throw new ca.uhn.fhir.rest.server.exceptions.InternalErrorException(
                     "No se pudieron consultar los tipos de usuarios: " + e.getMessage());
         }
@@ -118,11 +130,10 @@ public class PractitionerResourceProvider implements IResourceProvider {
 
     @Search
     public List<Practitioner> searchPractitioners(RequestDetails requestDetails) {
-        logger.info("Buscando todos los usuarios (Practitioners)");
+        logger.debug("Buscando todos los usuarios (Practitioners)");
         
         try {
             String token = requestDetails.getHeader("Authorization");
-            RestTemplate restTemplate = new RestTemplate();
 
             HttpHeaders headers = new HttpHeaders();
             if (token != null && !token.isEmpty()) {
@@ -130,7 +141,7 @@ public class PractitionerResourceProvider implements IResourceProvider {
             }
 
             HttpEntity<String> entity = new HttpEntity<>(headers);
-            ResponseEntity<List> response = restTemplate.exchange(
+            ResponseEntity<List> response = backendClient.exchange(
                 buildBackendUrl("/user/"),
                 HttpMethod.GET,
                 entity,
@@ -146,16 +157,76 @@ public class PractitionerResourceProvider implements IResourceProvider {
                     Practitioner practitioner = mapUserToPractitioner(userData);
                     practitioners.add(practitioner);
                 }
-                logger.info("Se encontraron " + practitioners.size() + " usuarios");
+                logger.debug("Se encontraron {} usuarios", practitioners.size());
+            }
+
+            return practitioners;
+
+        } catch (HttpClientErrorException | HttpServerErrorException e) {
+            BackendErrorHandler.handleHttpException(e);
+            return null; // Nunca se ejecutará, pero necesario para compilación
+        } catch (Exception e) {
+            logger.error("Error al obtener la lista de usuarios: {}", e.getMessage(), e);
+            throw new ca.uhn.fhir.rest.server.exceptions.InternalErrorException(
+                "No se pudieron obtener los usuarios: " + e.getMessage()
+            );
+        }
+    }
+
+    /**
+     * {@code GET /Practitioner?_id=a,b,c}: TF_Back no tiene lectura por hash_id, así que con un
+     * solo listado de {@code /user/} se resuelven todos los pedidos, en el orden pedido. Los que
+     * no existen se omiten.
+     */
+    @Search
+    public List<Practitioner> searchPractitionersById(
+            @RequiredParam(name = "_id") TokenOrListParam idParam,
+            RequestDetails requestDetails) {
+        Set<String> hashIds = SearchIds.of(idParam);
+        logger.debug("Buscando {} usuarios por _id", hashIds.size());
+
+        try {
+            String token = requestDetails.getHeader("Authorization");
+
+            HttpHeaders headers = new HttpHeaders();
+            if (token != null && !token.isEmpty()) {
+                headers.set("Authorization", token);
+            }
+
+            HttpEntity<String> entity = new HttpEntity<>(headers);
+            ResponseEntity<List> response = backendClient.exchange(
+                buildBackendUrl("/user/"),
+                HttpMethod.GET,
+                entity,
+                List.class
+            );
+
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> usersData = (List<Map<String, Object>>) response.getBody();
+            Map<String, Map<String, Object>> byHashId = new HashMap<>();
+            if (usersData != null) {
+                for (Map<String, Object> userData : usersData) {
+                    Object userHashId = userData.get("hash_id");
+                    if (userHashId != null && hashIds.contains(userHashId.toString())) {
+                        byHashId.put(userHashId.toString(), userData);
+                    }
+                }
             }
 
+            List<Practitioner> practitioners = new ArrayList<>();
+            for (String hashId : hashIds) {
+                Map<String, Object> userData = byHashId.get(hashId);
+                if (userData != null) {
+                    practitioners.add(mapUserToPractitioner(userData));
+                }
+            }
             return practitioners;
 
         } catch (HttpClientErrorException | HttpServerErrorException e) {
             BackendErrorHandler.handleHttpException(e);
             return null; // Nunca se ejecutará, pero necesario para compilación
         } catch (Exception e) {
-            logger.error("Error al obtener la lista de usuarios: " + e.getMessage(), e);
+            logger.error("Error al obtener los usuarios por _id: {}", e.getMessage(), e);
             throw new ca.uhn.fhir.rest.server.exceptions.InternalErrorException(
                 "No se pudieron obtener los usuarios: " + e.getMessage()
             );
@@ -165,11 +236,10 @@ public class PractitionerResourceProvider implements IResourceProvider {
     @Read
     public Practitioner readPractitioner(@IdParam IdType id, RequestDetails requestDetails) {
         String hashId = id.getIdPart();
-        logger.info("Buscando usuario con hash_id: " + hashId);
+        logger.debug("Buscando usuario con hash_id: {}", hashId);
 
         try {
             String token = requestDetails.getHeader("Authorization");
-            RestTemplate restTemplate = new RestTemplate();
 
             HttpHeaders headers = new HttpHeaders();
             if (token != null && !token.isEmpty()) {
@@ -177,7 +247,7 @@ public class PractitionerResourceProvider implements IResourceProvider {
             }
 
             HttpEntity<String> entity = new HttpEntity<>(headers);
-            ResponseEntity<List> response = restTemplate.exchange(
+            ResponseEntity<List> response = backendClient.exchange(
                 buildBackendUrl("/user/"),
                 HttpMethod.GET,
                 entity,
@@ -192,13 +262,13 @@ public class PractitionerResourceProvider implements IResourceProvider {
                     String userHashId = (String) userData.get("hash_id");
                     if (hashId.equals(userHashId)) {
                         Practitioner practitioner = mapUserToPractitioner(userData);
-                        logger.info("Usuario encontrado: " + hashId);
+                        logger.debug("Usuario encontrado: {}", hashId);
                         return practitioner;
                     }
                 }
             }
 
-            logger.warn("Usuario no encontrado con hash_id: " + hashId);
+            logger.warn("Usuario no encontrado con hash_id: {}", hashId);
             throw new ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException(
                 "Usuario no encontrado: " + hashId
             );
@@ -209,7 +279,7 @@ public class PractitionerResourceProvider implements IResourceProvider {
             BackendErrorHandler.handleHttpException(e);
             return null; // Nunca se ejecutará, pero necesario para compilación
         } catch (Exception e) {
-            logger.error("Error al obtener el usuario: " + e.getMessage(), e);
+            logger.error("Error al obtener el usuario: {}", e.getMessage(), e);
             throw new ca.uhn.fhir.rest.server.exceptions.InternalErrorException(
                 "No se pudo obtener el usuario: " + e.getMessage()
             );
@@ -228,11 +298,10 @@ public class PractitionerResourceProvider implements IResourceProvider {
                                  practitioner.hasIdentifier() ||
                                  practitioner.hasExtension();
         
-        logger.info("Actualizando usuario con hash_id: " + hashId + ", active: " + active + ", tiene otros campos: " + hasOtherFields);
+        logger.info("Actualizando usuario con hash_id: {}, active: {}, tiene otros campos: {}", hashId, active, hasOtherFields);
 
         try {
             String token = requestDetails.getHeader("Authorization");
-            RestTemplate restTemplate = new RestTemplate();
 
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_JSON);
@@ -246,8 +315,8 @@ public class PractitionerResourceProvider implements IResourceProvider {
 
                 if (active) {
                     // Activar usuario
-                    logger.info("Activando usuario: " + hashId);
-                    restTemplate.exchange(
+                    logger.info("Activando usuario: {}", hashId);
+                    backendClient.exchange(
                         buildBackendUrl("/user/activate/" + hashId),
                         HttpMethod.PUT,
                         entity,
@@ -255,8 +324,8 @@ public class PractitionerResourceProvider implements IResourceProvider {
                     );
                 } else {
                     // Bloquear usuario
-                    logger.info("Bloqueando usuario: " + hashId);
-                    restTemplate.exchange(
+                    logger.info("Bloqueando usuario: {}", hashId);
+                    backendClient.exchange(
                         buildBackendUrl("/user/" + hashId),
                         HttpMethod.DELETE,
                         entity,
@@ -264,14 +333,14 @@ public class PractitionerResourceProvider implements IResourceProvider {
                     );
                 }
 
-                logger.info("Estado del usuario actualizado exitosamente: " + hashId);
+                logger.info("Estado del usuario actualizado exitosamente: {}", hashId);
                 MethodOutcome outcome = new MethodOutcome();
                 outcome.setId(new IdType("Practitioner", hashId));
                 return outcome;
             }
 
             // Si tiene otros campos, extraerlos y actualizar el usuario completo
-            logger.info("Actualizando datos completos del usuario: " + hashId);
+            logger.info("Actualizando datos completos del usuario: {}", hashId);
             
             // Extraer datos del recurso Practitioner FHIR
             String dni = null;
@@ -354,40 +423,22 @@ public class PractitionerResourceProvider implements IResourceProvider {
             payload.put("user", userData);
 
             HttpEntity<Map<String, Object>> entity = new HttpEntity<>(payload, headers);
-            logger.info("Enviando datos al backend para actualizar usuario: " + payload);
-
-            @SuppressWarnings("unchecked")
-            ResponseEntity<Map<String, Object>> response = restTemplate.exchange(
-                buildBackendUrl("/user/" + hashId),
-                HttpMethod.PUT,
-                entity,
-                (Class<Map<String, Object>>) (Class<?>) Map.class
-            );
-
-            // Si también se especificó el campo active, actualizar el estado
-            if (response.getStatusCode().is2xxSuccessful()) {
-                if (active) {
-                    // Activar usuario si está especificado
-                    HttpEntity<String> activateEntity = new HttpEntity<>(headers);
-                    restTemplate.exchange(
-                        buildBackendUrl("/user/activate/" + hashId),
-                        HttpMethod.PUT,
-                        activateEntity,
-                        String.class
-                    );
-                } else {
-                    // Bloquear usuario si está especificado
-                    HttpEntity<String> blockEntity = new HttpEntity<>(headers);
-                    restTemplate.exchange(
-                        buildBackendUrl("/user/" + hashId),
-                        HttpMethod.DELETE,
-                        blockEntity,
-                        String.class
-                    );
-                }
-            }
+            payloadLogger.log(logger, "Enviando datos al backend para actualizar usuario:", payload);
 
-            logger.info("Usuario actualizado exitosamente: " + hashId);
+            // PUT de los datos y, encadenado sin bloquear, la activación o el bloqueo
+            HttpEntity<String> stateEntity = new HttpEntity<>(headers);
+            backendClient.await(backendClient.exchangeAsync(
+                    buildBackendUrl("/user/" + hashId),
+                    HttpMethod.PUT,
+                    entity,
+                    new ParameterizedTypeReference<Map<String, Object>>() {}
+            ).thenCompose(response -> active
+                    ? backendClient.exchangeAsync(buildBackendUrl("/user/activate/" + hashId),
+                            HttpMethod.PUT, stateEntity, String.class)
+                    : backendClient.exchangeAsync(buildBackendUrl("/user/" + hashId),
+                            HttpMethod.DELETE, stateEntity, String.class)));
+
+            logger.info("Usuario actualizado exitosamente: {}", hashId);
             MethodOutcome outcome = new MethodOutcome();
             outcome.setId(new IdType("Practitioner", hashId));
             return outcome;
@@ -396,7 +447,7 @@ public class PractitionerResourceProvider implements IResourceProvider {
             BackendErrorHandler.handleHttpException(e);
             return null; // Nunca se ejecutará, pero necesario para compilación
         } catch (Exception e) {
-            logger.error("Error al actualizar el usuario: " + e.getMessage(), e);
+            logger.error("Error al actualizar el usuario: {}", e.getMessage(), e);
             throw new ca.uhn.fhir.rest.server.exceptions.InternalErrorException(
                 "No se pudo actualizar el usuario: " + e.getMessage()
             );
@@ -498,7 +549,6 @@ public class PractitionerResourceProvider implements IResourceProvider {
 
             // Preparar headers y hacer POST al backend
             String token = requestDetails.getHeader("Authorization");
-            RestTemplate restTemplate = new RestTemplate();
 
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_JSON);
@@ -507,10 +557,10 @@ public class PractitionerResourceProvider implements IResourceProvider {
             }
 
             HttpEntity<Map<String, Object>> entity = new HttpEntity<>(payload, headers);
-            logger.info("Enviando datos al backend para crear usuario: " + payload);
+            payloadLogger.log(logger, "Enviando datos al backend para crear usuario:", payload);
 
             @SuppressWarnings("unchecked")
-            ResponseEntity<Map<String, Object>> response = restTemplate.exchange(
+            ResponseEntity<Map<String, Object>> response = backendClient.exchange(
                 buildBackendUrl("/user/create"),
                 HttpMethod.POST,
                 entity,
@@ -533,7 +583,7 @@ public class PractitionerResourceProvider implements IResourceProvider {
                     
                     // Consultar el usuario por DNI para obtener el hash_id
                     HttpEntity<String> getEntity = new HttpEntity<>(headers);
-                    ResponseEntity<List> getUserResponse = restTemplate.exchange(
+                    ResponseEntity<List> getUserResponse = backendClient.exchange(
                         buildBackendUrl("/user/"),
                         HttpMethod.GET,
                         getEntity,
@@ -562,13 +612,13 @@ public class PractitionerResourceProvider implements IResourceProvider {
                     );
                 }
 
-                logger.info("Usuario creado exitosamente con hash_id: " + hashId);
+                logger.info("Usuario creado exitosamente con hash_id: {}", hashId);
                 MethodOutcome outcome = new MethodOutcome();
                 outcome.setId(new IdType("Practitioner", hashId));
                 outcome.setCreated(true);
                 return outcome;
             } else {
-                // Este caso no debería ocurrir normalmente porque RestTemplate lanza excepciones
+                // Este caso no debería ocurrir normalmente porque BackendClient lanza excepciones
                 // para códigos de error, pero el compilador requiere que todos los caminos retornen
                 throw new ca.uhn.fhir.rest.server.exceptions.InternalErrorException(
                     "Error inesperado: código de estado no exitoso sin excepción"
@@ -576,7 +626,7 @@ public class PractitionerResourceProvider implements IResourceProvider {
             }
 
         } catch (IllegalArgumentException e) {
-            logger.error("Error de validación al crear usuario: " + e.getMessage());
+            logger.error("Error de validación al crear usuario: {}", e.getMessage());
             throw new ca.uhn.fhir.rest.server.exceptions.InvalidRequestException(e.getMessage());
         } catch (HttpClientErrorException | HttpServerErrorException e) {
             BackendErrorHandler.handleHttpException(e);
@@ -585,7 +635,7 @@ public class PractitionerResourceProvider implements IResourceProvider {
                 "Error al procesar respuesta del backend"
             );
         } catch (Exception e) {
-            logger.error("Error al crear el usuario: " + e.getMessage(), e);
+            logger.error("Error al crear el usuario: {}", e.getMessage(), e);
             throw new ca.uhn.fhir.rest.server.exceptions.InternalErrorException(
                 "No se pudo crear el usuario: " + e.getMessage()
             );
@@ -653,7 +703,7 @@ public class PractitionerResourceProvider implements IResourceProvider {
                     practitioner.setBirthDateElement(new DateType(fechaNormalizada));
                 }
             } catch (Exception e) {
-                logger.warn("Error al procesar fecha de nacimiento: " + e.getMessage());
+                logger.warn("Error al procesar fecha de nacimiento: {}", e.getMessage());
             }
         }
 
@@ -689,7 +739,7 @@ public class PractitionerResourceProvider implements IResourceProvider {
      * Normaliza una cadena de fecha eliminando milisegundos y convirtiéndola al formato YYYY-MM-DD
      * que acepta FHIR DateType
      */
-    private String normalizeDateString(String dateString) {
+    String normalizeDateString(String dateString) {
         if (dateString == null || dateString.isEmpty()) {
             return null;
         }
@@ -734,11 +784,11 @@ public class PractitionerResourceProvider implements IResourceProvider {
                 }
             }
             
-            logger.warn("No se pudo normalizar la fecha: " + dateString);
+            logger.warn("No se pudo normalizar la fecha: {}", dateString);
             return null;
             
         } catch (Exception e) {
-            logger.warn("Error al normalizar fecha: " + dateString + " - " + e.getMessage());
+            logger.warn("Error al normalizar fecha: {} - {}", dateString, e.getMessage());
             return null;
         }
     }
@@ -1,14 +1,23 @@
 package com.serverfhir.provider;
 
+import ca.uhn.fhir.model.api.Include;
+import ca.uhn.fhir.model.api.ResourceMetadataKeyEnum;
+import ca.uhn.fhir.model.valueset.BundleEntrySearchModeEnum;
 import ca.uhn.fhir.rest.annotation.Create;
+import ca.uhn.fhir.rest.annotation.History;
 import ca.uhn.fhir.rest.annotation.Operation;
 import ca.uhn.fhir.rest.annotation.IdParam;
+import ca.uhn.fhir.rest.annotation.IncludeParam;
 import ca.uhn.fhir.rest.annotation.Read;
 import ca.uhn.fhir.rest.annotation.Search;
 import ca.uhn.fhir.rest.annotation.ResourceParam;
 import ca.uhn.fhir.rest.annotation.OptionalParam;
 import ca.uhn.fhir.rest.annotation.OperationParam;
+import ca.uhn.fhir.rest.annotation.Since;
+import ca.uhn.fhir.rest.param.DateParam;
+import ca.uhn.fhir.rest.param.DateRangeParam;
 import ca.uhn.fhir.rest.param.StringParam;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.api.MethodOutcome;
@@ -21,19 +30,36 @@ import org.hl7.fhir.r5.model.Reference;
 import org.hl7.fhir.r5.model.Bundle;
 import org.hl7.fhir.r5.model.Bundle.BundleType;
 import org.hl7.fhir.r5.model.DateTimeType;
+import org.hl7.fhir.r5.model.InstantType;
+import org.hl7.fhir.r5.model.BooleanType;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import com.serverfhir.util.LastUpdated;
+import com.serverfhir.util.PayloadLogger;
 import org.hl7.fhir.r5.model.StringType;
-import org.springframework.web.client.RestTemplate;
+import com.serverfhir.service.BackendClient;
+import com.serverfhir.subscription.SubscriptionDispatcher;
+import com.serverfhir.subscription.SubscriptionEvent;
+import com.serverfhir.subscription.SubscriptionTopics;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpMethod;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.web.client.HttpClientErrorException;
+import java.time.Instant;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,12 +68,29 @@ public class ReportResourceProvider implements IResourceProvider {
 
     private static final Logger logger = LoggerFactory.getLogger(ReportResourceProvider.class);
 
+    @Autowired
+    private BackendClient backendClient;
+
+    @Autowired
+    private PayloadLogger payloadLogger;
+
+    @Autowired
+    private EhrResourceProvider ehrResourceProvider;
+
+    @Autowired
+    private SubscriptionDispatcher subscriptionDispatcher;
+
     @Value("${tfback.url}")
     private String tfBackUrl;
 
     @Value("${tfback.api.path}")
     private String tfBackApiPath;
 
+    @Value("${fhir.search.report.annex-concurrency:8}")
+    private int annexConcurrency;
+
+    private static final String REVINCLUDE_ANNEX = "DiagnosticReport:annex";
+
     private String buildBackendUrl(String path) {
         return tfBackUrl + tfBackApiPath + path;
     }
@@ -101,7 +144,6 @@ public class ReportResourceProvider implements IResourceProvider {
 
     private MethodOutcome createNormalReport(DiagnosticReport diagnosticReport, RequestDetails requestDetails) {
         // Validación de token ya se hace en el interceptor
-        RestTemplate restTemplate = new RestTemplate();
 
         // Obtener el token del contexto de la petición
         String token = requestDetails.getHeader("Authorization");
@@ -147,7 +189,7 @@ public class ReportResourceProvider implements IResourceProvider {
         payload.put("ehrId", ehrId);
 
         // Log del payload final
-        logger.info("Payload final para crear reporte: " + payload.toString());
+        payloadLogger.log(logger, "Payload final para crear reporte:", payload);
 
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
@@ -163,17 +205,16 @@ public class ReportResourceProvider implements IResourceProvider {
 
         try {
             String url = buildBackendUrl("/report/create");
-            logger.info("Enviando petición al backend: " + url);
-            logger.info("Payload: " + payload.toString());
+            logger.debug("Enviando petición al backend: {}", url);
             
             @SuppressWarnings("rawtypes")
-            ResponseEntity<Map> response = restTemplate.postForEntity(
+            ResponseEntity<Map> response = backendClient.postForEntity(
                 url, 
                 request, 
                 Map.class
             );
             
-            logger.info("Respuesta recibida del backend - Status: " + response.getStatusCode());
+            logger.debug("Respuesta recibida del backend - Status: {}", response.getStatusCode());
 
             if (response.getStatusCode() == HttpStatus.OK || response.getStatusCode() == HttpStatus.CREATED) {
                 @SuppressWarnings("unchecked")
@@ -195,16 +236,19 @@ public class ReportResourceProvider implements IResourceProvider {
                 outcome.setId(new IdType(ResourceType.DiagnosticReport.name(), reportId));
                 outcome.setCreated(true);
                 
-                logger.info("Reporte creado exitosamente con ID: " + reportId);
-                logger.info("Respuesta del backend: " + responseBody);
+                logger.info("Reporte creado exitosamente con ID: {}", reportId);
+                diagnosticReport.setId(reportId);
+                subscriptionDispatcher.publish(SubscriptionEvent.diagnosticReport(SubscriptionTopics.CATEGORY_REPORT, reportId,
+                        patientHashId(diagnosticReport), null));
+                payloadLogger.log(logger, "Respuesta del backend:", responseBody);
                 return outcome;
             } else {
-                logger.error("Error en la API externa: código " + response.getStatusCode());
+                logger.error("Error en la API externa: código {}", response.getStatusCode());
                 throw new RuntimeException("Error en la API externa: código " + response.getStatusCode());
             }
 
         } catch (Exception e) {
-            logger.error("Error al crear el reporte: " + e.getMessage(), e);
+            logger.error("Error al crear el reporte: {}", e.getMessage(), e);
             throw new ca.uhn.fhir.rest.server.exceptions.InternalErrorException(
                 "No se pudo crear el reporte: " + e.getMessage()
             );
@@ -212,18 +256,17 @@ public class ReportResourceProvider implements IResourceProvider {
     }
 
     private MethodOutcome createAnnex(DiagnosticReport diagnosticReport, RequestDetails requestDetails) {
-        RestTemplate restTemplate = new RestTemplate();
         String token = requestDetails.getHeader("Authorization");
 
         // Obtener el ID del reporte padre desde la referencia del subject
         String reportId = null;
         if (diagnosticReport.hasSubject() && diagnosticReport.getSubject().hasReference()) {
             String reference = diagnosticReport.getSubject().getReference();
-            logger.info("Referencia del subject: " + reference);
+            logger.debug("Referencia del subject: {}", reference);
 
             if (reference.startsWith("DiagnosticReport/")) {
                 reportId = reference.replace("DiagnosticReport/", "");
-                logger.info("ReportId extraído: " + reportId);
+                logger.debug("ReportId extraído: {}", reportId);
             }
         }
 
@@ -232,7 +275,7 @@ public class ReportResourceProvider implements IResourceProvider {
             for (Extension extension : diagnosticReport.getExtension()) {
                 if (extension.getUrl().contains("report-hash-id")) {
                     reportId = extension.getValue().toString();
-                    logger.info("ReportId extraído desde extensión: " + reportId);
+                    logger.debug("ReportId extraído desde extensión: {}", reportId);
                     break;
                 }
             }
@@ -240,8 +283,7 @@ public class ReportResourceProvider implements IResourceProvider {
 
         if (reportId == null || reportId.isEmpty() || "undefined".equals(reportId)) {
             logger.error("No se pudo determinar el ID del reporte padre para el anexo");
-            logger.error("Subject reference: "
-                    + (diagnosticReport.hasSubject() ? diagnosticReport.getSubject().getReference() : "null"));
+            logger.error("Subject reference: {}", (diagnosticReport.hasSubject() ? diagnosticReport.getSubject().getReference() : "null"));
             throw new RuntimeException(
                     "No se pudo determinar el ID del reporte padre para el anexo. Verifique que la referencia del subject sea correcta.");
         }
@@ -261,7 +303,7 @@ public class ReportResourceProvider implements IResourceProvider {
         payload.put("userId", userId);
         payload.put("text", text);
 
-        logger.info("Payload final para crear anexo: " + payload.toString());
+        payloadLogger.log(logger, "Payload final para crear anexo:", payload);
 
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
@@ -276,16 +318,15 @@ public class ReportResourceProvider implements IResourceProvider {
 
         try {
             String url = buildBackendUrl("/report/" + reportId + "/createAnnex");
-            logger.info("Enviando petición al backend: " + url);
-            logger.info("Payload: " + payload.toString());
+            logger.debug("Enviando petición al backend: {}", url);
 
             @SuppressWarnings("rawtypes")
-            ResponseEntity<Map> response = restTemplate.postForEntity(
+            ResponseEntity<Map> response = backendClient.postForEntity(
                     url,
                     request,
                     Map.class);
 
-            logger.info("Respuesta recibida del backend - Status: " + response.getStatusCode());
+            logger.debug("Respuesta recibida del backend - Status: {}", response.getStatusCode());
 
             if (response.getStatusCode() == HttpStatus.OK || response.getStatusCode() == HttpStatus.CREATED) {
                 @SuppressWarnings("unchecked")
@@ -306,16 +347,19 @@ public class ReportResourceProvider implements IResourceProvider {
                 outcome.setId(new IdType(ResourceType.DiagnosticReport.name(), annexId));
                 outcome.setCreated(true);
 
-                logger.info("Anexo creado exitosamente con ID: " + annexId);
-                logger.info("Respuesta del backend: " + responseBody);
+                logger.info("Anexo creado exitosamente con ID: {}", annexId);
+                diagnosticReport.setId(annexId);
+                subscriptionDispatcher.publish(SubscriptionEvent.diagnosticReport(SubscriptionTopics.CATEGORY_ANNEX, annexId,
+                        null, reportId));
+                payloadLogger.log(logger, "Respuesta del backend:", responseBody);
                 return outcome;
             } else {
-                logger.error("Error en la API externa: código " + response.getStatusCode());
+                logger.error("Error en la API externa: código {}", response.getStatusCode());
                 throw new RuntimeException("Error en la API externa: código " + response.getStatusCode());
             }
 
         } catch (Exception e) {
-            logger.error("Error al crear el anexo: " + e.getMessage(), e);
+            logger.error("Error al crear el anexo: {}", e.getMessage(), e);
             throw new ca.uhn.fhir.rest.server.exceptions.InternalErrorException(
                     "No se pudo crear el anexo: " + e.getMessage());
         }
@@ -339,105 +383,222 @@ public class ReportResourceProvider implements IResourceProvider {
     @Search
     public List<DiagnosticReport> searchReports(
             @OptionalParam(name = "patient") StringParam patientHashId,
+            @OptionalParam(name = "_lastUpdated") DateRangeParam lastUpdatedParam,
+            @OptionalParam(name = "_since") DateParam sinceParam,
+            @IncludeParam(reverse = true, allow = {REVINCLUDE_ANNEX}) Set<Include> revIncludes,
             RequestDetails requestDetails) {
 
-        logger.info("Buscando reportes para paciente con hashId: " +
-                (patientHashId != null ? patientHashId.getValue() : "null"));
+        logger.debug("Buscando reportes para paciente con hashId: {}", (patientHashId != null ? patientHashId.getValue() : "null"));
 
         if (patientHashId == null || patientHashId.getValue() == null || patientHashId.getValue().isEmpty()) {
             logger.warn("No se proporcionó hashId del paciente");
             return new ArrayList<>();
         }
 
-        RestTemplate restTemplate = new RestTemplate();
-
         // Obtener el token del contexto de la petición
         String token = requestDetails.getHeader("Authorization");
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-
-        // Agregar el token de autorización a los headers
-        if (token != null && !token.isEmpty()) {
-            headers.set("Authorization", token);
-        } else {
+        if (token == null || token.isEmpty()) {
             logger.error("No se encontró el token de autorización");
             throw new RuntimeException("No se pudo consultar los reportes. No se encontró el accessToken.");
         }
 
-        HttpEntity<String> request = new HttpEntity<>(headers);
-
         try {
-            String url = buildBackendUrl("/report/all/" + patientHashId.getValue());
-            logger.info("Consultando reportes en: " + url);
-
-            @SuppressWarnings("rawtypes")
-            ResponseEntity<List> response = restTemplate.exchange(
-                    url,
-                    org.springframework.http.HttpMethod.GET,
-                    request,
-                    List.class);
+            Instant from = LastUpdated.lowerBound(lastUpdatedParam, sinceParam != null ? sinceParam.getValue() : null);
+            Instant to = LastUpdated.upperBound(lastUpdatedParam);
 
-            logger.info("Respuesta recibida del backend - Status: " + response.getStatusCode());
-
-            if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
-                @SuppressWarnings("unchecked")
-                List<Map<String, Object>> reportsData = (List<Map<String, Object>>) response.getBody();
-
-                List<DiagnosticReport> diagnosticReports = new ArrayList<>();
-
-                for (Map<String, Object> reportData : reportsData) {
-                    DiagnosticReport diagnosticReport = convertToDiagnosticReport(reportData, patientHashId.getValue());
+            List<DiagnosticReport> diagnosticReports = new ArrayList<>();
+            for (DiagnosticReport diagnosticReport : reportsOf(patientHashId.getValue(), token)) {
+                // _lastUpdated / _since: solo los informes creados en el rango
+                if (LastUpdated.matches(diagnosticReport, from, to)) {
                     diagnosticReports.add(diagnosticReport);
                 }
-
-                logger.info("Se encontraron " + diagnosticReports.size() + " reportes para el paciente");
-                return diagnosticReports;
-            } else {
-                logger.warn("No se encontraron reportes o error en la respuesta: " + response.getStatusCode());
-                return new ArrayList<>();
             }
 
+            logger.debug("Se encontraron {} reportes para el paciente", diagnosticReports.size());
+            // _revinclude=DiagnosticReport:annex: los anexos van en el mismo Bundle (search.mode=include)
+            if (revIncludes != null && revIncludes.stream().anyMatch(i -> REVINCLUDE_ANNEX.equals(i.getValue()))) {
+                diagnosticReports.addAll(fetchAnnexes(diagnosticReports, token));
+            }
+            return diagnosticReports;
         } catch (Exception e) {
-            logger.error("Error al consultar los reportes: " + e.getMessage(), e);
+            logger.error("Error al consultar los reportes: {}", e.getMessage(), e);
             throw new ca.uhn.fhir.rest.server.exceptions.InternalErrorException(
                     "No se pudieron consultar los reportes: " + e.getMessage());
         }
     }
 
+    /**
+     * Informes de un paciente ({@code GET /report/all/{hashId}}), sin filtrar. Lo usan la búsqueda
+     * y la exportación masiva; los errores de TF_Back salen sin envolver.
+     */
+    List<DiagnosticReport> reportsOf(String patientHashId, String token) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set("Authorization", token);
+        HttpEntity<String> request = new HttpEntity<>(headers);
+
+        String url = buildBackendUrl("/report/all/" + patientHashId);
+        logger.debug("Consultando reportes en: {}", url);
+
+        @SuppressWarnings("rawtypes")
+        ResponseEntity<List> response = backendClient.exchange(
+                url,
+                org.springframework.http.HttpMethod.GET,
+                request,
+                List.class);
+
+        logger.debug("Respuesta recibida del backend - Status: {}", response.getStatusCode());
+
+        List<DiagnosticReport> diagnosticReports = new ArrayList<>();
+        if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> reportsData = (List<Map<String, Object>>) response.getBody();
+            for (Map<String, Object> reportData : reportsData) {
+                diagnosticReports.add(convertToDiagnosticReport(reportData, patientHashId));
+            }
+        } else {
+            logger.warn("No se encontraron reportes o error en la respuesta: {}", response.getStatusCode());
+        }
+        return diagnosticReports;
+    }
+
     // Custom operation to list reports by patient via a distinct endpoint:
-    // GET /fhir/DiagnosticReport/$list-reports?patient={hashId}
+    // GET /fhir/DiagnosticReport/$list-reports?patient={hashId}[&includeAnnexes=true]
     @Operation(name = "$list-reports", idempotent = true, type = DiagnosticReport.class)
     public Bundle listReportsOperation(
             @OperationParam(name = "patient") StringType patientHashId,
+            @OperationParam(name = "includeAnnexes") BooleanType includeAnnexes,
             RequestDetails requestDetails) {
         StringParam sp = (patientHashId != null && patientHashId.hasValue())
                 ? new StringParam(patientHashId.getValue())
                 : null;
-        List<DiagnosticReport> reports = searchReports(sp, requestDetails);
+        Set<Include> revIncludes = includeAnnexes != null && Boolean.TRUE.equals(includeAnnexes.getValue())
+                ? Set.of(new Include(REVINCLUDE_ANNEX))
+                : null;
+        List<DiagnosticReport> reports = searchReports(sp, null, null, revIncludes, requestDetails);
         Bundle bundle = new Bundle();
         bundle.setType(BundleType.SEARCHSET);
         for (DiagnosticReport dr : reports) {
-            bundle.addEntry().setResource(dr);
+            Bundle.BundleEntryComponent entry = bundle.addEntry().setResource(dr);
+            if (ResourceMetadataKeyEnum.ENTRY_SEARCH_MODE.get(dr) == BundleEntrySearchModeEnum.INCLUDE) {
+                entry.getSearch().setMode(Bundle.SearchEntryMode.INCLUDE);
+            }
         }
         return bundle;
     }
 
+    /**
+     * Anexos de todos los informes en una sola respuesta ({@code _revinclude=DiagnosticReport:annex}
+     * o {@code $list-reports?includeAnnexes=true}) en vez de un {@code ?annex=} por informe desde
+     * el cliente. TF_Back solo los lista por informe, así que se pide {@code /report/{hash_id}/annexes}
+     * para cada uno con a lo sumo {@code fhir.search.report.annex-concurrency} llamadas en curso.
+     * Cada informe se consulta una vez y cada anexo sale una vez; un informe sin anexos (404)
+     * no aporta nada. Si la llamada de un informe falla (5xx, plazo vencido, TF_Back saturado) se
+     * registra y se sigue igual que con un 404: los informes salen aunque les falten anexos.
+     */
+    private List<DiagnosticReport> fetchAnnexes(List<DiagnosticReport> reports, String token) {
+        Set<String> reportIds = new LinkedHashSet<>();
+        for (DiagnosticReport report : reports) {
+            String reportId = reportHashId(report);
+            if (reportId != null) {
+                reportIds.add(reportId);
+            }
+        }
+        if (reportIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set("Authorization", token);
+        HttpEntity<String> request = new HttpEntity<>(headers);
+
+        AtomicInteger failed = new AtomicInteger();
+        Map<String, List<Map<String, Object>>> annexesByReport = backendClient.fanOut(reportIds, annexConcurrency,
+                reportId -> backendClient.exchangeAsync(
+                        buildBackendUrl("/report/" + reportId + "/annexes"),
+                        HttpMethod.GET,
+                        request,
+                        new ParameterizedTypeReference<List<Map<String, Object>>>() {})
+                        .exceptionally(error -> {
+                            // Se resuelve acá para que fanOut no corte las demás llamadas
+                            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                    ? error.getCause() : error;
+                            if (!(cause instanceof HttpClientErrorException.NotFound)) {
+                                failed.incrementAndGet();
+                                logger.warn("No se pudieron obtener los anexos del informe {}: {}", reportId,
+                                        cause.getMessage());
+                            }
+                            return ResponseEntity.ok(List.of());
+                        }));
+        if (failed.get() > 0) {
+            logger.warn("{} de {} informes salen sin anexos por errores de TF_Back", failed.get(), reportIds.size());
+        }
+
+        Map<String, DiagnosticReport> annexes = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Map<String, Object>>> entry : annexesByReport.entrySet()) {
+            for (Map<String, Object> annexData : entry.getValue()) {
+                DiagnosticReport annex = convertAnnexToDiagnosticReport(annexData, entry.getKey());
+                ResourceMetadataKeyEnum.ENTRY_SEARCH_MODE.put(annex, BundleEntrySearchModeEnum.INCLUDE);
+                annexes.putIfAbsent(annex.getIdElement().getIdPart(), annex);
+            }
+        }
+        logger.debug("Se encontraron {} anexos para {} reportes", annexes.size(), reportIds.size());
+        return new ArrayList<>(annexes.values());
+    }
+
+    /**
+     * hash_id del informe (con el que TF_Back lista sus anexos); si no vino, el id del recurso.
+     * Null para los ids temporales.
+     */
+    private String reportHashId(DiagnosticReport report) {
+        for (Extension extension : report.getExtension()) {
+            if (extension.getUrl().contains("report-hash-id") && extension.getValue() != null
+                    && extension.getValue().primitiveValue() != null) {
+                return extension.getValue().primitiveValue();
+            }
+        }
+        String id = report.getIdElement().getIdPart();
+        return id == null || id.startsWith("temp-") ? null : id;
+    }
+
+    /**
+     * Historia de tipo ({@code GET /DiagnosticReport/_history?patient={hashId}&_since=...}): los
+     * informes del paciente y las versiones de su historia fisiátrica con {@code meta.lastUpdated}
+     * posterior a {@code _since}, del más reciente al más antiguo. TF_Back solo lista informes por
+     * paciente, así que {@code patient} es obligatorio.
+     */
+    @History
+    public List<DiagnosticReport> reportHistory(@Since InstantType since, RequestDetails requestDetails) {
+        String[] patientParam = requestDetails.getParameters().get("patient");
+        if (patientParam == null || patientParam.length == 0 || patientParam[0].isBlank()) {
+            throw new InvalidRequestException("DiagnosticReport/_history requiere el parámetro patient");
+        }
+        String patientHashId = patientParam[0];
+        Instant from = since != null && since.getValue() != null ? since.getValue().toInstant() : null;
+
+        List<DiagnosticReport> changes = new ArrayList<>(searchReports(new StringParam(patientHashId), null, null, null, requestDetails));
+        try {
+            changes.addAll(ehrResourceProvider.historiaVersions(patientHashId, requestDetails.getHeader("Authorization")));
+        } catch (Exception e) {
+            logger.error("Error al obtener el historial de la historia fisiátrica: {}", e.getMessage());
+        }
+        return LastUpdated.newestFirst(changes, from, null);
+    }
+
     @Search
     public List<DiagnosticReport> searchReportAnnexes(
             @OptionalParam(name = "annex") StringParam reportHashId,
             RequestDetails requestDetails) {
 
-        logger.info("Buscando anexos para reporte con hashId: " +
-                (reportHashId != null ? reportHashId.getValue() : "null"));
+        logger.debug("Buscando anexos para reporte con hashId: {}", (reportHashId != null ? reportHashId.getValue() : "null"));
 
         if (reportHashId == null || reportHashId.getValue() == null || reportHashId.getValue().isEmpty()) {
             logger.warn("No se proporcionó hashId del reporte");
             return new ArrayList<>();
         }
 
-        RestTemplate restTemplate = new RestTemplate();
-
         // Obtener el token del contexto de la petición
         String token = requestDetails.getHeader("Authorization");
 
@@ -456,16 +617,16 @@ public class ReportResourceProvider implements IResourceProvider {
 
         try {
             String url = buildBackendUrl("/report/" + reportHashId.getValue() + "/annexes");
-            logger.info("Consultando anexos en: " + url);
+            logger.debug("Consultando anexos en: {}", url);
 
             @SuppressWarnings("rawtypes")
-            ResponseEntity<List> response = restTemplate.exchange(
+            ResponseEntity<List> response = backendClient.exchange(
                     url,
                     org.springframework.http.HttpMethod.GET,
                     request,
                     List.class);
 
-            logger.info("Respuesta recibida del backend - Status: " + response.getStatusCode());
+            logger.debug("Respuesta recibida del backend - Status: {}", response.getStatusCode());
 
             if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
                 @SuppressWarnings("unchecked")
@@ -479,15 +640,15 @@ public class ReportResourceProvider implements IResourceProvider {
                     diagnosticReports.add(diagnosticReport);
                 }
 
-                logger.info("Se encontraron " + diagnosticReports.size() + " anexos para el reporte");
+                logger.debug("Se encontraron {} anexos para el reporte", diagnosticReports.size());
                 return diagnosticReports;
             } else {
-                logger.warn("No se encontraron anexos o error en la respuesta: " + response.getStatusCode());
+                logger.warn("No se encontraron anexos o error en la respuesta: {}", response.getStatusCode());
                 return new ArrayList<>();
             }
 
         } catch (Exception e) {
-            logger.error("Error al consultar los anexos: " + e.getMessage(), e);
+            logger.error("Error al consultar los anexos: {}", e.getMessage(), e);
             throw new ca.uhn.fhir.rest.server.exceptions.InternalErrorException(
                     "No se pudieron consultar los anexos: " + e.getMessage());
         }
@@ -507,6 +668,14 @@ public class ReportResourceProvider implements IResourceProvider {
         return null; // Se puede manejar como null en el backend
     }
 
+    /**
+     * hash_id del paciente si el subject es {@code Patient/{hash_id}}.
+     */
+    private String patientHashId(DiagnosticReport report) {
+        String reference = report.hasSubject() ? report.getSubject().getReference() : null;
+        return reference != null && reference.startsWith("Patient/") ? reference.substring("Patient/".length()) : null;
+    }
+
     /**
      * Extrae el ID del usuario de las extensiones
      */
@@ -570,7 +739,7 @@ public class ReportResourceProvider implements IResourceProvider {
         DiagnosticReport diagnosticReport = new DiagnosticReport();
 
         // Log para debuggear los datos recibidos
-        logger.info("Convirtiendo reporte con datos: " + reportData.toString());
+        payloadLogger.log(logger, "Convirtiendo reporte con datos:", reportData);
 
         // Extraer el objeto report del wrapper
         Map<String, Object> report = null;
@@ -590,7 +759,7 @@ public class ReportResourceProvider implements IResourceProvider {
             // Generar un ID temporal si no hay ID del backend
             String tempId = "temp-" + System.currentTimeMillis() + "-" + Math.random();
             diagnosticReport.setId(tempId);
-            logger.warn("No se encontró id_informe en los datos del backend, usando ID temporal: " + tempId);
+            logger.warn("No se encontró id_informe en los datos del backend, usando ID temporal: {}", tempId);
         }
 
         // Establecer estado
@@ -618,8 +787,10 @@ public class ReportResourceProvider implements IResourceProvider {
                 DateTimeType effectiveDateTime = new DateTimeType(fechaStr);
                 diagnosticReport.setEffective(effectiveDateTime);
             } catch (Exception e) {
-                logger.warn("Error al convertir fecha de creación: " + e.getMessage());
+                logger.warn("Error al convertir fecha de creación: {}", e.getMessage());
             }
+            // Los informes no se editan: la creación es también la última modificación
+            LastUpdated.stamp(diagnosticReport, report.get("fecha_creacion"));
         }
 
         // Establecer referencia al paciente usando el hashId
@@ -678,7 +849,7 @@ public class ReportResourceProvider implements IResourceProvider {
                 DateTimeType effectiveDateTime = new DateTimeType(fechaStr);
                 diagnosticReport.setEffective(effectiveDateTime);
             } catch (Exception e) {
-                logger.warn("Error al convertir fecha de creación del anexo: " + e.getMessage());
+                logger.warn("Error al convertir fecha de creación del anexo: {}", e.getMessage());
             }
         }
 
@@ -705,7 +876,7 @@ public class ReportResourceProvider implements IResourceProvider {
     private void addExtensions(DiagnosticReport diagnosticReport, Map<String, Object> report) {
         // HashId del reporte (nuevo campo)
         if (report.containsKey("hash_id") && report.get("hash_id") != null) {
-            logger.info("HashId del reporte: " + report.get("hash_id").toString());
+            logger.debug("HashId del reporte: {}", report.get("hash_id"));
             Extension hashIdExtension = new Extension();
             hashIdExtension.setUrl("http://example.org/fhir/StructureDefinition/report-hash-id");
             hashIdExtension.setValue(new org.hl7.fhir.r5.model.StringType(report.get("hash_id").toString()));
@@ -0,0 +1,217 @@
+package com.serverfhir.provider;
+
+import ca.uhn.fhir.rest.annotation.Create;
+import ca.uhn.fhir.rest.annotation.Delete;
+import ca.uhn.fhir.rest.annotation.IdParam;
+import ca.uhn.fhir.rest.annotation.Operation;
+import ca.uhn.fhir.rest.annotation.Read;
+import ca.uhn.fhir.rest.annotation.ResourceParam;
+import ca.uhn.fhir.rest.annotation.Search;
+import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.IResourceProvider;
+import ca.uhn.fhir.rest.server.exceptions.AuthenticationException;
+import ca.uhn.fhir.rest.server.exceptions.ForbiddenOperationException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import ca.uhn.fhir.rest.server.exceptions.UnprocessableEntityException;
+import com.serverfhir.config.SubscriptionWebSocketConfig;
+import com.serverfhir.service.BackendClient;
+import com.serverfhir.service.JwtService;
+import com.serverfhir.subscription.SubscriptionRegistry;
+import com.serverfhir.subscription.SubscriptionTopics;
+import com.serverfhir.util.BackendErrorHandler;
+import org.hl7.fhir.r5.model.DateTimeType;
+import org.hl7.fhir.r5.model.IdType;
+import org.hl7.fhir.r5.model.Parameters;
+import org.hl7.fhir.r5.model.ResourceType;
+import org.hl7.fhir.r5.model.StringType;
+import org.hl7.fhir.r5.model.Subscription;
+import org.hl7.fhir.r5.model.UrlType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Subscriptions R5 por topic con canal WebSocket. Topics en SubscriptionTopics; las notificaciones
+ * las arma SubscriptionDispatcher cuando los providers confirman una escritura en TF_Back.
+ *
+ * Flujo del cliente: {@code POST /Subscription} (topic, {@code channelType=websocket}, content
+ * {@code id-only} o {@code empty}, filtros opcionales), {@code GET
+ * /Subscription/{id}/$get-ws-binding-token}, conexión a {@code websocket-url} y
+ * {@code bind-with-token <token>}.
+ *
+ * Cada usuario ve, borra y liga solo sus Subscriptions (404 para las ajenas). Toda Subscription
+ * lleva el filtro {@code patient}, y al crearla se confirma con {@code GET /patient/{hash_id}} y el
+ * token del usuario que TF_Back le deja ver ese paciente (403 o 404 si no): así nadie recibe
+ * avisos de cambios de pacientes ajenos. No hay {@code full-resource}: la notificación no pasa por
+ * TF_Back; el cliente lee el {@code focus} con su token.
+ */
+@Component
+public class SubscriptionResourceProvider implements IResourceProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(SubscriptionResourceProvider.class);
+    private static final String CHANNEL_WEBSOCKET = "websocket";
+
+    @Autowired
+    private SubscriptionRegistry subscriptionRegistry;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Autowired
+    private BackendClient backendClient;
+
+    @Value("${tfback.url}")
+    private String tfBackUrl;
+
+    @Value("${tfback.api.path}")
+    private String tfBackApiPath;
+
+    @Override
+    public Class<Subscription> getResourceType() {
+        return Subscription.class;
+    }
+
+    @Create
+    public MethodOutcome createSubscription(@ResourceParam Subscription subscription, RequestDetails requestDetails) {
+        validate(subscription);
+        String scope = userScope(requestDetails);
+        for (Subscription.SubscriptionFilterByComponent filter : subscription.getFilterBy()) {
+            if (SubscriptionTopics.FILTER_PATIENT.equals(filter.getFilterParameter())) {
+                checkPatientAccess(filter.getValue(), requestDetails.getHeader("Authorization"));
+            }
+        }
+        Subscription created = subscriptionRegistry.create(subscription, scope);
+        if (created == null) {
+            throw new UnprocessableEntityException("Se alcanzó el máximo de Subscriptions activas");
+        }
+        logger.info("Subscription/{} creada para {} ({})", created.getIdPart(), created.getTopic(),
+                created.getContent().toCode());
+
+        MethodOutcome outcome = new MethodOutcome();
+        outcome.setId(new IdType(ResourceType.Subscription.name(), created.getIdPart()));
+        outcome.setResource(created);
+        outcome.setCreated(true);
+        return outcome;
+    }
+
+    @Read
+    public Subscription readSubscription(@IdParam IdType id, RequestDetails requestDetails) {
+        Subscription subscription = subscriptionRegistry.get(id.getIdPart(), userScope(requestDetails));
+        if (subscription == null) {
+            throw new ResourceNotFoundException(id);
+        }
+        return subscription;
+    }
+
+    @Search
+    public List<Subscription> searchSubscriptions(RequestDetails requestDetails) {
+        return subscriptionRegistry.list(userScope(requestDetails));
+    }
+
+    @Delete
+    public MethodOutcome deleteSubscription(@IdParam IdType id, RequestDetails requestDetails) {
+        if (!subscriptionRegistry.delete(id.getIdPart(), userScope(requestDetails))) {
+            throw new ResourceNotFoundException(id);
+        }
+        return new MethodOutcome(new IdType(ResourceType.Subscription.name(), id.getIdPart()));
+    }
+
+    // GET /fhir/Subscription/{id}/$get-ws-binding-token
+    @Operation(name = "$get-ws-binding-token", idempotent = true)
+    public Parameters getWsBindingToken(@IdParam IdType id, RequestDetails requestDetails) {
+        SubscriptionRegistry.BindingToken token = subscriptionRegistry.issueToken(id.getIdPart(), userScope(requestDetails));
+        if (token == null) {
+            throw new ResourceNotFoundException(id);
+        }
+        Parameters parameters = new Parameters();
+        parameters.addParameter().setName("token").setValue(new StringType(token.token()));
+        parameters.addParameter().setName("expiration").setValue(new DateTimeType(Date.from(token.expires())));
+        parameters.addParameter().setName("subscription").setValue(new StringType(id.getIdPart()));
+        parameters.addParameter().setName("websocket-url").setValue(new UrlType(websocketUrl(requestDetails)));
+        return parameters;
+    }
+
+    /**
+     * Solo topics propios, canal websocket y filtros por igualdad que el topic conoce, con al menos
+     * un filtro {@code patient}.
+     */
+    private void validate(Subscription subscription) {
+        if (!SubscriptionTopics.isKnown(subscription.getTopic())) {
+            throw new UnprocessableEntityException("Topic no soportado: " + subscription.getTopic()
+                    + ". Disponibles: " + SubscriptionTopics.PATIENT + ", " + SubscriptionTopics.DIAGNOSTIC_REPORT);
+        }
+        if (!subscription.hasChannelType() || !CHANNEL_WEBSOCKET.equals(subscription.getChannelType().getCode())) {
+            throw new UnprocessableEntityException("Solo se soporta channelType websocket");
+        }
+        if (subscription.hasContent() && subscription.getContent() != Subscription.SubscriptionPayloadContent.IDONLY
+                && subscription.getContent() != Subscription.SubscriptionPayloadContent.EMPTY) {
+            throw new UnprocessableEntityException("content debe ser id-only o empty; el recurso se lee con GET sobre el focus");
+        }
+        for (Subscription.SubscriptionFilterByComponent filter : subscription.getFilterBy()) {
+            if (!SubscriptionTopics.filters(subscription.getTopic()).contains(filter.getFilterParameter())) {
+                throw new UnprocessableEntityException("Filtro no soportado para el topic: " + filter.getFilterParameter()
+                        + ". Disponibles: " + SubscriptionTopics.filters(subscription.getTopic()));
+            }
+            if (filter.hasComparator() || filter.hasModifier() || !filter.hasValue()) {
+                throw new UnprocessableEntityException("Los filtros son por igualdad y requieren value");
+            }
+        }
+        boolean byPatient = subscription.getFilterBy().stream()
+                .anyMatch(filter -> SubscriptionTopics.FILTER_PATIENT.equals(filter.getFilterParameter()));
+        if (!byPatient) {
+            throw new UnprocessableEntityException("Se requiere el filtro " + SubscriptionTopics.FILTER_PATIENT
+                    + " (hash_id del paciente)");
+        }
+    }
+
+    /**
+     * El usuario tiene que poder leer al paciente en TF_Back con su token: 404 si no existe, 403 si
+     * no le corresponde.
+     */
+    private void checkPatientAccess(String hashId, String authorization) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Authorization", authorization);
+        try {
+            Map<?, ?> patient = backendClient.exchange(tfBackUrl + tfBackApiPath + "/patient/{hash_id}",
+                    HttpMethod.GET, new HttpEntity<>(headers), Map.class, hashId).getBody();
+            if (patient == null || patient.isEmpty()) {
+                throw new ResourceNotFoundException("Paciente no encontrado: " + hashId);
+            }
+        } catch (HttpClientErrorException.NotFound e) {
+            throw new ResourceNotFoundException("Paciente no encontrado: " + hashId);
+        } catch (HttpClientErrorException.Forbidden e) {
+            throw new ForbiddenOperationException("Sin acceso al paciente " + hashId);
+        } catch (HttpClientErrorException | HttpServerErrorException e) {
+            BackendErrorHandler.handleHttpException(e);
+        }
+    }
+
+    private String userScope(RequestDetails requestDetails) {
+        String scope = jwtService.getUserScope(requestDetails.getHeader("Authorization"));
+        if (scope == null) {
+            throw new AuthenticationException("Token inválido o expirado");
+        }
+        return scope;
+    }
+
+    /**
+     * {@code http(s)://host/fhir} → {@code ws(s)://host/fhir-ws}.
+     */
+    private static String websocketUrl(RequestDetails requestDetails) {
+        String base = requestDetails.getFhirServerBase();
+        String root = base.endsWith("/fhir") ? base.substring(0, base.length() - "/fhir".length()) : base;
+        return root.replaceFirst("^http", "ws") + SubscriptionWebSocketConfig.PATH;
+    }
+}
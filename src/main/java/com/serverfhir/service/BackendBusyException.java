@@ -0,0 +1,13 @@
+package com.serverfhir.service;
+
+import org.springframework.web.client.ResourceAccessException;
+
+/**
+ * La llamada a TF_Back se rechazó sin enviarse porque ya hay demasiadas en curso y en cola.
+ */
+public class BackendBusyException extends ResourceAccessException {
+
+    public BackendBusyException(int maxInFlight, int maxQueued) {
+        super("TF_Back saturado: " + maxInFlight + " llamadas en curso y " + maxQueued + " en cola");
+    }
+}
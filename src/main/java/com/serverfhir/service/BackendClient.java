@@ -0,0 +1,681 @@
+package com.serverfhir.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.serverfhir.config.BackendConnections;
+import com.serverfhir.tracing.TraceContext;
+import com.serverfhir.tracing.Tracer;
+import com.serverfhir.util.RequestDeadline;
+import com.serverfhir.util.RequestTimings;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.converter.support.AllEncompassingFormHttpMessageConverter;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.util.DefaultUriBuilderFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Cliente HTTP no bloqueante hacia TF_Back, sobre el HttpClient de {@link BackendConnections}.
+ *
+ * <ul>
+ *   <li>{@code exchangeAsync} devuelve un CompletableFuture para componer llamadas (fan-out,
+ *       llamadas encadenadas) sin ocupar hilos mientras se espera la respuesta; {@code fanOut}
+ *       lanza una por clave con un tope de llamadas en curso por request.</li>
+ *   <li>{@code exchange} / {@code postForEntity} son la versión sincrónica, con la misma firma
+ *       y las mismas excepciones que RestTemplate ({@code HttpClientErrorException},
+ *       {@code HttpServerErrorException}, {@code ResourceAccessException}), así la lógica de
+ *       los providers y {@code BackendErrorHandler} no cambian.</li>
+ *   <li>Como máximo {@code tfback.client.max-in-flight} llamadas en curso; las siguientes esperan
+ *       en cola (hasta {@code tfback.client.max-queued}) y más allá se rechazan con
+ *       {@link BackendBusyException}. Las que salen de la cola arrancan en un virtual thread, no
+ *       en el hilo del HttpClient que completó la llamada anterior.</li>
+ *   <li>Cada llamada tiene un plazo: el menor entre el timeout pedido, lo que le queda al request
+ *       FHIR ({@link RequestDeadline}) y {@code tfback.client.default-timeout-ms}. El tiempo en
+ *       cola cuenta dentro del plazo.</li>
+ * </ul>
+ * Cada llamada propaga la traza (traceparent) y registra un span "client"; el tiempo que el
+ * request FHIR pasa esperando a TF_Back se suma a la fase "backend" en {@link #await}.
+ *
+ * Por host se lleva la cuenta de llamadas en curso y el protocolo negociado
+ * ({@code tfback.client.streams{peer,protocol}}). Con HTTP/2 el HttpClient usa una sola conexión
+ * por host, así que es la cantidad de streams de esa conexión; con HTTP/1.1 cada llamada en curso
+ * ocupa una conexión propia.
+ */
+@Service
+public class BackendClient implements DisposableBean {
+
+    /**
+     * Headers que arma el HttpClient y no se pueden copiar del HttpEntity.
+     */
+    private static final Set<String> RESTRICTED_HEADERS = Set.of(
+            "connection", "content-length", "expect", "host", "upgrade");
+
+    private final BackendConnections connections;
+    private final ObjectMapper objectMapper;
+    private final Tracer tracer;
+    private final DefaultUriBuilderFactory uriFactory = new DefaultUriBuilderFactory();
+    private final List<HttpMessageConverter<?>> converters;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    private final ExecutorService starter = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("tfback-client-", 0).factory());
+    private final Counter rejected;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, PeerStreams> peers = new ConcurrentHashMap<>();
+
+    @Value("${tfback.client.max-in-flight:64}")
+    private int maxInFlight;
+
+    @Value("${tfback.client.max-queued:512}")
+    private int maxQueued;
+
+    @Value("${tfback.client.default-timeout-ms:30000}")
+    private long defaultTimeoutMs;
+
+    public BackendClient(BackendConnections connections, ObjectMapper objectMapper, Tracer tracer,
+                         MeterRegistry meterRegistry) {
+        this.connections = connections;
+        this.objectMapper = objectMapper;
+        this.tracer = tracer;
+        this.meterRegistry = meterRegistry;
+        // Mismo encoding de URLs que RestTemplate
+        this.uriFactory.setEncodingMode(DefaultUriBuilderFactory.EncodingMode.URI_COMPONENT);
+        this.converters = List.of(
+                new ByteArrayHttpMessageConverter(),
+                new StringHttpMessageConverter(StandardCharsets.UTF_8),
+                new AllEncompassingFormHttpMessageConverter(),
+                new MappingJackson2HttpMessageConverter(objectMapper));
+
+        Gauge.builder("tfback.client.in-flight", inFlight, AtomicInteger::get)
+                .description("Llamadas a TF_Back en curso")
+                .register(meterRegistry);
+        Gauge.builder("tfback.client.queued", queued, AtomicInteger::get)
+                .description("Llamadas a TF_Back esperando lugar")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("tfback.client.rejected")
+                .description("Llamadas a TF_Back rechazadas por cola llena")
+                .register(meterRegistry);
+    }
+
+    // ========== API SINCRÓNICA (misma forma que RestTemplate) ==========
+
+    public <T> ResponseEntity<T> exchange(String url, HttpMethod method, HttpEntity<?> entity,
+                                          Class<T> responseType, Object... uriVariables) {
+        return await(exchangeAsync(uriFactory.expand(url, uriVariables), method, entity,
+                objectMapper.constructType(responseType), null));
+    }
+
+    public <T> ResponseEntity<T> exchange(String url, HttpMethod method, HttpEntity<?> entity,
+                                          Class<T> responseType, Map<String, ?> uriVariables) {
+        return await(exchangeAsync(uriFactory.expand(url, uriVariables), method, entity,
+                objectMapper.constructType(responseType), null));
+    }
+
+    public <T> ResponseEntity<T> exchange(String url, HttpMethod method, HttpEntity<?> entity,
+                                          ParameterizedTypeReference<T> responseType, Object... uriVariables) {
+        return await(exchangeAsync(uriFactory.expand(url, uriVariables), method, entity,
+                objectMapper.constructType(responseType.getType()), null));
+    }
+
+    public <T> ResponseEntity<T> postForEntity(String url, Object request, Class<T> responseType,
+                                               Object... uriVariables) {
+        return exchange(url, HttpMethod.POST, toEntity(request), responseType, uriVariables);
+    }
+
+    // ========== API ASINCRÓNICA ==========
+
+    public <T> CompletableFuture<ResponseEntity<T>> exchangeAsync(String url, HttpMethod method, HttpEntity<?> entity,
+                                                                  Class<T> responseType) {
+        return exchangeAsync(uriFactory.expand(url), method, entity, objectMapper.constructType(responseType), null);
+    }
+
+    public <T> CompletableFuture<ResponseEntity<T>> exchangeAsync(String url, HttpMethod method, HttpEntity<?> entity,
+                                                                  ParameterizedTypeReference<T> responseType) {
+        return exchangeAsync(uriFactory.expand(url), method, entity,
+                objectMapper.constructType(responseType.getType()), null);
+    }
+
+    /**
+     * Igual que {@link #exchangeAsync(String, HttpMethod, HttpEntity, ParameterizedTypeReference)}
+     * con un plazo propio para esta llamada (acotado igual por el plazo del request FHIR).
+     */
+    public <T> CompletableFuture<ResponseEntity<T>> exchangeAsync(String url, HttpMethod method, HttpEntity<?> entity,
+                                                                  ParameterizedTypeReference<T> responseType,
+                                                                  Duration timeout) {
+        return exchangeAsync(uriFactory.expand(url), method, entity,
+                objectMapper.constructType(responseType.getType()), timeout);
+    }
+
+    /**
+     * Espera el resultado de una llamada (o de una composición de llamadas) desde código
+     * sincrónico. Las excepciones salen igual que en RestTemplate y el tiempo de espera se suma
+     * a la fase "backend" del request actual.
+     */
+    public <T> T await(CompletableFuture<T> future) {
+        long start = System.nanoTime();
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new ResourceAccessException("Llamada a TF_Back interrumpida");
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } finally {
+            RequestTimings.record(RequestTimings.Phase.BACKEND, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Una llamada por clave (sin repetir claves), con a lo sumo {@code concurrency} en curso para
+     * este request además del límite global, y espera todas. Devuelve los bodies en el orden de
+     * las claves; las que respondieron 404 no aparecen. Cualquier otro error sale como en
+     * {@link #await} y corta el lanzamiento de las que faltaban.
+     *
+     * Los permisos se toman desde el hilo que llama, así cada llamada lleva el plazo y la traza
+     * del request FHIR (ThreadLocal); la espera por un permiso cuenta como fase "backend".
+     */
+    public <K, T> Map<K, T> fanOut(Collection<K> keys, int concurrency,
+                                   Function<K, CompletableFuture<ResponseEntity<T>>> call) {
+        Semaphore slots = new Semaphore(Math.max(1, concurrency));
+        AtomicBoolean failed = new AtomicBoolean();
+        Map<K, CompletableFuture<T>> calls = new LinkedHashMap<>();
+        for (K key : keys) {
+            if (failed.get()) {
+                break;
+            }
+            if (calls.containsKey(key)) {
+                continue;
+            }
+            long start = System.nanoTime();
+            try {
+                slots.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                calls.values().forEach(pending -> pending.cancel(true));
+                throw new ResourceAccessException("Llamada a TF_Back interrumpida");
+            } finally {
+                RequestTimings.record(RequestTimings.Phase.BACKEND, System.nanoTime() - start);
+            }
+            // Mientras se esperaba el permiso pudo fallar una de las que estaban en curso
+            if (failed.get()) {
+                slots.release();
+                break;
+            }
+            CompletableFuture<ResponseEntity<T>> started;
+            try {
+                started = call.apply(key);
+            } catch (RuntimeException e) {
+                slots.release();
+                throw e;
+            }
+            calls.put(key, started.handle((response, error) -> {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                // El error se marca antes de liberar el permiso, así quien lo toma ya no lanza otra
+                if (cause != null && !(cause instanceof HttpClientErrorException.NotFound)) {
+                    failed.set(true);
+                }
+                slots.release();
+                if (cause instanceof HttpClientErrorException.NotFound) {
+                    return null;
+                }
+                if (cause != null) {
+                    throw cause instanceof RuntimeException runtime ? runtime : new CompletionException(cause);
+                }
+                return response.getBody();
+            }));
+        }
+        await(CompletableFuture.allOf(calls.values().toArray(new CompletableFuture[0])));
+
+        Map<K, T> results = new LinkedHashMap<>();
+        calls.forEach((key, done) -> {
+            T body = done.join();
+            if (body != null) {
+                results.put(key, body);
+            }
+        });
+        return results;
+    }
+
+    /**
+     * GET de un listado JSON (array de objetos) leído elemento por elemento a medida que llega,
+     * sin tener la respuesta entera en memoria: para la exportación masiva. No pasa por
+     * {@code max-in-flight}; quien la usa (el hilo único de exportación) ya espacia sus llamadas.
+     * Devuelve la cantidad de elementos. Los errores HTTP salen igual que en {@link #exchange}.
+     */
+    public long streamArray(String url, HttpHeaders headers, Consumer<Map<String, Object>> consumer) {
+        URI uri = uriFactory.expand(url);
+        URI target = connections.resolve(uri);
+        HttpRequest.Builder builder = HttpRequest.newBuilder(target)
+                .version(connections.versionFor(target))
+                .timeout(Duration.ofMillis(defaultTimeoutMs))
+                .GET();
+        headers.forEach((name, values) -> {
+            if (!RESTRICTED_HEADERS.contains(name.toLowerCase())) {
+                values.forEach(value -> builder.header(name, value));
+            }
+        });
+        TraceContext span = null;
+        if (tracer.isEnabled()) {
+            TraceContext parent = TraceContext.current();
+            span = parent != null ? parent.newChild() : tracer.newRootContext();
+            builder.setHeader(TraceContext.TRACEPARENT_HEADER, span.toTraceparent());
+        }
+
+        long startMillis = System.currentTimeMillis();
+        long start = System.nanoTime();
+        int status = -1;
+        try {
+            HttpResponse<InputStream> response = connections.httpClient()
+                    .send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+            status = response.statusCode();
+            try (InputStream body = response.body()) {
+                if (status >= 400) {
+                    HttpHeaders responseHeaders = new HttpHeaders();
+                    response.headers().map().forEach(responseHeaders::addAll);
+                    throw httpError(HttpStatusCode.valueOf(status), responseHeaders, body.readAllBytes());
+                }
+                return readArray(body, consumer);
+            }
+        } catch (IOException e) {
+            throw ioError(HttpMethod.GET, uri, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResourceAccessException("Llamada a TF_Back interrumpida");
+        } finally {
+            if (span != null) {
+                String route = Tracer.normalizeRoute(uri.getPath());
+                tracer.finishSpan(span, "GET " + route, "client", startMillis, System.nanoTime() - start, status,
+                        Map.of("peer", String.valueOf(uri.getAuthority()), "http.route", route));
+            }
+        }
+    }
+
+    private long readArray(InputStream body, Consumer<Map<String, Object>> consumer) throws IOException {
+        TypeReference<Map<String, Object>> rowType = new TypeReference<>() {};
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new RestClientException("Se esperaba un array JSON de TF_Back");
+            }
+            long count = 0;
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                consumer.accept(objectMapper.readValue(parser, rowType));
+                count++;
+            }
+            return count;
+        }
+    }
+
+    // ========== IMPLEMENTACIÓN ==========
+
+    private <T> CompletableFuture<ResponseEntity<T>> exchangeAsync(URI uri, HttpMethod method, HttpEntity<?> entity,
+                                                                   JavaType responseType, Duration timeout) {
+        long deadlineNanos = System.nanoTime() + effectiveTimeout(timeout).toNanos();
+        TraceContext parent = TraceContext.current();
+        return submit(() -> send(uri, method, entity, responseType, deadlineNanos, parent));
+    }
+
+    private Duration effectiveTimeout(Duration requested) {
+        long millis = requested != null ? requested.toMillis() : defaultTimeoutMs;
+        RequestDeadline deadline = RequestDeadline.current();
+        if (deadline != null) {
+            millis = Math.min(millis, deadline.remainingMillis());
+        }
+        return Duration.ofMillis(Math.max(0, millis));
+    }
+
+    /**
+     * Ejecuta la llamada si hay lugar; si no, la deja en cola. La cola se drena a medida que
+     * terminan las llamadas en curso (ver {@link #drain()}).
+     */
+    private <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable start = () -> {
+            CompletableFuture<T> inner;
+            try {
+                inner = call.get();
+            } catch (RuntimeException e) {
+                inner = CompletableFuture.failedFuture(e);
+            }
+            inner.whenComplete((value, error) -> {
+                inFlight.decrementAndGet();
+                drain();
+                if (error != null) {
+                    result.completeExceptionally(error instanceof CompletionException ? error.getCause() : error);
+                } else {
+                    result.complete(value);
+                }
+            });
+        };
+
+        if (tryAcquire()) {
+            start.run();
+        } else if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            rejected.increment();
+            RequestDeadline deadline = RequestDeadline.current();
+            if (deadline != null) {
+                deadline.markBackendBusy();
+            }
+            result.completeExceptionally(new BackendBusyException(maxInFlight, maxQueued));
+        } else {
+            pending.add(start);
+            drain();
+        }
+        return result;
+    }
+
+    private boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= maxInFlight) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Arranca las llamadas en cola para las que hay lugar. Se llama desde el callback de la
+     * llamada que terminó, en un hilo del HttpClient: armar el request (serializar el body) ahí
+     * frenaría las demás respuestas, y una llamada que falla enseguida volvería a drenar en el
+     * mismo stack. Por eso cada una arranca en su propio virtual thread.
+     */
+    private void drain() {
+        while (!pending.isEmpty() && tryAcquire()) {
+            Runnable next = pending.poll();
+            if (next == null) {
+                inFlight.decrementAndGet();
+                continue;
+            }
+            queued.decrementAndGet();
+            starter.execute(next);
+        }
+    }
+
+    private <T> CompletableFuture<ResponseEntity<T>> send(URI uri, HttpMethod method, HttpEntity<?> entity,
+                                                          JavaType responseType, long deadlineNanos,
+                                                          TraceContext parent) {
+        long remainingMillis = (deadlineNanos - System.nanoTime()) / 1_000_000;
+        if (remainingMillis <= 0) {
+            return CompletableFuture.failedFuture(ioError(method, uri,
+                    new HttpTimeoutException("Plazo vencido antes de llamar a TF_Back")));
+        }
+
+        URI target = connections.resolve(uri);
+        HttpRequest.Builder builder = HttpRequest.newBuilder(target)
+                .version(connections.versionFor(target))
+                .timeout(Duration.ofMillis(remainingMillis));
+        HttpRequest.BodyPublisher body;
+        try {
+            body = writeBody(entity, builder);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new RestClientException("No se pudo serializar el body", e));
+        }
+        builder.method(method.name(), body);
+
+        TraceContext span = null;
+        if (tracer.isEnabled()) {
+            // Llamadas fuera de un request (tareas en segundo plano) inician su propia traza
+            span = parent != null ? parent.newChild() : tracer.newRootContext();
+            builder.setHeader(TraceContext.TRACEPARENT_HEADER, span.toTraceparent());
+            if (span.getTraceState() != null) {
+                builder.setHeader(TraceContext.TRACESTATE_HEADER, span.getTraceState());
+            }
+        }
+
+        TraceContext clientSpan = span;
+        PeerStreams streams = peer(target.getAuthority());
+        streams.active.incrementAndGet();
+        long startMillis = System.currentTimeMillis();
+        long start = System.nanoTime();
+        return connections.httpClient()
+                .sendAsync(builder.build(), HttpResponse.BodyHandlers.ofByteArray())
+                .handle((response, error) -> {
+                    streams.active.decrementAndGet();
+                    if (response != null) {
+                        streams.negotiated(response.version());
+                    }
+                    if (clientSpan != null) {
+                        String route = Tracer.normalizeRoute(uri.getPath());
+                        tracer.finishSpan(clientSpan, method.name() + " " + route, "client",
+                                startMillis, System.nanoTime() - start, response != null ? response.statusCode() : -1,
+                                Map.of("peer", String.valueOf(uri.getAuthority()), "http.route", route));
+                    }
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                        throw cause instanceof IOException io ? ioError(method, uri, io) : new CompletionException(cause);
+                    }
+                    return toResponseEntity(response, responseType);
+                });
+    }
+
+    /**
+     * Llamadas en curso por host y protocolo negociado en la última respuesta, por ejemplo
+     * {@code {"tf-back.onrender.com": {"protocol": "HTTP_2", "streams": 3}}}.
+     */
+    public Map<String, Map<String, Object>> streamsByPeer() {
+        Map<String, Map<String, Object>> snapshot = new TreeMap<>();
+        peers.forEach((authority, streams) -> snapshot.put(authority,
+                Map.of("protocol", streams.protocol, "streams", streams.active.get())));
+        return snapshot;
+    }
+
+    @Override
+    public void destroy() {
+        starter.shutdownNow();
+    }
+
+    private PeerStreams peer(String authority) {
+        return peers.computeIfAbsent(String.valueOf(authority), PeerStreams::new);
+    }
+
+    private HttpRequest.BodyPublisher writeBody(HttpEntity<?> entity, HttpRequest.Builder builder) throws IOException {
+        if (entity == null) {
+            return HttpRequest.BodyPublishers.noBody();
+        }
+        BufferedOutputMessage message = new BufferedOutputMessage();
+        message.getHeaders().putAll(entity.getHeaders());
+        Object body = entity.getBody();
+        if (body != null) {
+            writeWithConverter(body, entity.getHeaders().getContentType(), message);
+        }
+        message.getHeaders().forEach((name, values) -> {
+            if (!RESTRICTED_HEADERS.contains(name.toLowerCase())) {
+                values.forEach(value -> builder.header(name, value));
+            }
+        });
+        return body == null
+                ? HttpRequest.BodyPublishers.noBody()
+                : HttpRequest.BodyPublishers.ofByteArray(message.toByteArray());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeWithConverter(Object body, MediaType contentType, BufferedOutputMessage message) throws IOException {
+        for (HttpMessageConverter<?> converter : converters) {
+            if (converter.canWrite(body.getClass(), contentType)) {
+                ((HttpMessageConverter<Object>) converter).write(body, contentType, message);
+                return;
+            }
+        }
+        throw new RestClientException("No hay conversor para " + body.getClass().getName() + " (" + contentType + ")");
+    }
+
+    private <T> ResponseEntity<T> toResponseEntity(HttpResponse<byte[]> response, JavaType responseType) {
+        HttpHeaders headers = new HttpHeaders();
+        response.headers().map().forEach(headers::addAll);
+        HttpStatusCode status = HttpStatusCode.valueOf(response.statusCode());
+        byte[] bytes = response.body();
+        Charset charset = headers.getContentType() != null && headers.getContentType().getCharset() != null
+                ? headers.getContentType().getCharset()
+                : StandardCharsets.UTF_8;
+
+        if (status.isError()) {
+            throw httpError(status, headers, bytes);
+        }
+        return new ResponseEntity<>(readBody(bytes, charset, responseType), headers, status);
+    }
+
+    private static RestClientException httpError(HttpStatusCode status, HttpHeaders headers, byte[] bytes) {
+        Charset charset = headers.getContentType() != null && headers.getContentType().getCharset() != null
+                ? headers.getContentType().getCharset()
+                : StandardCharsets.UTF_8;
+        return status.is4xxClientError()
+                ? HttpClientErrorException.create(status, status.toString(), headers, bytes, charset)
+                : HttpServerErrorException.create(status, status.toString(), headers, bytes, charset);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T readBody(byte[] bytes, Charset charset, JavaType type) {
+        Class<?> raw = type.getRawClass();
+        if (bytes == null || bytes.length == 0 || raw == Void.class || raw == void.class) {
+            return null;
+        }
+        if (raw == String.class) {
+            return (T) new String(bytes, charset);
+        }
+        if (raw == byte[].class) {
+            return (T) bytes;
+        }
+        try {
+            return objectMapper.readValue(bytes, type);
+        } catch (IOException e) {
+            throw new RestClientException("Respuesta de TF_Back no se pudo leer como " + type, e);
+        }
+    }
+
+    private static HttpEntity<?> toEntity(Object request) {
+        if (request instanceof HttpEntity<?> entity) {
+            return entity;
+        }
+        return request == null ? HttpEntity.EMPTY : new HttpEntity<>(request);
+    }
+
+    private static ResourceAccessException ioError(HttpMethod method, URI uri, IOException e) {
+        return new ResourceAccessException("I/O error on " + method.name() + " request for \"" + uri + "\": "
+                + e.getMessage(), e);
+    }
+
+    private static RuntimeException unwrap(Throwable cause) {
+        if (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof RuntimeException runtime) {
+            return runtime;
+        }
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        return new RestClientException("Error llamando a TF_Back", cause);
+    }
+
+    /**
+     * Llamadas en curso hacia un host. El gauge por protocolo se registra la primera vez que
+     * se negocia ese protocolo y cuenta solo mientras sea el vigente para el host.
+     */
+    private final class PeerStreams {
+
+        private final String authority;
+        private final AtomicInteger active = new AtomicInteger();
+        private final Set<String> registered = ConcurrentHashMap.newKeySet();
+        private volatile String protocol = "PENDING";
+
+        PeerStreams(String authority) {
+            this.authority = authority;
+        }
+
+        void negotiated(HttpClient.Version version) {
+            String name = version.name();
+            protocol = name;
+            if (registered.add(name)) {
+                Gauge.builder("tfback.client.streams", this, s -> name.equals(s.protocol) ? s.active.get() : 0)
+                        .description("Llamadas a TF_Back en curso por host y protocolo")
+                        .tag("peer", authority)
+                        .tag("protocol", name)
+                        .register(meterRegistry);
+            }
+        }
+    }
+
+    /**
+     * Destino en memoria para los HttpMessageConverter de Spring.
+     */
+    private static final class BufferedOutputMessage implements HttpOutputMessage {
+
+        private final HttpHeaders headers = new HttpHeaders();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+
+        @Override
+        public OutputStream getBody() {
+            return body;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        byte[] toByteArray() {
+            return body.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.serverfhir.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.hl7.fhir.r5.model.DiagnosticReport;
+import org.hl7.fhir.r5.model.Extension;
+import org.hl7.fhir.r5.model.PrimitiveType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Versiones pasadas de la historia fisiátrica ya mapeadas a DiagnosticReport, junto con sus campos
+ * JSON ya parseados (para {@code $diff}), por hash_id del paciente y {@code version_number}.
+ *
+ * Una versión que ya no es la vigente ({@code is_current=false}) no cambia más, así que se mapea
+ * una vez y queda en memoria sin TTL (solo la desaloja el límite de
+ * {@code fhir.cache.historia.max-bytes}). La vigente no se guarda: su {@code is-current} cambia
+ * cuando aparece la siguiente. Cada hit devuelve una copia propia.
+ *
+ * El contenido se comparte entre usuarios, pero quién puede ver la historia lo decide TF_Back: un
+ * vread se sirve desde acá solo si ese usuario ya obtuvo el historial del paciente desde TF_Back
+ * hace menos de {@code fhir.cache.historia.grant-ttl-seconds}; si no, se vuelve a pedir.
+ */
+@Service
+public class HistoriaVersionCache {
+
+    /**
+     * Una versión: el DiagnosticReport y la fila de TF_Back con los campos JSON
+     * ({@code examen_fisico}, {@code antecedentes}, ...) ya parseados. Los campos no se modifican.
+     */
+    public record Version(DiagnosticReport report, Map<String, Object> fields) {
+    }
+
+    private record Key(String patientHashId, int version) {
+    }
+
+    private record Grant(String patientHashId, String scope) {
+    }
+
+    private final boolean enabled;
+    private final Cache<Key, Version> versions;
+    private final Cache<Grant, Boolean> grants;
+    private final JwtService jwtService;
+
+    public HistoriaVersionCache(JwtService jwtService, MeterRegistry meterRegistry,
+                                @Value("${fhir.cache.historia.enabled:true}") boolean enabled,
+                                @Value("${fhir.cache.historia.max-bytes:33554432}") long maxBytes,
+                                @Value("${fhir.cache.historia.grant-ttl-seconds:300}") long grantTtlSeconds) {
+        this.enabled = enabled;
+        this.jwtService = jwtService;
+        this.versions = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Key key, Version version) -> estimateBytes(version))
+                .recordStats()
+                .build();
+        this.grants = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterWrite(Duration.ofSeconds(grantTtlSeconds))
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, versions, "historia-version");
+    }
+
+    /**
+     * La versión si está en el cache (con una copia propia del DiagnosticReport); null si no.
+     */
+    public Version get(String patientHashId, int version) {
+        if (!enabled) {
+            return null;
+        }
+        Version cached = versions.getIfPresent(new Key(patientHashId, version));
+        return cached == null ? null : new Version(cached.report().copy(), cached.fields());
+    }
+
+    /**
+     * Guarda una versión que ya no es la vigente.
+     */
+    public void put(String patientHashId, int version, DiagnosticReport report, Map<String, Object> fields) {
+        if (enabled) {
+            versions.put(new Key(patientHashId, version), new Version(report.copy(), fields));
+        }
+    }
+
+    /**
+     * Anota que TF_Back le devolvió a este usuario el historial del paciente.
+     */
+    public void grant(String patientHashId, String authorization) {
+        String scope = enabled ? jwtService.getUserScope(authorization) : null;
+        if (scope != null) {
+            grants.put(new Grant(patientHashId, scope), Boolean.TRUE);
+        }
+    }
+
+    /**
+     * True si el usuario obtuvo el historial del paciente desde TF_Back hace poco.
+     */
+    public boolean isGranted(String patientHashId, String authorization) {
+        String scope = enabled ? jwtService.getUserScope(authorization) : null;
+        return scope != null && grants.getIfPresent(new Grant(patientHashId, scope)) != null;
+    }
+
+    /**
+     * Tamaño aproximado en memoria: la conclusión, los valores de las extensiones y los campos
+     * parseados son casi todo (strings de Java, 2 bytes por carácter).
+     */
+    private static int estimateBytes(Version version) {
+        DiagnosticReport report = version.report();
+        long chars = (report.hasConclusion() ? report.getConclusion().length() : 0) + estimateChars(version.fields());
+        for (Extension extension : report.getExtension()) {
+            chars += extension.getUrl() == null ? 0 : extension.getUrl().length();
+            if (extension.getValue() instanceof PrimitiveType<?> primitive && primitive.getValueAsString() != null) {
+                chars += primitive.getValueAsString().length();
+            }
+        }
+        return (int) Math.min(Integer.MAX_VALUE, 1024 + 2 * chars);
+    }
+
+    private static long estimateChars(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            long chars = 0;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                chars += 16 + String.valueOf(entry.getKey()).length() + estimateChars(entry.getValue());
+            }
+            return chars;
+        }
+        if (value instanceof Collection<?> items) {
+            long chars = 0;
+            for (Object item : items) {
+                chars += 8 + estimateChars(item);
+            }
+            return chars;
+        }
+        return value == null ? 0 : String.valueOf(value).length();
+    }
+}
@@ -1,29 +1,45 @@
 package com.serverfhir.service;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
+import org.crac.Context;
+import org.crac.Core;
+import org.crac.Resource;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Date;
 
+/**
+ * Validación de los JWT emitidos por TF_Back. La clave y el parser se construyen una sola vez.
+ * Es el único bean que tiene {@code jwt.secret}: el filtro de autenticación y el warm-up del
+ * checkpoint pasan por acá.
+ *
+ * Con CRaC la clave no queda en la imagen del checkpoint: se descarta antes del checkpoint y
+ * al restaurar se vuelve a leer {@code JWT_SECRET} del entorno del proceso restaurado.
+ */
 @Service
-public class JwtService {
+public class JwtService implements Resource {
 
     @Value("${jwt.secret}")
     private String jwtSecret;
 
+    private volatile JwtParser parser;
+
+    @PostConstruct
+    void init() {
+        parser = buildParser(jwtSecret);
+        Core.getGlobalContext().register(this);
+    }
+
     public boolean validateToken(String token) {
         try {
-            SecretKey key = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
-            Claims claims = Jwts.parser()
-                .verifyWith(key)
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+            Claims claims = parser.parseSignedClaims(token).getPayload();
             
             // Verificar que el token no haya expirado
             return !claims.getExpiration().before(new Date());
@@ -34,12 +50,7 @@ public class JwtService {
 
     public String getUsernameFromToken(String token) {
         try {
-            SecretKey key = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
-            Claims claims = Jwts.parser()
-                .verifyWith(key)
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+            Claims claims = parser.parseSignedClaims(token).getPayload();
             
             return claims.getSubject();
         } catch (Exception e) {
@@ -49,14 +60,70 @@ public class JwtService {
 
     public Claims getClaimsFromToken(String token) {
         try {
-            SecretKey key = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
-            return Jwts.parser()
-                .verifyWith(key)
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+            return parser.parseSignedClaims(token).getPayload();
         } catch (Exception e) {
             return null;
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * Identifica al usuario del header Authorization para separar datos cacheados por usuario
+     * ({@code id_usuario}, o el subject si no viene). Devuelve null si el token no es válido.
+     */
+    public String getUserScope(String authorization) {
+        if (authorization == null || authorization.isEmpty()) {
+            return null;
+        }
+        String token = authorization.startsWith("Bearer ") ? authorization.substring(7) : authorization;
+        Claims claims = getClaimsFromToken(token);
+        if (claims == null) {
+            return null;
+        }
+        Object userId = claims.get("id_usuario");
+        if (userId != null) {
+            return "id:" + userId;
+        }
+        return claims.getSubject() != null ? "sub:" + claims.getSubject() : null;
+    }
+
+    /**
+     * Token propio para el tráfico de warm-up previo al checkpoint (CracCheckpointRunner). Vida
+     * corta a propósito: un token que quedara en el heap de la imagen vence antes de que sirva.
+     */
+    public String signWarmupToken(Duration ttl) {
+        String secret = jwtSecret;
+        if (secret == null) {
+            throw new IllegalStateException("La clave JWT ya se descartó para el checkpoint");
+        }
+        long now = System.currentTimeMillis();
+        return Jwts.builder()
+            .claim("email", "crac-warmup@localhost")
+            .subject("crac-warmup@localhost")
+            .issuedAt(new Date(now))
+            .expiration(new Date(now + ttl.toMillis()))
+            .signWith(Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8)))
+            .compact();
+    }
+
+    private static JwtParser buildParser(String secret) {
+        return Jwts.parser()
+            .verifyWith(Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8)))
+            .build();
+    }
+
+    @Override
+    public void beforeCheckpoint(Context<? extends Resource> context) {
+        jwtSecret = null;
+        parser = null;
+    }
+
+    @Override
+    public void afterRestore(Context<? extends Resource> context) {
+        String secret = System.getenv("JWT_SECRET");
+        if (secret == null || secret.isBlank()) {
+            throw new IllegalStateException("JWT_SECRET no está definido en el entorno del restore");
+        }
+        jwtSecret = secret;
+        parser = buildParser(secret);
+    }
+}
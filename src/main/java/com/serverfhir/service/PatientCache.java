@@ -0,0 +1,117 @@
+package com.serverfhir.service;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.hl7.fhir.r5.model.Patient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Cache de lecturas de Patient ({@code GET /fhir/Patient/{id}}). Guarda el Patient ya mapeado
+ * y serializado en JSON (más compacto que el objeto, y cada hit devuelve una copia propia),
+ * con clave hash_id + usuario del token: TF_Back decide qué ve cada usuario, así que una
+ * entrada no se comparte entre usuarios.
+ *
+ * Caffeine acota el tamaño por bytes ({@code fhir.cache.patient.max-bytes}) con admisión
+ * W-TinyLFU, así los pacientes que se consultan todo el turno no los desplaza una recorrida
+ * de una sola vez. Las escrituras (alta, edición, baja y reactivación) invalidan el hash_id
+ * para todos los usuarios; {@code fhir.cache.patient.ttl-seconds} cubre los cambios hechos
+ * directamente en TF_Back.
+ *
+ * Métricas: las de Caffeine con {@code cache=patient} ({@code cache.gets{result=hit|miss}},
+ * {@code cache.evictions}, {@code cache.size}) más {@code fhir.cache.patient.hit-ratio} y
+ * {@code fhir.cache.patient.bytes}.
+ */
+@Service
+public class PatientCache {
+
+    private record Key(String hashId, String scope) {
+    }
+
+    private final boolean enabled;
+    private final Cache<Key, byte[]> cache;
+    private final IParser parser;
+    private final JwtService jwtService;
+
+    public PatientCache(FhirContext fhirContext, JwtService jwtService, MeterRegistry meterRegistry,
+                        @Value("${fhir.cache.patient.enabled:true}") boolean enabled,
+                        @Value("${fhir.cache.patient.max-bytes:16777216}") long maxBytes,
+                        @Value("${fhir.cache.patient.ttl-seconds:300}") long ttlSeconds) {
+        this.enabled = enabled;
+        this.jwtService = jwtService;
+        this.parser = fhirContext.newJsonParser();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Key key, byte[] value) -> value.length + key.hashId().length() + key.scope().length())
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "patient");
+        Gauge.builder("fhir.cache.patient.hit-ratio", cache, c -> c.stats().hitRate())
+                .description("Proporción de lecturas de Patient resueltas desde el cache")
+                .register(meterRegistry);
+        Gauge.builder("fhir.cache.patient.bytes", cache,
+                        c -> c.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L))
+                .description("Bytes ocupados por el cache de Patient")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Devuelve el Patient del cache o lo carga con {@code loader} (llamada a TF_Back + mapeo).
+     * Sin usuario identificable en el token no se cachea.
+     */
+    public Patient get(String hashId, String authorization, Supplier<Patient> loader) {
+        String scope = enabled ? jwtService.getUserScope(authorization) : null;
+        if (scope == null) {
+            return loader.get();
+        }
+        Key key = new Key(hashId, scope);
+        byte[] cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return parser.parseResource(Patient.class, new String(cached, StandardCharsets.UTF_8));
+        }
+        Patient patient = loader.get();
+        cache.put(key, parser.encodeResourceToString(patient).getBytes(StandardCharsets.UTF_8));
+        return patient;
+    }
+
+    /**
+     * Devuelve el Patient del cache o null, sin cargarlo. Para búsquedas {@code _id} que cargan
+     * los que faltan en paralelo y los guardan con {@link #put}.
+     */
+    public Patient getIfPresent(String hashId, String authorization) {
+        String scope = enabled ? jwtService.getUserScope(authorization) : null;
+        if (scope == null) {
+            return null;
+        }
+        byte[] cached = cache.getIfPresent(new Key(hashId, scope));
+        return cached == null ? null : parser.parseResource(Patient.class, new String(cached, StandardCharsets.UTF_8));
+    }
+
+    public void put(String hashId, String authorization, Patient patient) {
+        String scope = enabled ? jwtService.getUserScope(authorization) : null;
+        if (scope != null) {
+            cache.put(new Key(hashId, scope), parser.encodeResourceToString(patient).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Descarta el paciente para todos los usuarios. Se llama después de cada escritura.
+     */
+    public void invalidate(String hashId) {
+        if (hashId != null) {
+            cache.asMap().keySet().removeIf(key -> key.hashId().equals(hashId));
+        }
+    }
+}
@@ -0,0 +1,650 @@
+package com.serverfhir.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.serverfhir.util.LastUpdated;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+import java.util.zip.CRC32;
+
+/**
+ * Réplica local de lectura de los pacientes de TF_Back, persistida en disco
+ * ({@code fhir.replica.patient.*}, desactivada por defecto).
+ *
+ * <ul>
+ *   <li>Se siembra una vez con {@code GET /patient?includeInactive=true} y después se mantiene
+ *       con sincronizaciones incrementales cada {@code sync-interval-seconds}: se pide
+ *       {@code modifiedSince=<marca>} y se aplican solo las filas con {@code fecha_modificacion}
+ *       posterior a la marca (si TF_Back ignora el parámetro, el filtro se hace acá).</li>
+ *   <li>Cada {@code full-sync-seconds} se vuelve a pedir el listado completo y se sacan los
+ *       pacientes que ya no vienen (bajas físicas en TF_Back, que el incremental no trae).</li>
+ *   <li>Por paciente se guarda la fila del listado (del token de servicio) y los detalles
+ *       ({@code GET /patient/{hash_id}}) que ya leyó cada usuario, separados por
+ *       {@link JwtService#getUserScope}: un detalle solo se le sirve al mismo usuario que lo leyó
+ *       con su token, y mientras su {@code fecha_modificacion} coincida con la del listado; si no,
+ *       se lee de TF_Back.</li>
+ *   <li>Las escrituras de PatientResourceProvider releen el detalle con el token del usuario y
+ *       disparan una sincronización; lo que lee un usuario nunca entra al listado compartido.</li>
+ *   <li>Si la última sincronización exitosa tiene más de {@code max-staleness-seconds}, la réplica
+ *       deja de responder y los providers vuelven a consultar TF_Back en vivo.</li>
+ * </ul>
+ *
+ * Formato en disco ({@code dir}): {@code snapshot.ndjson} (cabecera, una fila por paciente y un
+ * CRC32 final; se escribe en un temporal, fsync y rename atómico) más {@code journal.ndjson}
+ * (una línea {@code <crc32> <json>} por cambio, con fsync por lote). Al arrancar se carga el
+ * snapshot y se reaplica el journal hasta la última línea íntegra; una línea cortada por un corte
+ * de luz se descarta. Cada {@code compact-after} líneas el journal se vuelca a un snapshot nuevo.
+ *
+ * Cada cambio se refleja también en PatientSearchIndex, que resuelve las búsquedas por nombre,
+ * DNI y fecha de nacimiento mientras la réplica está sirviendo; cada usuario ve solo los pacientes
+ * de su propio listado de TF_Back (ver PatientRoster).
+ *
+ * La sincronización en segundo plano usa {@code fhir.replica.patient.token} (token de servicio de
+ * TF_Back).
+ */
+@Service
+public class PatientReplica implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(PatientReplica.class);
+    private static final TypeReference<Map<String, Object>> ROW = new TypeReference<>() {};
+    private static final TypeReference<List<Map<String, Object>>> ROWS = new TypeReference<>() {};
+    private static final ParameterizedTypeReference<Map<String, Object>> DETAIL = new ParameterizedTypeReference<>() {};
+    private static final int FORMAT_VERSION = 2;
+
+    /**
+     * Fila del listado, detalles por usuario (scope → detalle leído con su token) y orden de
+     * llegada (el del listado de TF_Back).
+     */
+    private record Entry(long seq, Map<String, Object> summary, Map<String, Map<String, Object>> details) {
+
+        /**
+         * Con otra fila del listado: los detalles de otra {@code fecha_modificacion} ya no se
+         * sirven, así que se descartan.
+         */
+        Entry withSummary(Map<String, Object> row) {
+            Instant modified = modifiedAt(row);
+            Map<String, Map<String, Object>> kept = new LinkedHashMap<>();
+            details.forEach((scope, detail) -> {
+                if (modified != null && modified.equals(modifiedAt(detail))) {
+                    kept.put(scope, detail);
+                }
+            });
+            return new Entry(seq, row, Map.copyOf(kept));
+        }
+    }
+
+    private final BackendClient backendClient;
+    private final ObjectMapper objectMapper;
+    private final PatientSearchIndex searchIndex;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Object diskLock = new Object();
+
+    @Value("${fhir.replica.patient.enabled:false}")
+    private boolean enabled;
+
+    @Value("${fhir.replica.patient.dir:data/patient-replica}")
+    private Path dir;
+
+    @Value("${fhir.replica.patient.token:}")
+    private String serviceToken;
+
+    @Value("${fhir.replica.patient.sync-interval-seconds:30}")
+    private long syncIntervalSeconds;
+
+    @Value("${fhir.replica.patient.max-staleness-seconds:120}")
+    private long maxStalenessSeconds;
+
+    @Value("${fhir.replica.patient.full-sync-seconds:600}")
+    private long fullSyncSeconds;
+
+    @Value("${fhir.replica.patient.compact-after:5000}")
+    private int compactAfter;
+
+    @Value("${tfback.url}")
+    private String tfBackUrl;
+
+    @Value("${tfback.api.path}")
+    private String tfBackApiPath;
+
+    private ScheduledExecutorService scheduler;
+    private FileChannel journal;
+    private int journalLines;
+    private volatile boolean seeded;
+    private volatile Instant watermark;
+    private volatile long lastSyncMillis;
+    private long lastFullSyncMillis;
+
+    public PatientReplica(BackendClient backendClient, ObjectMapper objectMapper, PatientSearchIndex searchIndex,
+                          MeterRegistry meterRegistry) {
+        this.backendClient = backendClient;
+        this.objectMapper = objectMapper;
+        this.searchIndex = searchIndex;
+        Gauge.builder("fhir.replica.patient.size", entries, Map::size)
+                .description("Pacientes en la réplica local")
+                .register(meterRegistry);
+        Gauge.builder("fhir.replica.patient.staleness", this,
+                        r -> r.lastSyncMillis == 0 ? Double.NaN : (System.currentTimeMillis() - r.lastSyncMillis) / 1000.0)
+                .description("Segundos desde la última sincronización exitosa con TF_Back")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        if (serviceToken == null || serviceToken.isBlank()) {
+            logger.warn("fhir.replica.patient.enabled=true sin fhir.replica.patient.token; la réplica queda desactivada");
+            enabled = false;
+            return;
+        }
+        try {
+            Files.createDirectories(dir);
+            long start = System.nanoTime();
+            load();
+            logger.info("Réplica de pacientes cargada: {} pacientes en {} ms (marca {})", entries.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), watermark);
+        } catch (IOException e) {
+            logger.warn("No se pudo cargar la réplica de pacientes, se vuelve a sembrar: {}", e.getMessage());
+            entries.clear();
+            seeded = false;
+        }
+        reindex();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "patient-replica-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::syncQuietly, 0, syncIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        synchronized (diskLock) {
+            if (journal != null) {
+                journal.close();
+            }
+        }
+    }
+
+    // ========== LECTURA ==========
+
+    /**
+     * True si la réplica está configurada (con token de servicio), aunque todavía no sirva.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * True si la réplica está sembrada y la última sincronización está dentro del margen.
+     */
+    public boolean isServing() {
+        return enabled && seeded
+                && System.currentTimeMillis() - lastSyncMillis <= TimeUnit.SECONDS.toMillis(maxStalenessSeconds);
+    }
+
+    /**
+     * Detalle del paciente que leyó antes el usuario {@code scope}, si está al día con el listado;
+     * null si hay que leerlo de TF_Back.
+     */
+    public Map<String, Object> detail(String hashId, String scope) {
+        if (!isServing() || scope == null) {
+            return null;
+        }
+        Entry entry = entries.get(hashId);
+        Map<String, Object> detail = entry != null ? entry.details().get(scope) : null;
+        if (detail == null || !Objects.equals(modifiedAt(detail), modifiedAt(entry.summary()))) {
+            return null;
+        }
+        return detail;
+    }
+
+    // ========== ESCRITURA ==========
+
+    /**
+     * Guarda el detalle que el usuario {@code scope} leyó de TF_Back con su token (read-through).
+     * Solo para pacientes que ya están en el listado del token de servicio: el listado compartido
+     * no se arma con lo que lee cada usuario.
+     */
+    public void recordDetail(String hashId, String scope, Map<String, Object> detail) {
+        if (!enabled || !seeded || hashId == null || scope == null || detail == null) {
+            return;
+        }
+        apply(Map.of(hashId, current -> {
+            // Si mientras se leía el detalle la sincronización trajo una fila más nueva, el detalle ya es viejo
+            if (current == null || olderThan(detail, current.summary())
+                    || detail.equals(current.details().get(scope))) {
+                return null;
+            }
+            Map<String, Map<String, Object>> details = new LinkedHashMap<>(current.details());
+            details.put(scope, detail);
+            return new Entry(current.seq(), current.summary(), Map.copyOf(details));
+        }));
+    }
+
+    /**
+     * Write-through después de editar, dar de baja o reactivar: relee el detalle con el token del
+     * usuario (queda guardado solo para él) y sincroniza enseguida para traer la fila del listado.
+     */
+    public void refresh(String hashId, String authorization, String scope) {
+        if (!enabled || !seeded || hashId == null) {
+            return;
+        }
+        try {
+            Map<String, Object> detail = backendClient.exchange(backendUrl("/patient/{hash_id}"), HttpMethod.GET,
+                    new HttpEntity<>(headers(authorization)), DETAIL, hashId).getBody();
+            if (detail != null && !detail.isEmpty()) {
+                recordDetail(hashId, scope, detail);
+            }
+        } catch (Exception e) {
+            // Mientras el detalle no coincida con el listado se lee en vivo
+            logger.warn("No se pudo refrescar el paciente {} en la réplica: {}", hashId, e.getMessage());
+        }
+        requestSync();
+    }
+
+    /**
+     * Pide una sincronización inmediata (por ejemplo, después de un alta).
+     */
+    public void requestSync() {
+        if (scheduler != null) {
+            scheduler.execute(this::syncQuietly);
+        }
+    }
+
+    // ========== SINCRONIZACIÓN ==========
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (Exception e) {
+            logger.warn("Sincronización de la réplica de pacientes falló: {}", e.getMessage());
+        }
+    }
+
+    private synchronized void sync() throws IOException {
+        long now = System.currentTimeMillis();
+        boolean full = !seeded || now - lastFullSyncMillis > TimeUnit.SECONDS.toMillis(fullSyncSeconds);
+        Instant since = full ? null : watermark;
+        String url = backendUrl("/patient?includeInactive=true")
+                + (since != null ? "&modifiedSince=" + since : "");
+        List<Map<String, Object>> rows = objectMapper.convertValue(
+                backendClient.exchange(url, HttpMethod.GET, new HttpEntity<>(headers(serviceToken)), List.class).getBody(),
+                ROWS);
+        if (rows == null) {
+            rows = List.of();
+        }
+
+        if (!seeded) {
+            entries.clear();
+            for (Map<String, Object> row : rows) {
+                String hashId = (String) row.get("hash_id");
+                if (hashId != null) {
+                    entries.put(hashId, new Entry(sequence.incrementAndGet(), row, Map.of()));
+                }
+            }
+            watermark = maxModifiedAt(rows);
+            compact();
+            reindex();
+            seeded = true;
+            logger.info("Réplica de pacientes sembrada con {} pacientes", entries.size());
+        } else {
+            Map<String, UnaryOperator<Entry>> updates = new LinkedHashMap<>();
+            for (Map<String, Object> row : rows) {
+                String hashId = (String) row.get("hash_id");
+                Instant modified = modifiedAt(row);
+                if (hashId == null || (since != null && modified != null && modified.isBefore(since))) {
+                    continue;
+                }
+                updates.put(hashId, current -> current == null
+                        ? new Entry(sequence.incrementAndGet(), row, Map.of())
+                        : current.summary().equals(row) ? null : current.withSummary(row));
+            }
+            int applied = apply(updates);
+            if (full && !rows.isEmpty()) {
+                // Lo que no vino en el listado completo se borró en TF_Back (un listado vacío se
+                // toma como respuesta rota, no como que se borró todo)
+                Set<String> gone = new HashSet<>(entries.keySet());
+                gone.removeAll(updates.keySet());
+                applied += remove(gone);
+            }
+            if (applied > 0) {
+                logger.debug("Réplica de pacientes: {} cambios aplicados", applied);
+            }
+            Instant max = maxModifiedAt(rows);
+            if (max != null && (watermark == null || max.isAfter(watermark))) {
+                watermark = max;
+            }
+        }
+        lastSyncMillis = now;
+        if (full) {
+            lastFullSyncMillis = now;
+        }
+    }
+
+    /**
+     * Reconstruye el índice de búsqueda con el contenido actual (después de cargar o sembrar).
+     */
+    private void reindex() {
+        searchIndex.clear();
+        entries.forEach((hashId, entry) -> searchIndex.put(hashId, entry.seq(), entry.summary()));
+    }
+
+    // ========== DISCO ==========
+
+    /**
+     * Aplica cambios sobre la entrada vigente de cada paciente: cada función recibe la entrada
+     * actual (null si no hay) y devuelve la nueva, o null para dejarla como está. Se evalúan bajo
+     * {@code diskLock}, así la sincronización, el read-through y el write-through no se pisan con
+     * una entrada leída antes de que otro la cambiara. Devuelve cuántas entradas cambiaron.
+     */
+    private int apply(Map<String, UnaryOperator<Entry>> updates) {
+        synchronized (diskLock) {
+            int changed = 0;
+            try {
+                StringBuilder batch = new StringBuilder();
+                for (Map.Entry<String, UnaryOperator<Entry>> update : updates.entrySet()) {
+                    String hashId = update.getKey();
+                    Entry next = update.getValue().apply(entries.get(hashId));
+                    if (next == null) {
+                        continue;
+                    }
+                    entries.put(hashId, next);
+                    searchIndex.put(hashId, next.seq(), next.summary());
+                    changed++;
+                    batch.append(journalLine(hashId, next));
+                }
+                writeJournal(batch, changed);
+            } catch (IOException e) {
+                // En memoria quedó aplicado; el próximo snapshot lo persiste
+                logger.warn("No se pudo escribir el journal de la réplica: {}", e.getMessage());
+            }
+            return changed;
+        }
+    }
+
+    /**
+     * Saca pacientes borrados en TF_Back: en el journal queda una línea sin {@code summary}.
+     * Devuelve cuántos se sacaron.
+     */
+    private int remove(Set<String> hashIds) {
+        synchronized (diskLock) {
+            int removed = 0;
+            try {
+                StringBuilder batch = new StringBuilder();
+                for (String hashId : hashIds) {
+                    if (entries.remove(hashId) == null) {
+                        continue;
+                    }
+                    searchIndex.remove(hashId);
+                    removed++;
+                    batch.append(journalLine(hashId, null));
+                }
+                writeJournal(batch, removed);
+            } catch (IOException e) {
+                logger.warn("No se pudo escribir el journal de la réplica: {}", e.getMessage());
+            }
+            return removed;
+        }
+    }
+
+    private void writeJournal(StringBuilder batch, int lines) throws IOException {
+        if (lines == 0) {
+            return;
+        }
+        journal.write(ByteBuffer.wrap(batch.toString().getBytes(StandardCharsets.UTF_8)));
+        journal.force(false);
+        journalLines += lines;
+        if (journalLines >= compactAfter) {
+            compact();
+        }
+    }
+
+    /**
+     * Línea del journal; con {@code entry} null, la baja del paciente.
+     */
+    private String journalLine(String hashId, Entry entry) throws IOException {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("hash_id", hashId);
+        record.put("seq", entry != null ? entry.seq() : null);
+        record.put("summary", entry != null ? entry.summary() : null);
+        record.put("details", entry != null ? entry.details() : null);
+        record.put("watermark", watermark != null ? watermark.toString() : null);
+        String json = objectMapper.writeValueAsString(record);
+        return String.format("%08x", crc(json)) + " " + json + "\n";
+    }
+
+    /**
+     * Vuelca todo a un snapshot nuevo (temporal + fsync + rename atómico) y vacía el journal.
+     */
+    private void compact() throws IOException {
+        synchronized (diskLock) {
+            Path tmp = dir.resolve("snapshot.ndjson.tmp");
+            CRC32 crc = new CRC32();
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+                 BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel),
+                         StandardCharsets.UTF_8))) {
+                Map<String, Object> header = new LinkedHashMap<>();
+                header.put("version", FORMAT_VERSION);
+                header.put("watermark", watermark != null ? watermark.toString() : null);
+                header.put("count", entries.size());
+                writeLine(writer, crc, objectMapper.writeValueAsString(header));
+                for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                    Map<String, Object> record = new LinkedHashMap<>();
+                    record.put("hash_id", e.getKey());
+                    record.put("seq", e.getValue().seq());
+                    record.put("summary", e.getValue().summary());
+                    record.put("details", e.getValue().details());
+                    writeLine(writer, crc, objectMapper.writeValueAsString(record));
+                }
+                writer.write("{\"crc\":\"" + Long.toHexString(crc.getValue()) + "\"}\n");
+                writer.flush();
+                channel.force(true);
+            }
+            Files.move(tmp, dir.resolve("snapshot.ndjson"), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+
+            // El journal se reaplica sobre el snapshot sin problema, así que se vacía recién ahora
+            if (journal != null) {
+                journal.close();
+            }
+            journal = FileChannel.open(dir.resolve("journal.ndjson"), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            journal.force(true);
+            journalLines = 0;
+        }
+    }
+
+    private void load() throws IOException {
+        Path snapshot = dir.resolve("snapshot.ndjson");
+        if (!Files.exists(snapshot)) {
+            return;
+        }
+        CRC32 crc = new CRC32();
+        Map<String, Entry> loaded = new LinkedHashMap<>();
+        Instant loadedWatermark = null;
+        boolean valid = false;
+        try (BufferedReader reader = Files.newBufferedReader(snapshot, StandardCharsets.UTF_8)) {
+            String headerLine = reader.readLine();
+            if (headerLine == null) {
+                throw new IOException("snapshot vacío");
+            }
+            Map<String, Object> header = objectMapper.readValue(headerLine, ROW);
+            if (!Integer.valueOf(FORMAT_VERSION).equals(header.get("version"))) {
+                throw new IOException("versión de snapshot desconocida: " + header.get("version"));
+            }
+            crc.update((headerLine + "\n").getBytes(StandardCharsets.UTF_8));
+            loadedWatermark = header.get("watermark") != null ? Instant.parse((String) header.get("watermark")) : null;
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("{\"crc\":")) {
+                    String expected = (String) objectMapper.readValue(line, ROW).get("crc");
+                    valid = Long.toHexString(crc.getValue()).equals(expected);
+                    break;
+                }
+                crc.update((line + "\n").getBytes(StandardCharsets.UTF_8));
+                putRecord(loaded, objectMapper.readValue(line, ROW));
+            }
+        }
+        if (!valid) {
+            throw new IOException("snapshot incompleto o corrupto");
+        }
+
+        entries.putAll(loaded);
+        watermark = loadedWatermark;
+        replayJournal();
+        sequence.set(entries.values().stream().mapToLong(Entry::seq).max().orElse(0));
+        seeded = true;
+        // Cota inferior de la última sincronización: si se reinició hace poco se sirve enseguida,
+        // si no, se espera a la primera sincronización incremental
+        lastSyncMillis = Math.max(Files.getLastModifiedTime(snapshot).toMillis(),
+                Files.getLastModifiedTime(dir.resolve("journal.ndjson")).toMillis());
+    }
+
+    /**
+     * Reaplica el journal hasta la última línea íntegra y trunca lo que venga después.
+     */
+    private void replayJournal() throws IOException {
+        Path path = dir.resolve("journal.ndjson");
+        journal = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        byte[] content = Files.readAllBytes(path);
+        long goodBytes = 0;
+        int applied = 0;
+        int lineStart = 0;
+        for (int i = 0; i < content.length; i++) {
+            if (content[i] != '\n') {
+                continue;
+            }
+            String line = new String(content, lineStart, i - lineStart, StandardCharsets.UTF_8);
+            int space = line.indexOf(' ');
+            if (space != 8 || !line.substring(0, 8).equals(String.format("%08x", crc(line.substring(9))))) {
+                break;
+            }
+            Map<String, Object> record = objectMapper.readValue(line.substring(9), ROW);
+            putRecord(entries, record);
+            if (record.get("watermark") != null) {
+                watermark = Instant.parse((String) record.get("watermark"));
+            }
+            applied++;
+            goodBytes = i + 1;
+            lineStart = i + 1;
+        }
+        if (goodBytes < content.length) {
+            logger.warn("Journal de la réplica con {} bytes finales inválidos; se descartan", content.length - goodBytes);
+            journal.truncate(goodBytes);
+            journal.force(true);
+        }
+        journal.position(goodBytes);
+        journalLines = applied;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void putRecord(Map<String, Entry> target, Map<String, Object> record) {
+        String hashId = (String) record.get("hash_id");
+        Map<String, Object> summary = (Map<String, Object>) record.get("summary");
+        if (summary == null) {
+            target.remove(hashId);
+            return;
+        }
+        Map<String, Map<String, Object>> details = (Map<String, Map<String, Object>>) record.get("details");
+        target.put(hashId, new Entry(((Number) record.get("seq")).longValue(), summary,
+                details != null ? details : Map.of()));
+    }
+
+    private static void writeLine(BufferedWriter writer, CRC32 crc, String json) throws IOException {
+        String line = json + "\n";
+        crc.update(line.getBytes(StandardCharsets.UTF_8));
+        writer.write(line);
+    }
+
+    private static long crc(String json) {
+        CRC32 crc = new CRC32();
+        crc.update(json.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    // ========== AUXILIARES ==========
+
+    private static Instant maxModifiedAt(List<Map<String, Object>> rows) {
+        Instant max = null;
+        for (Map<String, Object> row : rows) {
+            Instant modified = modifiedAt(row);
+            if (modified != null && (max == null || modified.isAfter(max))) {
+                max = modified;
+            }
+        }
+        return max;
+    }
+
+    /**
+     * True si {@code row} tiene una {@code fecha_modificacion} anterior a la de {@code other}.
+     */
+    private static boolean olderThan(Map<String, Object> row, Map<String, Object> other) {
+        Instant modified = modifiedAt(row);
+        Instant otherModified = modifiedAt(other);
+        return modified != null && otherModified != null && modified.isBefore(otherModified);
+    }
+
+    /**
+     * {@code fecha_modificacion} como instante (null si falta o no se puede interpretar).
+     */
+    static Instant modifiedAt(Map<String, Object> row) {
+        return row == null ? null : LastUpdated.parse(row.get("fecha_modificacion"));
+    }
+
+    private HttpHeaders headers(String authorization) {
+        HttpHeaders headers = new HttpHeaders();
+        if (authorization != null && !authorization.isEmpty()) {
+            headers.set("Authorization", authorization);
+        }
+        return headers;
+    }
+
+    private String backendUrl(String path) {
+        return tfBackUrl + tfBackApiPath + path;
+    }
+}
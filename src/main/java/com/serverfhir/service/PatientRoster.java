@@ -0,0 +1,238 @@
+package com.serverfhir.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.serverfhir.util.LastUpdated;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pacientes que ve cada usuario, para resolver las búsquedas de Patient sobre PatientSearchIndex
+ * sin bajar el listado de TF_Back en cada request.
+ *
+ * <ul>
+ *   <li>La primera búsqueda de un usuario baja su listado completo
+ *       ({@code GET /patient?includeInactive=true} con su token), lo carga en el índice y se
+ *       resuelve recorriendo ese mismo listado.</li>
+ *   <li>Las siguientes salen del índice, restringidas a los hash_id que TF_Back le devolvió a ese
+ *       usuario. Si pasaron más de {@code fhir.search.patient.roster.refresh-seconds} desde la
+ *       última actualización, antes se piden solo los modificados ({@code modifiedSince=<marca>},
+ *       por {@code fecha_modificacion}).</li>
+ *   <li>Cada {@code fhir.search.patient.roster.full-refresh-seconds} se vuelve a bajar el listado
+ *       completo: así se notan las bajas físicas y los permisos revocados, que el listado
+ *       incremental no trae.</li>
+ * </ul>
+ *
+ * El índice tiene una fila por paciente para todos los usuarios; lo que cada uno ve lo decide
+ * TF_Back con su listado. Con la réplica activa las filas del índice las mantiene PatientReplica
+ * (acá solo se llevan los hash_id de cada usuario) y, si la réplica no está sirviendo, se filtra el
+ * listado en vivo. Las escrituras de PatientResourceProvider adelantan la actualización
+ * incremental de todos.
+ */
+@Service
+public class PatientRoster {
+
+    private static final Logger logger = LoggerFactory.getLogger(PatientRoster.class);
+
+    /**
+     * Listado de un usuario: sus hash_id (inmutable, se reemplaza en cada cambio) y la marca de
+     * {@code fecha_modificacion} hasta la que está al día.
+     */
+    private static final class View {
+        private Set<String> ids = Set.of();
+        private Instant watermark;
+        private long loadedMillis;
+        private volatile long refreshedMillis;
+    }
+
+    private final BackendClient backendClient;
+    private final JwtService jwtService;
+    private final PatientSearchIndex searchIndex;
+    private final PatientReplica patientReplica;
+    private final Cache<String, View> views;
+    private final Map<String, Long> order = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final long refreshMillis;
+    private final long fullRefreshMillis;
+
+    @Value("${tfback.url}")
+    private String tfBackUrl;
+
+    @Value("${tfback.api.path}")
+    private String tfBackApiPath;
+
+    public PatientRoster(BackendClient backendClient, JwtService jwtService, PatientSearchIndex searchIndex,
+                         PatientReplica patientReplica, MeterRegistry meterRegistry,
+                         @Value("${fhir.search.patient.roster.refresh-seconds:30}") long refreshSeconds,
+                         @Value("${fhir.search.patient.roster.full-refresh-seconds:600}") long fullRefreshSeconds,
+                         @Value("${fhir.search.patient.roster.max-users:1000}") long maxUsers) {
+        this.backendClient = backendClient;
+        this.jwtService = jwtService;
+        this.searchIndex = searchIndex;
+        this.patientReplica = patientReplica;
+        this.refreshMillis = TimeUnit.SECONDS.toMillis(refreshSeconds);
+        this.fullRefreshMillis = TimeUnit.SECONDS.toMillis(fullRefreshSeconds);
+        this.views = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterAccess(Duration.ofSeconds(fullRefreshSeconds))
+                .build();
+        Gauge.builder("fhir.patient.roster.users", views, Cache::estimatedSize)
+                .description("Usuarios con su listado de pacientes cargado en el índice")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Filas que cumplen {@code criteria} entre los pacientes que ve el usuario, en el orden del
+     * listado; null si no se puede usar el índice (token sin usuario o réplica activa pero
+     * desactualizada) y hay que filtrar el listado en vivo.
+     */
+    public List<Map<String, Object>> search(String authorization, PatientSearchIndex.Criteria criteria) {
+        View view = view(authorization);
+        if (view == null) {
+            return null;
+        }
+        List<Map<String, Object>> loaded;
+        Set<String> ids;
+        synchronized (view) {
+            loaded = update(view, authorization);
+            ids = view.ids;
+        }
+        if (loaded != null) {
+            return loaded.stream().filter(row -> PatientSearchIndex.matches(criteria, row)).toList();
+        }
+        return searchIndex.searchWithin(criteria, ids);
+    }
+
+    /**
+     * {@code name:fuzzy} entre los pacientes que ve el usuario; null igual que {@link #search}.
+     */
+    public List<PatientSearchIndex.Scored> fuzzy(String authorization, String query,
+                                                 PatientSearchIndex.Criteria criteria) {
+        View view = view(authorization);
+        if (view == null) {
+            return null;
+        }
+        List<Map<String, Object>> loaded;
+        Set<String> ids;
+        synchronized (view) {
+            loaded = update(view, authorization);
+            ids = view.ids;
+        }
+        if (loaded != null) {
+            return searchIndex.fuzzy(query, criteria, loaded);
+        }
+        return searchIndex.fuzzyWithin(query, criteria, ids);
+    }
+
+    /**
+     * Después de una escritura: la próxima búsqueda de cada usuario pide los modificados antes
+     * de responder.
+     */
+    public void requestRefresh() {
+        views.asMap().values().forEach(view -> view.refreshedMillis = 0);
+    }
+
+    private View view(String authorization) {
+        if (patientReplica.isEnabled() && !patientReplica.isServing()) {
+            return null;
+        }
+        String scope = jwtService.getUserScope(authorization);
+        return scope != null ? views.get(scope, k -> new View()) : null;
+    }
+
+    /**
+     * Pone al día el listado del usuario. Devuelve las filas si hubo que bajarlo completo (la
+     * búsqueda se resuelve sobre ellas) o null si alcanzó con el índice.
+     */
+    private List<Map<String, Object>> update(View view, String authorization) {
+        long now = System.currentTimeMillis();
+        if (view.loadedMillis == 0 || now - view.loadedMillis > fullRefreshMillis) {
+            List<Map<String, Object>> rows = fetch(authorization, null);
+            Set<String> ids = new HashSet<>();
+            for (Map<String, Object> row : rows) {
+                String hashId = (String) row.get("hash_id");
+                if (hashId != null) {
+                    ids.add(hashId);
+                    index(hashId, row);
+                }
+            }
+            view.ids = Set.copyOf(ids);
+            view.watermark = maxModifiedAt(rows, null);
+            view.loadedMillis = now;
+            view.refreshedMillis = now;
+            logger.debug("Listado de pacientes cargado para un usuario: {} pacientes", ids.size());
+            return rows;
+        }
+        if (now - view.refreshedMillis > refreshMillis) {
+            Instant since = view.watermark;
+            List<Map<String, Object>> rows = fetch(authorization, since);
+            Set<String> added = new HashSet<>();
+            for (Map<String, Object> row : rows) {
+                String hashId = (String) row.get("hash_id");
+                Instant modified = LastUpdated.parse(row.get("fecha_modificacion"));
+                // Si TF_Back ignora modifiedSince devuelve todo; lo anterior a la marca ya está
+                if (hashId == null || (since != null && modified != null && modified.isBefore(since))) {
+                    continue;
+                }
+                index(hashId, row);
+                if (!view.ids.contains(hashId)) {
+                    added.add(hashId);
+                }
+            }
+            if (!added.isEmpty()) {
+                added.addAll(view.ids);
+                view.ids = Set.copyOf(added);
+            }
+            view.watermark = maxModifiedAt(rows, since);
+            view.refreshedMillis = now;
+        }
+        return null;
+    }
+
+    private void index(String hashId, Map<String, Object> row) {
+        if (patientReplica.isEnabled()) {
+            return;
+        }
+        // El orden de los resultados es el del primer listado en que apareció cada paciente
+        searchIndex.put(hashId, order.computeIfAbsent(hashId, k -> sequence.incrementAndGet()), row);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> fetch(String authorization, Instant modifiedSince) {
+        String url = tfBackUrl + tfBackApiPath + "/patient?includeInactive=true"
+                + (modifiedSince != null ? "&modifiedSince=" + modifiedSince : "");
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Authorization", authorization);
+        List<Map<String, Object>> rows = (List<Map<String, Object>>) backendClient.exchange(
+                url, HttpMethod.GET, new HttpEntity<>(headers), List.class).getBody();
+        return rows != null ? rows : List.of();
+    }
+
+    private static Instant maxModifiedAt(List<Map<String, Object>> rows, Instant current) {
+        Instant max = current;
+        for (Map<String, Object> row : rows) {
+            Instant modified = LastUpdated.parse(row.get("fecha_modificacion"));
+            if (modified != null && (max == null || modified.isAfter(max))) {
+                max = modified;
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,716 @@
+package com.serverfhir.service;
+
+import com.serverfhir.util.LastUpdated;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Índice en memoria del listado de pacientes para los parámetros de búsqueda de
+ * {@code GET /fhir/Patient} ({@code name}, {@code family}, {@code given}, {@code identifier},
+ * {@code birthdate}, {@code active}).
+ *
+ * <ul>
+ *   <li>Nombres: mapa ordenado palabra → pacientes, separado para apellido y nombre. Las palabras
+ *       se guardan en minúscula y sin acentos, así "per" encuentra "Pérez" con un recorrido por
+ *       rango (búsqueda por prefijo, la de FHIR por defecto).</li>
+ *   <li>DNI y hash_id: mapa hash valor → pacientes.</li>
+ *   <li>Fecha de nacimiento: mapa ordenado por {@code yyyyMMdd}, para rangos ({@code ge}, {@code lt}...).</li>
+ *   <li>Última modificación ({@code fecha_modificacion}): mapa ordenado por instante, para
+ *       {@code _lastUpdated}, {@code _since} y el {@code _history} de tipo.</li>
+ *   <li>Trigramas (normalizados, con relleno al inicio y al final como pg_trgm) sobre el
+ *       vocabulario de palabras de nombre y apellido, para {@code name:fuzzy}: tolera errores de
+ *       tipeo, acentos y la ñ escrita como n. Cada palabra buscada se compara contra el
+ *       vocabulario (Jaccard de trigramas, las que no llegan a
+ *       {@code fhir.search.patient.fuzzy-threshold} cuentan 0) y el puntaje del paciente es el
+ *       promedio de su mejor palabra para cada una. Entre puntajes iguales desempata la similitud
+ *       del nombre completo, así "jose gonzalez" pone primero a José González que a José María
+ *       González Pérez.</li>
+ * </ul>
+ *
+ * Lo alimenta PatientReplica con cada cambio que aplica (siembra, sincronización incremental y
+ * write-through) o, con la réplica desactivada, PatientRoster con los listados que baja para cada
+ * usuario. Las búsquedas se restringen a los hash_id que ese usuario ve ({@link #searchWithin},
+ * {@link #fuzzyWithin}). Cuando no se puede usar el índice, PatientResourceProvider filtra el
+ * listado en vivo con {@link #matches}, que aplica las mismas reglas.
+ */
+@Service
+public class PatientSearchIndex {
+
+    private static final String DNI_SYSTEM = "http://mi-servidor.com/fhir/dni";
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern WORDS = Pattern.compile("[\\s,.'-]+");
+
+    /**
+     * Cómo comparar un parámetro string: por prefijo de palabra (por defecto), {@code :exact} o
+     * {@code :contains}.
+     */
+    public enum Match { PREFIX, EXACT, CONTAINS }
+
+    public record Text(String value, Match match) {
+    }
+
+    /**
+     * Criterios de búsqueda; los null no filtran. {@code identifierSystem} null busca en DNI y
+     * hash_id. Las fechas de nacimiento son {@code yyyyMMdd} y todos los rangos son inclusivos.
+     */
+    public record Criteria(Text name, Text family, Text given, String identifierSystem, String identifierValue,
+                           Integer birthFrom, Integer birthTo, Instant updatedFrom, Instant updatedTo,
+                           Boolean active) {
+
+        public boolean isEmpty() {
+            return name == null && family == null && given == null && identifierValue == null
+                    && birthFrom == null && birthTo == null && updatedFrom == null && updatedTo == null;
+        }
+    }
+
+    /**
+     * Resultado de {@code name:fuzzy}: fila del listado y similitud entre 0 y 1.
+     */
+    public record Scored(Map<String, Object> row, double score) {
+    }
+
+    /**
+     * {@code nameTrigrams}: trigramas de todas las palabras de nombre y apellido, codificados en un
+     * long (tres chars de 16 bits), ordenados y sin repetir.
+     */
+    private record Doc(long seq, Map<String, Object> row, String family, String given, List<String> familyWords,
+                       List<String> givenWords, List<String> nameWords, long[] nameTrigrams, String dni,
+                       String hashId, Integer birth, Instant updated, boolean active) {
+    }
+
+    private record Hit(Doc doc, double score) {
+    }
+
+    private final Map<String, Doc> docs = new HashMap<>();
+    private final NavigableMap<String, Set<String>> familyIndex = new TreeMap<>();
+    private final NavigableMap<String, Set<String>> givenIndex = new TreeMap<>();
+    private final Map<String, Set<String>> dniIndex = new HashMap<>();
+    private final NavigableMap<Integer, Set<String>> birthIndex = new TreeMap<>();
+    private final NavigableMap<Instant, Set<String>> updatedIndex = new TreeMap<>();
+    private final Map<String, Set<String>> wordDocs = new HashMap<>();
+    private final Map<String, long[]> vocabulary = new HashMap<>();
+    private final Map<Long, Set<String>> trigramIndex = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final double fuzzyThreshold;
+    private final int fuzzyLimit;
+    private final Timer searchTimer;
+    private final Timer fuzzyTimer;
+
+    public PatientSearchIndex(MeterRegistry meterRegistry,
+                              @Value("${fhir.search.patient.fuzzy-threshold:0.3}") double fuzzyThreshold,
+                              @Value("${fhir.search.patient.fuzzy-limit:50}") int fuzzyLimit) {
+        this.fuzzyThreshold = fuzzyThreshold;
+        this.fuzzyLimit = fuzzyLimit;
+        this.searchTimer = Timer.builder("fhir.patient.index.search")
+                .description("Tiempo de búsqueda de Patient sobre el índice en memoria")
+                .tag("mode", "filter")
+                .register(meterRegistry);
+        this.fuzzyTimer = Timer.builder("fhir.patient.index.search")
+                .description("Tiempo de búsqueda de Patient sobre el índice en memoria")
+                .tag("mode", "fuzzy")
+                .register(meterRegistry);
+        Gauge.builder("fhir.patient.index.size", this, PatientSearchIndex::size)
+                .description("Pacientes en el índice de búsqueda")
+                .register(meterRegistry);
+    }
+
+    // ========== MANTENIMIENTO ==========
+
+    /**
+     * Agrega o reemplaza un paciente. {@code seq} define el orden de los resultados (el del listado
+     * de TF_Back).
+     */
+    public void put(String hashId, long seq, Map<String, Object> row) {
+        if (hashId == null || row == null) {
+            return;
+        }
+        Doc doc = toDoc(hashId, seq, row);
+        lock.writeLock().lock();
+        try {
+            Doc previous = docs.put(hashId, doc);
+            if (previous != null) {
+                unindex(previous);
+            }
+            index(doc);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Saca un paciente (baja física en TF_Back).
+     */
+    public void remove(String hashId) {
+        if (hashId == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            Doc previous = docs.remove(hashId);
+            if (previous != null) {
+                unindex(previous);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            docs.clear();
+            familyIndex.clear();
+            givenIndex.clear();
+            dniIndex.clear();
+            birthIndex.clear();
+            updatedIndex.clear();
+            wordDocs.clear();
+            vocabulary.clear();
+            trigramIndex.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docs.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ========== BÚSQUEDA ==========
+
+    /**
+     * Filas del listado que cumplen los criterios, en el orden del listado.
+     */
+    public List<Map<String, Object>> search(Criteria criteria) {
+        return searchWithin(criteria, null);
+    }
+
+    /**
+     * Como {@link #search}, pero solo entre los pacientes de {@code within} (null: todos).
+     */
+    public List<Map<String, Object>> searchWithin(Criteria criteria, Set<String> within) {
+        long start = System.nanoTime();
+        lock.readLock().lock();
+        try {
+            Set<String> candidates = null;
+            candidates = intersect(candidates, words(criteria.family(), familyIndex));
+            candidates = intersect(candidates, words(criteria.given(), givenIndex));
+            candidates = intersect(candidates, nameWords(criteria.name()));
+            candidates = intersect(candidates, identifier(criteria));
+            candidates = intersect(candidates, range(birthIndex, criteria.birthFrom(), criteria.birthTo()));
+            candidates = intersect(candidates, range(updatedIndex, criteria.updatedFrom(), criteria.updatedTo()));
+            if (within != null) {
+                // within es del que llama: se usa tal cual solo si no hay otro filtro que recortar
+                if (candidates == null) {
+                    candidates = within;
+                } else {
+                    candidates.retainAll(within);
+                }
+            }
+
+            Collection<Doc> scan = candidates == null
+                    ? docs.values()
+                    : candidates.stream().map(docs::get).filter(Objects::nonNull).toList();
+            return scan.stream()
+                    .filter(doc -> matches(criteria, doc))
+                    .sorted(Comparator.comparingLong(Doc::seq))
+                    .map(Doc::row)
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+            searchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Misma regla que {@link #search} aplicada a una fila suelta (listado en vivo de TF_Back).
+     */
+    public static boolean matches(Criteria criteria, Map<String, Object> row) {
+        String hashId = row.get("hash_id") != null ? String.valueOf(row.get("hash_id")) : null;
+        return matches(criteria, toDoc(hashId, 0, row));
+    }
+
+    /**
+     * Búsqueda {@code name:fuzzy} sobre el índice; {@code criteria} filtra además por los otros
+     * parámetros. Resultados de mayor a menor puntaje, hasta {@code fhir.search.patient.fuzzy-limit}.
+     */
+    public List<Scored> fuzzy(String query, Criteria criteria) {
+        return fuzzyWithin(query, criteria, null);
+    }
+
+    /**
+     * Como {@link #fuzzy(String, Criteria)}, pero solo entre los pacientes de {@code within}
+     * (null: todos).
+     */
+    public List<Scored> fuzzyWithin(String query, Criteria criteria, Set<String> within) {
+        long start = System.nanoTime();
+        List<String> queryWords = split(query);
+        if (queryWords.isEmpty()) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            // Por paciente, la similitud de su mejor palabra para cada palabra buscada
+            int n = queryWords.size();
+            Map<String, double[]> perDoc = new HashMap<>();
+            for (int q = 0; q < n; q++) {
+                int word = q;
+                similarWords(trigrams(queryWords.get(q))).forEach((match, similarity) -> {
+                    for (String hashId : wordDocs.getOrDefault(match, Set.of())) {
+                        double[] best = perDoc.computeIfAbsent(hashId, k -> new double[n]);
+                        best[word] = Math.max(best[word], similarity);
+                    }
+                });
+            }
+
+            List<Map.Entry<String, Double>> scored = new ArrayList<>();
+            perDoc.forEach((hashId, best) -> {
+                double score = Arrays.stream(best).sum() / n;
+                if (score >= fuzzyThreshold) {
+                    scored.add(Map.entry(hashId, score));
+                }
+            });
+            scored.sort(Map.Entry.<String, Double>comparingByValue().reversed());
+
+            // De mayor a menor puntaje de palabras; el desempate suma como mucho 0.1, así que se corta
+            // cuando ni con desempate perfecto se entra entre los primeros fuzzy-limit
+            long[] queryTrigrams = trigrams(queryWords);
+            Comparator<Hit> worstFirst = Comparator.comparingDouble(Hit::score)
+                    .thenComparing(Comparator.comparingLong((Hit hit) -> hit.doc().seq()).reversed());
+            PriorityQueue<Hit> top = new PriorityQueue<>(worstFirst);
+            for (Map.Entry<String, Double> candidate : scored) {
+                if (top.size() == fuzzyLimit && 0.9 * candidate.getValue() + 0.1 < top.peek().score()) {
+                    break;
+                }
+                if (within != null && !within.contains(candidate.getKey())) {
+                    continue;
+                }
+                Doc doc = docs.get(candidate.getKey());
+                if (!matches(criteria, doc)) {
+                    continue;
+                }
+                Hit hit = new Hit(doc, rankScore(candidate.getValue(), queryTrigrams, doc));
+                if (top.size() < fuzzyLimit) {
+                    top.add(hit);
+                } else if (worstFirst.compare(hit, top.peek()) > 0) {
+                    top.poll();
+                    top.add(hit);
+                }
+            }
+            return rank(new ArrayList<>(top));
+        } finally {
+            lock.readLock().unlock();
+            fuzzyTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Misma búsqueda {@code name:fuzzy} recorriendo un listado en vivo de TF_Back (sin réplica).
+     */
+    public List<Scored> fuzzy(String query, Criteria criteria, List<Map<String, Object>> rows) {
+        List<String> queryWords = split(query);
+        if (queryWords.isEmpty()) {
+            return List.of();
+        }
+        List<long[]> wordTrigrams = queryWords.stream().map(PatientSearchIndex::trigrams).toList();
+        // Una palabra del listado se compara una sola vez contra cada palabra buscada
+        List<Map<String, Double>> similar = new ArrayList<>();
+        queryWords.forEach(w -> similar.add(new HashMap<>()));
+        long[] queryTrigrams = trigrams(queryWords);
+        List<Hit> hits = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            Map<String, Object> row = rows.get(i);
+            Doc doc = toDoc(row.get("hash_id") != null ? String.valueOf(row.get("hash_id")) : null, i, row);
+            for (int q = 0; q < wordTrigrams.size(); q++) {
+                long[] trigrams = wordTrigrams.get(q);
+                for (String word : doc.nameWords()) {
+                    similar.get(q).computeIfAbsent(word, w -> {
+                        double jaccard = jaccard(trigrams, trigrams(w));
+                        return jaccard >= fuzzyThreshold ? jaccard : 0.0;
+                    });
+                }
+            }
+            double score = score(similar, doc);
+            if (score >= fuzzyThreshold && matches(criteria, doc)) {
+                hits.add(new Hit(doc, rankScore(score, queryTrigrams, doc)));
+            }
+        }
+        return rank(hits);
+    }
+
+    /**
+     * Palabras del vocabulario con Jaccard >= umbral contra la palabra buscada. Poda: para llegar al
+     * umbral tienen que compartir al menos umbral * |trigramas| trigramas.
+     */
+    private Map<String, Double> similarWords(long[] trigrams) {
+        Map<String, Integer> shared = new HashMap<>();
+        for (long trigram : trigrams) {
+            for (String word : trigramIndex.getOrDefault(trigram, Set.of())) {
+                shared.merge(word, 1, Integer::sum);
+            }
+        }
+        int minShared = Math.max(1, (int) Math.ceil(fuzzyThreshold * trigrams.length));
+        Map<String, Double> result = new HashMap<>();
+        shared.forEach((word, count) -> {
+            if (count >= minShared) {
+                double jaccard = jaccard(trigrams, vocabulary.get(word));
+                if (jaccard >= fuzzyThreshold) {
+                    result.put(word, jaccard);
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Promedio, sobre las palabras buscadas, de la similitud de la mejor palabra del paciente.
+     */
+    private static double score(List<Map<String, Double>> similar, Doc doc) {
+        double total = 0;
+        for (Map<String, Double> matches : similar) {
+            double best = 0;
+            for (String word : doc.nameWords()) {
+                best = Math.max(best, matches.getOrDefault(word, 0.0));
+            }
+            total += best;
+        }
+        return total / similar.size();
+    }
+
+    /**
+     * Puntaje para ordenar: el de palabras pesa 90% y la similitud del nombre completo el resto.
+     */
+    private static double rankScore(double score, long[] queryTrigrams, Doc doc) {
+        return 0.9 * score + 0.1 * jaccard(queryTrigrams, doc.nameTrigrams());
+    }
+
+    private List<Scored> rank(List<Hit> hits) {
+        return hits.stream()
+                .sorted(Comparator.comparingDouble(Hit::score).reversed()
+                        .thenComparingLong(hit -> hit.doc().seq()))
+                .limit(fuzzyLimit)
+                .map(hit -> new Scored(hit.doc().row(), hit.score()))
+                .toList();
+    }
+
+    private static double jaccard(long[] a, long[] b) {
+        int i = 0;
+        int j = 0;
+        int common = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                common++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        int union = a.length + b.length - common;
+        return union == 0 ? 0 : (double) common / union;
+    }
+
+    private static boolean matches(Criteria criteria, Doc doc) {
+        if (criteria.active() != null && criteria.active() != doc.active()) {
+            return false;
+        }
+        if (criteria.family() != null && !text(criteria.family(), doc.family(), doc.familyWords())) {
+            return false;
+        }
+        if (criteria.given() != null && !text(criteria.given(), doc.given(), doc.givenWords())) {
+            return false;
+        }
+        if (criteria.name() != null) {
+            List<String> all = new ArrayList<>(doc.familyWords());
+            all.addAll(doc.givenWords());
+            String full = (doc.given() != null ? doc.given() : "") + " " + (doc.family() != null ? doc.family() : "");
+            if (!text(criteria.name(), full.trim(), all)
+                    && !text(criteria.name(), doc.family(), doc.familyWords())
+                    && !text(criteria.name(), doc.given(), doc.givenWords())) {
+                return false;
+            }
+        }
+        if (criteria.identifierValue() != null && !identifierMatches(criteria, doc)) {
+            return false;
+        }
+        if (criteria.birthFrom() != null || criteria.birthTo() != null) {
+            if (doc.birth() == null
+                    || (criteria.birthFrom() != null && doc.birth() < criteria.birthFrom())
+                    || (criteria.birthTo() != null && doc.birth() > criteria.birthTo())) {
+                return false;
+            }
+        }
+        if (criteria.updatedFrom() != null || criteria.updatedTo() != null) {
+            if (doc.updated() == null
+                    || (criteria.updatedFrom() != null && doc.updated().isBefore(criteria.updatedFrom()))
+                    || (criteria.updatedTo() != null && doc.updated().isAfter(criteria.updatedTo()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean text(Text query, String value, List<String> words) {
+        if (value == null) {
+            return false;
+        }
+        return switch (query.match()) {
+            case EXACT -> value.equals(query.value());
+            case CONTAINS -> normalize(value).contains(normalize(query.value()));
+            // Cada palabra buscada tiene que ser prefijo de alguna palabra del campo
+            case PREFIX -> split(query.value()).stream()
+                    .allMatch(q -> words.stream().anyMatch(w -> w.startsWith(q)));
+        };
+    }
+
+    private static boolean identifierMatches(Criteria criteria, Doc doc) {
+        String system = criteria.identifierSystem();
+        String value = criteria.identifierValue();
+        if (system == null) {
+            return value.equals(doc.dni()) || value.equals(doc.hashId());
+        }
+        if (DNI_SYSTEM.equals(system)) {
+            return value.equals(doc.dni());
+        }
+        // "|valor": identificador sin system, que es el hash_id
+        return system.isEmpty() && value.equals(doc.hashId());
+    }
+
+    private Set<String> words(Text query, NavigableMap<String, Set<String>> index) {
+        if (query == null || query.match() == Match.CONTAINS) {
+            return null;
+        }
+        Set<String> result = null;
+        for (String word : split(query.value())) {
+            Set<String> matching = new HashSet<>();
+            index.subMap(word, true, word + Character.MAX_VALUE, false).values().forEach(matching::addAll);
+            result = intersect(result, matching);
+        }
+        return result;
+    }
+
+    private Set<String> nameWords(Text query) {
+        if (query == null || query.match() == Match.CONTAINS) {
+            return null;
+        }
+        // name busca en apellido y nombre: por cada palabra, la unión de los dos índices
+        Set<String> result = null;
+        for (String word : split(query.value())) {
+            Set<String> matching = new HashSet<>();
+            familyIndex.subMap(word, true, word + Character.MAX_VALUE, false).values().forEach(matching::addAll);
+            givenIndex.subMap(word, true, word + Character.MAX_VALUE, false).values().forEach(matching::addAll);
+            result = intersect(result, matching);
+        }
+        return result;
+    }
+
+    private Set<String> identifier(Criteria criteria) {
+        String value = criteria.identifierValue();
+        if (value == null) {
+            return null;
+        }
+        Set<String> result = new HashSet<>();
+        String system = criteria.identifierSystem();
+        if (system == null || DNI_SYSTEM.equals(system)) {
+            result.addAll(dniIndex.getOrDefault(value, Set.of()));
+        }
+        if ((system == null || system.isEmpty()) && docs.containsKey(value)) {
+            result.add(value);
+        }
+        return result;
+    }
+
+    private static <K extends Comparable<K>> Set<String> range(NavigableMap<K, Set<String>> index, K from, K to) {
+        if (from == null && to == null) {
+            return null;
+        }
+        NavigableMap<K, Set<String>> range = index;
+        if (from != null) {
+            range = range.tailMap(from, true);
+        }
+        if (to != null) {
+            range = range.headMap(to, true);
+        }
+        Set<String> result = new HashSet<>();
+        range.values().forEach(result::addAll);
+        return result;
+    }
+
+    private static Set<String> intersect(Set<String> current, Set<String> next) {
+        if (next == null) {
+            return current;
+        }
+        if (current == null) {
+            return next;
+        }
+        current.retainAll(next);
+        return current;
+    }
+
+    // ========== DOCUMENTOS ==========
+
+    private void index(Doc doc) {
+        doc.familyWords().forEach(w -> familyIndex.computeIfAbsent(w, k -> new HashSet<>()).add(doc.hashId()));
+        doc.givenWords().forEach(w -> givenIndex.computeIfAbsent(w, k -> new HashSet<>()).add(doc.hashId()));
+        if (doc.dni() != null) {
+            dniIndex.computeIfAbsent(doc.dni(), k -> new HashSet<>()).add(doc.hashId());
+        }
+        if (doc.birth() != null) {
+            birthIndex.computeIfAbsent(doc.birth(), k -> new HashSet<>()).add(doc.hashId());
+        }
+        if (doc.updated() != null) {
+            updatedIndex.computeIfAbsent(doc.updated(), k -> new HashSet<>()).add(doc.hashId());
+        }
+        for (String word : doc.nameWords()) {
+            wordDocs.computeIfAbsent(word, k -> new HashSet<>()).add(doc.hashId());
+            if (!vocabulary.containsKey(word)) {
+                long[] trigrams = trigrams(word);
+                vocabulary.put(word, trigrams);
+                for (long trigram : trigrams) {
+                    trigramIndex.computeIfAbsent(trigram, k -> new HashSet<>()).add(word);
+                }
+            }
+        }
+    }
+
+    private void unindex(Doc doc) {
+        doc.familyWords().forEach(w -> removePosting(familyIndex, w, doc.hashId()));
+        doc.givenWords().forEach(w -> removePosting(givenIndex, w, doc.hashId()));
+        if (doc.dni() != null) {
+            removePosting(dniIndex, doc.dni(), doc.hashId());
+        }
+        if (doc.birth() != null) {
+            removePosting(birthIndex, doc.birth(), doc.hashId());
+        }
+        if (doc.updated() != null) {
+            removePosting(updatedIndex, doc.updated(), doc.hashId());
+        }
+        for (String word : doc.nameWords()) {
+            removePosting(wordDocs, word, doc.hashId());
+            // La palabra sale del vocabulario cuando ya no la tiene ningún paciente
+            if (!wordDocs.containsKey(word)) {
+                for (long trigram : vocabulary.remove(word)) {
+                    removePosting(trigramIndex, trigram, word);
+                }
+            }
+        }
+    }
+
+    private static <K> void removePosting(Map<K, Set<String>> index, K key, String hashId) {
+        Set<String> postings = index.get(key);
+        if (postings != null) {
+            postings.remove(hashId);
+            if (postings.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static Doc toDoc(String hashId, long seq, Map<String, Object> row) {
+        String family = row.get("apellido") != null ? String.valueOf(row.get("apellido")) : null;
+        String given = row.get("nombre") != null ? String.valueOf(row.get("nombre")) : null;
+        String dni = row.get("dni_paciente") != null ? String.valueOf(row.get("dni_paciente")) : null;
+        Object inactivo = row.get("inactivo");
+        boolean active = !(Boolean.TRUE.equals(inactivo)
+                || (inactivo instanceof String s && Boolean.parseBoolean(s)));
+        List<String> familyWords = split(family);
+        List<String> givenWords = split(given);
+        List<String> nameWords = new ArrayList<>(familyWords);
+        givenWords.stream().filter(w -> !nameWords.contains(w)).forEach(nameWords::add);
+        return new Doc(seq, row, family, given, familyWords, givenWords, nameWords, trigrams(nameWords), dni,
+                hashId, birthKey(row.get("fecha_nacimiento")), LastUpdated.parse(row.get("fecha_modificacion")), active);
+    }
+
+    /**
+     * Trigramas de una palabra (ya normalizada) con dos espacios adelante y uno atrás, así las
+     * palabras cortas también tienen trigramas y el inicio de palabra pesa más. Cada trigrama va
+     * en un long (tres chars de 16 bits); se devuelven ordenados y sin repetir.
+     */
+    private static long[] trigrams(String word) {
+        String padded = "  " + word + " ";
+        long[] trigrams = new long[padded.length() - 2];
+        for (int i = 0; i < trigrams.length; i++) {
+            trigrams[i] = ((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2);
+        }
+        return Arrays.stream(trigrams).sorted().distinct().toArray();
+    }
+
+    /**
+     * Trigramas de todas las palabras juntas, ordenados y sin repetir.
+     */
+    private static long[] trigrams(List<String> words) {
+        return words.stream().flatMapToLong(w -> Arrays.stream(trigrams(w))).sorted().distinct().toArray();
+    }
+
+    /**
+     * fecha_nacimiento como {@code yyyyMMdd}; TF_Back la manda como fecha, ISO con hora o epoch.
+     */
+    private static Integer birthKey(Object value) {
+        try {
+            LocalDate date = null;
+            if (value instanceof Number number) {
+                date = LocalDate.ofInstant(Instant.ofEpochMilli(number.longValue()), ZoneOffset.UTC);
+            } else if (value instanceof String text && text.length() >= 10) {
+                date = text.length() == 10 ? LocalDate.parse(text) : OffsetDateTime.parse(text).toLocalDate();
+            }
+            return date == null ? null : date.getYear() * 10000 + date.getMonthValue() * 100 + date.getDayOfMonth();
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static List<String> split(String value) {
+        if (value == null) {
+            return List.of();
+        }
+        List<String> words = new ArrayList<>();
+        for (String word : WORDS.split(normalize(value))) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Minúscula y sin acentos ("Pérez" → "perez").
+     */
+    static String normalize(String value) {
+        return DIACRITICS.matcher(Normalizer.normalize(value, Normalizer.Form.NFD)).replaceAll("")
+                .toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,110 @@
+package com.serverfhir.subscription;
+
+import org.hl7.fhir.r5.model.Subscription;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Estado en memoria de una Subscription: el recurso tal como se aceptó, el usuario que la creó, el
+ * contador de eventos (numera las notificaciones, el cliente detecta huecos con él) y las
+ * conexiones WebSocket ligadas.
+ */
+final class ActiveSubscription {
+
+    private final String id;
+    private final String ownerScope;
+    private final Subscription resource;
+    private final String topic;
+    private final Subscription.SubscriptionPayloadContent content;
+    private final Map<String, String> filters = new HashMap<>();
+    private final long heartbeatMillis;
+    private final Date end;
+    private final AtomicLong events = new AtomicLong();
+    private final Set<WebSocketConnection> connections = ConcurrentHashMap.newKeySet();
+    private volatile long lastSentMillis = System.currentTimeMillis();
+
+    ActiveSubscription(String id, String ownerScope, Subscription resource) {
+        this.id = id;
+        this.ownerScope = ownerScope;
+        this.resource = resource;
+        this.topic = resource.getTopic();
+        this.content = resource.getContent();
+        for (Subscription.SubscriptionFilterByComponent filter : resource.getFilterBy()) {
+            filters.put(filter.getFilterParameter(), filter.getValue());
+        }
+        this.heartbeatMillis = TimeUnit.SECONDS.toMillis(resource.getHeartbeatPeriod());
+        this.end = resource.getEnd();
+    }
+
+    String id() {
+        return id;
+    }
+
+    /**
+     * {@code JwtService.getUserScope} del token con que se creó.
+     */
+    String ownerScope() {
+        return ownerScope;
+    }
+
+    Subscription resource() {
+        return resource;
+    }
+
+    String topic() {
+        return topic;
+    }
+
+    Subscription.SubscriptionPayloadContent content() {
+        return content;
+    }
+
+    long heartbeatMillis() {
+        return heartbeatMillis;
+    }
+
+    Set<WebSocketConnection> connections() {
+        return connections;
+    }
+
+    long eventsSinceStart() {
+        return events.get();
+    }
+
+    long nextEventNumber() {
+        return events.incrementAndGet();
+    }
+
+    long lastSentMillis() {
+        return lastSentMillis;
+    }
+
+    void sent(long millis) {
+        lastSentMillis = millis;
+    }
+
+    boolean isExpired(long nowMillis) {
+        return end != null && end.getTime() <= nowMillis;
+    }
+
+    /**
+     * Mismo topic y todos los filtros presentes en el evento con el mismo valor.
+     */
+    boolean matches(SubscriptionEvent event) {
+        if (!topic.equals(event.topic())) {
+            return false;
+        }
+        for (Map.Entry<String, String> filter : filters.entrySet()) {
+            if (!filter.getValue().equals(event.filterValues().get(filter.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
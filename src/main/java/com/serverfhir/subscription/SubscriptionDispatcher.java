@@ -0,0 +1,236 @@
+package com.serverfhir.subscription;
+
+import ca.uhn.fhir.context.FhirContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hl7.fhir.r5.model.Bundle;
+import org.hl7.fhir.r5.model.Enumerations;
+import org.hl7.fhir.r5.model.Reference;
+import org.hl7.fhir.r5.model.Subscription;
+import org.hl7.fhir.r5.model.SubscriptionStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Date;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reparte los eventos de cambio a las Subscriptions que coinciden.
+ *
+ * {@link #publish} lo llaman los providers después de que TF_Back confirmó la escritura: solo
+ * encola el evento (cola acotada de {@code fhir.subscription.dispatch-queue-capacity}) y vuelve.
+ * Un único hilo dedicado arma la notificación R5 ({@code Bundle} de tipo
+ * {@code subscription-notification} con un SubscriptionStatus), la serializa una vez por
+ * Subscription y la deja en la cola de cada conexión ligada; el envío al socket lo hace cada
+ * conexión por su cuenta (ver WebSocketConnection). Sin Subscriptions, publicar no cuesta nada.
+ *
+ * El mismo hilo manda los heartbeats ({@code heartbeatPeriod}) y vence las Subscriptions con
+ * {@code end} pasado.
+ */
+@Component
+public class SubscriptionDispatcher implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(SubscriptionDispatcher.class);
+
+    private final SubscriptionRegistry registry;
+    private final FhirContext fhirContext;
+    private final ThreadPoolExecutor dispatcher;
+    private final ScheduledExecutorService ticker;
+    private final ExecutorService senders = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("fhir-subscription-send-", 0).factory());
+    private final Set<WebSocketConnection> connections = ConcurrentHashMap.newKeySet();
+    private final Counter published;
+    private final Counter rejected;
+    private final Counter sent;
+    private final Counter dropped;
+
+    @Value("${fhir.subscription.connection-queue-capacity:64}")
+    private int connectionQueueCapacity;
+
+    public SubscriptionDispatcher(SubscriptionRegistry registry, FhirContext fhirContext, MeterRegistry meterRegistry,
+                                  @Value("${fhir.subscription.dispatch-queue-capacity:1024}") int dispatchQueueCapacity) {
+        this.registry = registry;
+        this.fhirContext = fhirContext;
+        this.dispatcher = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(dispatchQueueCapacity), r -> {
+                    Thread thread = new Thread(r, "fhir-subscription-dispatch");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "fhir-subscription-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.ticker.scheduleAtFixedRate(() -> {
+            if (!registry.isEmpty()) {
+                execute(this::tick);
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+
+        this.published = Counter.builder("fhir.subscription.events")
+                .description("Eventos de cambio publicados con al menos una Subscription activa")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("fhir.subscription.events.rejected")
+                .description("Eventos descartados porque la cola del dispatcher estaba llena")
+                .register(meterRegistry);
+        this.sent = Counter.builder("fhir.subscription.notifications")
+                .tag("result", "sent")
+                .description("Notificaciones por WebSocket")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("fhir.subscription.notifications")
+                .tag("result", "dropped")
+                .description("Notificaciones por WebSocket")
+                .register(meterRegistry);
+        Gauge.builder("fhir.subscription.connections", connections, Set::size)
+                .description("Conexiones WebSocket abiertas")
+                .register(meterRegistry);
+        Gauge.builder("fhir.subscription.dispatch.queue", dispatcher, e -> e.getQueue().size())
+                .description("Eventos esperando al dispatcher")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Encola un cambio para notificar. No bloquea ni lanza: si la cola está llena el evento se
+     * descarta y se cuenta.
+     */
+    public void publish(SubscriptionEvent event) {
+        if (registry.isEmpty()) {
+            return;
+        }
+        published.increment();
+        execute(() -> dispatch(event));
+    }
+
+    // ========== CONEXIONES ==========
+
+    WebSocketConnection open(WebSocketSession session) {
+        WebSocketConnection connection = new WebSocketConnection(session, connectionQueueCapacity, senders, sent, dropped);
+        connections.add(connection);
+        return connection;
+    }
+
+    void closed(WebSocketConnection connection) {
+        connections.remove(connection);
+        ActiveSubscription subscription = connection.subscription();
+        if (subscription != null) {
+            subscription.connections().remove(connection);
+        }
+    }
+
+    /**
+     * Liga la conexión a la Subscription y le manda el handshake.
+     */
+    void bind(WebSocketConnection connection, ActiveSubscription subscription) {
+        ActiveSubscription previous = connection.subscription();
+        if (previous != null) {
+            previous.connections().remove(connection);
+        }
+        connection.bind(subscription);
+        subscription.connections().add(connection);
+        connection.offer(encode(notification(subscription, SubscriptionStatus.SubscriptionNotificationType.HANDSHAKE, null, 0)));
+    }
+
+    // ========== DISPATCH ==========
+
+    private void execute(Runnable task) {
+        try {
+            dispatcher.execute(task);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            logger.warn("Cola del dispatcher de Subscriptions llena; se descarta un evento");
+        }
+    }
+
+    private void dispatch(SubscriptionEvent event) {
+        long now = System.currentTimeMillis();
+        for (ActiveSubscription subscription : registry.active()) {
+            if (!subscription.matches(event)) {
+                continue;
+            }
+            // Se numera aunque no haya conexiones: al volver a ligarse el cliente ve lo que se perdió
+            long eventNumber = subscription.nextEventNumber();
+            if (subscription.connections().isEmpty()) {
+                continue;
+            }
+            String message = encode(notification(subscription,
+                    SubscriptionStatus.SubscriptionNotificationType.EVENTNOTIFICATION, event, eventNumber));
+            for (WebSocketConnection connection : subscription.connections()) {
+                connection.offer(message);
+            }
+            subscription.sent(now);
+        }
+    }
+
+    private void tick() {
+        long now = System.currentTimeMillis();
+        registry.expire(now);
+        for (ActiveSubscription subscription : registry.active()) {
+            if (subscription.heartbeatMillis() <= 0 || subscription.connections().isEmpty()
+                    || now - subscription.lastSentMillis() < subscription.heartbeatMillis()) {
+                continue;
+            }
+            String message = encode(notification(subscription,
+                    SubscriptionStatus.SubscriptionNotificationType.HEARTBEAT, null, 0));
+            for (WebSocketConnection connection : subscription.connections()) {
+                connection.offer(message);
+            }
+            subscription.sent(now);
+        }
+    }
+
+    /**
+     * Bundle {@code subscription-notification} con solo el SubscriptionStatus. Nunca lleva el
+     * recurso: la Subscription no sabe qué pacientes puede ver su dueño, eso lo decide TF_Back
+     * cuando el cliente lee el {@code focus}.
+     */
+    private Bundle notification(ActiveSubscription subscription, SubscriptionStatus.SubscriptionNotificationType type,
+                                SubscriptionEvent event, long eventNumber) {
+        SubscriptionStatus status = new SubscriptionStatus();
+        status.setStatus(Enumerations.SubscriptionStatusCodes.ACTIVE);
+        status.setType(type);
+        status.setEventsSinceSubscriptionStart(subscription.eventsSinceStart());
+        status.setSubscription(new Reference("Subscription/" + subscription.id()));
+        status.setTopic(subscription.topic());
+
+        Bundle bundle = new Bundle();
+        bundle.setType(Bundle.BundleType.SUBSCRIPTIONNOTIFICATION);
+        bundle.setTimestamp(new Date());
+        bundle.addEntry().setFullUrl("urn:uuid:" + UUID.randomUUID()).setResource(status);
+
+        if (event != null) {
+            SubscriptionStatus.SubscriptionStatusNotificationEventComponent notificationEvent = status.addNotificationEvent()
+                    .setEventNumber(eventNumber)
+                    .setTimestamp(event.timestamp());
+            if (subscription.content() != Subscription.SubscriptionPayloadContent.EMPTY && event.reference() != null) {
+                notificationEvent.setFocus(new Reference(event.reference()));
+            }
+        }
+        return bundle;
+    }
+
+    private String encode(Bundle bundle) {
+        return fhirContext.newJsonParser().encodeResourceToString(bundle);
+    }
+
+    @Override
+    public void destroy() {
+        ticker.shutdownNow();
+        dispatcher.shutdownNow();
+        senders.shutdownNow();
+    }
+}
@@ -0,0 +1,42 @@
+package com.serverfhir.subscription;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Un cambio hecho a través de este servidor: topic, referencia al recurso ({@code Tipo/id}, null
+ * si TF_Back no devolvió el id) y valores para los filtros del topic. No lleva el recurso: las
+ * notificaciones son {@code id-only} y el cliente lo lee con su token, así TF_Back decide si
+ * puede verlo.
+ */
+public record SubscriptionEvent(String topic, String reference, Map<String, String> filterValues, Date timestamp) {
+
+    public static SubscriptionEvent patient(String hashId) {
+        Map<String, String> values = new HashMap<>();
+        if (hashId != null) {
+            values.put(SubscriptionTopics.FILTER_PATIENT, hashId);
+        }
+        return new SubscriptionEvent(SubscriptionTopics.PATIENT, hashId != null ? "Patient/" + hashId : null,
+                values, new Date());
+    }
+
+    /**
+     * @param category      {@code report}, {@code annex} o {@code historia}
+     * @param patientHashId paciente del informe, si se conoce
+     * @param parentReport  informe padre (solo anexos)
+     */
+    public static SubscriptionEvent diagnosticReport(String category, String id, String patientHashId,
+                                                     String parentReport) {
+        Map<String, String> values = new HashMap<>();
+        values.put(SubscriptionTopics.FILTER_CATEGORY, category);
+        if (patientHashId != null) {
+            values.put(SubscriptionTopics.FILTER_PATIENT, patientHashId);
+        }
+        if (parentReport != null) {
+            values.put(SubscriptionTopics.FILTER_REPORT, parentReport);
+        }
+        return new SubscriptionEvent(SubscriptionTopics.DIAGNOSTIC_REPORT,
+                id != null ? "DiagnosticReport/" + id : null, values, new Date());
+    }
+}
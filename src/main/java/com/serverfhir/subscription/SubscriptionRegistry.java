@@ -0,0 +1,154 @@
+package com.serverfhir.subscription;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hl7.fhir.r5.model.Enumerations;
+import org.hl7.fhir.r5.model.Subscription;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Subscriptions activas y tokens de binding del canal WebSocket. Vive en memoria: al reiniciar el
+ * servidor los clientes vuelven a crear su Subscription (y con varias instancias cada una notifica
+ * solo los cambios que pasaron por ella).
+ *
+ * Cada Subscription es de quien la creó (scope de {@code JwtService.getUserScope}): leerla,
+ * listarla, borrarla o pedir su token con otro usuario se comporta como si no existiera.
+ */
+@Component
+public class SubscriptionRegistry {
+
+    /**
+     * Token de un solo uso para ligar una conexión WebSocket a una Subscription.
+     */
+    public record BindingToken(String token, String subscriptionId, Instant expires) {
+    }
+
+    private final Map<String, ActiveSubscription> subscriptions = new ConcurrentHashMap<>();
+    private final Map<String, BindingToken> tokens = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+
+    @Value("${fhir.subscription.binding-token-ttl-seconds:60}")
+    private long tokenTtlSeconds;
+
+    @Value("${fhir.subscription.max-subscriptions:500}")
+    private int maxSubscriptions;
+
+    public SubscriptionRegistry(MeterRegistry meterRegistry) {
+        Gauge.builder("fhir.subscription.active", subscriptions, Map::size)
+                .description("Subscriptions activas")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Guarda una Subscription ya validada, con id nuevo y estado active, a nombre de
+     * {@code ownerScope}. Null si se llegó al máximo.
+     */
+    public Subscription create(Subscription subscription, String ownerScope) {
+        if (subscriptions.size() >= maxSubscriptions) {
+            return null;
+        }
+        String id = UUID.randomUUID().toString();
+        Subscription stored = subscription.copy();
+        stored.setId(id);
+        stored.setStatus(Enumerations.SubscriptionStatusCodes.ACTIVE);
+        if (!stored.hasContent()) {
+            stored.setContent(Subscription.SubscriptionPayloadContent.IDONLY);
+        }
+        subscriptions.put(id, new ActiveSubscription(id, ownerScope, stored));
+        return stored.copy();
+    }
+
+    public Subscription get(String id, String ownerScope) {
+        ActiveSubscription active = owned(id, ownerScope);
+        return active == null ? null : active.resource().copy();
+    }
+
+    public List<Subscription> list(String ownerScope) {
+        return subscriptions.values().stream()
+                .filter(s -> s.ownerScope().equals(ownerScope))
+                .map(s -> s.resource().copy())
+                .toList();
+    }
+
+    /**
+     * Borra la Subscription y cierra sus conexiones. False si no existía o es de otro usuario.
+     */
+    public boolean delete(String id, String ownerScope) {
+        ActiveSubscription removed = owned(id, ownerScope);
+        if (removed == null || !subscriptions.remove(id, removed)) {
+            return false;
+        }
+        removed.connections().forEach(c -> c.close(CloseStatus.NORMAL));
+        return true;
+    }
+
+    /**
+     * Token para {@code bind-with-token}; null si la Subscription no existe o es de otro usuario.
+     */
+    public BindingToken issueToken(String subscriptionId, String ownerScope) {
+        if (owned(subscriptionId, ownerScope) == null) {
+            return null;
+        }
+        purgeTokens();
+        byte[] bytes = new byte[24];
+        random.nextBytes(bytes);
+        BindingToken token = new BindingToken(Base64.getUrlEncoder().withoutPadding().encodeToString(bytes),
+                subscriptionId, Instant.now().plusSeconds(tokenTtlSeconds));
+        tokens.put(token.token(), token);
+        return token;
+    }
+
+    /**
+     * Consume el token y devuelve su Subscription; null si no existe, venció o ya se usó.
+     */
+    ActiveSubscription redeem(String token) {
+        BindingToken binding = token == null ? null : tokens.remove(token);
+        if (binding == null || binding.expires().isBefore(Instant.now())) {
+            return null;
+        }
+        return subscriptions.get(binding.subscriptionId());
+    }
+
+    private ActiveSubscription owned(String id, String ownerScope) {
+        ActiveSubscription active = id == null ? null : subscriptions.get(id);
+        return active != null && active.ownerScope().equals(ownerScope) ? active : null;
+    }
+
+    boolean isEmpty() {
+        return subscriptions.isEmpty();
+    }
+
+    Collection<ActiveSubscription> active() {
+        return subscriptions.values();
+    }
+
+    /**
+     * Quita las Subscriptions con {@code end} vencido y los tokens sin usar vencidos.
+     */
+    void expire(long nowMillis) {
+        subscriptions.values().removeIf(s -> {
+            if (!s.isExpired(nowMillis)) {
+                return false;
+            }
+            s.connections().forEach(c -> c.close(CloseStatus.NORMAL));
+            return true;
+        });
+        purgeTokens();
+    }
+
+    private void purgeTokens() {
+        Instant now = Instant.now();
+        tokens.values().removeIf(t -> t.expires().isBefore(now));
+    }
+}
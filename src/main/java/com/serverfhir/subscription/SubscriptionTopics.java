@@ -0,0 +1,50 @@
+package com.serverfhir.subscription;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Topics (R5, topic-based subscriptions) que publica este servidor y los filtros que acepta cada
+ * uno en {@code Subscription.filterBy}. No hay recursos SubscriptionTopic: los canonicals son fijos.
+ */
+public final class SubscriptionTopics {
+
+    /**
+     * Alta o modificación de un Patient (incluye baja lógica y reactivación).
+     */
+    public static final String PATIENT = "http://mi-servidor.com/fhir/SubscriptionTopic/patient-changed";
+
+    /**
+     * Alta de un DiagnosticReport: informe, anexo o historia fisiátrica.
+     */
+    public static final String DIAGNOSTIC_REPORT = "http://mi-servidor.com/fhir/SubscriptionTopic/diagnostic-report-created";
+
+    /** hash_id del paciente. */
+    public static final String FILTER_PATIENT = "patient";
+    /** Informe padre de un anexo. */
+    public static final String FILTER_REPORT = "report";
+    /** {@code report}, {@code annex} o {@code historia}. */
+    public static final String FILTER_CATEGORY = "category";
+
+    public static final String CATEGORY_REPORT = "report";
+    public static final String CATEGORY_ANNEX = "annex";
+    public static final String CATEGORY_HISTORIA = "historia";
+
+    private static final Map<String, Set<String>> FILTERS = Map.of(
+            PATIENT, Set.of(FILTER_PATIENT),
+            DIAGNOSTIC_REPORT, Set.of(FILTER_PATIENT, FILTER_REPORT, FILTER_CATEGORY));
+
+    private SubscriptionTopics() {
+    }
+
+    public static boolean isKnown(String topic) {
+        return topic != null && FILTERS.containsKey(topic);
+    }
+
+    /**
+     * Filtros válidos del topic (vacío si el topic no existe).
+     */
+    public static Set<String> filters(String topic) {
+        return topic == null ? Set.of() : FILTERS.getOrDefault(topic, Set.of());
+    }
+}
@@ -0,0 +1,68 @@
+package com.serverfhir.subscription;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canal WebSocket de las Subscriptions R5 ({@code /fhir-ws}).
+ *
+ * El handshake HTTP no lleva el JWT (los navegadores no pueden mandar headers en un WebSocket):
+ * el cliente pide un token con {@code Subscription/{id}/$get-ws-binding-token}, que sí está
+ * autenticado, y al conectarse manda {@code bind-with-token <token>}. Cada token sirve una vez y
+ * vence a los {@code fhir.subscription.binding-token-ttl-seconds}.
+ */
+@Component
+public class SubscriptionWebSocketHandler extends TextWebSocketHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(SubscriptionWebSocketHandler.class);
+    private static final String BIND = "bind-with-token";
+
+    private final SubscriptionRegistry registry;
+    private final SubscriptionDispatcher dispatcher;
+    private final Map<String, WebSocketConnection> connections = new ConcurrentHashMap<>();
+
+    public SubscriptionWebSocketHandler(SubscriptionRegistry registry, SubscriptionDispatcher dispatcher) {
+        this.registry = registry;
+        this.dispatcher = dispatcher;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        connections.put(session.getId(), dispatcher.open(session));
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws IOException {
+        WebSocketConnection connection = connections.get(session.getId());
+        String payload = message.getPayload().trim();
+        if (connection == null || !payload.startsWith(BIND)) {
+            session.close(CloseStatus.NOT_ACCEPTABLE.withReason("Se espera bind-with-token <token>"));
+            return;
+        }
+        ActiveSubscription subscription = registry.redeem(payload.substring(BIND.length()).trim());
+        if (subscription == null) {
+            logger.debug("Token de binding inválido o vencido en la conexión {}", session.getId());
+            session.close(CloseStatus.POLICY_VIOLATION.withReason("Token inválido o vencido"));
+            return;
+        }
+        dispatcher.bind(connection, subscription);
+        logger.debug("Conexión {} ligada a Subscription/{}", session.getId(), subscription.id());
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        WebSocketConnection connection = connections.remove(session.getId());
+        if (connection != null) {
+            dispatcher.closed(connection);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.serverfhir.subscription;
+
+import io.micrometer.core.instrument.Counter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Conexión WebSocket de un cliente con su cola de salida acotada.
+ *
+ * El dispatcher solo encola (nunca escribe en el socket). Un único envío por conexión a la vez
+ * vacía la cola en un virtual thread, así un cliente lento no frena a los demás ni al dispatcher.
+ * Si la cola está llena se descarta la notificación más vieja: el cliente ve el hueco en
+ * {@code eventNumber} y puede ponerse al día con {@code _history?_since=}.
+ */
+final class WebSocketConnection {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketConnection.class);
+
+    private final WebSocketSession session;
+    private final BlockingQueue<String> queue;
+    private final Executor sender;
+    private final Counter sent;
+    private final Counter dropped;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private volatile ActiveSubscription subscription;
+
+    WebSocketConnection(WebSocketSession session, int capacity, Executor sender, Counter sent, Counter dropped) {
+        this.session = session;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.sender = sender;
+        this.sent = sent;
+        this.dropped = dropped;
+    }
+
+    String id() {
+        return session.getId();
+    }
+
+    ActiveSubscription subscription() {
+        return subscription;
+    }
+
+    void bind(ActiveSubscription subscription) {
+        this.subscription = subscription;
+    }
+
+    boolean isOpen() {
+        return session.isOpen();
+    }
+
+    /**
+     * Encola un mensaje ya serializado; false si hubo que descartar uno para hacerle lugar.
+     */
+    boolean offer(String message) {
+        boolean complete = true;
+        while (!queue.offer(message)) {
+            if (queue.poll() != null) {
+                dropped.increment();
+                complete = false;
+            }
+        }
+        scheduleDrain();
+        return complete;
+    }
+
+    void close(CloseStatus status) {
+        queue.clear();
+        try {
+            session.close(status);
+        } catch (IOException e) {
+            logger.debug("Error al cerrar la conexión {}: {}", session.getId(), e.getMessage());
+        }
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            sender.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            String message;
+            while ((message = queue.poll()) != null) {
+                if (!session.isOpen()) {
+                    queue.clear();
+                    return;
+                }
+                session.sendMessage(new TextMessage(message));
+                sent.increment();
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.debug("No se pudo enviar a la conexión {}: {}", session.getId(), e.getMessage());
+            close(CloseStatus.SERVER_ERROR);
+        } finally {
+            draining.set(false);
+            // Lo que llegó entre el último poll y el set(false)
+            if (!queue.isEmpty() && session.isOpen()) {
+                scheduleDrain();
+            }
+        }
+    }
+}
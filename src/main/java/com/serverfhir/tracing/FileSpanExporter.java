@@ -0,0 +1,104 @@
+package com.serverfhir.tracing;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Escribe los spans en un archivo NDJSON (un span por línea) para analizarlos offline.
+ *
+ * La escritura la hace un hilo propio: el request solo encola el span, y si la cola
+ * está llena el span se descarta (se cuenta en {@link #getDropped()}) en lugar de
+ * frenar al request.
+ */
+public class FileSpanExporter implements SpanExporter, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileSpanExporter.class);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final BlockingQueue<SpanRecord> queue;
+    private final Path path;
+    private final Thread writerThread;
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean running = true;
+
+    public FileSpanExporter(Path path, int queueCapacity) {
+        this.path = path;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.writerThread = new Thread(this::writeLoop, "span-file-exporter");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    @Override
+    public void export(SpanRecord span) {
+        if (!queue.offer(span)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    private void writeLoop() {
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+        } catch (IOException e) {
+            logger.error("No se pudo crear el directorio de trazas {}: {}", path, e.getMessage());
+        }
+
+        List<SpanRecord> batch = new ArrayList<>(256);
+        while (running || !queue.isEmpty()) {
+            try {
+                SpanRecord first = queue.poll(500, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, 255);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<SpanRecord> batch) {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (SpanRecord span : batch) {
+                writer.write(objectMapper.writeValueAsString(span));
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            dropped.addAndGet(batch.size());
+            logger.warn("No se pudieron escribir {} spans en {}: {}", batch.size(), path, e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        writerThread.join(2000);
+    }
+}
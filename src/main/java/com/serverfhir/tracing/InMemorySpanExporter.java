@@ -0,0 +1,40 @@
+package com.serverfhir.tracing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Guarda los últimos N spans en un buffer circular para consultarlos desde
+ * el endpoint de actuator {@code /actuator/spans}.
+ */
+public class InMemorySpanExporter implements SpanExporter {
+
+    private final SpanRecord[] buffer;
+    private long written;
+
+    public InMemorySpanExporter(int capacity) {
+        this.buffer = new SpanRecord[Math.max(1, capacity)];
+    }
+
+    @Override
+    public synchronized void export(SpanRecord span) {
+        buffer[(int) (written % buffer.length)] = span;
+        written++;
+    }
+
+    /**
+     * Devuelve los spans guardados, del más viejo al más nuevo. Si se indica traceId,
+     * solo los de esa traza.
+     */
+    public synchronized List<SpanRecord> snapshot(String traceId) {
+        int size = (int) Math.min(written, buffer.length);
+        List<SpanRecord> result = new ArrayList<>(size);
+        for (long i = written - size; i < written; i++) {
+            SpanRecord span = buffer[(int) (i % buffer.length)];
+            if (traceId == null || traceId.equals(span.traceId())) {
+                result.add(span);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,9 @@
+package com.serverfhir.tracing;
+
+/**
+ * Destino de los spans terminados. Las implementaciones no deben bloquear al hilo del request.
+ */
+public interface SpanExporter {
+
+    void export(SpanRecord span);
+}
@@ -0,0 +1,23 @@
+package com.serverfhir.tracing;
+
+import java.util.Map;
+
+/**
+ * Span terminado, listo para exportar.
+ *
+ * @param kind          "server" para el request FHIR entrante, "client" para las llamadas a TF_Back
+ * @param startEpochMicros inicio del span en microsegundos desde epoch
+ * @param durationMicros   duración del span en microsegundos
+ * @param status        código HTTP de la respuesta, o -1 si la llamada falló sin respuesta
+ */
+public record SpanRecord(
+        String traceId,
+        String spanId,
+        String parentSpanId,
+        String name,
+        String kind,
+        long startEpochMicros,
+        long durationMicros,
+        int status,
+        Map<String, String> attributes) {
+}
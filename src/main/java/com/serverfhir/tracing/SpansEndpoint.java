@@ -0,0 +1,33 @@
+package com.serverfhir.tracing;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Endpoint de actuator {@code /actuator/spans} con los últimos spans guardados por el
+ * exportador en memoria. Admite {@code ?traceId=...} para ver una sola traza.
+ */
+@Component
+@Endpoint(id = "spans")
+public class SpansEndpoint {
+
+    private final Tracer tracer;
+
+    public SpansEndpoint(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    @ReadOperation
+    public Map<String, Object> spans(@Nullable String traceId) {
+        InMemorySpanExporter memoryExporter = tracer.getMemoryExporter();
+        List<SpanRecord> spans = memoryExporter != null ? memoryExporter.snapshot(traceId) : List.of();
+        return Map.of(
+                "spans", spans,
+                "droppedFileSpans", tracer.getDroppedSpans());
+    }
+}
@@ -0,0 +1,138 @@
+package com.serverfhir.tracing;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Contexto de traza W3C (traceparent) del request en curso.
+ *
+ * Formato: {@code 00-<trace-id 32 hex>-<parent-id 16 hex>-<flags 2 hex>}.
+ * Ver https://www.w3.org/TR/trace-context/
+ */
+public final class TraceContext {
+
+    public static final String TRACEPARENT_HEADER = "traceparent";
+    public static final String TRACESTATE_HEADER = "tracestate";
+
+    private static final ThreadLocal<TraceContext> CURRENT = new ThreadLocal<>();
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final String traceId;
+    private final String spanId;
+    private final String parentSpanId;
+    private final boolean sampled;
+    private final String traceState;
+
+    private TraceContext(String traceId, String spanId, String parentSpanId, boolean sampled, String traceState) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId;
+        this.sampled = sampled;
+        this.traceState = traceState;
+    }
+
+    /**
+     * Inicia una traza nueva (no hay traceparent entrante).
+     */
+    public static TraceContext newRoot(boolean sampled) {
+        return new TraceContext(randomHex(16), randomHex(8), null, sampled, null);
+    }
+
+    /**
+     * Continúa la traza indicada por un header traceparent entrante. Devuelve null si
+     * el header no es válido, en cuyo caso el llamador debe iniciar una traza nueva.
+     */
+    public static TraceContext fromTraceparent(String traceparent, String traceState) {
+        if (traceparent == null) {
+            return null;
+        }
+        String value = traceparent.trim();
+        if (value.length() < 55 || value.charAt(2) != '-' || value.charAt(35) != '-' || value.charAt(52) != '-') {
+            return null;
+        }
+        String version = value.substring(0, 2);
+        String traceId = value.substring(3, 35);
+        String parentId = value.substring(36, 52);
+        String flags = value.substring(53, 55);
+        if ("ff".equals(version) || !isHex(version) || !isHex(traceId) || !isHex(parentId) || !isHex(flags)
+                || isAllZeros(traceId) || isAllZeros(parentId)) {
+            return null;
+        }
+        boolean sampled = (Integer.parseInt(flags, 16) & 0x01) == 1;
+        return new TraceContext(traceId, randomHex(8), parentId, sampled, traceState);
+    }
+
+    /**
+     * Crea un span hijo de este contexto (por ejemplo, para una llamada saliente a TF_Back).
+     */
+    public TraceContext newChild() {
+        return new TraceContext(traceId, randomHex(8), spanId, sampled, traceState);
+    }
+
+    public String toTraceparent() {
+        return "00-" + traceId + "-" + spanId + (sampled ? "-01" : "-00");
+    }
+
+    public static TraceContext current() {
+        return CURRENT.get();
+    }
+
+    public static void setCurrent(TraceContext context) {
+        if (context == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(context);
+        }
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public String getSpanId() {
+        return spanId;
+    }
+
+    public String getParentSpanId() {
+        return parentSpanId;
+    }
+
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    public String getTraceState() {
+        return traceState;
+    }
+
+    private static String randomHex(int bytes) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        char[] out = new char[bytes * 2];
+        do {
+            for (int i = 0; i < bytes; i++) {
+                int b = random.nextInt(256);
+                out[i * 2] = HEX[b >>> 4];
+                out[i * 2 + 1] = HEX[b & 0x0f];
+            }
+        } while (isAllZeros(new String(out)));
+        return new String(out);
+    }
+
+    private static boolean isHex(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAllZeros(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) != '0') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
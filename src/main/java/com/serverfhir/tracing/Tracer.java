@@ -0,0 +1,157 @@
+package com.serverfhir.tracing;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Punto central del tracing: decide el muestreo de las trazas nuevas y envía los
+ * spans terminados a los exportadores configurados.
+ *
+ * Exportadores ({@code fhir.tracing.exporter}): {@code memory} (últimos spans en
+ * {@code /actuator/spans}), {@code file} (NDJSON en {@code fhir.tracing.file.path}),
+ * {@code memory,file} o {@code none}.
+ */
+@Component
+public class Tracer {
+
+    private static final Logger logger = LoggerFactory.getLogger(Tracer.class);
+
+    @Value("${fhir.tracing.enabled:true}")
+    private boolean enabled;
+
+    @Value("${fhir.tracing.sample-ratio:1.0}")
+    private double sampleRatio;
+
+    @Value("${fhir.tracing.exporter:memory}")
+    private String exporterNames;
+
+    @Value("${fhir.tracing.memory.capacity:2048}")
+    private int memoryCapacity;
+
+    @Value("${fhir.tracing.file.path:traces/spans.ndjson}")
+    private String filePath;
+
+    @Value("${fhir.tracing.file.queue-capacity:8192}")
+    private int fileQueueCapacity;
+
+    private final List<SpanExporter> exporters = new ArrayList<>();
+    private InMemorySpanExporter memoryExporter;
+    private FileSpanExporter fileExporter;
+
+    @PostConstruct
+    void initExporters() {
+        for (String name : exporterNames.toLowerCase(Locale.ROOT).split(",")) {
+            switch (name.trim()) {
+                case "memory" -> {
+                    memoryExporter = new InMemorySpanExporter(memoryCapacity);
+                    exporters.add(memoryExporter);
+                }
+                case "file" -> {
+                    fileExporter = new FileSpanExporter(Path.of(filePath), fileQueueCapacity);
+                    exporters.add(fileExporter);
+                }
+                case "none", "" -> {
+                }
+                default -> logger.warn("Exportador de trazas desconocido: {}", name);
+            }
+        }
+        logger.info("Tracing {} - exportadores: {}, muestreo: {}", enabled ? "activo" : "inactivo", exporterNames, sampleRatio);
+    }
+
+    @PreDestroy
+    void closeExporters() throws InterruptedException {
+        if (fileExporter != null) {
+            fileExporter.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Inicia una traza raíz aplicando la tasa de muestreo configurada.
+     */
+    public TraceContext newRootContext() {
+        boolean sampled = sampleRatio >= 1.0 || ThreadLocalRandom.current().nextDouble() < sampleRatio;
+        return TraceContext.newRoot(sampled);
+    }
+
+    /**
+     * Registra un span terminado. Los spans de trazas no muestreadas no se exportan,
+     * pero el contexto se sigue propagando a TF_Back igual.
+     */
+    public void finishSpan(TraceContext context, String name, String kind, long startEpochMillis,
+                           long durationNanos, int status, Map<String, String> attributes) {
+        if (!enabled || !context.isSampled() || exporters.isEmpty()) {
+            return;
+        }
+        SpanRecord span = new SpanRecord(
+                context.getTraceId(),
+                context.getSpanId(),
+                context.getParentSpanId(),
+                name,
+                kind,
+                TimeUnit.MILLISECONDS.toMicros(startEpochMillis),
+                TimeUnit.NANOSECONDS.toMicros(durationNanos),
+                status,
+                attributes);
+        for (SpanExporter exporter : exporters) {
+            exporter.export(span);
+        }
+    }
+
+    public InMemorySpanExporter getMemoryExporter() {
+        return memoryExporter;
+    }
+
+    public long getDroppedSpans() {
+        return fileExporter != null ? fileExporter.getDropped() : 0;
+    }
+
+    /**
+     * Normaliza una ruta para usarla como nombre de span, reemplazando los segmentos que
+     * parecen identificadores por {@code {id}} (por ejemplo {@code /api/patient/{id}}).
+     * Así los spans de un mismo endpoint se agrupan al analizarlos.
+     */
+    public static String normalizeRoute(String path) {
+        if (path == null || path.isEmpty()) {
+            return "/";
+        }
+        StringBuilder sb = new StringBuilder(path.length());
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            sb.append('/').append(looksLikeId(segment) ? "{id}" : segment);
+        }
+        return sb.length() == 0 ? "/" : sb.toString();
+    }
+
+    private static boolean looksLikeId(String segment) {
+        if (segment.startsWith("$") || segment.startsWith("_")) {
+            return false;
+        }
+        boolean hasDigit = false;
+        for (int i = 0; i < segment.length(); i++) {
+            if (Character.isDigit(segment.charAt(i))) {
+                hasDigit = true;
+                break;
+            }
+        }
+        // Números, UUIDs y hash_id alfanuméricos largos
+        return hasDigit || segment.length() >= 20;
+    }
+}
@@ -0,0 +1,75 @@
+package com.serverfhir.util;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cierre de los requests FHIR procesados en modo asincrónico.
+ *
+ * Cuando el servlet libera el hilo del contenedor, los filtros vuelven de la cadena antes de
+ * que exista la respuesta. Lo que un filtro hace "al terminar" (métricas, span del servidor,
+ * copiar la respuesta bufferizada) se registra acá y lo ejecuta el hilo que procesó la
+ * operación (también cuando venció el plazo), siempre antes de completar el AsyncContext.
+ */
+public final class AsyncCompletion {
+
+    private static final String ATTRIBUTE = AsyncCompletion.class.getName();
+
+    private final List<Runnable> tasks = new ArrayList<>();
+    private boolean finished;
+
+    private AsyncCompletion() {
+    }
+
+    /**
+     * Lo llama el servlet al pasar el request a modo asincrónico.
+     */
+    public static AsyncCompletion start(HttpServletRequest request) {
+        AsyncCompletion completion = new AsyncCompletion();
+        request.setAttribute(ATTRIBUTE, completion);
+        return completion;
+    }
+
+    /**
+     * Si el request quedó en modo asincrónico, difiere {@code task} hasta que termine y devuelve
+     * true; si no, devuelve false y el filtro debe ejecutarla en el momento.
+     */
+    public static boolean deferIfAsync(HttpServletRequest request, Runnable task) {
+        if (!request.isAsyncStarted()) {
+            return false;
+        }
+        Object completion = request.getAttribute(ATTRIBUTE);
+        if (!(completion instanceof AsyncCompletion asyncCompletion)) {
+            return false;
+        }
+        asyncCompletion.register(task);
+        return true;
+    }
+
+    private void register(Runnable task) {
+        synchronized (this) {
+            if (!finished) {
+                tasks.add(task);
+                return;
+            }
+        }
+        // El request ya terminó mientras el filtro volvía de la cadena
+        task.run();
+    }
+
+    /**
+     * Ejecuta las tareas diferidas en el orden en que se registraron, que es el orden en que
+     * vuelven los filtros (del más interno al más externo).
+     */
+    public void finish() {
+        List<Runnable> pending;
+        synchronized (this) {
+            finished = true;
+            pending = new ArrayList<>(tasks);
+            tasks.clear();
+        }
+        pending.forEach(Runnable::run);
+    }
+}
@@ -26,7 +26,7 @@ public class BackendErrorHandler {
     /**
      * Maneja excepciones HTTP del backend y las convierte en excepciones FHIR apropiadas.
      * 
-     * @param e La excepción HTTP del RestTemplate
+     * @param e La excepción HTTP de BackendClient
      * @throws BaseServerResponseException La excepción FHIR apropiada con el mensaje del backend
      */
     public static void handleHttpException(HttpStatusCodeException e) throws BaseServerResponseException {
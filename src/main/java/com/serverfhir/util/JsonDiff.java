@@ -0,0 +1,88 @@
+package com.serverfhir.util;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Diferencia estructural entre dos JSON ya parseados (Map / List / escalares, como los deja
+ * Jackson). Solo informa las hojas que cambian: un objeto anidado con un campo distinto produce
+ * un cambio en ese campo, no en el objeto entero.
+ *
+ * Las rutas usan {@code .} para las claves y {@code [i]} para los índices
+ * ({@code examen_fisico.fuerza[2].valor}). Las listas se comparan por posición.
+ */
+public final class JsonDiff {
+
+    public static final String INSERT = "insert";
+    public static final String DELETE = "delete";
+    public static final String REPLACE = "replace";
+
+    /**
+     * Un cambio de {@code from} a {@code to}; en insert {@code previous} es null y en delete
+     * {@code value} es null.
+     */
+    public record Change(String type, String path, Object previous, Object value) {
+    }
+
+    private JsonDiff() {
+    }
+
+    public static List<Change> diff(Map<String, Object> from, Map<String, Object> to) {
+        List<Change> changes = new ArrayList<>();
+        diffMaps("", from, to, changes);
+        return changes;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void diffValues(String path, Object from, Object to, List<Change> changes) {
+        if (from == null && to == null) {
+            return;
+        }
+        if (from == null) {
+            changes.add(new Change(INSERT, path, null, to));
+        } else if (to == null) {
+            changes.add(new Change(DELETE, path, from, null));
+        } else if (from instanceof Map<?, ?> a && to instanceof Map<?, ?> b) {
+            diffMaps(path, (Map<String, Object>) a, (Map<String, Object>) b, changes);
+        } else if (from instanceof List<?> a && to instanceof List<?> b) {
+            diffLists(path, a, b, changes);
+        } else if (!sameScalar(from, to)) {
+            changes.add(new Change(REPLACE, path, from, to));
+        }
+    }
+
+    private static void diffMaps(String path, Map<String, Object> from, Map<String, Object> to, List<Change> changes) {
+        Set<String> keys = new LinkedHashSet<>(from.keySet());
+        keys.addAll(to.keySet());
+        for (String key : keys) {
+            diffValues(path.isEmpty() ? key : path + "." + key, from.get(key), to.get(key), changes);
+        }
+    }
+
+    private static void diffLists(String path, List<?> from, List<?> to, List<Change> changes) {
+        int size = Math.max(from.size(), to.size());
+        for (int i = 0; i < size; i++) {
+            diffValues(path + "[" + i + "]", i < from.size() ? from.get(i) : null,
+                    i < to.size() ? to.get(i) : null, changes);
+        }
+    }
+
+    /**
+     * {@code 1} y {@code 1.0} son el mismo número aunque Jackson los parsee a tipos distintos.
+     */
+    private static boolean sameScalar(Object from, Object to) {
+        if (from instanceof Number a && to instanceof Number b) {
+            try {
+                return new BigDecimal(a.toString()).compareTo(new BigDecimal(b.toString())) == 0;
+            } catch (NumberFormatException e) {
+                return a.equals(b);
+            }
+        }
+        return Objects.equals(from, to);
+    }
+}
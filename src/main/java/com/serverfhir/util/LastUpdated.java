@@ -0,0 +1,108 @@
+package com.serverfhir.util;
+
+import ca.uhn.fhir.rest.param.DateRangeParam;
+import org.hl7.fhir.r5.model.Resource;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Fechas de cambio de TF_Back ({@code fecha_modificacion}, {@code fecha_creacion},
+ * {@code effective_from}) como {@code meta.lastUpdated} de FHIR, y los filtros {@code _lastUpdated}
+ * y {@code _since} sobre ellas.
+ */
+public final class LastUpdated {
+
+    private LastUpdated() {
+    }
+
+    /**
+     * Fecha de TF_Back como instante: ISO con offset, ISO sin offset (se toma como UTC), fecha
+     * sola, epoch en milisegundos o {@link Date}. Null si no se puede interpretar.
+     */
+    public static Instant parse(Object value) {
+        if (value instanceof Number number) {
+            return Instant.ofEpochMilli(number.longValue());
+        }
+        if (value instanceof Date date) {
+            return date.toInstant();
+        }
+        if (!(value instanceof String text) || text.isBlank()) {
+            return null;
+        }
+        try {
+            return OffsetDateTime.parse(text).toInstant();
+        } catch (RuntimeException e) {
+            try {
+                return text.length() == 10
+                        ? LocalDate.parse(text).atStartOfDay().toInstant(ZoneOffset.UTC)
+                        : LocalDateTime.parse(text).toInstant(ZoneOffset.UTC);
+            } catch (RuntimeException ignored) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Pone {@code meta.lastUpdated} si la fecha se pudo interpretar.
+     */
+    public static void stamp(Resource resource, Object value) {
+        Instant instant = parse(value);
+        if (instant != null) {
+            resource.getMeta().setLastUpdated(Date.from(instant));
+        }
+    }
+
+    /**
+     * Límite inferior inclusivo combinando {@code _lastUpdated} (ge/gt/eq) y {@code _since}.
+     */
+    public static Instant lowerBound(DateRangeParam lastUpdated, Date since) {
+        Instant lower = lastUpdated != null && lastUpdated.getLowerBoundAsInstant() != null
+                ? lastUpdated.getLowerBoundAsInstant().toInstant()
+                : null;
+        if (since != null && (lower == null || since.toInstant().isAfter(lower))) {
+            lower = since.toInstant();
+        }
+        return lower;
+    }
+
+    /**
+     * Límite superior inclusivo de {@code _lastUpdated} (le/lt/eq).
+     */
+    public static Instant upperBound(DateRangeParam lastUpdated) {
+        return lastUpdated != null && lastUpdated.getUpperBoundAsInstant() != null
+                ? lastUpdated.getUpperBoundAsInstant().toInstant()
+                : null;
+    }
+
+    /**
+     * True si el recurso cae en el rango. Sin {@code meta.lastUpdated} solo pasa si no hay rango.
+     */
+    public static boolean matches(Resource resource, Instant from, Instant to) {
+        if (from == null && to == null) {
+            return true;
+        }
+        if (!resource.getMeta().hasLastUpdated()) {
+            return false;
+        }
+        Instant updated = resource.getMeta().getLastUpdated().toInstant();
+        return (from == null || !updated.isBefore(from)) && (to == null || !updated.isAfter(to));
+    }
+
+    /**
+     * Filtra por rango y deja los recursos del más reciente al más antiguo (orden de un _history).
+     */
+    public static <T extends Resource> List<T> newestFirst(List<T> resources, Instant from, Instant to) {
+        return resources.stream()
+                .filter(r -> matches(r, from, to))
+                .sorted(Comparator.comparing((T r) -> r.getMeta().getLastUpdated(),
+                        Comparator.nullsLast(Comparator.reverseOrder())))
+                .toList();
+    }
+}
@@ -0,0 +1,113 @@
+package com.serverfhir.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Log de payloads (requests y respuestas de TF_Back) para depuración.
+ *
+ * Solo se loguea en DEBUG y para una muestra de los requests ({@code fhir.logging.payload.sample-rate}).
+ * Antes de formatear se reemplazan los campos con datos del paciente (nombre, DNI, teléfono,
+ * domicilio, tutores, texto clínico, etc.) y el resultado se corta a
+ * {@code fhir.logging.payload.max-chars} caracteres. Si el logger no está en DEBUG no se
+ * hace ningún trabajo.
+ */
+@Component
+public class PayloadLogger {
+
+    private static final String REDACTED = "***";
+
+    // Se compara contra el nombre del campo en minúsculas (contiene)
+    private static final List<String> SENSITIVE_KEYS = List.of(
+            "dni", "nombre", "apellido", "telefono", "email", "mail",
+            "calle", "barrio", "piso", "numero", "direccion", "domicilio",
+            "fecha_nacimiento", "birthdate", "tutores", "vive", "ocupacion",
+            "text", "evaluacion", "antecedentes", "diagnostico", "observ",
+            "password", "contrasena", "token");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Value("${fhir.logging.payload.sample-rate:0.01}")
+    private double sampleRate;
+
+    @Value("${fhir.logging.payload.max-chars:2048}")
+    private int maxChars;
+
+    /**
+     * Loguea el payload en DEBUG, redactado y truncado, si el request cae en la muestra.
+     *
+     * @param payload Map, List, String con JSON o cualquier objeto serializable por Jackson
+     */
+    public void log(Logger logger, String message, Object payload) {
+        if (!logger.isDebugEnabled() || !isSampled()) {
+            return;
+        }
+        logger.debug("{} {}", message, render(payload));
+    }
+
+    private boolean isSampled() {
+        return sampleRate >= 1.0 || (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate);
+    }
+
+    String render(Object payload) {
+        if (payload == null) {
+            return "null";
+        }
+        String rendered;
+        try {
+            JsonNode tree = payload instanceof String json
+                    ? objectMapper.readTree(json)
+                    : objectMapper.valueToTree(payload);
+            rendered = objectMapper.writeValueAsString(redact(tree));
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            // No es JSON: no se puede saber qué campos redactar, se loguea solo el tamaño
+            rendered = "<" + payload.getClass().getSimpleName() + ", " + String.valueOf(payload).length() + " caracteres>";
+        }
+        if (rendered.length() > maxChars) {
+            return rendered.substring(0, maxChars) + "...(" + rendered.length() + " caracteres)";
+        }
+        return rendered;
+    }
+
+    private JsonNode redact(JsonNode node) {
+        if (node instanceof ObjectNode objectNode) {
+            Iterator<Map.Entry<String, JsonNode>> fields = objectNode.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                if (isSensitive(field.getKey())) {
+                    field.setValue(TextNode.valueOf(REDACTED));
+                } else {
+                    redact(field.getValue());
+                }
+            }
+        } else if (node instanceof ArrayNode arrayNode) {
+            for (JsonNode child : arrayNode) {
+                redact(child);
+            }
+        }
+        return node;
+    }
+
+    private static boolean isSensitive(String key) {
+        String lower = key.toLowerCase(Locale.ROOT);
+        for (String sensitive : SENSITIVE_KEYS) {
+            if (lower.contains(sensitive)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,65 @@
+package com.serverfhir.util;
+
+import java.time.Duration;
+
+/**
+ * Plazo máximo del request FHIR en curso, en un ThreadLocal igual que {@link RequestTimings}.
+ * Las llamadas a TF_Back usan el tiempo restante como timeout, y si el plazo venció la
+ * respuesta se devuelve como 504 con OperationOutcome.
+ */
+public final class RequestDeadline {
+
+    private static final ThreadLocal<RequestDeadline> CURRENT = new ThreadLocal<>();
+
+    private final long deadlineNanos;
+    private final Duration budget;
+    private volatile boolean backendBusy;
+
+    private RequestDeadline(Duration budget) {
+        this.budget = budget;
+        this.deadlineNanos = System.nanoTime() + budget.toNanos();
+    }
+
+    public static RequestDeadline of(Duration budget) {
+        return new RequestDeadline(budget);
+    }
+
+    /**
+     * Devuelve el plazo del request actual, o null si el request no tiene plazo.
+     */
+    public static RequestDeadline current() {
+        return CURRENT.get();
+    }
+
+    public static void attach(RequestDeadline deadline) {
+        if (deadline == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(deadline);
+        }
+    }
+
+    public Duration getBudget() {
+        return budget;
+    }
+
+    public long remainingMillis() {
+        return Math.max(0, (deadlineNanos - System.nanoTime()) / 1_000_000);
+    }
+
+    public boolean isExpired() {
+        return System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    /**
+     * Marca que alguna llamada a TF_Back de este request se rechazó por saturación, para
+     * responder 503 aunque el provider haya envuelto la excepción original.
+     */
+    public void markBackendBusy() {
+        backendBusy = true;
+    }
+
+    public boolean isBackendBusy() {
+        return backendBusy;
+    }
+}
@@ -0,0 +1,155 @@
+package com.serverfhir.util;
+
+/**
+ * Acumula, por request, el tiempo consumido en cada fase del procesamiento
+ * (autenticación, llamada al backend, mapeo a FHIR y serialización).
+ *
+ * Se guarda en un ThreadLocal para que filtros, interceptores y el cliente HTTP
+ * del backend puedan registrar tiempos sin pasar objetos de contexto entre capas.
+ * Registrar una fase cuesta una lectura de ThreadLocal y una suma, por lo que
+ * puede usarse en el camino caliente sin impacto medible.
+ */
+public final class RequestTimings {
+
+    public enum Phase {
+        AUTH("auth", "Autenticacion JWT"),
+        BACKEND("backend", "Llamadas a TF_Back"),
+        MAPPING("mapping", "Mapeo a recursos FHIR"),
+        ENCODE("encode", "Serializacion HAPI");
+
+        private final String metricName;
+        private final String description;
+
+        Phase(String metricName, String description) {
+            this.metricName = metricName;
+            this.description = description;
+        }
+
+        public String getMetricName() {
+            return metricName;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    private static final ThreadLocal<RequestTimings> CURRENT = new ThreadLocal<>();
+
+    private final long startNanos;
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private long handlerStartNanos = -1;
+    private long backendNanosAtHandlerStart;
+    private long encodeStartNanos = -1;
+
+    private RequestTimings(long startNanos) {
+        this.startNanos = startNanos;
+    }
+
+    /**
+     * Inicia la medición para el request del hilo actual.
+     */
+    public static RequestTimings start() {
+        RequestTimings timings = new RequestTimings(System.nanoTime());
+        CURRENT.set(timings);
+        return timings;
+    }
+
+    /**
+     * Devuelve las mediciones del request actual, o null si no hay ninguna en curso.
+     */
+    public static RequestTimings current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Asocia al hilo actual mediciones iniciadas en otro hilo (procesamiento asincrónico).
+     */
+    public static void attach(RequestTimings timings) {
+        if (timings == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(timings);
+        }
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Suma tiempo a una fase del request actual. No hace nada si no hay medición en curso
+     * (por ejemplo, llamadas al backend hechas desde tareas en segundo plano).
+     */
+    public static void record(Phase phase, long nanos) {
+        RequestTimings timings = CURRENT.get();
+        if (timings != null) {
+            timings.phaseNanos[phase.ordinal()] += nanos;
+        }
+    }
+
+    /**
+     * Marca el inicio del método del provider.
+     */
+    public void markHandlerStart() {
+        handlerStartNanos = System.nanoTime();
+        backendNanosAtHandlerStart = phaseNanos[Phase.BACKEND.ordinal()];
+    }
+
+    /**
+     * Marca el fin del método del provider. El tiempo de mapeo es el tiempo del handler
+     * menos lo que se pasó esperando al backend. A partir de aquí empieza la serialización.
+     */
+    public void markHandlerEnd() {
+        long now = System.nanoTime();
+        if (handlerStartNanos >= 0) {
+            long handlerNanos = now - handlerStartNanos;
+            long backendNanos = phaseNanos[Phase.BACKEND.ordinal()] - backendNanosAtHandlerStart;
+            phaseNanos[Phase.MAPPING.ordinal()] += Math.max(0, handlerNanos - backendNanos);
+        }
+        encodeStartNanos = now;
+    }
+
+    /**
+     * Marca el fin de la escritura de la respuesta.
+     */
+    public void markEncodeEnd() {
+        if (encodeStartNanos >= 0) {
+            phaseNanos[Phase.ENCODE.ordinal()] += System.nanoTime() - encodeStartNanos;
+            encodeStartNanos = -1;
+        }
+    }
+
+    public long getNanos(Phase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    public long getTotalNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Construye el valor del header Server-Timing, por ejemplo:
+     * {@code auth;dur=0.41, backend;dur=182.3, mapping;dur=1.2, encode;dur=0.9, total;dur=186.1}
+     */
+    public String toServerTimingHeader() {
+        StringBuilder sb = new StringBuilder(128);
+        for (Phase phase : Phase.values()) {
+            appendMetric(sb, phase.getMetricName(), phase.getDescription(), phaseNanos[phase.ordinal()]);
+        }
+        appendMetric(sb, "total", null, getTotalNanos());
+        return sb.toString();
+    }
+
+    private static void appendMetric(StringBuilder sb, String name, String description, long nanos) {
+        if (sb.length() > 0) {
+            sb.append(", ");
+        }
+        sb.append(name);
+        if (description != null) {
+            sb.append(";desc=\"").append(description).append('"');
+        }
+        // Server-Timing espera milisegundos; dos decimales alcanzan para perfilar
+        sb.append(";dur=").append(Math.round(nanos / 10_000.0) / 100.0);
+    }
+}
@@ -0,0 +1,40 @@
+package com.serverfhir.util;
+
+import ca.uhn.fhir.rest.param.TokenOrListParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import org.hl7.fhir.r5.model.IdType;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Parámetro {@code _id=a,b,c} de las búsquedas por lista de ids (Patient, Practitioner, Location,
+ * Organization).
+ */
+public final class SearchIds {
+
+    private SearchIds() {
+    }
+
+    /**
+     * Ids sin repetir y en el orden pedido. Acepta también referencias ({@code Patient/a}); vacío
+     * si no vino el parámetro.
+     */
+    public static Set<String> of(TokenOrListParam param) {
+        Set<String> ids = new LinkedHashSet<>();
+        if (param == null) {
+            return ids;
+        }
+        for (TokenParam token : param.getValuesAsQueryTokens()) {
+            String value = token.getValue();
+            if (value == null || value.isBlank()) {
+                continue;
+            }
+            String id = new IdType(value.trim()).getIdPart();
+            if (id != null && !id.isEmpty()) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+}
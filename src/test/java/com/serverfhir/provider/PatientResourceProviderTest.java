@@ -0,0 +1,53 @@
+package com.serverfhir.provider;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.param.StringParam;
+import com.serverfhir.service.PatientSearchIndex;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PatientResourceProviderTest {
+
+    @Test
+    void nameFuzzyIgnoresTheNameParamHapiBindsFromIt() {
+        // Lo que HAPI deja en nameParam para name:fuzzy=gonzales
+        StringParam bound = new StringParam();
+        bound.setValueAsQueryToken(FhirContext.forR5Cached(), "name", ":fuzzy", "gonzales");
+        assertThat(bound.getValue()).isEqualTo("gonzales");
+
+        PatientSearchIndex index = new PatientSearchIndex(new SimpleMeterRegistry(), 0.3, 50);
+        List<Map<String, Object>> rows = List.of(
+                Map.of("hash_id", "a", "apellido", "González", "nombre", "Juan"),
+                Map.of("hash_id", "b", "apellido", "Pérez", "nombre", "Ana"));
+        for (int i = 0; i < rows.size(); i++) {
+            index.put((String) rows.get(i).get("hash_id"), i, rows.get(i));
+        }
+
+        PatientSearchIndex.Criteria criteria = nameCriteria(PatientResourceProvider.nameText(bound, true));
+        assertThat(index.fuzzy("gonzales", criteria))
+                .extracting(scored -> scored.row().get("hash_id")).containsExactly("a");
+        assertThat(index.fuzzy("gonzales", criteria, rows))
+                .extracting(scored -> scored.row().get("hash_id")).containsExactly("a");
+
+        // Como prefijo, "gonzales" no es prefijo de "gonzalez": sin la corrección no encontraba nada
+        assertThat(index.fuzzy("gonzales", nameCriteria(PatientResourceProvider.nameText(bound, false)))).isEmpty();
+    }
+
+    @Test
+    void nameWithoutFuzzyIsAPrefixCriterion() {
+        PatientSearchIndex.Text text = PatientResourceProvider.nameText(new StringParam("gonz"), false);
+        assertThat(text).isEqualTo(new PatientSearchIndex.Text("gonz", PatientSearchIndex.Match.PREFIX));
+        assertThat(PatientResourceProvider.nameText(new StringParam("González", true), false).match())
+                .isEqualTo(PatientSearchIndex.Match.EXACT);
+        assertThat(PatientResourceProvider.nameText(null, false)).isNull();
+    }
+
+    private static PatientSearchIndex.Criteria nameCriteria(PatientSearchIndex.Text name) {
+        return new PatientSearchIndex.Criteria(name, null, null, null, null, null, null, null, null, null);
+    }
+}
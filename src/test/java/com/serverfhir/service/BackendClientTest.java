@@ -0,0 +1,97 @@
+package com.serverfhir.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BackendClientTest {
+
+    // fanOut no usa la conexión ni el tracer: las llamadas las arma quien la invoca
+    private final BackendClient client = new BackendClient(null, new ObjectMapper(), null, new SimpleMeterRegistry());
+
+    @Test
+    void fanOutLeavesOutNotFoundKeysAndKeepsKeyOrder() {
+        List<String> called = new CopyOnWriteArrayList<>();
+
+        Map<String, String> results = client.fanOut(List.of("a", "b", "c", "b"), 4, key -> {
+            called.add(key);
+            return "b".equals(key) ? failed(HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found",
+                    HttpHeaders.EMPTY, null, null)) : ok(key.toUpperCase());
+        });
+
+        assertThat(results).containsExactly(Map.entry("a", "A"), Map.entry("c", "C"));
+        assertThat(called).containsExactly("a", "b", "c");
+    }
+
+    @Test
+    void fanOutStopsLaunchingAfterTheFirstFailure() {
+        List<String> called = new CopyOnWriteArrayList<>();
+
+        assertThatThrownBy(() -> client.fanOut(List.of("a", "b", "c"), 1, key -> {
+            called.add(key);
+            return "a".equals(key) ? failed(serverError()) : ok(key);
+        })).isInstanceOf(HttpServerErrorException.class);
+
+        assertThat(called).containsExactly("a");
+    }
+
+    @Test
+    void fanOutDoesNotLaunchTheCallWaitingForASlotWhenOneFails() {
+        List<String> called = new CopyOnWriteArrayList<>();
+
+        // "b" espera el único permiso mientras "a" está en curso; "a" falla y "b" no se lanza
+        assertThatThrownBy(() -> client.fanOut(List.of("a", "b"), 1, key -> {
+            called.add(key);
+            return CompletableFuture.supplyAsync(() -> {
+                throw serverError();
+            }, CompletableFuture.delayedExecutor(50, TimeUnit.MILLISECONDS));
+        })).isInstanceOf(HttpServerErrorException.class);
+
+        assertThat(called).containsExactly("a");
+    }
+
+    @Test
+    void fanOutKeepsAtMostConcurrencyCallsInFlight() {
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+
+        Map<Integer, String> results = client.fanOut(List.of(1, 2, 3, 4, 5, 6), 2, key -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            return CompletableFuture.supplyAsync(() -> {
+                active.decrementAndGet();
+                return ResponseEntity.ok("r" + key);
+            }, CompletableFuture.delayedExecutor(20, TimeUnit.MILLISECONDS));
+        });
+
+        assertThat(results).hasSize(6).containsEntry(6, "r6");
+        assertThat(maxActive.get()).isBetween(1, 2);
+    }
+
+    private static CompletableFuture<ResponseEntity<String>> ok(String body) {
+        return CompletableFuture.completedFuture(ResponseEntity.ok(body));
+    }
+
+    private static CompletableFuture<ResponseEntity<String>> failed(RuntimeException error) {
+        return CompletableFuture.failedFuture(error);
+    }
+
+    private static HttpServerErrorException serverError() {
+        return HttpServerErrorException.create(HttpStatus.INTERNAL_SERVER_ERROR, "Internal Server Error",
+                HttpHeaders.EMPTY, null, null);
+    }
+}
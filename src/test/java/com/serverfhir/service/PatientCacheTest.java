@@ -0,0 +1,116 @@
+package com.serverfhir.service;
+
+import ca.uhn.fhir.context.FhirContext;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hl7.fhir.r5.model.Patient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PatientCacheTest {
+
+    private static final String ALICE = "Bearer alice";
+    private static final String BOB = "Bearer bob";
+
+    private PatientCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new PatientCache(FhirContext.forR5Cached(), new ScopeFromToken(), new SimpleMeterRegistry(),
+                true, 1 << 20, 300);
+    }
+
+    @Test
+    void entriesAreSeparatedByUserScope() {
+        cache.put("p1", ALICE, patient("p1", "González"));
+
+        assertThat(cache.getIfPresent("p1", ALICE).getNameFirstRep().getFamily()).isEqualTo("González");
+        assertThat(cache.getIfPresent("p1", BOB)).isNull();
+    }
+
+    @Test
+    void invalidateDropsThePatientForEveryScope() {
+        cache.put("p1", ALICE, patient("p1", "González"));
+        cache.put("p1", BOB, patient("p1", "González"));
+        cache.put("p2", ALICE, patient("p2", "Pérez"));
+
+        cache.invalidate("p1");
+
+        assertThat(cache.getIfPresent("p1", ALICE)).isNull();
+        assertThat(cache.getIfPresent("p1", BOB)).isNull();
+        assertThat(cache.getIfPresent("p2", ALICE)).isNotNull();
+    }
+
+    @Test
+    void getLoadsOncePerScopeAndAgainAfterInvalidate() {
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get("p1", ALICE, () -> patient("p1", "González", loads));
+        cache.get("p1", ALICE, () -> patient("p1", "González", loads));
+        assertThat(loads).hasValue(1);
+
+        cache.get("p1", BOB, () -> patient("p1", "González", loads));
+        assertThat(loads).hasValue(2);
+
+        cache.invalidate("p1");
+        cache.get("p1", ALICE, () -> patient("p1", "Gonzalez", loads));
+        cache.get("p1", BOB, () -> patient("p1", "Gonzalez", loads));
+        assertThat(loads).hasValue(4);
+        assertThat(cache.getIfPresent("p1", BOB).getNameFirstRep().getFamily()).isEqualTo("Gonzalez");
+    }
+
+    @Test
+    void tokenWithoutUserIsNeverCached() {
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.put("p1", null, patient("p1", "González"));
+        cache.get("p1", "Bearer ", () -> patient("p1", "González", loads));
+        cache.get("p1", "Bearer ", () -> patient("p1", "González", loads));
+
+        assertThat(loads).hasValue(2);
+        assertThat(cache.getIfPresent("p1", null)).isNull();
+    }
+
+    @Test
+    void disabledCacheAlwaysLoads() {
+        PatientCache disabled = new PatientCache(FhirContext.forR5Cached(), new ScopeFromToken(),
+                new SimpleMeterRegistry(), false, 1 << 20, 300);
+        AtomicInteger loads = new AtomicInteger();
+
+        disabled.get("p1", ALICE, () -> patient("p1", "González", loads));
+        disabled.get("p1", ALICE, () -> patient("p1", "González", loads));
+
+        assertThat(loads).hasValue(2);
+    }
+
+    private static Patient patient(String id, String family, AtomicInteger loads) {
+        loads.incrementAndGet();
+        return patient(id, family);
+    }
+
+    private static Patient patient(String id, String family) {
+        Patient patient = new Patient();
+        patient.setId(id);
+        patient.addName().setFamily(family);
+        return patient;
+    }
+
+    /**
+     * El usuario es lo que sigue a "Bearer ", sin firmar ni validar el token.
+     */
+    private static class ScopeFromToken extends JwtService {
+
+        @Override
+        public Claims getClaimsFromToken(String token) {
+            if (token == null || token.isEmpty()) {
+                return null;
+            }
+            return Jwts.claims().add("id_usuario", token).build();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.serverfhir.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PatientReplicaTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path dir;
+
+    private PatientSearchIndex searchIndex;
+    private PatientReplica replica;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        snapshot(record("a", 1, row("a", "González", "2024-01-01T10:00:00Z"), null),
+                record("b", 2, row("b", "Pérez", "2024-01-01T10:00:00Z"), null));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (replica != null) {
+            replica.destroy();
+        }
+    }
+
+    @Test
+    void replayStopsAtTruncatedLastLineAndCutsItOff() throws IOException {
+        String good = journalLine(record("a", 1, row("a", "Gómez", "2024-02-01T10:00:00Z"), null));
+        String cut = journalLine(record("c", 3, row("c", "Díaz", "2024-02-01T10:00:00Z"), null));
+        cut = cut.substring(0, cut.length() / 2);
+        Files.writeString(dir.resolve("journal.ndjson"), good + cut, StandardCharsets.UTF_8);
+
+        start();
+
+        assertThat(replica.isServing()).isTrue();
+        assertThat(families()).containsExactlyInAnyOrder("Gómez", "Pérez");
+        assertThat(Files.readString(dir.resolve("journal.ndjson"), StandardCharsets.UTF_8)).isEqualTo(good);
+    }
+
+    @Test
+    void replayStopsAtFirstLineWithWrongCrc() throws IOException {
+        String corrupt = journalLine(record("a", 1, row("a", "Gómez", "2024-02-01T10:00:00Z"), null))
+                .replace("Gómez", "Gomez");
+        String after = journalLine(record("c", 3, row("c", "Díaz", "2024-02-01T10:00:00Z"), null));
+        Files.writeString(dir.resolve("journal.ndjson"), corrupt + after, StandardCharsets.UTF_8);
+
+        start();
+
+        assertThat(families()).containsExactlyInAnyOrder("González", "Pérez");
+        assertThat(Files.size(dir.resolve("journal.ndjson"))).isZero();
+    }
+
+    @Test
+    void recordedDetailSurvivesRestart() throws IOException {
+        start();
+        Map<String, Object> detail = row("a", "González", "2024-01-01T10:00:00Z");
+        detail.put("dni_paciente", "30111222");
+        replica.recordDetail("a", "id:1", detail);
+        replica.destroy();
+
+        // Lo que quedó en el journal se reaplica al volver a arrancar
+        start();
+        assertThat(replica.detail("a", "id:1")).containsEntry("dni_paciente", "30111222");
+    }
+
+    @Test
+    void detailIsOnlyServedToTheUserWhoReadIt() throws IOException {
+        start();
+        replica.recordDetail("a", "id:1", row("a", "González", "2024-01-01T10:00:00Z"));
+
+        assertThat(replica.detail("a", "id:1")).isNotNull();
+        assertThat(replica.detail("a", "id:2")).isNull();
+        assertThat(replica.detail("a", null)).isNull();
+    }
+
+    @Test
+    void detailOfAPatientOutsideTheListingIsNotRecorded() throws IOException {
+        start();
+
+        replica.recordDetail("z", "id:1", row("z", "Díaz", "2024-01-01T10:00:00Z"));
+
+        assertThat(replica.detail("z", "id:1")).isNull();
+        assertThat(families()).containsExactlyInAnyOrder("González", "Pérez");
+        assertThat(Files.size(dir.resolve("journal.ndjson"))).isZero();
+    }
+
+    @Test
+    void detailOlderThanTheListedRowIsNotRecorded() throws IOException {
+        start();
+
+        replica.recordDetail("a", "id:1", row("a", "González", "2023-12-01T10:00:00Z"));
+
+        assertThat(replica.detail("a", "id:1")).isNull();
+        assertThat(Files.size(dir.resolve("journal.ndjson"))).isZero();
+    }
+
+    @Test
+    void fullSyncRemovesPatientsDeletedInTfBackAndTheRemovalSurvivesRestart() throws IOException {
+        // La primera sincronización después de cargar de disco pide el listado completo: "b" ya no está
+        start(new ListingBackend(List.of(row("a", "González", "2024-01-01T10:00:00Z"))));
+
+        assertThat(families()).containsExactly("González");
+        replica.destroy();
+
+        start();
+        assertThat(families()).containsExactly("González");
+    }
+
+    private void start() {
+        // Sin BackendClient la sincronización de arranque falla y se registra; la réplica sirve lo de disco
+        start(null);
+    }
+
+    private void start(BackendClient backendClient) {
+        searchIndex = new PatientSearchIndex(new SimpleMeterRegistry(), 0.3, 50);
+        replica = new PatientReplica(backendClient, objectMapper, searchIndex, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(replica, "enabled", true);
+        ReflectionTestUtils.setField(replica, "dir", dir);
+        ReflectionTestUtils.setField(replica, "serviceToken", "Bearer servicio");
+        ReflectionTestUtils.setField(replica, "syncIntervalSeconds", 3600L);
+        ReflectionTestUtils.setField(replica, "maxStalenessSeconds", 3600L);
+        ReflectionTestUtils.setField(replica, "fullSyncSeconds", 600L);
+        ReflectionTestUtils.setField(replica, "compactAfter", 5000);
+        replica.start();
+        if (backendClient != null) {
+            // sync() es synchronized: vuelve cuando la de arranque ya terminó (o la hace esta)
+            ReflectionTestUtils.invokeMethod(replica, "sync");
+        }
+    }
+
+    private List<Object> families() {
+        PatientSearchIndex.Criteria all = new PatientSearchIndex.Criteria(null, null, null, null, null,
+                null, null, null, null, null);
+        return searchIndex.search(all).stream().map(row -> row.get("apellido")).toList();
+    }
+
+    @SafeVarargs
+    private void snapshot(Map<String, Object>... records) throws IOException {
+        CRC32 crc = new CRC32();
+        StringBuilder content = new StringBuilder();
+        Map<String, Object> header = new LinkedHashMap<>();
+        header.put("version", 2);
+        header.put("watermark", "2024-01-01T10:00:00Z");
+        header.put("count", records.length);
+        appendLine(content, crc, objectMapper.writeValueAsString(header));
+        for (Map<String, Object> record : records) {
+            appendLine(content, crc, objectMapper.writeValueAsString(record));
+        }
+        content.append("{\"crc\":\"").append(Long.toHexString(crc.getValue())).append("\"}\n");
+        Files.writeString(dir.resolve("snapshot.ndjson"), content, StandardCharsets.UTF_8);
+        Files.writeString(dir.resolve("journal.ndjson"), "", StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static void appendLine(StringBuilder content, CRC32 crc, String json) {
+        String line = json + "\n";
+        crc.update(line.getBytes(StandardCharsets.UTF_8));
+        content.append(line);
+    }
+
+    private String journalLine(Map<String, Object> record) throws IOException {
+        String json = objectMapper.writeValueAsString(record);
+        CRC32 crc = new CRC32();
+        crc.update(json.getBytes(StandardCharsets.UTF_8));
+        return String.format("%08x", crc.getValue()) + " " + json + "\n";
+    }
+
+    private static Map<String, Object> record(String hashId, long seq, Map<String, Object> summary,
+                                              Map<String, Map<String, Object>> details) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("hash_id", hashId);
+        record.put("seq", seq);
+        record.put("summary", summary);
+        record.put("details", details);
+        return record;
+    }
+
+    private static Map<String, Object> row(String hashId, String family, String modified) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("hash_id", hashId);
+        row.put("apellido", family);
+        row.put("nombre", "Juan");
+        row.put("fecha_modificacion", modified);
+        return row;
+    }
+
+    /**
+     * TF_Back que devuelve siempre el mismo listado.
+     */
+    private static class ListingBackend extends BackendClient {
+
+        private final List<Map<String, Object>> rows;
+
+        ListingBackend(List<Map<String, Object>> rows) {
+            super(null, new ObjectMapper(), null, new SimpleMeterRegistry());
+            this.rows = rows;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> ResponseEntity<T> exchange(String url, HttpMethod method, HttpEntity<?> entity,
+                                              Class<T> responseType, Object... uriVariables) {
+            return (ResponseEntity<T>) ResponseEntity.ok(rows);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.serverfhir.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.serverfhir.service.PatientSearchIndex.Criteria;
+import com.serverfhir.service.PatientSearchIndex.Match;
+import com.serverfhir.service.PatientSearchIndex.Text;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PatientRosterTest {
+
+    private static final String ALICE = "Bearer alice";
+    private static final String BOB = "Bearer bob";
+
+    private final FakeBackend backend = new FakeBackend();
+    private final PatientSearchIndex searchIndex = new PatientSearchIndex(new SimpleMeterRegistry(), 0.3, 50);
+
+    @Test
+    void firstSearchLoadsTheRosterAndTheNextOnesUseTheIndex() {
+        backend.rosters.put(ALICE, List.of(row("a", "González", "2024-01-01T10:00:00Z"),
+                row("b", "Pérez", "2024-01-01T10:00:00Z")));
+        PatientRoster roster = roster(30, 600);
+
+        assertThat(ids(roster.search(ALICE, byFamily("gonz")))).containsExactly("a");
+        assertThat(ids(roster.search(ALICE, byFamily("per")))).containsExactly("b");
+
+        assertThat(backend.urls).containsExactly("http://tfback/api/patient?includeInactive=true");
+        assertThat(searchIndex.size()).isEqualTo(2);
+    }
+
+    @Test
+    void eachUserOnlySeesTheirOwnRoster() {
+        backend.rosters.put(ALICE, List.of(row("a", "González", "2024-01-01T10:00:00Z")));
+        backend.rosters.put(BOB, List.of(row("b", "Gonzalo", "2024-01-01T10:00:00Z")));
+        PatientRoster roster = roster(30, 600);
+        roster.search(ALICE, byFamily("gonz"));
+        roster.search(BOB, byFamily("gonz"));
+
+        // Los dos están en el índice, pero cada uno sale solo para quien lo tiene en su listado
+        assertThat(ids(roster.search(ALICE, byFamily("gonz")))).containsExactly("a");
+        assertThat(ids(roster.search(BOB, byFamily("gonz")))).containsExactly("b");
+        assertThat(roster.fuzzy(BOB, "gonzalez", byFamily(null)))
+                .extracting(scored -> scored.row().get("hash_id")).containsExactly("b");
+    }
+
+    @Test
+    void refreshAsksOnlyForModifiedPatients() {
+        backend.rosters.put(ALICE, List.of(row("a", "González", "2024-01-01T10:00:00Z")));
+        PatientRoster roster = roster(0, 600);
+        roster.search(ALICE, byFamily("gonz"));
+
+        // TF_Back ignora modifiedSince y manda todo: lo anterior a la marca no cambia nada
+        backend.rosters.put(ALICE, List.of(row("a", "Gómez", "2023-12-01T10:00:00Z"),
+                row("c", "Gonzaga", "2024-02-01T10:00:00Z")));
+        assertThat(ids(roster.search(ALICE, byFamily("gonz")))).containsExactly("a", "c");
+
+        assertThat(backend.urls).containsExactly("http://tfback/api/patient?includeInactive=true",
+                "http://tfback/api/patient?includeInactive=true&modifiedSince=2024-01-01T10:00:00Z");
+    }
+
+    @Test
+    void fullRefreshDropsPatientsNoLongerListed() {
+        backend.rosters.put(ALICE, List.of(row("a", "González", "2024-01-01T10:00:00Z"),
+                row("b", "Gonzaga", "2024-01-01T10:00:00Z")));
+        PatientRoster roster = roster(0, 0);
+        roster.search(ALICE, byFamily("gonz"));
+
+        // Baja física en TF_Back: el incremental no la trae, el listado completo sí
+        backend.rosters.put(ALICE, List.of(row("a", "González", "2024-01-01T10:00:00Z")));
+
+        assertThat(ids(roster.search(ALICE, byFamily("gonz")))).containsExactly("a");
+    }
+
+    @Test
+    void tokenWithoutUserFallsBackToTheLiveRoster() {
+        PatientRoster roster = roster(30, 600);
+
+        assertThat(roster.search("Bearer ", byFamily("gonz"))).isNull();
+        assertThat(backend.urls).isEmpty();
+    }
+
+    private PatientRoster roster(long refreshSeconds, long fullRefreshSeconds) {
+        // Sin token de servicio la réplica queda desactivada
+        PatientReplica replica = new PatientReplica(null, new ObjectMapper(), searchIndex, new SimpleMeterRegistry());
+        PatientRoster roster = new PatientRoster(backend, new ScopeFromToken(), searchIndex, replica,
+                new SimpleMeterRegistry(), refreshSeconds, fullRefreshSeconds, 100);
+        ReflectionTestUtils.setField(roster, "tfBackUrl", "http://tfback");
+        ReflectionTestUtils.setField(roster, "tfBackApiPath", "/api");
+        return roster;
+    }
+
+    private static List<Object> ids(List<Map<String, Object>> rows) {
+        return rows.stream().map(row -> row.get("hash_id")).toList();
+    }
+
+    private static Criteria byFamily(String family) {
+        return new Criteria(null, family != null ? new Text(family, Match.PREFIX) : null, null, null, null,
+                null, null, null, null, null);
+    }
+
+    private static Map<String, Object> row(String hashId, String family, String modified) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("hash_id", hashId);
+        row.put("apellido", family);
+        row.put("nombre", "Juan");
+        row.put("fecha_modificacion", modified);
+        return row;
+    }
+
+    /**
+     * Devuelve el listado registrado para el token de cada llamada.
+     */
+    private static class FakeBackend extends BackendClient {
+
+        private final List<String> urls = new ArrayList<>();
+        private final Map<String, List<Map<String, Object>>> rosters = new HashMap<>();
+
+        FakeBackend() {
+            super(null, new ObjectMapper(), null, new SimpleMeterRegistry());
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> ResponseEntity<T> exchange(String url, HttpMethod method, HttpEntity<?> entity,
+                                              Class<T> responseType, Object... uriVariables) {
+            urls.add(url);
+            String token = entity.getHeaders().getFirst("Authorization");
+            return (ResponseEntity<T>) ResponseEntity.ok(rosters.getOrDefault(token, List.of()));
+        }
+    }
+
+    /**
+     * El usuario es lo que sigue a "Bearer ", sin firmar ni validar el token.
+     */
+    private static class ScopeFromToken extends JwtService {
+
+        @Override
+        public String getUserScope(String authorization) {
+            if (authorization == null || !authorization.startsWith("Bearer ") || authorization.length() == 7) {
+                return null;
+            }
+            return "id:" + authorization.substring(7);
+        }
+    }
+}
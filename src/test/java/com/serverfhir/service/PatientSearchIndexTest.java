@@ -0,0 +1,277 @@
+package com.serverfhir.service;
+
+import com.serverfhir.service.PatientSearchIndex.Criteria;
+import com.serverfhir.service.PatientSearchIndex.Match;
+import com.serverfhir.service.PatientSearchIndex.Text;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PatientSearchIndexTest {
+
+    private static final String DNI = "http://mi-servidor.com/fhir/dni";
+
+    private PatientSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new PatientSearchIndex(new SimpleMeterRegistry(), 0.3, 50);
+        put(1, row("a", "González", "Juan Carlos", "30111222", "1980-05-10", false));
+        put(2, row("b", "Pérez", "Ana", "28999888", "1975-12-31T22:00:00-03:00", false));
+        put(3, row("c", "Fernández Gonzaga", "María", "40123456", "1995-01-01", true));
+    }
+
+    @Test
+    void prefixMatchesTheStartOfAnyWordIgnoringAccentsAndCase() {
+        assertThat(ids(byFamily(new Text("gonz", Match.PREFIX)))).containsExactly("a", "c");
+        assertThat(ids(byFamily(new Text("GONZALEZ", Match.PREFIX)))).containsExactly("a");
+        assertThat(ids(byGiven(new Text("carl", Match.PREFIX)))).containsExactly("a");
+        assertThat(ids(byFamily(new Text("onzal", Match.PREFIX)))).isEmpty();
+    }
+
+    @Test
+    void nameNeedsEveryWordAcrossFamilyAndGiven() {
+        assertThat(ids(byName(new Text("juan gonz", Match.PREFIX)))).containsExactly("a");
+        assertThat(ids(byName(new Text("maria gonz", Match.PREFIX)))).containsExactly("c");
+        assertThat(ids(byName(new Text("ana gonz", Match.PREFIX)))).isEmpty();
+    }
+
+    @Test
+    void exactComparesTheWholeValueAsWritten() {
+        assertThat(ids(byFamily(new Text("González", Match.EXACT)))).containsExactly("a");
+        assertThat(ids(byFamily(new Text("gonzález", Match.EXACT)))).isEmpty();
+        assertThat(ids(byFamily(new Text("González Pérez", Match.EXACT)))).isEmpty();
+        assertThat(ids(byName(new Text("Juan Carlos González", Match.EXACT)))).containsExactly("a");
+    }
+
+    @Test
+    void containsMatchesInsideWordsIgnoringAccents() {
+        assertThat(ids(byFamily(new Text("NÁNDEZ", Match.CONTAINS)))).containsExactly("c");
+        assertThat(ids(byFamily(new Text("onza", Match.CONTAINS)))).containsExactly("a", "c");
+        assertThat(ids(byName(new Text("rez an", Match.CONTAINS)))).isEmpty();
+        assertThat(ids(byName(new Text("ana pe", Match.CONTAINS)))).containsExactly("b");
+    }
+
+    @Test
+    void identifierWithoutSystemSearchesDniAndHashId() {
+        assertThat(ids(byIdentifier(null, "30111222"))).containsExactly("a");
+        assertThat(ids(byIdentifier(null, "b"))).containsExactly("b");
+        assertThat(ids(byIdentifier(DNI, "40123456"))).containsExactly("c");
+        assertThat(ids(byIdentifier(DNI, "b"))).isEmpty();
+        // "|valor" es el hash_id
+        assertThat(ids(byIdentifier("", "a"))).containsExactly("a");
+        assertThat(ids(byIdentifier("", "30111222"))).isEmpty();
+        assertThat(ids(byIdentifier("http://otro/sistema", "30111222"))).isEmpty();
+    }
+
+    @Test
+    void birthRangeIsInclusiveAndUsesTheDateAsSent() {
+        assertThat(ids(byBirth(19800510, 19950101))).containsExactly("a", "c");
+        assertThat(ids(byBirth(19800511, null))).containsExactly("c");
+        // 1975-12-31T22:00:00-03:00 es el 31 en la fecha de TF_Back aunque en UTC ya sea el 1/1
+        assertThat(ids(byBirth(null, 19751231))).containsExactly("b");
+        assertThat(ids(byBirth(19960101, null))).isEmpty();
+    }
+
+    @Test
+    void updatedRangeIsInclusiveOverEveryDateFormat() {
+        put(1, updated(row("a", "González", "Juan Carlos", "30111222", "1980-05-10", false),
+                "2024-01-10T09:00:00-03:00"));
+        put(2, updated(row("b", "Pérez", "Ana", "28999888", "1975-12-31", false), "2024-01-20T12:00:00"));
+        put(3, updated(row("c", "Fernández Gonzaga", "María", "40123456", "1995-01-01", true),
+                Instant.parse("2024-01-31T00:00:00Z").toEpochMilli()));
+
+        assertThat(ids(byUpdated(Instant.parse("2024-01-10T12:00:00Z"), null))).containsExactly("a", "b", "c");
+        assertThat(ids(byUpdated(Instant.parse("2024-01-10T12:00:00.001Z"), null))).containsExactly("b", "c");
+        assertThat(ids(byUpdated(null, Instant.parse("2024-01-20T12:00:00Z")))).containsExactly("a", "b");
+        assertThat(ids(byUpdated(Instant.parse("2024-01-15T00:00:00Z"), Instant.parse("2024-01-25T00:00:00Z"))))
+                .containsExactly("b");
+    }
+
+    @Test
+    void rowsWithoutModificationDateFallOutOfAnUpdatedRange() {
+        assertThat(ids(byUpdated(Instant.EPOCH, null))).isEmpty();
+        assertThat(ids(byUpdated(null, null))).containsExactly("a", "b", "c");
+    }
+
+    @Test
+    void activeFiltersByInactivo() {
+        assertThat(ids(byActive(true))).containsExactly("a", "b");
+        assertThat(ids(byActive(false))).containsExactly("c");
+    }
+
+    @Test
+    void putReplacesThePreviousRowAndItsWords() {
+        put(1, row("a", "Gómez", "Juan Carlos", "30111222", "1980-05-10", false));
+
+        assertThat(ids(byFamily(new Text("gonz", Match.PREFIX)))).containsExactly("c");
+        assertThat(ids(byFamily(new Text("gom", Match.PREFIX)))).containsExactly("a");
+        assertThat(index.size()).isEqualTo(3);
+    }
+
+    @Test
+    void resultsKeepTheListingOrder() {
+        put(0, row("d", "Gonzalo", "Pedro", null, null, false));
+
+        assertThat(ids(byFamily(new Text("gonz", Match.PREFIX)))).containsExactly("d", "a", "c");
+    }
+
+    @Test
+    void staticMatchesAppliesTheSameRules() {
+        Map<String, Object> row = row("x", "Núñez", "Sofía", "33444555", "2001-07-20", false);
+
+        assertThat(PatientSearchIndex.matches(byFamily(new Text("nun", Match.PREFIX)), row)).isTrue();
+        assertThat(PatientSearchIndex.matches(byIdentifier(DNI, "33444555"), row)).isTrue();
+        assertThat(PatientSearchIndex.matches(byBirth(20010721, null), row)).isFalse();
+    }
+
+    @Test
+    void fuzzyRanksByTrigramSimilarityAndDropsUnrelatedNames() {
+        List<Map<String, Object>> rows = fuzzyRows();
+        PatientSearchIndex fuzzy = indexOf(rows, 0.3, 50);
+
+        // gonzalez 0.64, gonzalo 0.55, gonzaga 0.42 contra "gonzales"; pérez no comparte trigramas
+        List<PatientSearchIndex.Scored> hits = fuzzy.fuzzy("gonzales", byActive(null));
+        assertThat(hits).extracting(hit -> hit.row().get("hash_id")).containsExactly("a", "d", "c");
+        assertThat(hits).extracting(PatientSearchIndex.Scored::score)
+                .isSortedAccordingTo((x, y) -> Double.compare(y, x));
+        assertThat(hits.get(0).score()).isGreaterThan(hits.get(1).score());
+    }
+
+    @Test
+    void fuzzyIgnoresAccentsAndCase() {
+        PatientSearchIndex fuzzy = indexOf(fuzzyRows(), 0.3, 50);
+
+        List<PatientSearchIndex.Scored> hits = fuzzy.fuzzy("GONZÁLEZ", byActive(null));
+        assertThat(hits.get(0).row().get("hash_id")).isEqualTo("a");
+        assertThat(hits.get(0).score()).isGreaterThan(0.9);
+    }
+
+    @Test
+    void fuzzyCutsOffAtThresholdAndLimit() {
+        List<Map<String, Object>> rows = fuzzyRows();
+
+        assertThat(indexOf(rows, 0.6, 50).fuzzy("gonzales", byActive(null)))
+                .extracting(hit -> hit.row().get("hash_id")).containsExactly("a");
+        assertThat(indexOf(rows, 0.3, 2).fuzzy("gonzales", byActive(null)))
+                .extracting(hit -> hit.row().get("hash_id")).containsExactly("a", "d");
+    }
+
+    @Test
+    void fuzzyAppliesTheOtherCriteria() {
+        PatientSearchIndex fuzzy = indexOf(fuzzyRows(), 0.3, 50);
+
+        assertThat(fuzzy.fuzzy("gonzales", byActive(true)))
+                .extracting(hit -> hit.row().get("hash_id")).containsExactly("a", "d");
+        assertThat(fuzzy.fuzzy("gonzales", byBirth(19900101, null)))
+                .extracting(hit -> hit.row().get("hash_id")).containsExactly("c");
+    }
+
+    @Test
+    void fuzzyOverLiveRowsMatchesTheIndex() {
+        List<Map<String, Object>> rows = fuzzyRows();
+
+        for (int limit : new int[] {2, 50}) {
+            PatientSearchIndex fuzzy = indexOf(rows, 0.3, limit);
+            assertThat(fuzzy.fuzzy("gonzales", byActive(null), rows))
+                    .containsExactlyElementsOf(fuzzy.fuzzy("gonzales", byActive(null)));
+        }
+    }
+
+    @Test
+    void withinKeepsOnlyTheGivenPatients() {
+        assertThat(index.searchWithin(byFamily(new Text("gonz", Match.PREFIX)), Set.of("c", "b")))
+                .extracting(row -> row.get("hash_id")).containsExactly("c");
+        assertThat(index.searchWithin(byActive(null), Set.of("b", "x")))
+                .extracting(row -> row.get("hash_id")).containsExactly("b");
+        assertThat(index.fuzzyWithin("gonzales", byActive(null), Set.of("c")))
+                .extracting(hit -> hit.row().get("hash_id")).containsExactly("c");
+    }
+
+    @Test
+    void removeDropsTheRowAndItsWords() {
+        index.remove("a");
+
+        assertThat(ids(byFamily(new Text("gonz", Match.PREFIX)))).containsExactly("c");
+        assertThat(index.fuzzy("gonzalez", byActive(null)))
+                .extracting(hit -> hit.row().get("hash_id")).doesNotContain("a");
+        assertThat(index.size()).isEqualTo(2);
+    }
+
+    private static List<Map<String, Object>> fuzzyRows() {
+        return List.of(
+                row("a", "González", "Juan Carlos", "30111222", "1980-05-10", false),
+                row("b", "Pérez", "Ana", "28999888", "1975-12-31", false),
+                row("c", "Fernández Gonzaga", "María", "40123456", "1995-01-01", true),
+                row("d", "Gonzalo", "Pedro", null, null, false));
+    }
+
+    private static PatientSearchIndex indexOf(List<Map<String, Object>> rows, double threshold, int limit) {
+        PatientSearchIndex fuzzy = new PatientSearchIndex(new SimpleMeterRegistry(), threshold, limit);
+        for (int i = 0; i < rows.size(); i++) {
+            fuzzy.put((String) rows.get(i).get("hash_id"), i, rows.get(i));
+        }
+        return fuzzy;
+    }
+
+    private void put(long seq, Map<String, Object> row) {
+        index.put((String) row.get("hash_id"), seq, row);
+    }
+
+    private List<Object> ids(Criteria criteria) {
+        return index.search(criteria).stream().map(row -> row.get("hash_id")).toList();
+    }
+
+    private static Map<String, Object> row(String hashId, String family, String given, String dni, String birth,
+                                           boolean inactive) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("hash_id", hashId);
+        row.put("apellido", family);
+        row.put("nombre", given);
+        row.put("dni_paciente", dni);
+        row.put("fecha_nacimiento", birth);
+        row.put("inactivo", inactive);
+        return row;
+    }
+
+    private static Map<String, Object> updated(Map<String, Object> row, Object modified) {
+        row.put("fecha_modificacion", modified);
+        return row;
+    }
+
+    private static Criteria byName(Text name) {
+        return new Criteria(name, null, null, null, null, null, null, null, null, null);
+    }
+
+    private static Criteria byFamily(Text family) {
+        return new Criteria(null, family, null, null, null, null, null, null, null, null);
+    }
+
+    private static Criteria byGiven(Text given) {
+        return new Criteria(null, null, given, null, null, null, null, null, null, null);
+    }
+
+    private static Criteria byIdentifier(String system, String value) {
+        return new Criteria(null, null, null, system, value, null, null, null, null, null);
+    }
+
+    private static Criteria byBirth(Integer from, Integer to) {
+        return new Criteria(null, null, null, null, null, from, to, null, null, null);
+    }
+
+    private static Criteria byUpdated(Instant from, Instant to) {
+        return new Criteria(null, null, null, null, null, null, null, from, to, null);
+    }
+
+    private static Criteria byActive(Boolean active) {
+        return new Criteria(null, null, null, null, null, null, null, null, null, active);
+    }
+}
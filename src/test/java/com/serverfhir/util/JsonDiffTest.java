@@ -0,0 +1,88 @@
+package com.serverfhir.util;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.serverfhir.util.JsonDiff.Change;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JsonDiffTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    void identicalDocumentsHaveNoChanges() throws IOException {
+        String json = "{\"a\":1,\"b\":{\"c\":[1,2,{\"d\":\"x\"}]}}";
+
+        assertThat(JsonDiff.diff(json(json), json(json))).isEmpty();
+    }
+
+    @Test
+    void nestedMapsReportOnlyTheChangedLeaves() throws IOException {
+        List<Change> changes = JsonDiff.diff(
+                json("{\"examen_fisico\":{\"peso\":70,\"talla\":175,\"obs\":\"ok\"},\"motivo\":\"control\"}"),
+                json("{\"examen_fisico\":{\"peso\":72,\"talla\":175,\"pulso\":80},\"motivo\":\"control\"}"));
+
+        assertThat(changes).containsExactly(
+                new Change(JsonDiff.REPLACE, "examen_fisico.peso", 70, 72),
+                new Change(JsonDiff.DELETE, "examen_fisico.obs", "ok", null),
+                new Change(JsonDiff.INSERT, "examen_fisico.pulso", null, 80));
+    }
+
+    @Test
+    void listsAreComparedByPosition() throws IOException {
+        List<Change> changes = JsonDiff.diff(
+                json("{\"fuerza\":[{\"valor\":3},{\"valor\":4}],\"tags\":[\"a\",\"b\",\"c\"]}"),
+                json("{\"fuerza\":[{\"valor\":3},{\"valor\":5},{\"valor\":1}],\"tags\":[\"b\",\"c\"]}"));
+
+        assertThat(changes).containsExactly(
+                new Change(JsonDiff.REPLACE, "fuerza[1].valor", 4, 5),
+                new Change(JsonDiff.INSERT, "fuerza[2]", null, Map.of("valor", 1)),
+                new Change(JsonDiff.REPLACE, "tags[0]", "a", "b"),
+                new Change(JsonDiff.REPLACE, "tags[1]", "b", "c"),
+                new Change(JsonDiff.DELETE, "tags[2]", "c", null));
+    }
+
+    @Test
+    void numbersCompareByValueNotByType() throws IOException {
+        Map<String, Object> from = json("{\"dosis\":1,\"peso\":70.50,\"volumen\":1000}");
+        Map<String, Object> to = json("{\"dosis\":1.0,\"peso\":70.5,\"volumen\":1e3}");
+        assertThat(from.get("dosis")).isInstanceOf(Integer.class);
+        assertThat(to.get("dosis")).isInstanceOf(Double.class);
+
+        assertThat(JsonDiff.diff(from, to)).isEmpty();
+        assertThat(JsonDiff.diff(json("{\"dosis\":1}"), json("{\"dosis\":1.5}")))
+                .containsExactly(new Change(JsonDiff.REPLACE, "dosis", 1, 1.5));
+    }
+
+    @Test
+    void numberAndStringAreDifferent() throws IOException {
+        assertThat(JsonDiff.diff(json("{\"dni\":30111222}"), json("{\"dni\":\"30111222\"}")))
+                .containsExactly(new Change(JsonDiff.REPLACE, "dni", 30111222, "30111222"));
+    }
+
+    @Test
+    void typeChangeReplacesTheWholeValue() throws IOException {
+        List<Change> changes = JsonDiff.diff(json("{\"a\":{\"b\":1},\"c\":[1]}"), json("{\"a\":[1],\"c\":\"x\"}"));
+
+        assertThat(changes).containsExactly(
+                new Change(JsonDiff.REPLACE, "a", Map.of("b", 1), List.of(1)),
+                new Change(JsonDiff.REPLACE, "c", List.of(1), "x"));
+    }
+
+    @Test
+    void explicitNullIsTheSameAsAMissingKey() throws IOException {
+        assertThat(JsonDiff.diff(json("{\"a\":null,\"b\":1}"), json("{\"b\":1}"))).isEmpty();
+        assertThat(JsonDiff.diff(json("{\"a\":null}"), json("{\"a\":{\"b\":1}}")))
+                .containsExactly(new Change(JsonDiff.INSERT, "a", null, Map.of("b", 1)));
+    }
+
+    private static Map<String, Object> json(String json) throws IOException {
+        return MAPPER.readValue(json, new TypeReference<Map<String, Object>>() {});
+    }
+}
@@ -0,0 +1,110 @@
+package com.serverfhir.util;
+
+import ca.uhn.fhir.rest.param.DateRangeParam;
+import org.hl7.fhir.r5.model.DiagnosticReport;
+import org.hl7.fhir.r5.model.Patient;
+import org.hl7.fhir.r5.model.Resource;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LastUpdatedTest {
+
+    private static final Instant JAN_10 = Instant.parse("2024-01-10T00:00:00Z");
+    private static final Instant JAN_20 = Instant.parse("2024-01-20T00:00:00Z");
+    private static final Instant JAN_31_NOON = Instant.parse("2024-01-31T12:00:00Z");
+
+    @Test
+    void parseAcceptsTheFormatsTfBackSends() {
+        assertThat(LastUpdated.parse("2024-03-01T10:15:30-03:00")).isEqualTo(Instant.parse("2024-03-01T13:15:30Z"));
+        assertThat(LastUpdated.parse("2024-03-01T10:15:30.250Z")).isEqualTo(Instant.parse("2024-03-01T10:15:30.250Z"));
+        // Sin offset se toma como UTC
+        assertThat(LastUpdated.parse("2024-03-01T10:15:30")).isEqualTo(Instant.parse("2024-03-01T10:15:30Z"));
+        assertThat(LastUpdated.parse("2024-03-01")).isEqualTo(Instant.parse("2024-03-01T00:00:00Z"));
+        assertThat(LastUpdated.parse(1709288130000L)).isEqualTo(Instant.ofEpochMilli(1709288130000L));
+        assertThat(LastUpdated.parse(1709288130)).isEqualTo(Instant.ofEpochMilli(1709288130));
+        assertThat(LastUpdated.parse(Date.from(JAN_10))).isEqualTo(JAN_10);
+    }
+
+    @Test
+    void parseReturnsNullForWhatItCannotRead() {
+        assertThat(LastUpdated.parse(null)).isNull();
+        assertThat(LastUpdated.parse("")).isNull();
+        assertThat(LastUpdated.parse("   ")).isNull();
+        assertThat(LastUpdated.parse("ayer")).isNull();
+        assertThat(LastUpdated.parse("01/03/2024")).isNull();
+        assertThat(LastUpdated.parse(Boolean.TRUE)).isNull();
+    }
+
+    @Test
+    void stampOnlySetsParseableDates() {
+        Patient patient = new Patient();
+        LastUpdated.stamp(patient, "no es fecha");
+        assertThat(patient.getMeta().hasLastUpdated()).isFalse();
+
+        LastUpdated.stamp(patient, "2024-01-10T00:00:00Z");
+        assertThat(patient.getMeta().getLastUpdated().toInstant()).isEqualTo(JAN_10);
+    }
+
+    @Test
+    void lowerBoundTakesTheLaterOfLastUpdatedAndSince() {
+        DateRangeParam fromJan10 = new DateRangeParam(Date.from(JAN_10), null);
+        DateRangeParam fromJan20 = new DateRangeParam(Date.from(JAN_20), null);
+
+        assertThat(LastUpdated.lowerBound(null, null)).isNull();
+        assertThat(LastUpdated.lowerBound(null, Date.from(JAN_10))).isEqualTo(JAN_10);
+        assertThat(LastUpdated.lowerBound(fromJan10, null)).isEqualTo(JAN_10);
+        assertThat(LastUpdated.lowerBound(fromJan10, Date.from(JAN_20))).isEqualTo(JAN_20);
+        assertThat(LastUpdated.lowerBound(fromJan20, Date.from(JAN_10))).isEqualTo(JAN_20);
+    }
+
+    @Test
+    void upperBoundIsInclusiveAndOptional() {
+        assertThat(LastUpdated.upperBound(null)).isNull();
+        assertThat(LastUpdated.upperBound(new DateRangeParam(Date.from(JAN_10), null))).isNull();
+        // le con precisión de segundos: hasta el final de ese segundo
+        assertThat(LastUpdated.upperBound(new DateRangeParam(Date.from(JAN_10), Date.from(JAN_31_NOON))))
+                .isBetween(JAN_31_NOON, JAN_31_NOON.plusMillis(999));
+    }
+
+    @Test
+    void matchesIsInclusiveAndNeedsLastUpdatedOnlyWithARange() {
+        Resource undated = new Patient();
+        assertThat(LastUpdated.matches(undated, null, null)).isTrue();
+        assertThat(LastUpdated.matches(undated, JAN_10, null)).isFalse();
+
+        Resource report = updated(new DiagnosticReport(), JAN_20);
+        assertThat(LastUpdated.matches(report, JAN_20, JAN_20)).isTrue();
+        assertThat(LastUpdated.matches(report, JAN_10, null)).isTrue();
+        assertThat(LastUpdated.matches(report, null, JAN_10)).isFalse();
+        assertThat(LastUpdated.matches(report, JAN_20.plusMillis(1), null)).isFalse();
+    }
+
+    @Test
+    void newestFirstFiltersAndSortsDescending() {
+        Patient old = updated(new Patient(), JAN_10);
+        old.setId("old");
+        Patient recent = updated(new Patient(), JAN_31_NOON);
+        recent.setId("recent");
+        Patient middle = updated(new Patient(), JAN_20);
+        middle.setId("middle");
+        Patient undated = new Patient();
+        undated.setId("undated");
+
+        assertThat(LastUpdated.newestFirst(List.of(old, recent, undated, middle), null, null))
+                .extracting(p -> p.getIdElement().getIdPart())
+                .containsExactly("recent", "middle", "old", "undated");
+        assertThat(LastUpdated.newestFirst(List.of(old, recent, undated, middle), JAN_20, null))
+                .extracting(p -> p.getIdElement().getIdPart())
+                .containsExactly("recent", "middle");
+    }
+
+    private static <T extends Resource> T updated(T resource, Instant instant) {
+        resource.getMeta().setLastUpdated(Date.from(instant));
+        return resource;
+    }
+}
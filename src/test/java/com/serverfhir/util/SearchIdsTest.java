@@ -0,0 +1,41 @@
+package com.serverfhir.util;
+
+import ca.uhn.fhir.rest.param.TokenOrListParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SearchIdsTest {
+
+    @Test
+    void keepsTheRequestedOrderWithoutRepeats() {
+        TokenOrListParam param = new TokenOrListParam(null, "c", "a", "b", "a", "c");
+
+        assertThat(SearchIds.of(param)).containsExactly("c", "a", "b");
+    }
+
+    @Test
+    void acceptsReferencesAndTrimsValues() {
+        TokenOrListParam param = new TokenOrListParam();
+        param.add(new TokenParam("Patient/a"));
+        param.add(new TokenParam(" b "));
+        param.add(new TokenParam("http://servidor/fhir/Patient/c"));
+        param.add(new TokenParam("Patient/a/_history/2"));
+
+        assertThat(SearchIds.of(param)).containsExactly("a", "b", "c");
+    }
+
+    @Test
+    void skipsBlankValuesAndMissingParam() {
+        TokenOrListParam param = new TokenOrListParam();
+        param.add(new TokenParam(""));
+        param.add(new TokenParam("   "));
+        param.add(new TokenParam((String) null));
+        param.add(new TokenParam("a"));
+
+        assertThat(SearchIds.of(param)).containsExactly("a");
+        assertThat(SearchIds.of(new TokenOrListParam())).isEmpty();
+        assertThat(SearchIds.of(null)).isEmpty();
+    }
+}